@@ -3,6 +3,9 @@ package com.mantz_it.android_dsp_lib;
 import android.app.Application;
 import android.test.ApplicationTestCase;
 
+import java.io.File;
+import java.util.Arrays;
+
 /**
  * <a href="http://d.android.com/tools/testing/testing_android.html">Testing Fundamentals</a>
  */
@@ -289,6 +292,855 @@ public class ApplicationTest extends ApplicationTestCase<Application> {
 		}
 	}
 
+	public void testSamplePacketCopyTo() {
+		float[] inputReal	= {0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f, 0.7f, 0.8f};
+		float[] inputImag	= {-0.1f, -0.2f, -0.3f, -0.4f, -0.5f, -0.6f, -0.7f, -0.8f};
+		SamplePacket packet = new SamplePacket(inputReal, inputImag, 0, 1000000, 5);
+
+		// size-bounded copy:
+		float[] re = new float[5];
+		float[] im = new float[5];
+		assertEquals(5, packet.copyReTo(re));
+		assertEquals(5, packet.copyImTo(im));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(floatEquals(inputReal[i], re[i]));
+			assertTrue(floatEquals(inputImag[i], im[i]));
+		}
+
+		// range copy with offsets:
+		float[] dst = new float[10];
+		packet.copyReTo(dst, 2, 4, 3);
+		for (int i = 0; i < 3; i++)
+			assertTrue(floatEquals(inputReal[i+2], dst[i+4]));
+
+		// interleaved copy:
+		float[] interleaved = new float[2*packet.size()];
+		assertEquals(5, packet.copyInterleavedTo(interleaved));
+		for (int i = 0; i < 5; i++) {
+			assertTrue(floatEquals(inputReal[i], interleaved[2*i]));
+			assertTrue(floatEquals(inputImag[i], interleaved[2*i+1]));
+		}
+
+		// allocating wrappers still return the whole capacity:
+		assertEquals(inputReal.length, packet.re().length);
+		assertTrue(floatEquals(inputImag[7], packet.im()[7]));
+
+		// two threads read ranges of the same packet (shared scratch buffer):
+		final SamplePacket sharedPacket = new SamplePacket(inputReal, inputImag, 0, 1000000);
+		final float[] expectedReal = inputReal;
+		final float[] expectedImag = inputImag;
+		final boolean[] failed = new boolean[2];
+		Thread[] threads = new Thread[2];
+		for (int t = 0; t < threads.length; t++) {
+			final int component = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					float[] values = new float[3];
+					float[] expected = component == 0 ? expectedReal : expectedImag;
+					for (int i = 0; i < 500; i++) {
+						if(component == 0)
+							sharedPacket.copyReTo(values, 1, 0, 3);
+						else
+							sharedPacket.copyImTo(values, 1, 0, 3);
+						for (int j = 0; j < 3; j++)
+							if(!floatEquals(expected[j+1], values[j]))
+								failed[component] = true;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				fail("interrupted");
+			}
+		}
+		assertFalse(failed[0]);
+		assertFalse(failed[1]);
+	}
+
+	public void testSamplePacketPool() {
+		SamplePacketPool pool = new SamplePacketPool(1);
+		SamplePacket packet1 = pool.acquire(100);
+		assertEquals(128, packet1.capacity());
+		assertEquals(0, packet1.size());
+		SamplePacket packet2 = pool.acquire(128);
+		assertNotSame(packet1, packet2);
+		assertEquals(2, pool.getOutstandingCount());
+		assertEquals(2, pool.getHighWaterMark());
+
+		// released packets are recycled (at most 1 idle packet per bucket):
+		packet1.setSize(50);
+		pool.release(packet1);
+		pool.release(packet2);
+		assertEquals(1, pool.getDroppedCount());
+		SamplePacket packet3 = pool.acquire(65);
+		assertSame(packet1, packet3);
+		assertEquals(0, packet3.size());
+		assertEquals(2, pool.getCreatedCount());
+
+		// leak detection:
+		assertEquals(1, pool.checkForLeaks());
+		pool.release(packet3);
+		assertEquals(0, pool.checkForLeaks());
+
+		// double release:
+		try {
+			pool.release(packet3);
+			fail("releasing a packet twice must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testFillPacketIntoPooledSamplePacket() {
+		int size = 512;
+		SamplePacketPool pool = new SamplePacketPool(4);
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		iqConverter.setSampleRate(1000000);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) i;
+		SamplePacket result = iqConverter.fillPacketIntoSamplePacket(data, pool);
+		assertEquals(size/2, result.size());
+		assertEquals(1000000, result.getSampleRate());
+		float[] re = result.re();
+		for (int i = 0; i < size/2; i++)
+			assertTrue(floatEquals(data[2*i] / 128.0f, re[i]));
+		pool.release(result);
+		assertEquals(0, pool.getOutstandingCount());
+	}
+
+	public void testFillPacketIntoSamplePacket8bitInterleaved() {
+		int size = 512;
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*7);
+		for (int format: new int[]{IQConverter.FORMAT_8BIT_SIGNED, IQConverter.FORMAT_8BIT_UNSIGNED}) {
+			IQConverter iqConverter = new IQConverter(format, size);
+			SamplePacket split = new SamplePacket(size/2);
+			SamplePacket interleaved = new SamplePacket(size/2, SamplePacket.LAYOUT_INTERLEAVED);
+			split.setSize(10);			// start at offset
+			interleaved.setSize(10);
+			iqConverter.fillPacketIntoSamplePacket(data, split);
+			iqConverter.fillPacketIntoSamplePacket(data, interleaved);
+			assertEquals(split.size(), interleaved.size());
+			float[] splitIQ = new float[2*split.size()];
+			float[] interleavedIQ = new float[2*interleaved.size()];
+			split.copyInterleavedTo(splitIQ);
+			interleaved.copyInterleavedTo(interleavedIQ);
+			for (int i = 20; i < splitIQ.length; i++)
+				assertTrue(floatEquals(splitIQ[i], interleavedIQ[i]));
+		}
+	}
+
+	public void testFirFilterInterleaved() {
+		float[] expectedResultReal 	= {-0.100000f, -0.345000f, -0.827500f, -1.035000f, -1.080000f, -1.020000f, -0.960000f, -0.900000f, -0.840000f, -0.780000f, -0.720000f, -0.660000f, -0.600000f, -0.540000f, -0.480000f, -0.420000f, -0.360000f, -0.300000f, -0.240000f, -0.180000f, -0.120000f, -0.060000f, 0.000000f, 0.060000f, 0.120000f, 0.180000f, 0.240000f, 0.300000f, 0.360000f, 0.420000f, 0.480000f, 0.540000f, 0.600000f, 0.660000f, 0.720000f, 0.780000f, 0.840000f, 0.900000f, 0.960000f, 1.020000f, 1.080000f};
+		float[] taps 				= {0.1f, 0.25f, 0.5f, 0.25f, 0.1f};
+		float[] inputReal			= {-1.000000f, -0.950000f, -0.900000f, -0.850000f, -0.800000f, -0.750000f, -0.700000f, -0.650000f, -0.600000f, -0.550000f, -0.500000f, -0.450000f, -0.400000f, -0.350000f, -0.300000f, -0.250000f, -0.200000f, -0.150000f, -0.100000f, -0.050000f, 0.000000f, 0.050000f, 0.100000f, 0.150000f, 0.200000f, 0.250000f, 0.300000f, 0.350000f, 0.400000f, 0.450000f, 0.500000f, 0.550000f, 0.600000f, 0.650000f, 0.700000f, 0.750000f, 0.800000f, 0.850000f, 0.900000f, 0.950000f, 1.000000f};
+		float[] inputImag			= new float[inputReal.length];
+		for (int i = 0; i < inputImag.length; i++)
+			inputImag[i] = -inputReal[i];
+		SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000, inputReal.length, SamplePacket.LAYOUT_INTERLEAVED);
+		FirFilter firFilter = new FirFilter(taps, null, 1);
+
+		// Filter the first 20 samples:
+		SamplePacket out = new SamplePacket(41, SamplePacket.LAYOUT_INTERLEAVED);
+		firFilter.filterComplexSignal(in, out, 0, 20);
+		assertEquals(20, out.size());
+		// Filter the next 21 samples:
+		firFilter.filterComplexSignal(in, out, 20, in.size()-20);
+		assertEquals(41, out.size());
+		float[] resultReal = out.re();
+		float[] resultImag = out.im();
+		for(int i = 0; i < 41; i++) {
+			assertTrue(floatEquals(expectedResultReal[i], resultReal[i]));
+			assertTrue(floatEquals(-expectedResultReal[i], resultImag[i]));
+		}
+
+		// mixed layouts are not supported:
+		try {
+			firFilter.filterComplexSignal(in, new SamplePacket(41), 0, 20);
+			fail("filtering into a packet with a different layout must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testFirFilterWithRingBuffer() {
+		int size = 200;		// bytes per packet
+		float[] taps = {0.1f, 0.25f, 0.5f, 0.25f, 0.1f};
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		SampleRingBuffer ring = new SampleRingBuffer(150);	// capacity 256: second packet wraps around
+		assertEquals(256, ring.capacity());
+		FirFilter ringFilter = new FirFilter(taps, null, 2);
+		FirFilter packetFilter = new FirFilter(taps, null, 2);
+		QuadratureDemodulator ringDemodulator = new QuadratureDemodulator(1);
+		QuadratureDemodulator packetDemodulator = new QuadratureDemodulator(1);
+		SamplePacket ringOut = new SamplePacket(2*size);
+		SamplePacket packetOut = new SamplePacket(2*size);
+		SamplePacket ringDemodOut = new SamplePacket(2*size);
+		SamplePacket packetDemodOut = new SamplePacket(2*size);
+		SamplePacket packetIn = new SamplePacket(size/2);
+		byte[] data = new byte[size];
+
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < size; i++)
+				data[i] = (byte) (i*3 + round*17);
+			assertEquals(size/2, iqConverter.fillPacketIntoRingBuffer(data, ring));
+			assertEquals(size/2, ringFilter.filterComplexSignal(ring, ringOut));
+			assertEquals(size/2, ringDemodulator.demodulate(ring, ringDemodOut));
+
+			packetIn.setSize(0);
+			iqConverter.fillPacketIntoSamplePacket(data, packetIn);
+			packetFilter.filterComplexSignal(packetIn, packetOut, 0, packetIn.size());
+			packetDemodulator.demodulate(packetIn, packetDemodOut, 0, packetIn.size());
+		}
+		assertEquals(3*size/2, ring.getWriteIndex());
+		assertEquals(packetOut.size(), ringOut.size());
+		assertEquals(packetDemodOut.size(), ringDemodOut.size());
+		float[] expectedReal = packetOut.re();
+		float[] expectedImag = packetOut.im();
+		float[] resultReal = ringOut.re();
+		float[] resultImag = ringOut.im();
+		for (int i = 0; i < ringOut.size(); i++) {
+			assertTrue(floatEquals(expectedReal[i], resultReal[i]));
+			assertTrue(floatEquals(expectedImag[i], resultImag[i]));
+		}
+		float[] expectedDemod = packetDemodOut.re();
+		float[] resultDemod = ringDemodOut.re();
+		for (int i = 0; i < ringDemodOut.size(); i++)
+			assertTrue(floatEquals(expectedDemod[i], resultDemod[i]));
+	}
+
+	public void testInt16SampleAccuracy() {
+		int size = 2000;		// bytes per packet
+		int decimation = 4;
+		java.util.Random random = new java.util.Random(0);
+		byte[] data = new byte[size];
+		IQConverter floatConverter = new IQConverter(IQConverter.FORMAT_8BIT_UNSIGNED, size);
+		IQConverter int16Converter = new IQConverter(IQConverter.FORMAT_8BIT_UNSIGNED, size);
+		floatConverter.setSampleRate(1000000);
+		floatConverter.setFrequency(100000000);
+		int16Converter.setSampleRate(1000000);
+		int16Converter.setFrequency(100000000);
+		LowPassFilter floatFilter = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		LowPassFilter int16Filter = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		SamplePacket floatIn = new SamplePacket(size/2);
+		SamplePacket int16In = new SamplePacket(size/2, SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_INT16);
+		SamplePacket floatOut = new SamplePacket(size/2/decimation);
+		SamplePacket int16Out = new SamplePacket(size/2/decimation, SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_INT16);
+		float[] floatIQ = new float[size/decimation];
+		float[] int16IQ = new float[size/decimation];
+		double maxError = 0;
+		double signalPower = 0;
+		double errorPower = 0;
+
+		// two packets to include the filter history:
+		for (int round = 0; round < 2; round++) {
+			random.nextBytes(data);
+			floatIn.setSize(0);
+			int16In.setSize(0);
+			floatOut.setSize(0);
+			int16Out.setSize(0);
+			floatConverter.mixPacketIntoSamplePacket(data, floatIn, 100100000);
+			int16Converter.mixPacketIntoSamplePacket(data, int16In, 100100000);
+			floatFilter.filterComplexSignal(floatIn, floatOut, 0, floatIn.size());
+			int16Filter.filterComplexSignal(int16In, int16Out, 0, int16In.size());
+			assertEquals(floatOut.size(), int16Out.size());
+			floatOut.copyInterleavedTo(floatIQ);
+			int16Out.copyInterleavedTo(int16IQ);
+			for (int i = 0; i < 2*floatOut.size(); i++) {
+				double error = Math.abs(floatIQ[i] - int16IQ[i]);
+				maxError = Math.max(maxError, error);
+				signalPower += floatIQ[i] * floatIQ[i];
+				errorPower += error * error;
+			}
+		}
+		System.out.println("int16 samples: max error is " + maxError + "; SNR compared to float is "
+				+ (10 * Math.log10(signalPower / errorPower)) + " dB");
+		assertTrue(maxError < 0.001);
+
+		// the history is converted (scaled) if the sample type of the packets changes (float, int16, float):
+		LowPassFilter switchingFilter = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		LowPassFilter floatReference = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		for (int round = 0; round < 3; round++) {
+			SamplePacket in = round == 1 ? int16In : floatIn;
+			SamplePacket out = round == 1 ? int16Out : floatOut;
+			SamplePacket expected = new SamplePacket(size/2/decimation);
+			out.setSize(0);
+			switchingFilter.filterComplexSignal(in, out, 0, in.size());
+			floatReference.filterComplexSignal(floatIn, expected, 0, floatIn.size());
+			assertEquals(expected.size(), out.size());
+			out.copyInterleavedTo(int16IQ);
+			expected.copyInterleavedTo(floatIQ);
+			for (int i = 0; i < 2*expected.size(); i++)
+				assertTrue(Math.abs(floatIQ[i] - int16IQ[i]) < 0.001);
+		}
+
+		// the pooled overloads return int16 packets for int16 input:
+		SamplePacketPool pool = new SamplePacketPool(2);
+		LowPassFilter pooledFilter = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		LowPassFilter referenceFilter = new LowPassFilter(decimation, 1, 1000000, 100000, 50000, 40);
+		SamplePacket pooledOut = pooledFilter.filterComplexSignal(int16In, pool, 0, int16In.size());
+		int16Out.setSize(0);
+		referenceFilter.filterComplexSignal(int16In, int16Out, 0, int16In.size());
+		assertTrue(pooledOut.isInt16());
+		assertEquals(int16Out.size(), pooledOut.size());
+		assertTrue(Arrays.equals(Arrays.copyOf(int16Out.re(), int16Out.size()), Arrays.copyOf(pooledOut.re(), pooledOut.size())));
+		assertTrue(Arrays.equals(Arrays.copyOf(int16Out.im(), int16Out.size()), Arrays.copyOf(pooledOut.im(), pooledOut.size())));
+		pool.release(pooledOut);
+		assertTrue(pool.acquire(1, SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_INT16) == pooledOut);
+		assertFalse(pool.acquire(1, SamplePacket.LAYOUT_SPLIT).isInt16());
+
+		// int16 is only supported with split layout:
+		try {
+			new SamplePacket(10, SamplePacket.LAYOUT_INTERLEAVED, SamplePacket.SAMPLE_TYPE_INT16);
+			fail("int16 samples with interleaved layout must fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testSyncTrackingAndFence() throws Exception {
+		float[] taps = {0.1f, 0.25f, 0.5f, 0.25f, 0.1f};
+		float[] inputReal = new float[100];
+		float[] inputImag = new float[100];
+		for (int i = 0; i < inputReal.length; i++) {
+			inputReal[i] = i / 100f;
+			inputImag[i] = -i / 100f;
+		}
+		SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000);
+		SamplePacket out = new SamplePacket(100);
+		assertFalse(in.isSyncPending());
+		FirFilter firFilter = new FirFilter(taps, null, 1);
+		firFilter.filterComplexSignal(in, out, 0, in.size());
+		assertTrue(out.isSyncPending());
+		assertFalse(in.isSyncPending());
+
+		ScriptFence fence = ScriptFence.insert();
+		final boolean[] callbackExecuted = {false};
+		fence.setOnCompletion(new Runnable() {
+			@Override
+			public void run() {
+				callbackExecuted[0] = true;
+			}
+		});
+		assertTrue(fence.await(1000));
+		assertTrue(fence.isDone());
+		assertTrue(callbackExecuted[0]);
+
+		// reading the samples syncs the packet:
+		float[] re = new float[out.size()];
+		out.copyReTo(re);
+		assertFalse(out.isSyncPending());
+		out.setSize(0);
+		firFilter.filterComplexSignal(in, out, 0, in.size());
+		assertTrue(out.isSyncPending());
+		out.sync();
+		assertFalse(out.isSyncPending());
+	}
+
+	public void testFillPacketIntoSamplePacket16bit() {
+		int samples = 100;
+		short[] values = new short[2*samples];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (short) (i * 655 - 32768);
+		byte[] data = toLittleEndian(values);
+
+		// signed:
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_16BIT_SIGNED, data.length);
+		SamplePacket result = new SamplePacket(samples);
+		iqConverter.fillPacketIntoSamplePacket(data, result);
+		assertEquals(samples, result.size());
+		float[] re = result.re();
+		float[] im = result.im();
+		for (int i = 0; i < samples; i++) {
+			assertTrue(floatEquals(values[2*i] / 32768.0f, re[i]));
+			assertTrue(floatEquals(values[2*i+1] / 32768.0f, im[i]));
+		}
+
+		// unsigned (same bytes):
+		iqConverter = new IQConverter(IQConverter.FORMAT_16BIT_UNSIGNED, data.length);
+		result = new SamplePacket(samples, SamplePacket.LAYOUT_INTERLEAVED);
+		iqConverter.fillPacketIntoSamplePacket(data, result);
+		assertEquals(samples, result.size());
+		float[] iq = new float[2*samples];
+		result.copyInterleavedTo(iq);
+		for (int i = 0; i < 2*samples; i++)
+			assertTrue(floatEquals(((values[i] & 0xffff) - 32767.5f) / 32768.0f, iq[i]));
+	}
+
+	public void testMixPacketIntoSamplePacket16bit() {
+		int samples = 100;
+		short[] values = new short[2*samples];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (short) (i * 317 - 20000);
+		byte[] data = toLittleEndian(values);
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_16BIT_SIGNED, data.length);
+		iqConverter.setSampleRate(1000000);
+		iqConverter.setFrequency(1000000);
+		SamplePacket result = new SamplePacket(2*samples);
+
+		// mix two packets to check the phase continuity:
+		iqConverter.mixPacketIntoSamplePacket(data, result, 1250000);
+		iqConverter.mixPacketIntoSamplePacket(data, result, 1250000);
+		assertEquals(2*samples, result.size());
+		float[] re = result.re();
+		float[] im = result.im();
+		for (int i = 0; i < 2*samples; i++) {
+			float inRe = values[2*(i%samples)] / 32768.0f;
+			float inIm = values[2*(i%samples)+1] / 32768.0f;
+			double phase = 2 * Math.PI * 250000 * i / 1000000;
+			// (re + j*im) * (cos - j*sin)
+			assertTrue(floatEquals((float) (inRe * Math.cos(phase) + inIm * Math.sin(phase)), re[i]));
+			assertTrue(floatEquals((float) (inIm * Math.cos(phase) - inRe * Math.sin(phase)), im[i]));
+		}
+	}
+
+	public void testFillPacketFromByteBuffer() {
+		int size = 512;
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*7);
+		SamplePacket expected = new SamplePacket(size/2);
+		iqConverter.fillPacketIntoSamplePacket(data, expected);
+		float[] expectedRe = expected.re();
+		float[] expectedIm = expected.im();
+
+		// direct buffer with position/limit around the packet:
+		java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(size + 20);
+		direct.position(10);
+		direct.put(data);
+		direct.position(10);
+		direct.limit(10 + size);
+		// heap buffer (uses the backing array):
+		java.nio.ByteBuffer heap = java.nio.ByteBuffer.wrap(data);
+		for (java.nio.ByteBuffer buffer: new java.nio.ByteBuffer[] {direct, heap}) {
+			SamplePacket result = new SamplePacket(size/2);
+			iqConverter.fillPacketIntoSamplePacket(buffer, result);
+			assertEquals(0, buffer.remaining());
+			assertEquals(size/2, result.size());
+			float[] re = result.re();
+			float[] im = result.im();
+			for (int i = 0; i < size/2; i++) {
+				assertTrue(floatEquals(expectedRe[i], re[i]));
+				assertTrue(floatEquals(expectedIm[i], im[i]));
+			}
+		}
+
+		// shorter than packetSize (odd length; the last byte is not consumed):
+		java.nio.ByteBuffer shortBuffer = java.nio.ByteBuffer.allocateDirect(size/2 + 1);
+		shortBuffer.put(data, 0, size/2 + 1);
+		shortBuffer.flip();
+		SamplePacket result = new SamplePacket(size/2);
+		assertEquals(size/4, iqConverter.fillPacketIntoSamplePacket(shortBuffer, result));
+		assertEquals(size/4, result.size());
+		assertEquals(1, shortBuffer.remaining());
+	}
+
+	public void testFillPacketIntoSamplePacketRange() {
+		int size = 512;
+		int offset = 33;
+		int length = 301;		// odd: the last byte is ignored
+		byte[] data = new byte[offset + size];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i*13);
+		for (int format: new int[] {IQConverter.FORMAT_8BIT_SIGNED, IQConverter.FORMAT_16BIT_SIGNED}) {
+			IQConverter iqConverter = new IQConverter(format, size);
+			iqConverter.setSampleRate(1000000);
+			int bytesPerSample = format == IQConverter.FORMAT_8BIT_SIGNED ? 2 : 4;
+			byte[] range = new byte[length - length % bytesPerSample];
+			System.arraycopy(data, offset, range, 0, range.length);
+			SamplePacket expected = new SamplePacket(size);
+			iqConverter.fillPacketIntoSamplePacket(range, expected);
+
+			// convert and mix a range of a larger array into packets that already contain samples:
+			SamplePacket result = new SamplePacket(size);
+			SamplePacket mixed = new SamplePacket(size);
+			SamplePacket expectedMixed = new SamplePacket(size);
+			result.setSize(5);
+			mixed.setSize(5);
+			expectedMixed.setSize(5);
+			assertEquals(length / bytesPerSample, iqConverter.fillPacketIntoSamplePacket(data, offset, length, result));
+			assertEquals(5 + length / bytesPerSample, result.size());
+			iqConverter.mixPacketIntoSamplePacket(range, expectedMixed, 250000);
+			iqConverter = new IQConverter(format, size);		// restart the mixer at phase 0
+			iqConverter.setSampleRate(1000000);
+			assertEquals(length / bytesPerSample, iqConverter.mixPacketIntoSamplePacket(data, offset, length, mixed, 250000));
+			assertEquals(5 + length / bytesPerSample, mixed.size());
+			for (int i = 0; i < length / bytesPerSample; i++) {
+				assertTrue(floatEquals(expected.re()[i], result.re()[5+i]));
+				assertTrue(floatEquals(expected.im()[i], result.im()[5+i]));
+				assertTrue(floatEquals(expectedMixed.re()[5+i], mixed.re()[5+i]));
+				assertTrue(floatEquals(expectedMixed.im()[5+i], mixed.im()[5+i]));
+			}
+
+			// range exceeds the array or the packet size:
+			try {
+				iqConverter.fillPacketIntoSamplePacket(data, offset + 1, size, new SamplePacket(size));
+				fail("converting a range outside of the array must fail");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				iqConverter.fillPacketIntoSamplePacket(new byte[2*size], 0, 2*size, new SamplePacket(2*size));
+				fail("converting more than packetSize bytes must fail");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testNcoMixer() {
+		int size = 1000;
+		int sampleRate = 1000000;
+		int[] channelOffsets = {123457, 123457, -234567};	// the third packet is mixed after a retune
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*11 + (i*i)%7);
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		iqConverter.setSampleRate(sampleRate);
+		iqConverter.setFrequency(100000000);
+		iqConverter.setMixerMode(IQConverter.MIXER_MODE_NCO);
+		SamplePacket result = new SamplePacket(channelOffsets.length * size/2);
+		for (int offset: channelOffsets)
+			assertEquals(size/2, iqConverter.mixPacketIntoSamplePacket(data, result, 100000000 + offset));
+		float[] re = result.re();
+		float[] im = result.im();
+
+		// expected: (re + j*im) * exp(-j*phase) with a continuous phase
+		double phase = 0;
+		double maxError = 0;
+		for (int i = 0; i < result.size(); i++) {
+			float inRe = data[2*(i%(size/2))] / 128.0f;
+			float inIm = data[2*(i%(size/2))+1] / 128.0f;
+			double expectedRe = inRe * Math.cos(phase) + inIm * Math.sin(phase);
+			double expectedIm = inIm * Math.cos(phase) - inRe * Math.sin(phase);
+			maxError = Math.max(maxError, Math.max(Math.abs(expectedRe - re[i]), Math.abs(expectedIm - im[i])));
+			phase += 2 * Math.PI * channelOffsets[i / (size/2)] / sampleRate;
+		}
+		System.out.println("testNcoMixer: max error: " + maxError);
+		assertTrue(maxError < 0.002);		// cos/sin table with 4096 entries: phase error < pi/4096
+	}
+
+	public void testMixerLutCache() {
+		int size = 200;
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*3);
+		MixerLutCache cache = new MixerLutCache(2);
+		IQConverter[] converters = new IQConverter[3];	// two share the cache, the last one is the reference
+		for (int i = 0; i < converters.length; i++) {
+			converters[i] = new IQConverter(IQConverter.FORMAT_8BIT_UNSIGNED, size);
+			converters[i].setSampleRate(1000000);
+			converters[i].setFrequency(100000000);
+			if(i < 2)
+				converters[i].setMixerLutCache(cache);
+		}
+
+		// hop A -> B -> A with the first converter, then A with the second one:
+		converters[0].mixPacketIntoSamplePacket(data, new SamplePacket(size/2), 100250000);
+		converters[0].mixPacketIntoSamplePacket(data, new SamplePacket(size/2), 100100000);
+		SamplePacket cached = new SamplePacket(size/2);
+		converters[0].mixPacketIntoSamplePacket(data, cached, 100250000);
+		SamplePacket shared = new SamplePacket(size/2);
+		converters[1].mixPacketIntoSamplePacket(data, shared, 100250000);
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.size());
+
+		// the cached table must give the same result as a newly generated one:
+		SamplePacket reference = new SamplePacket(size/2);
+		converters[2].mixPacketIntoSamplePacket(data, reference, 100250000);
+		for (int i = 0; i < size/2; i++) {
+			assertTrue(floatEquals(reference.re()[i], cached.re()[i]));
+			assertTrue(floatEquals(reference.im()[i], cached.im()[i]));
+			assertTrue(floatEquals(reference.re()[i], shared.re()[i]));
+			assertTrue(floatEquals(reference.im()[i], shared.im()[i]));
+		}
+
+		// a third channel evicts the least recently used table (B):
+		converters[1].mixPacketIntoSamplePacket(data, new SamplePacket(size/2), 100300000);
+		assertEquals(1, cache.getEvictionCount());
+		converters[1].mixPacketIntoSamplePacket(data, new SamplePacket(size/2), 100100000);
+		assertEquals(4, cache.getMissCount());
+	}
+
+	public void testCompactMixer() {
+		int size = 400;
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*5 + i/3);
+
+		// unsigned: the compact mode must give the same result as the lookup tables
+		for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+			SamplePacket[] results = new SamplePacket[2];
+			int[] modes = {IQConverter.MIXER_MODE_LUT, IQConverter.MIXER_MODE_COMPACT};
+			for (int m = 0; m < modes.length; m++) {
+				IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_UNSIGNED, size);
+				iqConverter.setSampleRate(1000000);
+				iqConverter.setFrequency(100000000);
+				iqConverter.setMixerMode(modes[m]);
+				results[m] = new SamplePacket(size, layout);
+				iqConverter.mixPacketIntoSamplePacket(data, results[m], 100200000);
+				iqConverter.mixPacketIntoSamplePacket(data, results[m], 100200000);
+				assertEquals(size, results[m].size());
+			}
+			for (int i = 0; i < size; i++) {
+				assertTrue(floatEquals(results[0].re()[i], results[1].re()[i]));
+				assertTrue(floatEquals(results[0].im()[i], results[1].im()[i]));
+			}
+		}
+
+		// signed: (re + j*im) * (cos - j*sin)
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		iqConverter.setSampleRate(1000000);
+		iqConverter.setFrequency(100000000);
+		iqConverter.setMixerMode(IQConverter.MIXER_MODE_COMPACT);
+		SamplePacket result = new SamplePacket(size/2);
+		iqConverter.mixPacketIntoSamplePacket(data, result, 100200000);
+		for (int i = 0; i < size/2; i++) {
+			float inRe = data[2*i] / 128.0f;
+			float inIm = data[2*i+1] / 128.0f;
+			double phase = 2 * Math.PI * 200000 * i / 1000000;
+			assertTrue(floatEquals((float) (inRe * Math.cos(phase) + inIm * Math.sin(phase)), result.re()[i]));
+			assertTrue(floatEquals((float) (inIm * Math.cos(phase) - inRe * Math.sin(phase)), result.im()[i]));
+		}
+	}
+
+	public void testPerPairKernels() {
+		int size = 600;
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*9 + i/5);
+
+		// the kernels with one invocation per IQ pair must give exactly the same results as the per-byte kernels
+		for (boolean signed: new boolean[] {true, false}) {
+			SamplePacket[] results = new SamplePacket[4];
+			for (int i = 0; i < results.length; i++) {
+				boolean perByte = i % 2 == 0;
+				results[i] = new SamplePacket(size/2);
+				if(i < 2) {
+					LookupTable_8Bit lookupTable = new LookupTable_8Bit(size, signed ?
+							LookupTable_8Bit.createSigned8BitLookupTable() : LookupTable_8Bit.createUnsigned8BitLookupTable());
+					lookupTable.setPerByteKernels(perByte);
+					if(signed)
+						lookupTable.convertFromSignedInterleaved8Bit(data, 2, size - 2, results[i].getReAlloc(), results[i].getImAlloc(), 1, size/2);
+					else
+						lookupTable.convertFromUnsignedInterleaved8Bit(data, 2, size - 2, results[i].getReAlloc(), results[i].getImAlloc(), 1, size/2);
+				} else {
+					Mixer_8Bit mixer = new Mixer_8Bit(size, 500);
+					mixer.generateLookupTable(1000000, 125000, 8, signed);
+					mixer.setPerByteKernels(perByte);
+					if(signed)
+						mixer.mixFromSignedInterleaved8Bit(data, 2, size - 2, results[i].getReAlloc(), results[i].getImAlloc(), 1, size/2);
+					else
+						mixer.mixFromUnsignedInterleaved8Bit(data, 2, size - 2, results[i].getReAlloc(), results[i].getImAlloc(), 1, size/2);
+				}
+			}
+			for (int i = 0; i < results.length; i += 2) {
+				float[] expectedRe = results[i].re();
+				float[] expectedIm = results[i].im();
+				float[] re = results[i+1].re();
+				float[] im = results[i+1].im();
+				for (int j = 1; j < size/2; j++) {
+					assertEquals(expectedRe[j], re[j], 0);
+					assertEquals(expectedIm[j], im[j], 0);
+				}
+			}
+		}
+	}
+
+	public void testIQCorrection() {
+		int size = 2000;
+		int period = 50;
+		float dcI = 0.1f, dcQ = -0.05f, gain = 1.2f, phi = 0.1f;
+		byte[] data = new byte[size];
+		for (int i = 0; i < size/2; i++) {
+			double angle = 2 * Math.PI * i / period;
+			data[2*i] = (byte) Math.round((0.5 * Math.cos(angle) + dcI) * 128);
+			data[2*i+1] = (byte) Math.round((gain * 0.5 * Math.sin(angle + phi) + dcQ) * 128);
+		}
+
+		for (boolean interleaved: new boolean[] {false, true}) {
+			IQConverter converter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+			IQCorrection correction = new IQCorrection(true);
+			converter.setIQCorrection(correction);
+			SamplePacket samplePacket = null;
+			for (int packet = 0; packet < 5; packet++) {
+				samplePacket = new SamplePacket(size/2, interleaved ? SamplePacket.LAYOUT_INTERLEAVED : SamplePacket.LAYOUT_SPLIT);
+				converter.fillPacketIntoSamplePacket(data, samplePacket);
+			}
+			assertEquals(dcI, correction.getDcI(), 0.01f);
+			assertEquals(dcQ, correction.getDcQ(), 0.01f);
+			assertEquals(gain, correction.getGainImbalance(), 0.02f);
+			assertEquals(phi, correction.getPhaseImbalance(), 0.02f);
+
+			// the corrected output must be a balanced complex sine without DC offset:
+			float[] re = samplePacket.re();
+			float[] im = samplePacket.im();
+			for (int i = 0; i < size/2; i++) {
+				double angle = 2 * Math.PI * i / period;
+				assertEquals((float) (0.5 * Math.cos(angle)), re[i], 0.02f);
+				assertEquals((float) (0.5 * Math.sin(angle)), im[i], 0.02f);
+			}
+		}
+
+		// DC correction only:
+		IQConverter converter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		IQCorrection correction = new IQCorrection(false);
+		converter.setIQCorrection(correction);
+		SamplePacket samplePacket = new SamplePacket(size/2);
+		converter.fillPacketIntoSamplePacket(data, samplePacket);
+		assertEquals(1, correction.getGainImbalance(), 0);
+		float[] re = samplePacket.re();
+		float[] im = samplePacket.im();
+		for (int i = 0; i < size/2; i++) {
+			double angle = 2 * Math.PI * i / period;
+			assertEquals((float) (0.5 * Math.cos(angle)), re[i], 0.02f);
+			assertEquals((float) (gain * 0.5 * Math.sin(angle + phi)), im[i], 0.02f);
+		}
+	}
+
+	public void testMultiChannelMixer() {
+		int size = 800;
+		long[] channels = {100123457, 99800000, 100250000};
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i*7 + (i*i)%13);
+
+		for (int format: new int[] {IQConverter.FORMAT_8BIT_SIGNED, IQConverter.FORMAT_16BIT_UNSIGNED}) {
+			for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+				int samples = format == IQConverter.FORMAT_8BIT_SIGNED ? size/2 : size/4;
+				IQConverter iqConverter = new IQConverter(format, size);
+				iqConverter.setSampleRate(1000000);
+				iqConverter.setFrequency(100000000);
+				SamplePacket[] results = new SamplePacket[channels.length];
+				for (int c = 0; c < channels.length; c++)
+					results[c] = new SamplePacket(2 * samples, layout);
+				// two packets: the phase of each channel must be continuous
+				assertEquals(samples, iqConverter.mixPacketIntoSamplePackets(data, results, channels));
+				assertEquals(samples, iqConverter.mixPacketIntoSamplePackets(data, results, channels));
+
+				// reference: one NCO mixer per channel
+				for (int c = 0; c < channels.length; c++) {
+					IQConverter reference = new IQConverter(format, size);
+					reference.setSampleRate(1000000);
+					reference.setFrequency(100000000);
+					reference.setMixerMode(IQConverter.MIXER_MODE_NCO);
+					SamplePacket expected = new SamplePacket(2 * samples);
+					reference.mixPacketIntoSamplePacket(data, expected, channels[c]);
+					reference.mixPacketIntoSamplePacket(data, expected, channels[c]);
+					assertEquals(2 * samples, results[c].size());
+					float[] re = results[c].re();
+					float[] im = results[c].im();
+					float[] expectedRe = expected.re();
+					float[] expectedIm = expected.im();
+					for (int i = 0; i < 2 * samples; i++) {
+						assertTrue(floatEquals(expectedRe[i], re[i]));
+						assertTrue(floatEquals(expectedIm[i], im[i]));
+					}
+				}
+			}
+		}
+
+		// a full packet limits the number of samples of all channels:
+		IQConverter iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		iqConverter.setSampleRate(1000000);
+		iqConverter.setFrequency(100000000);
+		SamplePacket[] packets = {new SamplePacket(size/2), new SamplePacket(10)};
+		assertEquals(10, iqConverter.mixPacketIntoSamplePackets(data, packets, new long[] {100100000, 100200000}));
+		assertEquals(10, packets[0].size());
+
+		// adding channels keeps the phase of the existing channels:
+		iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		iqConverter.setSampleRate(1000000);
+		iqConverter.setFrequency(100000000);
+		SamplePacket first = new SamplePacket(size);
+		assertEquals(size/2, iqConverter.mixPacketIntoSamplePackets(data, new SamplePacket[] {first}, new long[] {channels[0]}));
+		assertEquals(size/2, iqConverter.mixPacketIntoSamplePackets(data, new SamplePacket[] {first, new SamplePacket(size/2),
+				new SamplePacket(size/2)}, channels));
+		IQConverter reference = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, size);
+		reference.setSampleRate(1000000);
+		reference.setFrequency(100000000);
+		reference.setMixerMode(IQConverter.MIXER_MODE_NCO);
+		SamplePacket expected = new SamplePacket(size);
+		reference.mixPacketIntoSamplePacket(data, expected, channels[0]);
+		reference.mixPacketIntoSamplePacket(data, expected, channels[0]);
+		float[] re = first.re();
+		float[] im = first.im();
+		float[] expectedRe = expected.re();
+		float[] expectedIm = expected.im();
+		for (int i = 0; i < size; i++) {
+			assertTrue(floatEquals(expectedRe[i], re[i]));
+			assertTrue(floatEquals(expectedIm[i], im[i]));
+		}
+	}
+
+	public void testChannelExtractor() {
+		int size = 1000;
+		int sampleRate = 1000000;
+		int mixFrequency = -123457;
+		int[] packetLengths = {1000, 10, 777, 600};	// the third packet has an incomplete IQ pair
+		byte[] data = new byte[4 * size];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i*13 + (i*i)%11);
+		LowPassFilter lowPassFilter = new LowPassFilter(4, 1, sampleRate, 100000, 50000, 40);
+		float[] taps = LowPassFilter.designLowPassFilter(1, sampleRate, 100000, 50000, 40);
+		ChannelExtractor channelExtractor = new ChannelExtractor(size, true, lowPassFilter);
+		channelExtractor.setMixFrequency(sampleRate, mixFrequency);
+		SamplePacket result = new SamplePacket(size);
+		int consumed = 0;
+		for (int length: packetLengths)
+			consumed += channelExtractor.extract(data, 2 * consumed, length, result);
+		assertEquals(1000/2 + 10/2 + 777/2 + 600/2, consumed);
+		assertEquals((consumed + 3) / 4, result.size());
+		assertEquals(sampleRate / 4, result.getSampleRate());
+
+		// expected: mix every sample with a continuous phase, filter (zero history) and keep every 4th sample
+		double[] mixedRe = new double[consumed + taps.length - 1];
+		double[] mixedIm = new double[consumed + taps.length - 1];
+		for (int i = 0; i < consumed; i++) {
+			double phase = 2 * Math.PI * mixFrequency * i / sampleRate;
+			double inRe = data[2*i] / 128.0;
+			double inIm = data[2*i+1] / 128.0;
+			mixedRe[i + taps.length - 1] = inRe * Math.cos(phase) + inIm * Math.sin(phase);
+			mixedIm[i + taps.length - 1] = inIm * Math.cos(phase) - inRe * Math.sin(phase);
+		}
+		double maxError = 0;
+		for (int k = 0; k < result.size(); k++) {
+			double expectedRe = 0;
+			double expectedIm = 0;
+			for (int i = 0; i < taps.length; i++) {
+				expectedRe += taps[i] * mixedRe[4*k + i];
+				expectedIm += taps[i] * mixedIm[4*k + i];
+			}
+			maxError = Math.max(maxError, Math.max(Math.abs(expectedRe - result.re()[k]), Math.abs(expectedIm - result.im()[k])));
+		}
+		System.out.println("testChannelExtractor: max error: " + maxError);
+		assertTrue(maxError < 0.001);
+
+		// the output packet limits the number of consumed samples:
+		SamplePacket small = new SamplePacket(10);
+		channelExtractor.reset();
+		assertEquals(37, channelExtractor.extract(data, 0, size, small));
+		assertEquals(10, small.size());
+	}
+
+	public byte[] toLittleEndian(short[] values) {
+		byte[] bytes = new byte[2*values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[2*i] = (byte) values[i];
+			bytes[2*i+1] = (byte) (values[i] >> 8);
+		}
+		return bytes;
+	}
+
 	public void printArray(byte[] array) {
 		System.out.print("[");
 		for (int i = 0; i < array.length; i++) {
@@ -297,6 +1149,375 @@ public class ApplicationTest extends ApplicationTestCase<Application> {
 		System.out.println("]");
 	}
 
+	public void testFirFilterSymmetricTaps() {
+		int size = 300;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.3) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.sin(i * 0.2) - ((i * 5) % 11) / 22f;
+		}
+
+		// the folded kernels must give the same results as the direct form (two packets to cover the remainders):
+		for (int type = 0; type < 3; type++) {
+			for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+				if(type == 1 && layout == SamplePacket.LAYOUT_INTERLEAVED)
+					continue;	// real signals are only supported with the split layout
+				SamplePacket[] results = new SamplePacket[2];
+				for (int j = 0; j < 2; j++) {
+					FirFilter filter = type == 2 ? new ComplexBandPassFilter(3, 1, 1000000, 50000, 250000, 50000, 40)
+							: new LowPassFilter(3, 1, 1000000, 100000, 50000, 40);
+					assertTrue(type == 2 ? filter.isConjugateSymmetric() : filter.isSymmetric());
+					filter.setFoldSymmetricTaps(j == 1);
+					SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000, size, layout);
+					results[j] = new SamplePacket(2 * size / 3, layout);
+					for (int packet = 0; packet < 2; packet++) {
+						if(type == 0)
+							filter.filterComplexSignal(in, results[j], 0, size);
+						else if(type == 1)
+							filter.filterRealSignal(in, results[j], 0, size);
+						else
+							filter.filterComplexTaps(in, results[j], 0, size);
+					}
+					assertEquals(2 * size / 3, results[j].size());
+				}
+				float[] expectedRe = results[0].re();
+				float[] expectedIm = results[0].im();
+				float[] re = results[1].re();
+				float[] im = results[1].im();
+				for (int i = 0; i < 2 * size / 3; i++) {
+					assertTrue(floatEquals(expectedRe[i], re[i]));
+					if(type != 1)
+						assertTrue(floatEquals(expectedIm[i], im[i]));
+				}
+			}
+		}
+		assertFalse(new FirFilter(new float[] {0.1f, 0.5f, 0.2f}, null, 1).isSymmetric());
+	}
+
+	public void testFirFilterShortPackets() {
+		// packets that are shorter than the history of the filter (and a change of the layout in the stream):
+		int size = 300;
+		int numberOfTaps = 41;
+		int decimation = 2;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.3) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.sin(i * 0.2) - ((i * 5) % 11) / 22f;
+		}
+		float[] tapsReal = new float[numberOfTaps];
+		float[] tapsImag = new float[numberOfTaps];
+		for (int i = 0; i < numberOfTaps; i++) {
+			tapsReal[i] = (float) Math.sin(i * 0.37 + 0.2) / (i + 1);
+			tapsImag[i] = (float) Math.cos(i * 0.21) / (i + 2);
+		}
+		float[] expectedRe = new float[size / decimation];
+		float[] expectedIm = new float[size / decimation];
+		for (int n = 0; n < expectedRe.length; n++) {
+			for (int i = 0; i < numberOfTaps; i++) {
+				int index = n * decimation - numberOfTaps + 1 + i;
+				if(index < 0)
+					continue;
+				expectedRe[n] += inputReal[index] * tapsReal[i] - inputImag[index] * tapsImag[i];
+				expectedIm[n] += inputReal[index] * tapsImag[i] + inputImag[index] * tapsReal[i];
+			}
+		}
+
+		FirFilter filter = new FirFilter(tapsReal, tapsImag, decimation);
+		int[] packetSizes = {4, 10, 2, 30, 16, 8, 60};
+		float[] re = new float[expectedRe.length];
+		float[] im = new float[expectedIm.length];
+		int position = 0;
+		int outputs = 0;
+		for (int k = 0; position < size; k++) {
+			int length = Math.min(packetSizes[k % packetSizes.length], size - position);
+			int layout = position < size / 2 ? SamplePacket.LAYOUT_SPLIT : SamplePacket.LAYOUT_INTERLEAVED;
+			float[] packetRe = new float[length + 1];	// the first sample is skipped (offset 1)
+			float[] packetIm = new float[length + 1];
+			System.arraycopy(inputReal, position, packetRe, 1, length);
+			System.arraycopy(inputImag, position, packetIm, 1, length);
+			SamplePacket in = new SamplePacket(packetRe, packetIm, 0, 1000000, length + 1, layout);
+			SamplePacket out = new SamplePacket(length / decimation, layout);
+			assertEquals(length, filter.filterComplexTaps(in, out, 1, length));
+			out.copyReTo(re, 0, outputs, out.size());
+			out.copyImTo(im, 0, outputs, out.size());
+			outputs += out.size();
+			position += length;
+		}
+		assertEquals(expectedRe.length, outputs);
+		for (int i = 0; i < outputs; i++) {
+			assertTrue(floatEquals(expectedRe[i], re[i]));
+			assertTrue(floatEquals(expectedIm[i], im[i]));
+		}
+	}
+
+	public void testRationalResampler() {
+		int size = 200;
+		int interpolation = 3;
+		int decimation = 5;
+		float[] taps = new float[17];
+		for (int i = 0; i < taps.length; i++)
+			taps[i] = (float) Math.sin(i * 0.4) + 0.1f;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.1) + (i % 7) / 70f;
+			inputImag[i] = (float) Math.sin(i * 0.13);
+		}
+
+		// reference: interpolate by inserting zeros, filter with all taps and keep every 5th sample
+		int outputs = size * interpolation / decimation;
+		float[] expectedRe = new float[outputs];
+		float[] expectedIm = new float[outputs];
+		for (int n = 0; n < outputs; n++) {
+			for (int m = 0; m < taps.length; m++) {
+				int t = n * decimation - m;
+				if(t >= 0 && t % interpolation == 0) {
+					expectedRe[n] += taps[m] * inputReal[t / interpolation];
+					expectedIm[n] += taps[m] * inputImag[t / interpolation];
+				}
+			}
+		}
+
+		// stream the input in two packets (history across the calls):
+		for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+			RationalResampler resampler = new RationalResampler(interpolation, decimation, taps);
+			assertEquals(6, resampler.getTapsPerPhase());
+			SamplePacket out = new SamplePacket(outputs, layout);
+			for (int packet = 0; packet < 2; packet++) {
+				float[] re = Arrays.copyOfRange(inputReal, packet * size / 2, (packet + 1) * size / 2);
+				float[] im = Arrays.copyOfRange(inputImag, packet * size / 2, (packet + 1) * size / 2);
+				SamplePacket in = new SamplePacket(re, im, 0, 1000000, size / 2, layout);
+				assertEquals(size / 2, resampler.resample(in, out, 0, size / 2));
+			}
+			assertEquals(outputs, out.size());
+			assertEquals(600000, out.getSampleRate());
+			float[] re = out.re();
+			float[] im = out.im();
+			for (int i = 0; i < outputs; i++) {
+				assertTrue(floatEquals(expectedRe[i], re[i]));
+				assertTrue(floatEquals(expectedIm[i], im[i]));
+			}
+		}
+
+		// a full output packet stops the resampler; the remaining input is consumed by the next call:
+		RationalResampler resampler = new RationalResampler(interpolation, decimation, taps);
+		SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000);
+		SamplePacket out = new SamplePacket(10);
+		int consumed = resampler.resample(in, out, 0, size);
+		assertEquals(10, out.size());
+		assertEquals(16, consumed);		// the 11th output needs input sample 50/3 = 16
+		SamplePacket out2 = new SamplePacket(outputs);
+		assertEquals(size - consumed, resampler.resample(in, out2, consumed, size - consumed));
+		assertEquals(outputs - 10, out2.size());
+		float[] re = out2.re();
+		for (int i = 0; i < outputs - 10; i++)
+			assertTrue(floatEquals(expectedRe[i + 10], re[i]));
+
+		// the factor is reduced for the filter design (2.4 MS/s -> 48 kHz):
+		resampler = new RationalResampler(48000, 2400000, 1, 2400000, 16000, 8000, 40);
+		assertEquals(1, resampler.getInterpolation());
+		assertEquals(50, resampler.getDecimation());
+	}
+
+	public void testFirFilterFftConvolution() {
+		int size = 1000;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.3) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.sin(i * 0.2) - ((i * 5) % 11) / 22f;
+		}
+		// the FFT backend is opt-in:
+		LowPassFilter longFilter = new LowPassFilter(1, 1, 1000000, 20000, 5000, 60);
+		assertFalse(longFilter.isFftConvolution());
+		longFilter.setFftThreshold(128);
+		assertTrue(longFilter.isFftConvolution());
+		LowPassFilter shortFilter = new LowPassFilter(2, 1, 1000000, 100000, 50000, 40);
+		shortFilter.setFftThreshold(128);
+		assertFalse(shortFilter.isFftConvolution());
+
+		// the FFT backend must give the same results as the direct form (two packets to cover the remainders):
+		for (int type = 0; type < 3; type++) {
+			for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+				if(type == 1 && layout == SamplePacket.LAYOUT_INTERLEAVED)
+					continue;	// real signals are only supported with the split layout
+				SamplePacket[] results = new SamplePacket[2];
+				for (int j = 0; j < 2; j++) {
+					FirFilter filter = type == 2 ? new ComplexBandPassFilter(2, 1, 1000000, 50000, 250000, 20000, 40)
+							: new LowPassFilter(2, 1, 1000000, 100000, 20000, 40);
+					filter.setFftThreshold(j == 1 ? 0 : Integer.MAX_VALUE);
+					assertEquals(j == 1, filter.isFftConvolution());
+					SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000, size, layout);
+					results[j] = new SamplePacket(size, layout);
+					for (int packet = 0; packet < 2; packet++) {
+						if(type == 0)
+							filter.filterComplexSignal(in, results[j], 0, size);
+						else if(type == 1)
+							filter.filterRealSignal(in, results[j], 0, size);
+						else
+							filter.filterComplexTaps(in, results[j], 0, size);
+					}
+					assertEquals(size, results[j].size());
+				}
+				float[] expectedRe = results[0].re();
+				float[] expectedIm = results[0].im();
+				float[] re = results[1].re();
+				float[] im = results[1].im();
+				for (int i = 0; i < size; i++) {
+					assertTrue(floatEquals(expectedRe[i], re[i]));
+					if(type != 1)
+						assertTrue(floatEquals(expectedIm[i], im[i]));
+				}
+			}
+		}
+	}
+
+	public void testHalfBandDecimator() {
+		int size = 400;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.3) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.sin(i * 0.2) - ((i * 5) % 11) / 22f;
+		}
+		float[] taps = HalfBandDecimator.designHalfBandFilter(1, 1000000, 100000, 40);
+		assertEquals(3, taps.length % 4);
+		for (int i = 1; i < taps.length / 2; i += 2)
+			assertEquals(0f, taps[i], 0f);
+		assertTrue(taps[0] != 0);
+
+		// the half-band kernels must give the same results as the direct form (two packets to cover the remainders):
+		for (int type = 0; type < 2; type++) {
+			for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+				if(type == 1 && layout == SamplePacket.LAYOUT_INTERLEAVED)
+					continue;	// real signals are only supported with the split layout
+				SamplePacket[] results = new SamplePacket[2];
+				for (int j = 0; j < 2; j++) {
+					HalfBandDecimator filter = new HalfBandDecimator(1, 1000000, 100000, 40);
+					assertTrue(filter.isHalfBand());
+					filter.setFoldSymmetricTaps(j == 1);
+					SamplePacket in = new SamplePacket(inputReal, inputImag, 0, 1000000, size, layout);
+					results[j] = new SamplePacket(size, layout);
+					for (int packet = 0; packet < 2; packet++) {
+						if(type == 0)
+							filter.filter(in, results[j], 0, size);
+						else
+							filter.filterReal(in, results[j], 0, size);
+					}
+					assertEquals(size, results[j].size());
+					assertEquals(500000, results[j].getSampleRate());
+				}
+				float[] expectedRe = results[0].re();
+				float[] expectedIm = results[0].im();
+				float[] re = results[1].re();
+				float[] im = results[1].im();
+				for (int i = 0; i < size; i++) {
+					assertTrue(floatEquals(expectedRe[i], re[i]));
+					if(type == 0)
+						assertTrue(floatEquals(expectedIm[i], im[i]));
+				}
+			}
+		}
+		assertFalse(new LowPassFilter(2, 1, 1000000, 100000, 50000, 40).isHalfBand());
+
+		// cascade: decimate a constant signal by 8 (gain 2)
+		HalfBandCascade cascade = new HalfBandCascade(8, 2, 1000000, 20000, 40);
+		assertEquals(3, cascade.getStages().length);
+		assertEquals(8, cascade.getDecimation());
+		float[] ones = new float[size];
+		Arrays.fill(ones, 1);
+		SamplePacket in = new SamplePacket(ones, ones, 0, 1000000, size);
+		SamplePacket out = new SamplePacket(size / 4);
+		assertEquals(size, cascade.filter(in, out, 0, size));
+		assertEquals(size, cascade.filter(in, out, 0, size));
+		assertEquals(size / 4, out.size());
+		assertEquals(125000, out.getSampleRate());
+		assertEquals(2f, out.re()[out.size() - 1], 0.01f);
+		assertEquals(2f, out.im()[out.size() - 1], 0.01f);
+		assertEquals(0, cascade.filter(in, out, 0, size));	// output packet is full
+	}
+
+	public void testCicDecimator() {
+		int order = 3;
+		int ratio = 16;
+		int pairs = 500;
+		byte[] input8 = new byte[2 * pairs];
+		byte[] input16 = new byte[4 * pairs];
+		for (int i = 0; i < input8.length; i++)
+			input8[i] = (byte) (100 * Math.sin(i * 0.05) + (i * 7) % 23);
+		for (int i = 0; i < 2 * pairs; i++) {
+			int value = 32768 + (int) (30000 * Math.sin(i * 0.03));	// unsigned 16 bit, little endian
+			input16[2*i] = (byte) value;
+			input16[2*i+1] = (byte) (value >> 8);
+		}
+
+		for (int format: new int[] {IQConverter.FORMAT_8BIT_SIGNED, IQConverter.FORMAT_16BIT_UNSIGNED}) {
+			byte[] input = format == IQConverter.FORMAT_8BIT_SIGNED ? input8 : input16;
+			// reference: convert the input (zero history) and apply the moving sum (ratio samples) order times
+			int historyLength = order * ratio - 1;
+			float[][] expected = new float[2][];
+			for (int c = 0; c < 2; c++) {
+				float[] values = new float[historyLength + 2 * pairs];
+				if(format == IQConverter.FORMAT_16BIT_UNSIGNED)
+					Arrays.fill(values, 0, historyLength, 0.5f / 32768);	// history is initialized with the zero point 32768
+				for (int i = 0; i < 2 * pairs; i++) {
+					if(format == IQConverter.FORMAT_8BIT_SIGNED)
+						values[historyLength + i] = input[2 * (i % pairs) + c] / 128f;
+					else
+						values[historyLength + i] = (((input[4 * (i % pairs) + 2 * c] & 0xff) | (input[4 * (i % pairs) + 2 * c + 1] & 0xff) << 8) - 32767.5f) / 32768f;
+				}
+				for (int stage = 0; stage < order; stage++) {
+					for (int i = values.length - 1; i >= 0; i--) {
+						float sum = 0;
+						for (int r = 0; r < ratio; r++)
+							sum += i - r >= 0 ? values[i - r] : 0;
+						values[i] = sum;
+					}
+				}
+				expected[c] = new float[2 * pairs / ratio];
+				for (int m = 0; m < expected[c].length; m++)
+					expected[c][m] = values[historyLength + m * ratio] / (float) Math.pow(ratio, order);
+			}
+
+			// two packets (history across the calls):
+			for (int layout: new int[] {SamplePacket.LAYOUT_SPLIT, SamplePacket.LAYOUT_INTERLEAVED}) {
+				CicDecimator cic = new CicDecimator(format, input.length, order, ratio);	// input size in bytes
+				cic.setSampleRate(1600000);
+				SamplePacket out = new SamplePacket(2 * pairs / ratio, layout);
+				assertEquals(pairs, cic.decimate(input, out));
+				assertEquals(12 + 29 * ratio + 1, cic.decimate(input, out));	// output packet is full after 30 more outputs
+				assertEquals(2 * pairs / ratio, out.size());
+				assertEquals(100000, out.getSampleRate());
+				float[] re = out.re();
+				float[] im = out.im();
+				for (int i = 0; i < out.size(); i++) {
+					assertTrue(floatEquals(expected[0][i], re[i]));
+					assertTrue(floatEquals(expected[1][i], im[i]));
+				}
+			}
+		}
+
+		// the compensation filter corrects the droop of the CIC in the pass band:
+		float[] taps = CicDecimator.designCompensationFilter(4, 64, 1, 37500, 8000, 4000, 40);
+		for (float frequency: new float[] {0, 1000, 2000, 3000}) {
+			double real = 0;
+			double imag = 0;
+			for (int n = 0; n < taps.length; n++) {
+				real += taps[n] * Math.cos(2 * Math.PI * frequency / 37500 * n);
+				imag += taps[n] * Math.sin(2 * Math.PI * frequency / 37500 * n);
+			}
+			assertEquals(1, (float) (Math.hypot(real, imag) * CicDecimator.getMagnitudeResponse(4, 64, frequency / 37500)), 0.01f);
+		}
+		try {
+			new CicDecimator(IQConverter.FORMAT_16BIT_SIGNED, 1024, 8, 1024);
+			fail("register overflow not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	public void printUnsignedArray(byte[] array) {
 		System.out.print("[");
 		for (int i = 0; i < array.length; i++) {
@@ -313,6 +1534,242 @@ public class ApplicationTest extends ApplicationTestCase<Application> {
 		System.out.println("]");
 	}
 
+	public void testSharedScripts() {
+		// filters and demodulators share the compiled scripts: interleaved calls must not mix their state
+		int size = 200;
+		int packetSize = 20;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.cos(i * 0.3) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.sin(i * 0.2) - ((i * 5) % 11) / 22f;
+		}
+		float[][] taps = {{0.1f, 0.25f, 0.5f, 0.25f, 0.1f}, {0.3f, -0.2f, 0.1f}};
+		int[] decimations = {1, 2};
+		float[] gains = {1, 2.5f};
+		FirFilter[] filters = new FirFilter[2];
+		QuadratureDemodulator[] demodulators = new QuadratureDemodulator[2];
+		float[][] filterRe = new float[2][size];
+		float[][] filterIm = new float[2][size];
+		float[][] demod = new float[2][size];
+		int[] outputs = new int[2];
+		for (int j = 0; j < 2; j++) {
+			filters[j] = new FirFilter(taps[j], null, decimations[j]);
+			demodulators[j] = new QuadratureDemodulator(gains[j]);
+		}
+		for (int position = 0; position < size; position += packetSize) {
+			float[] packetRe = Arrays.copyOfRange(inputReal, position, position + packetSize);
+			float[] packetIm = Arrays.copyOfRange(inputImag, position, position + packetSize);
+			SamplePacket in = new SamplePacket(packetRe, packetIm, 0, 1000000);
+			for (int j = 0; j < 2; j++) {
+				SamplePacket out = new SamplePacket(packetSize);
+				filters[j].filterComplexSignal(in, out, 0, packetSize);
+				out.copyReTo(filterRe[j], 0, outputs[j], out.size());
+				out.copyImTo(filterIm[j], 0, outputs[j], out.size());
+				outputs[j] += out.size();
+				SamplePacket demodOut = new SamplePacket(packetSize);
+				assertEquals(packetSize, demodulators[j].demodulate(in, demodOut, 0, packetSize));
+				System.arraycopy(demodOut.re(), 0, demod[j], position, packetSize);
+			}
+		}
+
+		for (int j = 0; j < 2; j++) {
+			assertEquals(size / decimations[j], outputs[j]);
+			for (int n = 0; n < outputs[j]; n++) {
+				float expectedRe = 0;
+				float expectedIm = 0;
+				for (int i = 0; i < taps[j].length; i++) {
+					int index = n * decimations[j] - taps[j].length + 1 + i;
+					if(index < 0)
+						continue;
+					expectedRe += inputReal[index] * taps[j][i];
+					expectedIm += inputImag[index] * taps[j][i];
+				}
+				assertTrue(floatEquals(expectedRe, filterRe[j][n]));
+				assertTrue(floatEquals(expectedIm, filterIm[j][n]));
+			}
+			for (int i = 1; i < size; i++) {
+				double expected = gains[j] * Math.atan2(inputImag[i] * inputReal[i-1] - inputReal[i] * inputImag[i-1],
+						inputReal[i] * inputReal[i-1] + inputImag[i] * inputImag[i-1]);
+				assertEquals((float) expected, demod[j][i], 0.001f);
+			}
+		}
+	}
+
+	public void testFirFilterSetTaps() {
+		// taps and decimation are changed while the filter is running (the history is kept):
+		int size = 600;
+		float[] inputReal = new float[size];
+		float[] inputImag = new float[size];
+		for (int i = 0; i < size; i++) {
+			inputReal[i] = (float) Math.sin(i * 0.37) + ((i * 7) % 13) / 26f;
+			inputImag[i] = (float) Math.cos(i * 0.21) - ((i * 5) % 11) / 22f;
+		}
+		float[][] taps = {new float[9], new float[21], new float[7]};
+		for (int k = 0; k < taps.length; k++) {
+			for (int i = 0; i < taps[k].length; i++)
+				taps[k][i] = (float) Math.sin(i * 0.3 + k) / (i + 1);
+		}
+
+		FirFilter filter = new FirFilter(taps[0], null, 1);
+		filter.setCrossfadeLength(10);
+		int[] packetSizes = {6, 10, 4, 30, 16, 8, 60};
+		float[] re = new float[size];
+		float[] im = new float[size];
+		int position = 0;
+		int outputs = 0;
+		for (int k = 0; position < size; k++) {
+			int next = position < 200 ? 200 : position < 400 ? 400 : position < 500 ? 500 : size;
+			int length = Math.min(packetSizes[k % packetSizes.length], next - position);
+			SamplePacket in = new SamplePacket(Arrays.copyOfRange(inputReal, position, position + length),
+					Arrays.copyOfRange(inputImag, position, position + length), 0, 1000000);
+			SamplePacket out = new SamplePacket(length);
+			assertEquals(length, filter.filterComplexSignal(in, out, 0, length));
+			out.copyReTo(re, 0, outputs, out.size());
+			out.copyImTo(im, 0, outputs, out.size());
+			outputs += out.size();
+			position += length;
+			if(position == 200) {
+				// longer taps with a crossfade of 10 outputs:
+				filter.setTaps(taps[1], null);
+				assertTrue(filter.isCrossfading());
+				assertEquals(21, filter.getNumberOfTaps());
+			} else if(position == 400) {
+				// shorter taps without a crossfade:
+				assertFalse(filter.isCrossfading());
+				filter.setCrossfadeLength(0);
+				filter.setTaps(taps[2], null);
+				assertFalse(filter.isCrossfading());
+			} else if(position == 500) {
+				filter.setDecimation(2);
+			}
+		}
+		assertEquals(550, outputs);
+
+		// the history of the first taps (8 samples) is extended with zeros for the second taps:
+		float[] zeroedReal = inputReal.clone();
+		float[] zeroedImag = inputImag.clone();
+		Arrays.fill(zeroedReal, 0, 192, 0);
+		Arrays.fill(zeroedImag, 0, 192, 0);
+		for (int n = 0; n < outputs; n++) {
+			int end = n < 500 ? n : 500 + 2 * (n - 500);	// index of the newest input sample of the output
+			float expectedRe;
+			float expectedIm;
+			if(n < 200) {
+				expectedRe = convolve(inputReal, taps[0], end);
+				expectedIm = convolve(inputImag, taps[0], end);
+			} else if(n < 400) {
+				expectedRe = convolve(zeroedReal, taps[1], end);
+				expectedIm = convolve(zeroedImag, taps[1], end);
+				if(n < 210) {
+					float weight = (n - 200 + 1) / 11f;
+					float previousRe = convolve(inputReal, taps[0], end);
+					float previousIm = convolve(inputImag, taps[0], end);
+					expectedRe = previousRe + (expectedRe - previousRe) * weight;
+					expectedIm = previousIm + (expectedIm - previousIm) * weight;
+				}
+			} else {
+				expectedRe = convolve(inputReal, taps[2], end);
+				expectedIm = convolve(inputImag, taps[2], end);
+			}
+			assertTrue(floatEquals(expectedRe, re[n]));
+			assertTrue(floatEquals(expectedIm, im[n]));
+		}
+	}
+
+	public void testFilterDesignCache() throws Exception {
+		FilterDesignCache previousCache = AndroidDSPLib.getFilterDesignCache();
+		File directory = new File(getContext().getCacheDir(), "filterDesignTest");
+		FilterDesignCache cache = new FilterDesignCache(2, directory);
+		cache.clearDirectory();
+		AndroidDSPLib.setFilterDesignCache(cache);
+		try {
+			// first design is calculated, second is a hit:
+			float[] taps = LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40);
+			assertEquals(1, cache.getMissCount());
+			assertEquals(0, cache.getHitCount());
+			float[] cachedTaps = LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40);
+			assertEquals(1, cache.getHitCount());
+			assertTrue(Arrays.equals(taps, cachedTaps));
+
+			// the returned taps are copies:
+			cachedTaps[0] += 1;
+			assertTrue(Arrays.equals(taps, LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40)));
+			assertEquals(2, cache.getHitCount());
+
+			// other parameters or filter types are different designs:
+			float[] otherTaps = LowPassFilter.designLowPassFilter(1, 1000000, 100001, 20000, 40);
+			float[][] complexTaps = ComplexBandPassFilter.designComplexBandPassFilter(1, 1000000, -50000, 100000, 20000, 40);
+			assertEquals(3, cache.getMissCount());
+			assertFalse(Arrays.equals(taps, otherTaps));
+			assertEquals(2, cache.size());
+			assertEquals(1, cache.getEvictionCount());
+			assertTrue(floatEquals(2 / 5f, cache.getHitRate()));
+
+			// the evicted design is loaded from the directory, also by a new cache (warm start):
+			assertTrue(cache.flush());
+			assertTrue(Arrays.equals(taps, LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40)));
+			assertEquals(1, cache.getDiskHitCount());
+			cache = new FilterDesignCache(2, directory);
+			AndroidDSPLib.setFilterDesignCache(cache);
+			float[][] storedTaps = ComplexBandPassFilter.designComplexBandPassFilter(1, 1000000, -50000, 100000, 20000, 40);
+			assertEquals(1, cache.getDiskHitCount());
+			assertEquals(0, cache.getMissCount());
+			assertTrue(Arrays.equals(complexTaps[0], storedTaps[0]));
+			assertTrue(Arrays.equals(complexTaps[1], storedTaps[1]));
+			assertTrue(Arrays.equals(BandPassFilter.designBandPassFilter(1, 1000000, 100000, 200000, 20000, 40),
+					BandPassFilter.designBandPassFilter(1, 1000000, 100000, 200000, 20000, 40)));
+			assertEquals(1, cache.getMissCount());
+
+			// a corrupt file (negative length) is deleted and the design is calculated again:
+			File file = new File(directory, FilterDesignCache.key("lowpass", 1, 1000000, 100000, 20000, 40) + ".taps");
+			java.io.DataOutputStream corrupt = new java.io.DataOutputStream(new java.io.FileOutputStream(file));
+			corrupt.writeInt(1);
+			corrupt.writeInt(1);
+			corrupt.writeInt(-5);
+			corrupt.close();
+			cache.clear();
+			assertTrue(Arrays.equals(taps, LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40)));
+			assertEquals(2, cache.getMissCount());
+			assertTrue(cache.flush());
+			assertTrue(file.length() > 12);		// stored again
+
+			// a complex design with only one array is also treated as corrupt:
+			file = new File(directory, FilterDesignCache.key("complexbandpass", 1, 1000000, -50000, 100000, 20000, 40) + ".taps");
+			corrupt = new java.io.DataOutputStream(new java.io.FileOutputStream(file));
+			corrupt.writeInt(1);
+			corrupt.writeInt(1);
+			corrupt.writeInt(1);
+			corrupt.writeFloat(1);
+			corrupt.close();
+			cache.clear();
+			storedTaps = ComplexBandPassFilter.designComplexBandPassFilter(1, 1000000, -50000, 100000, 20000, 40);
+			assertEquals(3, cache.getMissCount());
+			assertTrue(Arrays.equals(complexTaps[0], storedTaps[0]));
+			assertTrue(Arrays.equals(complexTaps[1], storedTaps[1]));
+
+			// disabled cache:
+			AndroidDSPLib.setFilterDesignCache(null);
+			assertTrue(Arrays.equals(taps, LowPassFilter.designLowPassFilter(1, 1000000, 100000, 20000, 40)));
+			cache.clearDirectory();
+		} finally {
+			AndroidDSPLib.setFilterDesignCache(previousCache);
+		}
+	}
+
+	/**
+	 * @return output of the filter for the window of input samples that ends at index 'end' (zeros before index 0)
+	 */
+	private static float convolve(float[] input, float[] taps, int end) {
+		float result = 0;
+		for (int i = 0; i < taps.length; i++) {
+			int index = end - taps.length + 1 + i;
+			if(index >= 0)
+				result += input[index] * taps[i];
+		}
+		return result;
+	}
+
 	public boolean floatEquals(float expected, float actual) {
 		return actual < expected+0.0001 && actual > expected-0.0001;
 	}
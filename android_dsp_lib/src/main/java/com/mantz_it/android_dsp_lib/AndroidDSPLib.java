@@ -11,6 +11,13 @@ import android.util.Log;
  * Module:      AndroidDSPLib.java
  * Description: This class is a Singleton holding references to the RenderScript and Resources
  *              Whenever this library is used. The init() function of this class has to be called first!
+ *              It also holds the shared instances of the scripts that are used by many objects (e.g.
+ *              all FirFilters of a multi-channel receiver): each script is loaded only once per
+ *              RenderScript context. The objects keep their state (taps, tables, history) in their own
+ *              allocations and bind it to the shared script before each launch while they hold the
+ *              lock of the script (synchronized on the script instance).
+ *              The filter design cache (see FilterDesignCache) that is used by the design methods of
+ *              LowPassFilter, BandPassFilter and ComplexBandPassFilter is set here as well.
  *
  * @author Dennis Mantz
  *
@@ -35,15 +42,86 @@ public class AndroidDSPLib {
 	private static Resources resources = null;
 	private static RenderScript renderScript = null;
 	private static final String LOGTAG = "ResSingleton";
+	private static ScriptC_fir_filter firFilterScript = null;			// shared script instances (created on first use)
+	private static ScriptC_quad_demod quadDemodScript = null;
+	private static ScriptC_mixer_8bit mixerScript = null;
+	private static ScriptC_lookup_table_8bit lookupTableScript = null;
+	private static FilterDesignCache filterDesignCache = new FilterDesignCache(FilterDesignCache.DEFAULT_MAX_ENTRIES);
 
-	public static void init(Resources res, RenderScript rs) {
+	public static synchronized void init(Resources res, RenderScript rs) {
 		resources = res;
 		renderScript = rs;
+		clearScripts();
 	}
 
-	public static void init(Context context) {
+	public static synchronized void init(Context context) {
 		resources = context.getResources();
 		renderScript = RenderScript.create(context);
+		clearScripts();
+	}
+
+	/**
+	 * Drops the shared script instances (they belong to the previous RenderScript context)
+	 */
+	private static void clearScripts() {
+		firFilterScript = null;
+		quadDemodScript = null;
+		mixerScript = null;
+		lookupTableScript = null;
+	}
+
+	/**
+	 * @return the shared instance of the FIR filter script (see FirFilter)
+	 */
+	static synchronized ScriptC_fir_filter getFirFilterScript() {
+		if(firFilterScript == null)
+			firFilterScript = new ScriptC_fir_filter(getRenderScript(), getResources(), R.raw.fir_filter);
+		return firFilterScript;
+	}
+
+	/**
+	 * @return the shared instance of the quadrature demodulator script (see QuadratureDemodulator)
+	 */
+	static synchronized ScriptC_quad_demod getQuadDemodScript() {
+		if(quadDemodScript == null)
+			quadDemodScript = new ScriptC_quad_demod(getRenderScript(), getResources(), R.raw.quad_demod);
+		return quadDemodScript;
+	}
+
+	/**
+	 * @return the shared instance of the 8-bit mixer script (see Mixer_8Bit)
+	 */
+	static synchronized ScriptC_mixer_8bit getMixerScript() {
+		if(mixerScript == null)
+			mixerScript = new ScriptC_mixer_8bit(getRenderScript(), getResources(), R.raw.mixer_8bit);
+		return mixerScript;
+	}
+
+	/**
+	 * @return the shared instance of the 8-bit lookup table script (see LookupTable_8Bit)
+	 */
+	static synchronized ScriptC_lookup_table_8bit getLookupTableScript() {
+		if(lookupTableScript == null)
+			lookupTableScript = new ScriptC_lookup_table_8bit(getRenderScript(), getResources(), R.raw.lookup_table_8bit);
+		return lookupTableScript;
+	}
+
+	/**
+	 * @return the cache that is used by the filter design methods (null if caching is disabled)
+	 */
+	public static synchronized FilterDesignCache getFilterDesignCache() {
+		return filterDesignCache;
+	}
+
+	/**
+	 * Sets the cache that is used by the filter design methods. By default the designs are only kept in
+	 * memory; a cache with a directory also keeps them between the runs of the app, e.g.
+	 * new FilterDesignCache(64, new File(context.getCacheDir(), "filters"))
+	 *
+	 * @param cache		filter design cache or null to disable caching
+	 */
+	public static synchronized void setFilterDesignCache(FilterDesignCache cache) {
+		filterDesignCache = cache;
 	}
 
 	public static Resources getResources() {
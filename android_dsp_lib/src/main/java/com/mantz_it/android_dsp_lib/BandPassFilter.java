@@ -54,6 +54,27 @@ public class BandPassFilter extends FirFilter {
 		this.attenuation = attenuation;
 	}
 
+	/**
+	 * Designs new taps with the given parameters and replaces the taps of the running filter (the history
+	 * is kept and the output is crossfaded, see FirFilter.setTaps()). The decimation is not changed.
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param lowCutOffFrequency	lower cut off frequency (start of pass band)
+	 * @param highCutOffFrequency	upper cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 */
+	public void redesign(float gain, float sampleRate, float lowCutOffFrequency, float highCutOffFrequency,
+						 float transitionWidth, float attenuation) {
+		setTaps(designBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation), null);
+		this.gain = gain;
+		this.sampleRate = sampleRate;
+		this.lowCutOffFrequency = lowCutOffFrequency;
+		this.highCutOffFrequency = highCutOffFrequency;
+		this.transitionWidth = transitionWidth;
+		this.attenuation = attenuation;
+	}
+
 	public float getGain() {
 		return gain;
 	}
@@ -86,6 +107,32 @@ public class BandPassFilter extends FirFilter {
 		return super.filterRealSignal(in, out, offset, length);
 	}
 
+	/**
+	 * Returns the taps for the specified band pass filter. The design is looked up in the filter design
+	 * cache (see AndroidDSPLib.setFilterDesignCache()) and is only calculated if it is not cached.
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param lowCutOffFrequency	cut off frequency (beginning of pass band)
+	 * @param highCutOffFrequency	cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 * @return filter taps (may be modified by the caller)
+	 */
+	public static float[] designBandPassFilter(float gain, float sampleRate, float lowCutOffFrequency, float highCutOffFrequency,
+												float transitionWidth, float attenuation) {
+		FilterDesignCache cache = AndroidDSPLib.getFilterDesignCache();
+		if(cache == null)
+			return calculateBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+		String key = FilterDesignCache.key("bandpass", gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+		float[][] taps = cache.get(key, 1);
+		if(taps == null) {
+			taps = new float[][] {calculateBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation)};
+			cache.put(key, taps);
+		}
+		return taps[0];
+	}
+
 	/**
 	 * FROM GNU Radio firdes::band_pass_2:
 	 * Will calculate the tabs for the specified band pass filter
@@ -98,7 +145,7 @@ public class BandPassFilter extends FirFilter {
 	 * @param attenuation			attenuation of stop band
 	 * @return float[] array containing the filter taps
 	 */
-	public static float[] designBandPassFilter(float gain,
+	private static float[] calculateBandPassFilter(float gain,
 														float sampleRate,    // Hz
 														float lowCutOffFrequency,      // Hz BEGINNING of transition band
 														float highCutOffFrequency,      // Hz END of transition band
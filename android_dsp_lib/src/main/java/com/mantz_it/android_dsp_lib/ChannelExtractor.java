@@ -0,0 +1,208 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - Channel Extractor</h1>
+ *
+ * Module:      ChannelExtractor.java
+ * Description: This class extracts a channel from raw 8 bit IQ packets in one pass: converting,
+ * 				down-mixing (NCO with a 32 bit phase accumulator), low pass filtering and decimation
+ * 				are done by a single kernel that only calculates the decimated output samples. The
+ * 				filter history (raw input bytes), the decimation phase and the mixer phase are kept
+ * 				across calls. This replaces the two-step path IQConverter.mixPacketIntoSamplePacket()
+ * 				followed by LowPassFilter.filter() without the intermediate sample packet.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class ChannelExtractor {
+	private static final long PHASE_MASK = 0xffffffffL;	// phase accumulator has 32 bits
+	private RenderScript rs;
+	private ScriptC_channel_extractor script;
+	private Allocation inputAlloc;			// history IQ pairs followed by the IQ pairs of the packet (I8_2)
+	private Allocation lutAlloc;			// conversion table indexed by the unsigned value of the byte
+	private Allocation tapsAlloc;			// complex taps (F32_2) for the current mix frequency
+	private byte[] staging;					// same content as inputAlloc: [history | packet]
+	private float[] taps;					// real taps of the low pass filter
+	private int decimation;
+	private int historyLength;				// number of IQ pairs that are kept for the next packet (taps-1)
+	private int inputSize;					// max number of IQ pairs per packet
+	private byte zeroValue;					// input value that represents 0.0 (initial history)
+	private int sampleRate = 0;
+	private int mixFrequency = 0;
+	private long phase = 0;					// phase of the next input sample (2^32 is one full period)
+	private long phaseIncrement = 0;		// phase increment per input sample
+	private int nextOutput = 0;				// index of the newest input sample of the next output (inside the next packet)
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputSize		max size of the input packets in bytes
+	 * @param signed		true for signed input values, false for unsigned input values
+	 * @param filter		low pass filter (design) that is used for the channel; its taps and decimation are used
+	 */
+	public ChannelExtractor(int inputSize, boolean signed, LowPassFilter filter) {
+		this.rs = AndroidDSPLib.getRenderScript();
+		this.taps = filter.getTapsReal();
+		this.decimation = filter.getDecimation();
+		if(decimation <= 0)
+			throw new IllegalArgumentException("Invalid decimation: " + decimation);
+		this.historyLength = taps.length - 1;
+		this.inputSize = inputSize / 2;
+		this.staging = new byte[2 * (historyLength + this.inputSize)];
+		this.inputAlloc = Allocation.createSized(rs, Element.I8_2(rs), historyLength + this.inputSize);
+		this.tapsAlloc = Allocation.createSized(rs, Element.F32_2(rs), taps.length);
+
+		this.zeroValue = signed ? 0 : (byte) 127;
+		this.lutAlloc = Allocation.createSized(rs, Element.F32(rs), 256);
+		this.lutAlloc.copyFrom(LookupTable_8Bit.createByteIndexedLookupTable(signed));
+
+		script = new ScriptC_channel_extractor(rs, AndroidDSPLib.getResources(), R.raw.channel_extractor);
+		script.set_inSamples(inputAlloc);
+		script.bind_lut(lutAlloc);
+		script.bind_taps(tapsAlloc);
+		script.set_filterOrder(taps.length);
+		script.set_decimation(decimation);
+		updateTaps();
+		reset();
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public int getMixFrequency() {
+		return mixFrequency;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Sets the frequency that is shifted to 0 Hz. The phase is not changed (no phase jump at the next sample).
+	 * Note: The samples in the filter history are mixed with the new frequency, so the first taps-1 outputs
+	 * after a retune are a mixture of both channels.
+	 *
+	 * @param sampleRate	sample rate of the input samples
+	 * @param mixFrequency	channel frequency relative to the center frequency of the input (may be negative)
+	 */
+	public void setMixFrequency(int sampleRate, int mixFrequency) {
+		if(sampleRate <= 0)
+			throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+		this.sampleRate = sampleRate;
+		this.mixFrequency = mixFrequency;
+		this.phaseIncrement = Math.round((double) mixFrequency / sampleRate * (1L << 32)) & PHASE_MASK;
+		updateTaps();
+	}
+
+	/**
+	 * Resets the filter history, the decimation phase and the mixer phase (initial state)
+	 */
+	public void reset() {
+		for (int i = 0; i < 2 * historyLength; i++)
+			staging[i] = zeroValue;
+		phase = 0;
+		nextOutput = 0;
+	}
+
+	/**
+	 * Extracts the channel from a range of interleaved 8 bit IQ values and appends the decimated samples to the
+	 * output sample packet. Stops automatically if the output sample packet is full.
+	 *
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an incomplete IQ pair is ignored)
+	 * @param out		output sample packet (SAMPLE_TYPE_FLOAT32)
+	 * @return number of IQ pairs consumed from the input
+	 */
+	public int extract(byte[] in, int inOffset, int inLength, SamplePacket out) {
+		if(inOffset < 0 || inLength < 0 || inOffset + inLength > in.length || inOffset + inLength < 0)
+			throw new IllegalArgumentException("Invalid input range: offset=" + inOffset + " length=" + inLength
+					+ " (array length is " + in.length + ")");
+		if(inLength / 2 > inputSize)
+			throw new IllegalArgumentException("Input range (" + inLength + " bytes) exceeds the capacity of "
+					+ inputSize * 2 + " bytes");
+		if(out.isInt16())
+			throw new IllegalArgumentException("The channel extractor only supports SAMPLE_TYPE_FLOAT32 output packets");
+
+		// number of outputs and consumed input samples:
+		int pairs = inLength / 2;
+		int available = pairs > nextOutput ? (pairs - nextOutput - 1) / decimation + 1 : 0;
+		int outputs = Math.min(available, out.capacity() - out.size());
+		int consumed = pairs;
+		if(outputs < available)
+			consumed = outputs == 0 ? 0 : nextOutput + (outputs - 1) * decimation + 1;	// stop after the last output
+
+		System.arraycopy(in, inOffset, staging, 2 * historyLength, 2 * consumed);
+		if(outputs > 0) {
+			inputAlloc.copy1DRangeFromUnchecked(0, historyLength + consumed, staging);
+			int size = out.size();
+			script.set_firstSample(nextOutput);
+			script.set_offset(size);
+			script.set_phase(phase);
+			Script.LaunchOptions options = new Script.LaunchOptions().setX(size, size + outputs);
+			if(out.isInterleaved()) {
+				script.forEach_extractToFloat2Kernel(out.getIQAlloc(), options);
+			} else {
+				script.set_outImag(out.getImAlloc());
+				script.forEach_extractToSplitKernel(out.getReAlloc(), options);
+			}
+			out.setSize(size + outputs);
+			out.markWrittenByScript();
+		}
+		if(sampleRate > 0)
+			out.setSampleRate(sampleRate / decimation);
+
+		// the newest taps-1 IQ pairs are the history of the next packet:
+		System.arraycopy(staging, 2 * consumed, staging, 0, 2 * historyLength);
+		phase = (phase + phaseIncrement * consumed) & PHASE_MASK;
+		nextOutput = nextOutput + outputs * decimation - consumed;
+		return consumed;
+	}
+
+	/**
+	 * Extracts the channel from a whole packet. See extract(byte[], int, int, SamplePacket)
+	 *
+	 * @param in		interleaved IQ values
+	 * @param out		output sample packet (SAMPLE_TYPE_FLOAT32)
+	 * @return number of IQ pairs consumed from the input
+	 */
+	public int extract(byte[] in, SamplePacket out) {
+		return extract(in, 0, in.length, out);
+	}
+
+	/**
+	 * Calculates the complex taps tap[i] * exp(j*phaseIncrement*(taps-1-i)) for the current mix frequency
+	 */
+	private void updateTaps() {
+		float[] complexTaps = new float[2 * taps.length];
+		for (int i = 0; i < taps.length; i++) {
+			double angle = 2 * Math.PI * ((phaseIncrement * (taps.length - 1 - i)) & PHASE_MASK) / (1L << 32);
+			complexTaps[2*i] = (float) (taps[i] * Math.cos(angle));
+			complexTaps[2*i+1] = (float) (taps[i] * Math.sin(angle));
+		}
+		tapsAlloc.copyFrom(complexTaps);
+		script.set_phaseIncrement(phaseIncrement);
+	}
+}
@@ -0,0 +1,283 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.Float2;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - CIC Decimator</h1>
+ *
+ * Module:      CicDecimator.java
+ * Description: This class implements a multiplierless cascaded integrator-comb (CIC) decimator that works
+ * 				directly on the raw 8 bit or 16 bit IQ pairs (formats of the IQConverter). It is meant as the
+ * 				front end for very large decimations (e.g. 2.4 MS/s -> 12.5 kHz): the CIC reduces the rate by
+ * 				'ratio' with integer additions only, and a short compensation FIR at the low output rate
+ * 				(see designCompensationFilter()) corrects the pass band droop of the CIC and does the final
+ * 				channel filtering. The output is scaled to the same range as the conversion of the IQConverter
+ * 				(DC gain 1).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class CicDecimator {
+	public static final int MAX_ORDER = 8;			// see cic_decimator.rs
+	private static final int SEGMENT_LENGTH = 8;	// outputs per thread (each thread needs order-1 warm-up outputs)
+	private RenderScript rs;
+	private ScriptC_cic_decimator script;
+	private Allocation inputAlloc;			// history IQ pairs followed by the IQ pairs of the packet
+	private byte[] staging;					// same content as inputAlloc: [history | packet]
+	private byte[] zeroPair;				// raw IQ pair that represents 0 (initial history)
+	private int format;
+	private int order;
+	private int ratio;
+	private int bytesPerPair;
+	private int historyLength;				// number of IQ pairs that are kept for the next packet (order*ratio-1)
+	private int inputSize;					// max number of IQ pairs per packet
+	private int sampleRate = 0;
+	private int nextOutput = 0;				// index of the newest input sample of the next output (inside the next packet)
+
+	/**
+	 * Constructor.
+	 *
+	 * @param format		format of the input samples (IQConverter.FORMAT_8BIT_SIGNED, ...)
+	 * @param inputSize		max size of the input packets in bytes
+	 * @param order			number of integrator and comb stages (1 to MAX_ORDER)
+	 * @param ratio			decimation
+	 */
+	public CicDecimator(int format, int inputSize, int order, int ratio) {
+		if(order < 1 || order > MAX_ORDER)
+			throw new IllegalArgumentException("order must be in [1, " + MAX_ORDER + "]: " + order);
+		if(ratio < 1)
+			throw new IllegalArgumentException("Invalid ratio: " + ratio);
+		this.rs = AndroidDSPLib.getRenderScript();
+		this.format = format;
+		this.order = order;
+		this.ratio = ratio;
+		this.historyLength = order * ratio - 1;
+		Element element;
+		double fullScale;
+		float dcOffset;
+		switch (format) {
+			case IQConverter.FORMAT_8BIT_SIGNED:
+				element = Element.I8_2(rs);
+				zeroPair = new byte[] {0, 0};
+				fullScale = 128;
+				dcOffset = 0;
+				break;
+			case IQConverter.FORMAT_8BIT_UNSIGNED:
+				element = Element.U8_2(rs);
+				zeroPair = new byte[] {(byte) 128, (byte) 128};
+				fullScale = 128;
+				dcOffset = (128 - 127.4f) / 128;		// see LookupTable_8Bit.createUnsigned8BitLookupTable()
+				break;
+			case IQConverter.FORMAT_16BIT_SIGNED:
+				element = Element.I16_2(rs);
+				zeroPair = new byte[] {0, 0, 0, 0};
+				fullScale = 32768;
+				dcOffset = 0;
+				break;
+			case IQConverter.FORMAT_16BIT_UNSIGNED:
+				element = Element.U16_2(rs);
+				zeroPair = new byte[] {0, (byte) 0x80, 0, (byte) 0x80};	// 32768 (little endian)
+				fullScale = 32768;
+				dcOffset = 0.5f / 32768;				// see Converter_16Bit (center is 32767.5)
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown format: " + format);
+		}
+		// the outputs are calculated in 64 bit registers (max output: fullScale * ratio^order):
+		if(Math.log(fullScale) / Math.log(2) + order * Math.log(ratio) / Math.log(2) > 63)
+			throw new IllegalArgumentException("order " + order + " and ratio " + ratio + " exceed the 64 bit registers");
+		this.bytesPerPair = zeroPair.length;
+		this.inputSize = inputSize / bytesPerPair;
+		this.staging = new byte[bytesPerPair * (historyLength + this.inputSize)];
+		this.inputAlloc = Allocation.createSized(rs, element, historyLength + this.inputSize);
+
+		script = new ScriptC_cic_decimator(rs, AndroidDSPLib.getResources(), R.raw.cic_decimator);
+		script.set_inSamples(inputAlloc);
+		script.set_format(format);
+		script.set_order(order);
+		script.set_ratio(ratio);
+		script.set_segmentLength(SEGMENT_LENGTH);
+		script.set_scale((float) (1 / (Math.pow(ratio, order) * fullScale)));
+		script.set_dcOffset(new Float2(dcOffset, dcOffset));
+		reset();
+	}
+
+	public int getFormat() {
+		return format;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public int getRatio() {
+		return ratio;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @param sampleRate	sample rate of the input samples (the output packets get sampleRate/ratio)
+	 */
+	public void setSampleRate(int sampleRate) {
+		if(sampleRate <= 0)
+			throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Resets the history and the decimation phase (initial state)
+	 */
+	public void reset() {
+		for (int i = 0; i < historyLength; i++)
+			System.arraycopy(zeroPair, 0, staging, i * bytesPerPair, bytesPerPair);
+		nextOutput = 0;
+	}
+
+	/**
+	 * Decimates a range of interleaved IQ values and appends the output samples to the output sample packet.
+	 * Stops automatically if the output sample packet is full.
+	 *
+	 * @param in		interleaved IQ values (16 bit: little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an incomplete IQ pair is ignored)
+	 * @param out		output sample packet (SAMPLE_TYPE_FLOAT32)
+	 * @return number of IQ pairs consumed from the input
+	 */
+	public int decimate(byte[] in, int inOffset, int inLength, SamplePacket out) {
+		if(inOffset < 0 || inLength < 0 || inOffset + inLength > in.length || inOffset + inLength < 0)
+			throw new IllegalArgumentException("Invalid input range: offset=" + inOffset + " length=" + inLength
+					+ " (array length is " + in.length + ")");
+		if(inLength / bytesPerPair > inputSize)
+			throw new IllegalArgumentException("Input range (" + inLength + " bytes) exceeds the capacity of "
+					+ inputSize * bytesPerPair + " bytes");
+		if(out.isInt16())
+			throw new IllegalArgumentException("The CIC decimator only supports SAMPLE_TYPE_FLOAT32 output packets");
+
+		// number of outputs and consumed input samples:
+		int pairs = inLength / bytesPerPair;
+		int available = pairs > nextOutput ? (pairs - nextOutput - 1) / ratio + 1 : 0;
+		int outputs = Math.min(available, out.capacity() - out.size());
+		int consumed = pairs;
+		if(outputs < available)
+			consumed = outputs == 0 ? 0 : nextOutput + (outputs - 1) * ratio + 1;	// stop after the last output
+
+		System.arraycopy(in, inOffset, staging, bytesPerPair * historyLength, bytesPerPair * consumed);
+		if(outputs > 0) {
+			inputAlloc.copy1DRangeFromUnchecked(0, historyLength + consumed, staging);
+			int size = out.size();
+			script.set_firstSample(historyLength + nextOutput);
+			script.set_outputs(outputs);
+			script.set_offset(size);
+			int segments = (outputs + SEGMENT_LENGTH - 1) / SEGMENT_LENGTH;
+			Script.LaunchOptions options = new Script.LaunchOptions().setX(size, size + segments);
+			if(out.isInterleaved()) {
+				script.set_outIQ(out.getIQAlloc());
+				script.forEach_decimateToFloat2Kernel(out.getIQAlloc(), options);
+			} else {
+				script.set_outReal(out.getReAlloc());
+				script.set_outImag(out.getImAlloc());
+				script.forEach_decimateToSplitKernel(out.getReAlloc(), options);
+			}
+			out.setSize(size + outputs);
+			out.markWrittenByScript();
+		}
+		if(sampleRate > 0)
+			out.setSampleRate(sampleRate / ratio);
+
+		// the newest order*ratio-1 IQ pairs are the history of the next packet:
+		System.arraycopy(staging, bytesPerPair * consumed, staging, 0, bytesPerPair * historyLength);
+		nextOutput = nextOutput + outputs * ratio - consumed;
+		return consumed;
+	}
+
+	/**
+	 * Decimates a whole packet. See decimate(byte[], int, int, SamplePacket)
+	 *
+	 * @param in		interleaved IQ values
+	 * @param out		output sample packet (SAMPLE_TYPE_FLOAT32)
+	 * @return number of IQ pairs consumed from the input
+	 */
+	public int decimate(byte[] in, SamplePacket out) {
+		return decimate(in, 0, in.length, out);
+	}
+
+	/**
+	 * @param order			order of the CIC
+	 * @param ratio			decimation of the CIC
+	 * @param frequency		frequency relative to the output sample rate of the CIC (0 to 0.5)
+	 * @return magnitude of the (normalized) frequency response of the CIC
+	 */
+	public static double getMagnitudeResponse(int order, int ratio, double frequency) {
+		if(frequency == 0)
+			return 1;
+		double response = Math.sin(Math.PI * frequency) / (ratio * Math.sin(Math.PI * frequency / ratio));
+		return Math.abs(Math.pow(response, order));
+	}
+
+	/**
+	 * Will calculate the taps of a low pass filter for the output of a CIC that also compensates the
+	 * pass band droop of the CIC. The filter is designed with LowPassFilter.designLowPassFilter() and its
+	 * frequency response is multiplied with the inverse response of the CIC (frequency sampling with
+	 * the same number of taps).
+	 *
+	 * @param order					order of the CIC
+	 * @param ratio					decimation of the CIC
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			output sample rate of the CIC (input sample rate of the filter)
+	 * @param cutOffFrequency		cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 * @return filter taps
+	 */
+	public static float[] designCompensationFilter(int order, int ratio, float gain, float sampleRate,
+												   float cutOffFrequency, float transitionWidth, float attenuation) {
+		float[] taps = LowPassFilter.designLowPassFilter(gain, sampleRate, cutOffFrequency, transitionWidth, attenuation);
+		int M = (taps.length - 1) / 2;
+		int gridSize = Math.max(512, 8 * taps.length);	// frequencies in [0, sampleRate/2]
+
+		// amplitude response of the (linear phase) low pass times the inverse response of the CIC:
+		double[] amplitude = new double[gridSize + 1];
+		for (int k = 0; k <= gridSize; k++) {
+			double frequency = 0.5 * k / gridSize;
+			double value = taps[M];
+			for (int n = 1; n <= M; n++)
+				value += 2 * taps[M + n] * Math.cos(2 * Math.PI * frequency * n);
+			amplitude[k] = value / getMagnitudeResponse(order, ratio, frequency);
+		}
+
+		// back to the taps (inverse cosine transform with the trapezoidal rule):
+		float[] compensated = new float[taps.length];
+		for (int n = 0; n <= M; n++) {
+			double sum = 0;
+			for (int k = 0; k <= gridSize; k++) {
+				double weight = (k == 0 || k == gridSize) ? 0.5 : 1;
+				sum += weight * amplitude[k] * Math.cos(Math.PI * k * n / gridSize);
+			}
+			compensated[M + n] = compensated[M - n] = (float) (sum / gridSize);
+		}
+		return compensated;
+	}
+}
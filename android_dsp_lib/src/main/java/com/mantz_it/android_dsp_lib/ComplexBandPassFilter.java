@@ -54,6 +54,28 @@ public class ComplexBandPassFilter extends FirFilter {
 		this.attenuation = attenuation;
 	}
 
+	/**
+	 * Designs new taps with the given parameters and replaces the taps of the running filter (the history
+	 * is kept and the output is crossfaded, see FirFilter.setTaps()). The decimation is not changed.
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param lowCutOffFrequency	lower cut off frequency (start of pass band)
+	 * @param highCutOffFrequency	upper cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 */
+	public void redesign(float gain, float sampleRate, float lowCutOffFrequency, float highCutOffFrequency,
+						 float transitionWidth, float attenuation) {
+		float[][] taps = designComplexBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+		setTaps(taps[0], taps[1]);
+		this.gain = gain;
+		this.sampleRate = sampleRate;
+		this.lowCutOffFrequency = lowCutOffFrequency;
+		this.highCutOffFrequency = highCutOffFrequency;
+		this.transitionWidth = transitionWidth;
+		this.attenuation = attenuation;
+	}
+
 	public float getGain() {
 		return gain;
 	}
@@ -82,6 +104,32 @@ public class ComplexBandPassFilter extends FirFilter {
 		return super.filterComplexTaps(in,out,offset,length);
 	}
 
+	/**
+	 * Returns the taps for the specified complex band pass filter. The design is looked up in the filter design
+	 * cache (see AndroidDSPLib.setFilterDesignCache()) and is only calculated if it is not cached.
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param lowCutOffFrequency	cut off frequency (beginning of pass band)
+	 * @param highCutOffFrequency	cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 * @return filter taps: ret[0] are the real taps, ret[1] the imaginary taps (may be modified by the caller)
+	 */
+	public static float[][] designComplexBandPassFilter(float gain, float sampleRate, float lowCutOffFrequency, float highCutOffFrequency,
+												float transitionWidth, float attenuation) {
+		FilterDesignCache cache = AndroidDSPLib.getFilterDesignCache();
+		if(cache == null)
+			return calculateComplexBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+		String key = FilterDesignCache.key("complexbandpass", gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+		float[][] taps = cache.get(key, 2);
+		if(taps == null) {
+			taps = calculateComplexBandPassFilter(gain, sampleRate, lowCutOffFrequency, highCutOffFrequency, transitionWidth, attenuation);
+			cache.put(key, taps);
+		}
+		return taps;
+	}
+
 	/**
 	 * FROM GNU Radio firdes::band_pass_2:
 	 * Will calculate the tabs for the specified complex band pass filter
@@ -94,7 +142,7 @@ public class ComplexBandPassFilter extends FirFilter {
 	 * @param attenuation			attenuation of stop band
 	 * @return float[][] array containing the filter taps: ret[0] are the real taps, ret[1] the imaginary taps
 	 */
-	public static float[][] designComplexBandPassFilter(float gain,
+	private static float[][] calculateComplexBandPassFilter(float gain,
 														float sampleRate,    // Hz
 														float lowCutOffFrequency,      // Hz BEGINNING of transition band
 														float highCutOffFrequency,      // Hz END of transition band
@@ -0,0 +1,272 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - Converter 16bit</h1>
+ *
+ * Module:      Converter_16Bit.java
+ * Description: This class implements methods to convert interleaved 16 bit IQ samples (little endian,
+ * 				signed or unsigned) to float and to do converting and down-mixing at the same time.
+ * 				The raw bytes are copied unchanged into the input allocation and are interpreted as
+ * 				IQ pairs by the kernels. For mixing, a cos/sin table of length cosineLength is used
+ * 				(a lookup table like in Mixer_8Bit would need 65536*cosineLength entries).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Converter_16Bit {
+	private RenderScript rs;
+	ScriptC_converter_16bit script;
+	private InputAllocation input;		// raw IQ pairs (U16_2)
+	private Allocation cosAlloc;		// cos table of the mixer
+	private Allocation sinAlloc;		// sin table of the mixer
+	private float[] cosTable;
+	private float[] sinTable;
+	private int cosineLength;
+	private int cosineFrequency;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputSize			size of the input packets in bytes (4 bytes per IQ pair)
+	 * @param maxCosineLength	max length of the cos/sin tables of the mixer
+	 * @param signed			true for signed 16 bit samples, false for unsigned 16 bit samples
+	 */
+	public Converter_16Bit(int inputSize, int maxCosineLength, boolean signed) {
+		rs = AndroidDSPLib.getRenderScript();
+		input = new InputAllocation(rs, Element.U16_2(rs), 4, inputSize);
+		cosAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength);
+		sinAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength);
+		cosTable = new float[maxCosineLength];
+		sinTable = new float[maxCosineLength];
+		script = new ScriptC_converter_16bit(rs, AndroidDSPLib.getResources(), R.raw.converter_16bit);
+		script.set_inSamples(input.getAllocation());
+		script.bind_cosTable(cosAlloc);
+		script.bind_sinTable(sinAlloc);
+		script.set_signFlip(signed ? 0x8000 : 0);
+		script.set_center(signed ? 32768.0f : 32767.5f);
+		script.set_cosineLength(1);
+		script.set_baseIndex(0);
+	}
+
+	public int getCosineFrequency() {
+		return cosineFrequency;
+	}
+
+	/**
+	 * Calculates the cos/sin tables of the mixer
+	 *
+	 * @param sampleRate	sample rate of the input samples
+	 * @param mixFrequency	frequency of the cosine that is mixed to the signal
+	 * @param cosineLength	length of the tables (should contain full cosine periods)
+	 */
+	public void generateLookupTable(int sampleRate, int mixFrequency, int cosineLength) {
+		if(cosineLength > cosTable.length)
+			throw new IllegalArgumentException("cosineLength exceeds the max cosine length: " + cosineLength);
+		this.cosineLength = cosineLength;
+		this.cosineFrequency = mixFrequency;
+		for (int i = 0; i < cosineLength; i++) {
+			cosTable[i] = (float) Math.cos(2 * Math.PI * mixFrequency * i / sampleRate);
+			sinTable[i] = (float) Math.sin(2 * Math.PI * mixFrequency * i / sampleRate);
+		}
+		cosAlloc.copy1DRangeFrom(0, cosineLength, cosTable);
+		sinAlloc.copy1DRangeFrom(0, cosineLength, sinTable);
+		script.set_cosineLength(cosineLength);
+		script.set_baseIndex(0);
+	}
+
+	/**
+	 * Converts interleaved 16 bit samples into output allocations with split layout
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromInterleaved16Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		script.forEach_convertToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+		return count;
+	}
+
+	/**
+	 * Converts interleaved 16 bit samples into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromInterleaved16Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_offset(offset);
+		script.forEach_convertToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+		return count;
+	}
+
+	/**
+	 * Converts interleaved 16 bit samples into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromInterleaved16BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		script.forEach_convertToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+		return count;
+	}
+
+	/**
+	 * Converts interleaved 16 bit samples and appends them to a ring buffer
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/4 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int convertFromInterleaved16Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		int count = input.uploadPairs(in, inOffset, inLength, inLength / 4, 4);
+		if(count == 0)
+			return 0;
+		Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+		script.set_outImag(ring.getImAlloc());
+		script.set_offset(ring.getWriteIndex() & ring.getMask());
+		script.set_ringMask(ring.getMask());
+		for (Script.LaunchOptions options: launchOptions)
+			script.forEach_convertToRingKernel(ring.getReAlloc(), options);
+		ring.advanceWriteIndex(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts interleaved 16 bit samples into output allocations with split layout
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved16Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		script.forEach_mixToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+		advanceBaseIndex(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts interleaved 16 bit samples into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved16Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_offset(offset);
+		script.forEach_mixToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+		advanceBaseIndex(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts interleaved 16 bit samples into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved16BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = input.uploadPairs(in, inOffset, inLength, length - offset, 4);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		script.forEach_mixToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+		advanceBaseIndex(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts interleaved 16 bit samples and appends them to a ring buffer
+	 * @param in		interleaved IQ samples (little endian)
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/4 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved16Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		int count = input.uploadPairs(in, inOffset, inLength, inLength / 4, 4);
+		if(count == 0)
+			return 0;
+		Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+		script.set_outImag(ring.getImAlloc());
+		script.set_offset(ring.getWriteIndex() & ring.getMask());
+		script.set_ringMask(ring.getMask());
+		for (Script.LaunchOptions options: launchOptions)
+			script.forEach_mixToRingKernel(ring.getReAlloc(), options);
+		advanceBaseIndex(count);
+		ring.advanceWriteIndex(count);
+		return count;
+	}
+
+	private void advanceBaseIndex(int count) {
+		if(cosineLength > 0)
+			script.set_baseIndex((script.get_baseIndex() + count) % cosineLength);
+	}
+}
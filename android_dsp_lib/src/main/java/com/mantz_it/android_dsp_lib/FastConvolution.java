@@ -0,0 +1,233 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - Fast Convolution</h1>
+ *
+ * Module:      FastConvolution.java
+ * Description: This class implements the FFT (overlap-save) backend of the FirFilter. The input is split
+ * 				into overlapping blocks of fftSize samples that are transformed, multiplied with the spectrum
+ * 				of the taps and transformed back (see fast_convolution.rs). The FFT size is chosen from the
+ * 				number of taps, so that each block yields at least 3/4 of fftSize valid output samples.
+ * 				The input is read from the staging region of the FirFilter (see FilterHistory); staging
+ * 				the packet and updating the history is left to the FirFilter.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+class FastConvolution {
+	public static final int MIN_FFT_SIZE = 16;
+	private RenderScript rs;
+	private ScriptC_fast_convolution script;
+	private Allocation spectrumRealTapsAlloc;		// spectrum of the real taps
+	private Allocation spectrumComplexTapsAlloc;	// spectrum of the complex taps (null if the filter has real taps)
+	private Allocation twiddlesAlloc;
+	private Allocation bitReverseAlloc;
+	private Allocation workAlloc;					// FFT buffers (blocks * fftSize complex samples)
+	private Allocation spectraAlloc;
+	private int blockCapacity = 0;					// number of blocks that fit into the FFT buffers
+	private int numberOfTaps;
+	private int decimation;
+	private int fftSize;
+	private int fftBits;
+	private int step;								// new input samples per block
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rs					RenderScript context
+	 * @param tapsReal				real taps of the filter
+	 * @param tapsImag				imaginary taps of the filter (may be null)
+	 * @param decimation			decimation factor
+	 */
+	FastConvolution(RenderScript rs, float[] tapsReal, float[] tapsImag, int decimation) {
+		this.rs = rs;
+		this.numberOfTaps = tapsReal.length;
+		this.decimation = decimation;
+		this.fftSize = chooseFftSize(numberOfTaps);
+		this.fftBits = Integer.numberOfTrailingZeros(fftSize);
+		this.step = fftSize - numberOfTaps + 1;
+
+		int[] bitReverse = new int[fftSize];
+		for (int i = 0; i < fftSize; i++)
+			bitReverse[i] = Integer.reverse(i) >>> (32 - fftBits);
+		float[] twiddles = new float[fftSize];		// fftSize/2 complex values
+		for (int m = 0; m < fftSize / 2; m++) {
+			twiddles[2*m] = (float) Math.cos(-2 * Math.PI * m / fftSize);
+			twiddles[2*m+1] = (float) Math.sin(-2 * Math.PI * m / fftSize);
+		}
+		this.bitReverseAlloc = Allocation.createSized(rs, Element.U32(rs), fftSize);
+		this.bitReverseAlloc.copyFrom(bitReverse);
+		this.twiddlesAlloc = Allocation.createSized(rs, Element.F32_2(rs), fftSize / 2);
+		this.twiddlesAlloc.copyFrom(twiddles);
+		this.spectrumRealTapsAlloc = Allocation.createSized(rs, Element.F32_2(rs), fftSize);
+		this.spectrumRealTapsAlloc.copyFrom(calcSpectrum(tapsReal, null, fftSize));
+		if(tapsImag != null) {
+			this.spectrumComplexTapsAlloc = Allocation.createSized(rs, Element.F32_2(rs), fftSize);
+			this.spectrumComplexTapsAlloc.copyFrom(calcSpectrum(tapsReal, tapsImag, fftSize));
+		}
+
+		script = new ScriptC_fast_convolution(rs, AndroidDSPLib.getResources(), R.raw.fast_convolution);
+		script.bind_twiddles(twiddlesAlloc);
+		script.bind_bitReverse(bitReverseAlloc);
+		script.set_filterOrder(numberOfTaps);
+		script.set_decimation(decimation);
+		script.set_fftSize(fftSize);
+		script.set_fftBits(fftBits);
+		script.set_step(step);
+	}
+
+	public int getFftSize() {
+		return fftSize;
+	}
+
+	/**
+	 * Filters the staged input samples and writes the output samples to the output sample packet
+	 * (starting at out.size(); the size of the output packet is not changed)
+	 * @param history		staging region of the FirFilter (history followed by the input samples; float)
+	 * @param out			output sample packet (same layout as the staging region)
+	 * @param outputs		number of output samples
+	 * @param realSignal	true if only the real part of the input is used (LAYOUT_SPLIT, real output)
+	 * @param complexTaps	true to filter with the complex taps; false to use only the real taps
+	 */
+	void filter(FilterHistory history, SamplePacket out, int outputs, boolean realSignal, boolean complexTaps) {
+		if(outputs <= 0)
+			return;
+		int length = (outputs - 1) * decimation + 1;		// input samples up to the newest sample of the last output
+		int blocks = (length + step - 1) / step;
+		if(blocks > blockCapacity) {
+			if(workAlloc != null) {
+				workAlloc.destroy();
+				spectraAlloc.destroy();
+			}
+			workAlloc = Allocation.createSized(rs, Element.F32_2(rs), blocks * fftSize);
+			spectraAlloc = Allocation.createSized(rs, Element.F32_2(rs), blocks * fftSize);
+			blockCapacity = blocks;
+		}
+		script.bind_spectrum(complexTaps && spectrumComplexTapsAlloc != null ? spectrumComplexTapsAlloc : spectrumRealTapsAlloc);
+		script.set_length(numberOfTaps - 1 + length);
+		script.set_offsetOut(out.size());
+
+		// load the blocks and calculate their FFTs in spectraAlloc:
+		Script.LaunchOptions loadOptions = new Script.LaunchOptions().setX(0, blocks * fftSize);
+		if(realSignal) {
+			script.set_inReal(history.getReAlloc());
+			script.forEach_loadRealKernel(spectraAlloc, loadOptions);
+		} else if(history.isInterleaved()) {
+			script.set_inIQ(history.getIQAlloc());
+			script.forEach_loadInterleavedKernel(spectraAlloc, loadOptions);
+		} else {
+			script.set_inReal(history.getReAlloc());
+			script.set_inImag(history.getImAlloc());
+			script.forEach_loadSplitKernel(spectraAlloc, loadOptions);
+		}
+		script.set_twiddleSign(1);
+		fft(spectraAlloc, blocks);
+
+		// multiply with the spectrum of the taps and calculate the inverse FFTs in workAlloc:
+		script.set_spectra(spectraAlloc);
+		script.forEach_multiplyKernel(workAlloc, loadOptions);
+		script.set_twiddleSign(-1);
+		fft(workAlloc, blocks);
+
+		Script.LaunchOptions outputOptions = new Script.LaunchOptions().setX(out.size(), out.size() + outputs);
+		if(realSignal) {
+			script.forEach_outputRealKernel(out.getReAlloc(), outputOptions);
+		} else if(out.isInterleaved()) {
+			script.forEach_outputInterleavedKernel(out.getIQAlloc(), outputOptions);
+		} else {
+			script.set_outImag(out.getImAlloc());
+			script.forEach_outputSplitKernel(out.getReAlloc(), outputOptions);
+		}
+	}
+
+	/**
+	 * Launches the butterfly kernel for each stage of the FFT (the direction is set by twiddleSign)
+	 * @param work		FFT buffer (blocks in bit-reversed order)
+	 * @param blocks	number of blocks in the FFT buffer
+	 */
+	private void fft(Allocation work, int blocks) {
+		script.set_work(work);
+		Script.LaunchOptions options = new Script.LaunchOptions().setX(0, blocks * fftSize / 2);
+		for (int spanBits = 0; spanBits < fftBits; spanBits++) {
+			script.set_span(1 << spanBits);
+			script.set_spanBits(spanBits);
+			script.forEach_butterflyKernel(work, options);
+		}
+	}
+
+	/**
+	 * Returns the FFT size for the given number of taps: the smallest power of two that is at least
+	 * 4 * (numberOfTaps - 1) and at least MIN_FFT_SIZE
+	 * @param numberOfTaps		length of the filter
+	 * @return FFT size
+	 */
+	static int chooseFftSize(int numberOfTaps) {
+		int fftSize = MIN_FFT_SIZE;
+		while (fftSize < 4 * (numberOfTaps - 1))
+			fftSize <<= 1;
+		return fftSize;
+	}
+
+	/**
+	 * Calculates the spectrum of the reversed (and zero padded) taps scaled by 1/fftSize. The taps are
+	 * reversed because the FirFilter calculates out[n] = sum taps[i] * in[n - N + 1 + i]
+	 * @param tapsReal		real taps
+	 * @param tapsImag		imaginary taps (may be null)
+	 * @param fftSize		FFT size (power of two)
+	 * @return interleaved complex spectrum (fftSize complex values)
+	 */
+	static float[] calcSpectrum(float[] tapsReal, float[] tapsImag, int fftSize) {
+		double[] re = new double[fftSize];
+		double[] im = new double[fftSize];
+		int bits = Integer.numberOfTrailingZeros(fftSize);
+		for (int k = 0; k < tapsReal.length; k++) {
+			int index = Integer.reverse(k) >>> (32 - bits);		// load in bit-reversed order
+			re[index] = tapsReal[tapsReal.length - 1 - k];
+			im[index] = tapsImag == null ? 0 : tapsImag[tapsReal.length - 1 - k];
+		}
+		for (int half = 1; half < fftSize; half <<= 1) {
+			for (int start = 0; start < fftSize; start += 2 * half) {
+				for (int pos = 0; pos < half; pos++) {
+					double angle = -Math.PI * pos / half;
+					double twiddleRe = Math.cos(angle);
+					double twiddleIm = Math.sin(angle);
+					int a = start + pos;
+					int b = a + half;
+					double productRe = re[b] * twiddleRe - im[b] * twiddleIm;
+					double productIm = re[b] * twiddleIm + im[b] * twiddleRe;
+					re[b] = re[a] - productRe;
+					im[b] = im[a] - productIm;
+					re[a] += productRe;
+					im[a] += productIm;
+				}
+			}
+		}
+		float[] spectrum = new float[2 * fftSize];
+		for (int i = 0; i < fftSize; i++) {
+			spectrum[2*i] = (float) (re[i] / fftSize);
+			spectrum[2*i+1] = (float) (im[i] / fftSize);
+		}
+		return spectrum;
+	}
+}
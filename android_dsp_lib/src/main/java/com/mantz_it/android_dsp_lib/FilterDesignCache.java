@@ -0,0 +1,370 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Android DSP library - Filter Design Cache
+ *
+ * Module:      FilterDesignCache.java
+ * Description: This class keeps the most recently used filter designs (taps of LowPassFilter,
+ *              BandPassFilter and ComplexBandPassFilter) in memory (LRU). The designs are identified by
+ *              the type of the filter and the exact design parameters. Optionally the designs are also
+ *              stored in a directory (e.g. Context.getCacheDir()), so that the designs of the last runs
+ *              of the app are loaded instead of being calculated (warm start). The files are written by a
+ *              background thread and read without holding the lock of the cache.
+ *              The cache that is used by the design methods is set in AndroidDSPLib. Taps are copied
+ *              when they are added and when they are returned, so the callers can modify them.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FilterDesignCache {
+	public static final int DEFAULT_MAX_ENTRIES = 32;	// size of the default cache (see AndroidDSPLib)
+	private static final String LOGTAG = "FilterDesignCache";
+	private static final String FILE_SUFFIX = ".taps";
+	private static final int FILE_VERSION = 1;			// first value of each file
+	private static final int MAX_ARRAYS = 2;			// real taps (and imaginary taps of complex filters)
+	private LinkedHashMap<String, float[][]> entries;	// access ordered: the first entry is the least recently used
+	private int maxEntries;
+	private File directory;								// on-disk store (null if disabled)
+	private ExecutorService writer;						// single thread that stores the designs (null if no directory)
+	private int hits = 0;
+	private int diskHits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	/**
+	 * Constructor. Creates a cache that only keeps the designs in memory.
+	 *
+	 * @param maxEntries	max number of designs in memory
+	 */
+	public FilterDesignCache(int maxEntries) {
+		this(maxEntries, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntries	max number of designs in memory
+	 * @param directory		directory in which the designs are stored (created if necessary) or null to only
+	 *                      keep the designs in memory
+	 */
+	public FilterDesignCache(int maxEntries, File directory) {
+		if(maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be greater than zero");
+		this.maxEntries = maxEntries;
+		this.directory = directory;
+		this.entries = new LinkedHashMap<String, float[][]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, float[][]> eldest) {
+				if(size() > FilterDesignCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		if(directory != null) {
+			if(!directory.isDirectory() && !directory.mkdirs())
+				Log.w(LOGTAG, "FilterDesignCache: cannot create directory " + directory);
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, LOGTAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Looks up a design (in memory, then on disk) and counts a hit or a miss. The file is read without
+	 * holding the lock of the cache, so other lookups are not blocked by the disk.
+	 *
+	 * @param key		key of the design (see key())
+	 * @param arrays	number of tap arrays of the design (1: real taps, 2: real and imaginary taps)
+	 * @return copy of the cached taps or null
+	 */
+	float[][] get(String key, int arrays) {
+		synchronized (this) {
+			float[][] taps = entries.get(key);
+			if(taps != null) {
+				hits++;
+				return copy(taps);
+			}
+			if(directory == null) {
+				misses++;
+				return null;
+			}
+		}
+		float[][] taps = read(new File(directory, key + FILE_SUFFIX), arrays);
+		synchronized (this) {
+			if(taps == null) {
+				misses++;
+				return null;
+			}
+			entries.put(key, taps);
+			hits++;
+			diskHits++;
+			return copy(taps);
+		}
+	}
+
+	/**
+	 * Adds a design to the cache (the least recently used design is dropped from memory if the cache is full).
+	 * The design is stored in the directory by a background thread, so the caller does not wait for the disk.
+	 *
+	 * @param key	key of the design (see key())
+	 * @param taps	taps of the design (copied)
+	 */
+	void put(final String key, float[][] taps) {
+		final float[][] entry = copy(taps);
+		synchronized (this) {
+			entries.put(key, entry);
+		}
+		if(directory != null) {
+			writer.execute(new Runnable() {
+				@Override
+				public void run() {
+					write(new File(directory, key + FILE_SUFFIX), entry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Blocks until all designs that were added so far are stored in the directory
+	 *
+	 * @return false if the thread was interrupted while waiting
+	 */
+	public boolean flush() {
+		if(directory == null)
+			return true;
+		FutureTask<Void> marker = new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, null);
+		writer.execute(marker);
+		try {
+			marker.get();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * @return number of lookups that found the design in the cache (in memory or on disk)
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that loaded the design from the directory
+	 */
+	public synchronized int getDiskHitCount() {
+		return diskHits;
+	}
+
+	/**
+	 * @return number of lookups that had to calculate the design
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return hits / (hits + misses) or 0 if there were no lookups
+	 */
+	public synchronized float getHitRate() {
+		return hits + misses == 0 ? 0 : (float) hits / (hits + misses);
+	}
+
+	/**
+	 * @return number of designs that were dropped from memory because the cache was full
+	 */
+	public synchronized int getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of designs in memory
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return directory in which the designs are stored (null if the designs are only kept in memory)
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Drops all designs from memory (the stored designs are kept)
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Drops all designs from memory and deletes the stored designs (after the pending writes are finished)
+	 */
+	public void clearDirectory() {
+		clear();
+		if(directory == null || !flush())
+			return;
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		for (File file: files) {
+			if(file.getName().endsWith(FILE_SUFFIX) && !file.delete())
+				Log.w(LOGTAG, "clearDirectory: cannot delete " + file);
+		}
+	}
+
+	/**
+	 * Creates the key of a design. The parameters are encoded exactly (bits of the floats), so the key is
+	 * also a valid file name.
+	 *
+	 * @param type			type of the filter (e.g. "lowpass")
+	 * @param parameters	design parameters
+	 * @return key
+	 */
+	static String key(String type, float... parameters) {
+		StringBuilder key = new StringBuilder(type);
+		for (float parameter: parameters)
+			key.append('_').append(Integer.toHexString(Float.floatToIntBits(parameter)));
+		return key.toString();
+	}
+
+	/**
+	 * @return deep copy of the taps
+	 */
+	private static float[][] copy(float[][] taps) {
+		float[][] result = new float[taps.length][];
+		for (int i = 0; i < taps.length; i++)
+			result[i] = taps[i].clone();
+		return result;
+	}
+
+	/**
+	 * Reads a stored design: version, number of arrays, length, values of each array. A file that
+	 * is not a valid design (e.g. truncated or corrupt, or a different number of arrays than expected)
+	 * is deleted, the design is calculated again.
+	 *
+	 * @param arrays	expected number of arrays (all of them have the same length)
+	 * @return taps or null if the file does not exist or cannot be read
+	 */
+	private static float[][] read(File file, int arrays) {
+		if(!file.isFile())
+			return null;
+		long maxLength = file.length() / 4;		// max number of values in the file
+		DataInputStream in = null;
+		Exception error;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if(in.readInt() != FILE_VERSION)
+				throw new IOException("unknown version");
+			int storedArrays = in.readInt();
+			if(storedArrays != arrays || arrays > MAX_ARRAYS)
+				throw new IOException("invalid number of arrays: " + storedArrays + " (expected " + arrays + ")");
+			float[][] taps = new float[arrays][];
+			for (int i = 0; i < taps.length; i++) {
+				int length = in.readInt();
+				if(length <= 0 || length > maxLength || (i > 0 && length != taps[0].length))
+					throw new IOException("invalid length: " + length);
+				taps[i] = new float[length];
+				for (int j = 0; j < taps[i].length; j++)
+					taps[i][j] = in.readFloat();
+			}
+			return taps;
+		} catch (IOException e) {
+			error = e;
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			close(in);
+		}
+		Log.w(LOGTAG, "read: cannot read " + file + " (deleted): " + error.getMessage());
+		if(!file.delete())
+			Log.w(LOGTAG, "read: cannot delete " + file);
+		return null;
+	}
+
+	/**
+	 * Stores a design (into a temporary file that is renamed, so a partially written file is never read)
+	 */
+	private static void write(File file, float[][] taps) {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(FILE_VERSION);
+			out.writeInt(taps.length);
+			for (float[] values: taps) {
+				out.writeInt(values.length);
+				for (float value: values)
+					out.writeFloat(value);
+			}
+			out.close();
+			out = null;
+			if(!tmpFile.renameTo(file))
+				Log.w(LOGTAG, "write: cannot rename " + tmpFile + " to " + file);
+		} catch (IOException e) {
+			Log.w(LOGTAG, "write: cannot write " + file + ": " + e.getMessage());
+		} finally {
+			close(out);
+		}
+	}
+
+	private static void close(Closeable closeable) {
+		if(closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			Log.w(LOGTAG, "close: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+
+/**
+ * <h1>Android DSP library - Filter History</h1>
+ *
+ * Module:      FilterHistory.java
+ * Description: This class keeps the history of a FirFilter in a contiguous staging region: the last
+ * 				historyLength input samples are followed by the samples of the current packet. The kernels
+ * 				can read all inputs of an output sample with the same (unbranched) loop. There are two
+ * 				staging buffers: after a packet was filtered, the newest historyLength samples are copied
+ * 				to the beginning of the other buffer (one bulk copy inside the RenderScript context) and the
+ * 				buffers are swapped. The buffers have the layout and sample type of the input packets
+ * 				(int16 samples keep their fixed-point values); the history is converted if they change. The buffers
+ * 				are created for the first packet (nothing is allocated when the filter is created).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+class FilterHistory {
+	private RenderScript rs;
+	private Allocation[] reAllocs = new Allocation[2];	// real values (interleaved values if LAYOUT_INTERLEAVED)
+	private Allocation[] imAllocs = new Allocation[2];	// imag values (LAYOUT_SPLIT only)
+	private int current = 0;			// index of the buffers that contain the history
+	private int historyLength;			// number of history samples (number of taps - 1)
+	private int capacity;				// number of samples in each buffer (history + packet)
+	private int layout = SamplePacket.LAYOUT_SPLIT;
+	private int sampleType = SamplePacket.SAMPLE_TYPE_FLOAT32;
+
+	/**
+	 * Constructor. The history is initialized with zeros (when the buffers are created).
+	 *
+	 * @param rs				RenderScript context
+	 * @param historyLength		number of history samples (number of taps - 1)
+	 */
+	FilterHistory(RenderScript rs, int historyLength) {
+		this.rs = rs;
+		this.historyLength = historyLength;
+	}
+
+	int getHistoryLength() {
+		return historyLength;
+	}
+
+	/**
+	 * @return true if no packet was staged yet (the buffers are not created and the history is zero)
+	 */
+	boolean isEmpty() {
+		return reAllocs[current] == null;
+	}
+
+	/**
+	 * Changes the number of history samples (e.g. if the taps of the filter change). The newest samples are
+	 * kept; if the history grows, zeros are inserted before them.
+	 *
+	 * @param newHistoryLength		number of history samples (number of taps - 1)
+	 */
+	void setHistoryLength(int newHistoryLength) {
+		if(isEmpty() || newHistoryLength == historyLength) {
+			historyLength = newHistoryLength;
+			return;
+		}
+		if(newHistoryLength > capacity)
+			grow(newHistoryLength);
+		int kept = Math.min(historyLength, newHistoryLength);
+		int zeros = newHistoryLength - kept;
+		int next = 1 - current;
+		if(kept > 0) {
+			reAllocs[next].copy1DRangeFrom(zeros, kept, reAllocs[current], historyLength - kept);
+			if(imAllocs[current] != null)
+				imAllocs[next].copy1DRangeFrom(zeros, kept, imAllocs[current], historyLength - kept);
+		}
+		current = next;
+		historyLength = newHistoryLength;
+		clear(zeros);
+	}
+
+	boolean isInterleaved() {
+		return layout == SamplePacket.LAYOUT_INTERLEAVED;
+	}
+
+	/**
+	 * @return staging region (history + packet) of the real values (null if the layout is interleaved)
+	 */
+	Allocation getReAlloc() {
+		return isInterleaved() ? null : reAllocs[current];
+	}
+
+	/**
+	 * @return staging region (history + packet) of the imaginary values (null if the layout is interleaved)
+	 */
+	Allocation getImAlloc() {
+		return imAllocs[current];
+	}
+
+	/**
+	 * @return staging region (history + packet) of the interleaved values (null if the layout is split)
+	 */
+	Allocation getIQAlloc() {
+		return isInterleaved() ? reAllocs[current] : null;
+	}
+
+	/**
+	 * Sets the history to zero (initial state)
+	 */
+	void clear() {
+		clear(historyLength);
+	}
+
+	/**
+	 * Sets the oldest count samples of the history to zero
+	 */
+	private void clear(int count) {
+		if(count == 0 || isEmpty())
+			return;
+		if(sampleType == SamplePacket.SAMPLE_TYPE_INT16) {
+			reAllocs[current].copy1DRangeFrom(0, count, new short[count]);
+			imAllocs[current].copy1DRangeFrom(0, count, new short[count]);
+		} else if(isInterleaved()) {
+			reAllocs[current].copy1DRangeFrom(0, count, new float[2 * count]);
+		} else {
+			reAllocs[current].copy1DRangeFrom(0, count, new float[count]);
+			imAllocs[current].copy1DRangeFrom(0, count, new float[count]);
+		}
+	}
+
+	/**
+	 * Copies samples of the input packet behind the history. The staging buffers are switched to the layout
+	 * and sample type of the packet and grown if necessary.
+	 *
+	 * @param in			input sample packet
+	 * @param offset		index of the first sample in the input packet
+	 * @param count			number of samples
+	 * @param realSignal	true if only the real values are used (LAYOUT_SPLIT)
+	 */
+	void stage(SamplePacket in, int offset, int count, boolean realSignal) {
+		if(isEmpty()) {
+			// first packet: create the buffers with the layout, sample type and size of the packet
+			layout = in.getLayout();
+			sampleType = in.getSampleType();
+			capacity = Math.max(1, historyLength + count);
+			createBuffers();
+			clear();
+		} else if(in.getLayout() != layout || in.getSampleType() != sampleType) {
+			convert(in.getLayout(), in.getSampleType());
+		}
+		if(historyLength + count > capacity)
+			grow(historyLength + count);
+		if(count == 0)
+			return;
+		if(isInterleaved()) {
+			reAllocs[current].copy1DRangeFrom(historyLength, count, in.getIQAlloc(), offset);
+		} else {
+			reAllocs[current].copy1DRangeFrom(historyLength, count, in.getReAlloc(), offset);
+			if(!realSignal)
+				imAllocs[current].copy1DRangeFrom(historyLength, count, in.getImAlloc(), offset);
+		}
+	}
+
+	/**
+	 * Makes the newest historyLength samples of the staging region (after 'consumed' samples were filtered)
+	 * the history of the next packet.
+	 *
+	 * @param consumed		number of samples that were consumed from the staged samples
+	 * @param realSignal	true if only the real values were staged (the imaginary history is kept)
+	 */
+	void advance(int consumed, boolean realSignal) {
+		if(historyLength == 0 || consumed == 0)
+			return;
+		int next = 1 - current;
+		reAllocs[next].copy1DRangeFrom(0, historyLength, reAllocs[current], consumed);
+		if(imAllocs[current] != null)
+			imAllocs[next].copy1DRangeFrom(0, historyLength, imAllocs[current], realSignal ? 0 : consumed);
+		current = next;
+	}
+
+	/**
+	 * Replaces the buffers by buffers of the given capacity (the history is kept)
+	 */
+	private void grow(int newCapacity) {
+		Allocation oldRe = reAllocs[current];
+		Allocation oldIm = imAllocs[current];
+		destroyBuffers(oldRe, oldIm);
+		capacity = newCapacity;
+		createBuffers();
+		if(historyLength > 0) {
+			reAllocs[current].copy1DRangeFrom(0, historyLength, oldRe, 0);
+			if(oldIm != null)
+				imAllocs[current].copy1DRangeFrom(0, historyLength, oldIm, 0);
+		}
+		oldRe.destroy();
+		if(oldIm != null)
+			oldIm.destroy();
+	}
+
+	/**
+	 * Replaces the buffers by buffers of the given layout and sample type and converts the history
+	 * (int16 values are scaled by SamplePacket.INT16_SCALE). This is slow and only happens if the packet
+	 * type changes.
+	 */
+	private void convert(int newLayout, int newSampleType) {
+		float[] re = new float[historyLength];
+		float[] im = new float[historyLength];
+		if(sampleType == SamplePacket.SAMPLE_TYPE_INT16) {
+			short[] valuesRe = new short[capacity];
+			short[] valuesIm = new short[capacity];
+			reAllocs[current].copyTo(valuesRe);
+			imAllocs[current].copyTo(valuesIm);
+			for (int i = 0; i < historyLength; i++) {
+				re[i] = valuesRe[i] / SamplePacket.INT16_SCALE;
+				im[i] = valuesIm[i] / SamplePacket.INT16_SCALE;
+			}
+		} else if(isInterleaved()) {
+			float[] values = new float[2 * capacity];
+			reAllocs[current].copyTo(values);
+			for (int i = 0; i < historyLength; i++) {
+				re[i] = values[2*i];
+				im[i] = values[2*i+1];
+			}
+		} else {
+			float[] valuesRe = new float[capacity];
+			float[] valuesIm = new float[capacity];
+			reAllocs[current].copyTo(valuesRe);
+			imAllocs[current].copyTo(valuesIm);
+			System.arraycopy(valuesRe, 0, re, 0, historyLength);
+			System.arraycopy(valuesIm, 0, im, 0, historyLength);
+		}
+		destroyBuffers(null, null);
+		layout = newLayout;
+		sampleType = newSampleType;
+		createBuffers();
+		if(historyLength == 0)
+			return;
+		if(sampleType == SamplePacket.SAMPLE_TYPE_INT16) {
+			short[] valuesRe = new short[historyLength];
+			short[] valuesIm = new short[historyLength];
+			for (int i = 0; i < historyLength; i++) {
+				valuesRe[i] = SamplePacket.toInt16(re[i]);
+				valuesIm[i] = SamplePacket.toInt16(im[i]);
+			}
+			reAllocs[current].copy1DRangeFrom(0, historyLength, valuesRe);
+			imAllocs[current].copy1DRangeFrom(0, historyLength, valuesIm);
+		} else if(isInterleaved()) {
+			float[] values = new float[2 * historyLength];
+			for (int i = 0; i < historyLength; i++) {
+				values[2*i] = re[i];
+				values[2*i+1] = im[i];
+			}
+			reAllocs[current].copy1DRangeFrom(0, historyLength, values);
+		} else {
+			reAllocs[current].copy1DRangeFrom(0, historyLength, re);
+			imAllocs[current].copy1DRangeFrom(0, historyLength, im);
+		}
+	}
+
+	/**
+	 * Creates both buffers with the current capacity, layout and sample type
+	 */
+	private void createBuffers() {
+		Element element;
+		if(sampleType == SamplePacket.SAMPLE_TYPE_INT16)
+			element = Element.I16(rs);
+		else if(isInterleaved())
+			element = Element.F32_2(rs);
+		else
+			element = Element.F32(rs);
+		for (int i = 0; i < 2; i++) {
+			reAllocs[i] = Allocation.createSized(rs, element, capacity);
+			imAllocs[i] = isInterleaved() ? null : Allocation.createSized(rs, element, capacity);
+		}
+		current = 0;
+	}
+
+	/**
+	 * Destroys both buffers except the given allocations (which are still needed by the caller)
+	 */
+	private void destroyBuffers(Allocation keepRe, Allocation keepIm) {
+		for (int i = 0; i < 2; i++) {
+			if(reAllocs[i] != keepRe)
+				reAllocs[i].destroy();
+			if(imAllocs[i] != null && imAllocs[i] != keepIm)
+				imAllocs[i].destroy();
+		}
+	}
+}
@@ -8,7 +8,19 @@ import android.support.v8.renderscript.RenderScript;
  * Android DSP library - FIR Filter
  *
  * Module:      FirFilter.java
- * Description: This class implements a FIR filter with real taps
+ * Description: This class implements a FIR filter with real taps. Symmetric taps (linear phase, e.g. all
+ * 				filters designed by LowPassFilter and BandPassFilter) and conjugate symmetric complex taps
+ * 				(e.g. ComplexBandPassFilter) are detected and filtered by folded kernels that add the
+ * 				mirrored input samples before multiplying (half the multiplications). Half-band taps (see
+ * 				HalfBandDecimator) additionally skip the zero taps (a quarter of the multiplications).
+ * 				Long filters can use the FFT (overlap-save) backend (see FastConvolution) for float packets.
+ * 				The backend is opt-in (see setFftThreshold()).
+ * 				The input samples of each packet are staged behind the filter history (see FilterHistory), so
+ * 				the kernels read all inputs of an output sample with the same loop.
+ * 				All filters share one instance of the script (see AndroidDSPLib): each filter binds its taps
+ * 				and parameters before it launches a kernel, so creating a filter only uploads the taps.
+ * 				The taps and the decimation can be changed while the filter is running (setTaps(),
+ * 				setDecimation()): the history is kept and the output is crossfaded to the new taps.
  *
  * @author Dennis Mantz
  *
@@ -30,15 +42,40 @@ import android.support.v8.renderscript.RenderScript;
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
  */
 public class FirFilter {
+	private static final float SYMMETRY_TOLERANCE = 1e-4f;	// max difference of mirrored taps (relative to the largest tap; the folded kernels use the first half)
+	// default number of taps per output sample (taps/decimation) from which the FFT backend is used. The FFT
+	// backend is disabled by default (opt-in with setFftThreshold()) until the crossover is measured (see Benchmark).
+	public static final int FFT_THRESHOLD = Integer.MAX_VALUE;
+	public static final int CROSSFADE_LENGTH = 256;	// default length of the crossfade after setTaps() (output samples)
+	private static final int KERNEL_COMPLEX_SIGNAL = 0;		// kernels (see launch())
+	private static final int KERNEL_REAL_SIGNAL = 1;
+	private static final int KERNEL_COMPLEX_TAPS = 2;
+	private static final int KERNEL_RING_COMPLEX_SIGNAL = 3;
+	private static final int KERNEL_RING_REAL_SIGNAL = 4;
+	private static final int KERNEL_RING_COMPLEX_TAPS = 5;
 	private RenderScript rs;
-	private ScriptC_fir_filter script;
+	private ScriptC_fir_filter script;		// shared script (see AndroidDSPLib; lock it while it is used)
 	private float[] tapsReal;
 	private float[] tapsImag;
 	private Allocation tapsRealAlloc;
 	private Allocation tapsImagAlloc;
-	private Allocation remainderRealAlloc;
-	private Allocation remainderImagAlloc;
+	private int filterOrder;			// number of taps used by the kernels (tapsReal.length except during a crossfade)
+	private FilterHistory history;		// staging region: history (taps-1 samples) followed by the current packet
 	private int decimation;
+	private boolean symmetric;				// true if tapsReal[i] == tapsReal[N-1-i]
+	private boolean conjugateSymmetric;		// true if symmetric and tapsImag[i] == -tapsImag[N-1-i]
+	private boolean halfBand;				// true if symmetric and every other tap (except the center) is zero
+	private boolean foldSymmetricTaps = true;	// use the folded kernels for (conjugate) symmetric taps
+	private int fftThreshold = FFT_THRESHOLD;	// taps per output sample from which the FFT backend is used
+	private FastConvolution fastConvolution;	// FFT backend (created on first use)
+	private long ringReadIndex = 0;		// index of the next sample that is read from a SampleRingBuffer
+	private boolean filtered = false;			// true after the first output (a crossfade needs previous outputs)
+	private int crossfadeLength = CROSSFADE_LENGTH;	// length of the crossfade after setTaps() (output samples)
+	private int fadeLength = 0;				// length of the running crossfade (0 if no crossfade is running)
+	private int fadePosition = 0;			// number of outputs of the running crossfade that were calculated
+	private Allocation fadeTapsRealAlloc;	// previous taps during a crossfade (padded to filterOrder; kept for reuse)
+	private Allocation fadeTapsImagAlloc;
+	private SamplePacket fadePacket;		// outputs of the previous taps during a crossfade (kept for reuse)
 
 	public FirFilter(float[][] taps, int decimation) {
 		this(taps[0], taps[1], decimation);
@@ -52,6 +89,7 @@ public class FirFilter {
 		this.tapsReal = tapsReal;
 		this.tapsImag = tapsImag;
 		this.decimation = decimation;
+		this.filterOrder = tapsReal.length;
 		this.tapsRealAlloc = Allocation.createSized(rs, Element.F32(rs), tapsReal.length);
 		this.tapsRealAlloc.copyFrom(tapsReal);
 		if(tapsImag != null) {
@@ -60,26 +98,195 @@ public class FirFilter {
 			this.tapsImagAlloc = Allocation.createSized(rs, Element.F32(rs), tapsImag.length);
 			this.tapsImagAlloc.copyFrom(tapsImag);
 		}
-		this.remainderRealAlloc = Allocation.createSized(rs, Element.F32(rs), tapsReal.length - 1);
-		this.remainderImagAlloc = Allocation.createSized(rs, Element.F32(rs), tapsReal.length - 1);
+		this.symmetric = isMirrored(tapsReal, 1);
+		this.conjugateSymmetric = symmetric && tapsImag != null && isMirrored(tapsImag, -1);
+		this.halfBand = symmetric && isHalfBand(tapsReal);
+		this.history = new FilterHistory(rs, tapsReal.length - 1);
 
-		script = new ScriptC_fir_filter(rs, AndroidDSPLib.getResources(), R.raw.fir_filter);
-		script.set_filterOrder(tapsReal.length);
-		script.set_decimation(decimation);
-		script.bind_tapsReal(tapsRealAlloc);
-		if(tapsImag != null)
-			script.bind_tapsImag(tapsImagAlloc);
-		script.bind_remainderReal(remainderRealAlloc);
-		script.bind_remainderImag(remainderImagAlloc);
-		script.invoke_clearRemainders();
+		this.script = AndroidDSPLib.getFirFilterScript();
 	}
 
 	public int getDecimation() {
-		return decimation;
+		synchronized (script) {
+			return decimation;
+		}
 	}
 
 	public int getNumberOfTaps() {
-		return tapsReal.length;
+		synchronized (script) {
+			return tapsReal.length;
+		}
+	}
+
+	/**
+	 * Replaces the taps of the filter while it is running. The history of the filter is kept and the taps
+	 * allocations are reused if the new taps fit into them, so the filter does not have to be created again
+	 * (e.g. to change the bandwidth). If a crossfade length is set, the output is blended from the previous
+	 * taps to the new taps during the next crossfadeLength output samples (both taps are applied to the
+	 * same input). A running crossfade is ended: the current taps become the previous taps.
+	 * If the new taps are longer, the history is extended with zeros (older samples were not kept).
+	 *
+	 * @param tapsReal		new real taps
+	 * @param tapsImag		new imaginary taps (null for real taps)
+	 */
+	public void setTaps(float[] tapsReal, float[] tapsImag) {
+		if(tapsReal == null)
+			throw new NullPointerException("real taps cannot be null!");
+		if(tapsImag != null && tapsReal.length != tapsImag.length)
+			throw new IllegalArgumentException("real taps and imaginary taps have to be of the same length!");
+		synchronized (script) {
+			boolean crossfade = crossfadeLength > 0 && filtered;
+			// during the crossfade both taps are padded (leading zeros) to the length of the longer taps:
+			int order = crossfade ? Math.max(this.tapsReal.length, tapsReal.length) : tapsReal.length;
+			if(crossfade) {
+				fadeTapsRealAlloc = uploadTaps(fadeTapsRealAlloc, this.tapsReal, order);
+				if(this.tapsImag != null || tapsImag != null)
+					fadeTapsImagAlloc = uploadTaps(fadeTapsImagAlloc, this.tapsImag, order);
+			}
+			tapsRealAlloc = uploadTaps(tapsRealAlloc, tapsReal, order);
+			if(tapsImag != null || (crossfade && this.tapsImag != null))
+				tapsImagAlloc = uploadTaps(tapsImagAlloc, tapsImag, order);
+			this.tapsReal = tapsReal;
+			this.tapsImag = tapsImag;
+			this.filterOrder = order;
+			this.symmetric = isMirrored(tapsReal, 1);
+			this.conjugateSymmetric = symmetric && tapsImag != null && isMirrored(tapsImag, -1);
+			this.halfBand = symmetric && isHalfBand(tapsReal);
+			this.fastConvolution = null;		// created again for the new taps
+			this.fadeLength = crossfade ? crossfadeLength : 0;
+			this.fadePosition = 0;
+			history.setHistoryLength(order - 1);
+		}
+	}
+
+	/**
+	 * Changes the decimation while the filter is running. The history of the filter is kept; the following
+	 * output samples have the new sample rate (there is no crossfade).
+	 *
+	 * @param decimation	new decimation factor
+	 */
+	public void setDecimation(int decimation) {
+		if(decimation < 1)
+			throw new IllegalArgumentException("decimation must be at least 1: " + decimation);
+		synchronized (script) {
+			this.decimation = decimation;
+			this.fastConvolution = null;		// created again for the new decimation
+		}
+	}
+
+	public int getCrossfadeLength() {
+		synchronized (script) {
+			return crossfadeLength;
+		}
+	}
+
+	/**
+	 * Sets the length of the crossfade from the previous to the new taps after setTaps(). During the crossfade
+	 * each packet is filtered with both taps by the direct form kernels.
+	 *
+	 * @param crossfadeLength	number of output samples (0 switches to the new taps immediately; default: CROSSFADE_LENGTH)
+	 */
+	public void setCrossfadeLength(int crossfadeLength) {
+		if(crossfadeLength < 0)
+			throw new IllegalArgumentException("crossfadeLength must not be negative: " + crossfadeLength);
+		synchronized (script) {
+			this.crossfadeLength = crossfadeLength;
+		}
+	}
+
+	/**
+	 * @return true if the output is crossfaded from the previous taps (see setTaps())
+	 */
+	public boolean isCrossfading() {
+		synchronized (script) {
+			return fadePosition < fadeLength;
+		}
+	}
+
+	/**
+	 * @return true if the real taps are symmetric (linear phase filter)
+	 */
+	public boolean isSymmetric() {
+		synchronized (script) {
+			return symmetric;
+		}
+	}
+
+	/**
+	 * @return true if the complex taps are conjugate symmetric (e.g. a shifted linear phase filter)
+	 */
+	public boolean isConjugateSymmetric() {
+		synchronized (script) {
+			return conjugateSymmetric;
+		}
+	}
+
+	/**
+	 * @return true if the real taps are half-band taps (symmetric and every other tap is zero)
+	 */
+	public boolean isHalfBand() {
+		synchronized (script) {
+			return halfBand;
+		}
+	}
+
+	public boolean isFoldSymmetricTaps() {
+		synchronized (script) {
+			return foldSymmetricTaps;
+		}
+	}
+
+	/**
+	 * Selects the kernels for filters with symmetric taps. By default the mirrored input samples are
+	 * added before multiplying (folded kernels). If foldSymmetricTaps is false, the direct form is used
+	 * for all filters (one multiplication per tap). This is only useful for comparisons (see Benchmark).
+	 * The ring buffer and int16 kernels always use the direct form.
+	 *
+	 * @param foldSymmetricTaps		true to use the folded kernels for symmetric taps
+	 */
+	public void setFoldSymmetricTaps(boolean foldSymmetricTaps) {
+		synchronized (script) {
+			this.foldSymmetricTaps = foldSymmetricTaps;
+		}
+	}
+
+	public int getFftThreshold() {
+		synchronized (script) {
+			return fftThreshold;
+		}
+	}
+
+	/**
+	 * Sets the number of taps per output sample (taps/decimation) from which the FFT (overlap-save) backend
+	 * is used instead of the direct form kernels. 0 forces the FFT backend, Integer.MAX_VALUE (default) disables it.
+	 * The ring buffer and int16 kernels always use the direct form.
+	 *
+	 * @param fftThreshold		threshold (default: FFT_THRESHOLD)
+	 */
+	public void setFftThreshold(int fftThreshold) {
+		if(fftThreshold < 0)
+			throw new IllegalArgumentException("fftThreshold must not be negative: " + fftThreshold);
+		synchronized (script) {
+			this.fftThreshold = fftThreshold;
+		}
+	}
+
+	/**
+	 * @return true if float packets are filtered by the FFT backend (never during a crossfade)
+	 */
+	public boolean isFftConvolution() {
+		synchronized (script) {
+			return tapsReal.length >= (long) fftThreshold * decimation && !isCrossfading();
+		}
+	}
+
+	/**
+	 * @return the real taps of the filter (must not be modified)
+	 */
+	float[] getTapsReal() {
+		synchronized (script) {
+			return tapsReal;
+		}
 	}
 
 	/**
@@ -92,21 +299,29 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filterComplexSignal(SamplePacket in, SamplePacket out, int offset, int length) {
-		int outSize = out.size();
-		int outputLength = Math.min(outSize + (length / decimation), out.capacity());
-		script.set_offsetIn(offset);
-		script.set_offsetOut(outSize);
-		script.set_len(outputLength);
-		script.set_inReal(in.getReAlloc());
-		script.set_inImag(in.getImAlloc());
-		script.set_outReal(out.getReAlloc());
-		script.set_outImag(out.getImAlloc());
-		script.forEach_filterAndDecimate(out.getReAlloc());
-		out.setSize(outputLength);
-		out.setSampleRate(in.getSampleRate()/decimation);
-		out.getReAlloc().syncAll(Allocation.USAGE_SCRIPT);
-		script.invoke_updateRemainders();
-		return (outputLength-outSize) * decimation;
+		synchronized (script) {
+			checkLayout(in, out);
+			int outputCount = stage(in, out, offset, length, false);
+			filter(KERNEL_COMPLEX_SIGNAL, out, outputCount, false);
+			return finish(in, out, outputCount, false);
+		}
+	}
+
+	/**
+	 * Filters the complex samples from the input sample packet with real taps into a sample packet that
+	 * is borrowed from the given pool (same layout and sample type as the input packet). The caller has to
+	 * release the returned packet to the pool.
+	 * @param in		input sample packet
+	 * @param pool		pool from which the output packet is acquired
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	number of samples processed from the input packet (must be multiple of decimation)
+	 * @return output sample packet (acquired from the pool)
+	 */
+	public SamplePacket filterComplexSignal(SamplePacket in, SamplePacketPool pool, int offset, int length) {
+		SamplePacket out = pool.acquire(Math.max(1, length / decimation), in.getLayout(), in.getSampleType());
+		out.setFrequency(in.getFrequency());
+		filterComplexSignal(in, out, offset, length);
+		return out;
 	}
 
 	/**
@@ -119,19 +334,32 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filterRealSignal(SamplePacket in, SamplePacket out, int offset, int length) {
-		int outSize = out.size();
-		int outputLength = Math.min(outSize + (length / decimation), out.capacity());
-		script.set_offsetIn(offset);
-		script.set_offsetOut(outSize);
-		script.set_len(outputLength);
-		script.set_inReal(in.getReAlloc());
-		script.set_outReal(out.getReAlloc());
-		script.forEach_filterRealSignalAndDecimate(out.getReAlloc());
-		out.setSize(outputLength);
-		out.setSampleRate(in.getSampleRate()/decimation);
-		out.getReAlloc().syncAll(Allocation.USAGE_SCRIPT);
-		script.invoke_updateRealRemainders();
-		return (outputLength-outSize) * decimation;
+		synchronized (script) {
+			if(in.isInterleaved() || out.isInterleaved())
+				throw new IllegalArgumentException("Filtering real signals is only supported for packets with LAYOUT_SPLIT");
+			if(in.getSampleType() != out.getSampleType())
+				throw new IllegalArgumentException("Input and output packet must have the same sample type");
+			int outputCount = stage(in, out, offset, length, true);
+			filter(KERNEL_REAL_SIGNAL, out, outputCount, true);
+			return finish(in, out, outputCount, true);
+		}
+	}
+
+	/**
+	 * Filters the real samples from the input sample packet with real taps into a sample packet that
+	 * is borrowed from the given pool (same layout and sample type as the input packet). The caller has to
+	 * release the returned packet to the pool.
+	 * @param in		input sample packet
+	 * @param pool		pool from which the output packet is acquired
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	number of samples processed from the input packet (must be multiple of decimation)
+	 * @return output sample packet (acquired from the pool)
+	 */
+	public SamplePacket filterRealSignal(SamplePacket in, SamplePacketPool pool, int offset, int length) {
+		SamplePacket out = pool.acquire(Math.max(1, length / decimation), in.getLayout(), in.getSampleType());
+		out.setFrequency(in.getFrequency());
+		filterRealSignal(in, out, offset, length);
+		return out;
 	}
 
 	/**
@@ -144,20 +372,425 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filterComplexTaps(SamplePacket in, SamplePacket out, int offset, int length) {
+		synchronized (script) {
+			if(in.isInt16() || out.isInt16())
+				throw new IllegalArgumentException("Filtering with complex taps is not supported for int16 packets");
+			checkLayout(in, out);
+			int outputCount = stage(in, out, offset, length, false);
+			filter(KERNEL_COMPLEX_TAPS, out, outputCount, false);
+			return finish(in, out, outputCount, false);
+		}
+	}
+
+	/**
+	 * Filters the complex samples from the input sample packet with complex taps into a sample packet that
+	 * is borrowed from the given pool (same layout and sample type as the input packet). The caller has to
+	 * release the returned packet to the pool.
+	 * @param in		input sample packet
+	 * @param pool		pool from which the output packet is acquired
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	number of samples processed from the input packet (must be multiple of decimation)
+	 * @return output sample packet (acquired from the pool)
+	 */
+	public SamplePacket filterComplexTaps(SamplePacket in, SamplePacketPool pool, int offset, int length) {
+		SamplePacket out = pool.acquire(Math.max(1, length / decimation), in.getLayout(), in.getSampleType());
+		out.setFrequency(in.getFrequency());
+		filterComplexTaps(in, out, offset, length);
+		return out;
+	}
+
+	/**
+	 * Filters the complex samples from the input ring buffer with real taps and appends filter output to the output
+	 * sample packet. All samples from the read index of this filter up to the write index of the ring buffer
+	 * are processed (in multiples of decimation). Stops automatically if output sample packet is full.
+	 * The filter history is read directly from the ring buffer.
+	 * @param in		input ring buffer
+	 * @param out		output sample packet (LAYOUT_SPLIT)
+	 * @return number of samples consumed from the ring buffer
+	 */
+	public int filterComplexSignal(SampleRingBuffer in, SamplePacket out) {
+		synchronized (script) {
+			int outputCount = prepareRing(in, out);
+			script.set_inImag(in.getImAlloc());
+			script.set_outImag(out.getImAlloc());
+			filter(KERNEL_RING_COMPLEX_SIGNAL, out, outputCount, false);
+			return finishRing(in, out, outputCount);
+		}
+	}
+
+	/**
+	 * Filters the real samples from the input ring buffer with real taps and appends filter output to the output
+	 * sample packet. See filterComplexSignal(SampleRingBuffer, SamplePacket)
+	 * @param in		input ring buffer
+	 * @param out		output sample packet (LAYOUT_SPLIT)
+	 * @return number of samples consumed from the ring buffer
+	 */
+	public int filterRealSignal(SampleRingBuffer in, SamplePacket out) {
+		synchronized (script) {
+			int outputCount = prepareRing(in, out);
+			filter(KERNEL_RING_REAL_SIGNAL, out, outputCount, true);
+			return finishRing(in, out, outputCount);
+		}
+	}
+
+	/**
+	 * Filters the complex samples from the input ring buffer with complex taps and appends filter output to the
+	 * output sample packet. See filterComplexSignal(SampleRingBuffer, SamplePacket)
+	 * @param in		input ring buffer
+	 * @param out		output sample packet (LAYOUT_SPLIT)
+	 * @return number of samples consumed from the ring buffer
+	 */
+	public int filterComplexTaps(SampleRingBuffer in, SamplePacket out) {
+		synchronized (script) {
+			int outputCount = prepareRing(in, out);
+			script.set_inImag(in.getImAlloc());
+			script.set_outImag(out.getImAlloc());
+			filter(KERNEL_RING_COMPLEX_TAPS, out, outputCount, false);
+			return finishRing(in, out, outputCount);
+		}
+	}
+
+	/**
+	 * @return index (see SampleRingBuffer.getWriteIndex()) of the next sample that is read from a ring buffer
+	 */
+	public long getRingReadIndex() {
+		synchronized (script) {
+			return ringReadIndex;
+		}
+	}
+
+	/**
+	 * Sets the index of the next sample that is read from a ring buffer (e.g. to skip samples)
+	 * @param ringReadIndex		index (see SampleRingBuffer.getWriteIndex())
+	 */
+	public void setRingReadIndex(long ringReadIndex) {
+		this.ringReadIndex = ringReadIndex;
+	}
+
+	/**
+	 * Sets the script variables that are common to all ring buffer kernels
+	 * @return number of output samples that will be calculated
+	 */
+	private int prepareRing(SampleRingBuffer in, SamplePacket out) {
+		if(out.isInterleaved() || out.isInt16())
+			throw new IllegalArgumentException("Filtering from a ring buffer is only supported into float packets with LAYOUT_SPLIT");
+		bindScript();
+		ringReadIndex = in.checkReadIndex(ringReadIndex, filterOrder - 1);
 		int outSize = out.size();
-		int outputLength = Math.min(outSize + (length / decimation), out.capacity());
-		script.set_offsetIn(offset);
+		long available = in.getWriteIndex() - ringReadIndex;
+		int outputCount = (int) Math.max(0, Math.min(available / decimation, out.capacity() - outSize));
+		script.set_ringMask(in.getMask());
+		script.set_ringStart((ringReadIndex - filterOrder + 1) & in.getMask());
 		script.set_offsetOut(outSize);
-		script.set_len(outputLength);
+		script.set_len(outSize + outputCount);
 		script.set_inReal(in.getReAlloc());
-		script.set_inImag(in.getImAlloc());
 		script.set_outReal(out.getReAlloc());
-		script.set_outImag(out.getImAlloc());
-		script.forEach_filterComplexTapsAndDecimate(out.getReAlloc());
-		out.setSize(outputLength);
+		return outputCount;
+	}
+
+	/**
+	 * Updates the output packet and the read index after a ring buffer kernel was launched
+	 * @return number of samples consumed from the ring buffer
+	 */
+	private int finishRing(SampleRingBuffer in, SamplePacket out, int outputCount) {
+		out.setSize(out.size() + outputCount);
+		out.markWrittenByScript();
 		out.setSampleRate(in.getSampleRate()/decimation);
-		out.getReAlloc().syncAll(Allocation.USAGE_SCRIPT);
-		script.invoke_updateRemainders();
-		return (outputLength-outSize) * decimation;
+		out.setFrequency(in.getFrequency());
+		ringReadIndex += outputCount * decimation;
+		finishCrossfade(outputCount);
+		return outputCount * decimation;
+	}
+
+	/**
+	 * Binds the taps and parameters of this filter to the shared script (the caller holds the lock of the script)
+	 */
+	private void bindScript() {
+		script.set_filterOrder(filterOrder);
+		script.set_decimation(decimation);
+		bindTaps(tapsRealAlloc, tapsImagAlloc);
+	}
+
+	private void bindTaps(Allocation tapsRealAlloc, Allocation tapsImagAlloc) {
+		script.bind_tapsReal(tapsRealAlloc);
+		if(tapsImagAlloc != null)
+			script.bind_tapsImag(tapsImagAlloc);
+	}
+
+	/**
+	 * Launches the kernel for the output packet. During a crossfade the kernel is launched with the previous
+	 * taps first and the outputs are blended from the previous to the current taps.
+	 * @param kernel		KERNEL_* constant
+	 * @param out			output sample packet
+	 * @param outputCount	number of output samples
+	 * @param realSignal	true if only the real parts are filtered
+	 */
+	private void filter(int kernel, SamplePacket out, int outputCount, boolean realSignal) {
+		int outSize = out.size();
+		int fadeCount = Math.min(outputCount, fadeLength - fadePosition);
+		SamplePacket fade = null;
+		if(fadeCount > 0) {
+			// outputs of the previous taps (only the outputs that are blended):
+			fade = getFadePacket(out);
+			script.set_len(outSize + fadeCount);
+			bindTaps(fadeTapsRealAlloc, fadeTapsImagAlloc);
+			launch(kernel, out, fadeCount);
+			if(out.isInterleaved()) {
+				fade.getIQAlloc().copy1DRangeFrom(0, fadeCount, out.getIQAlloc(), outSize);
+			} else {
+				fade.getReAlloc().copy1DRangeFrom(0, fadeCount, out.getReAlloc(), outSize);
+				if(!realSignal)
+					fade.getImAlloc().copy1DRangeFrom(0, fadeCount, out.getImAlloc(), outSize);
+			}
+			script.set_len(outSize + outputCount);
+			bindTaps(tapsRealAlloc, tapsImagAlloc);
+		}
+		launch(kernel, out, outputCount);
+		if(fadeCount > 0) {
+			script.set_len(outSize + fadeCount);
+			script.set_fadeStart(fadePosition);
+			script.set_fadeLength(fadeLength);
+			script.set_fadeComplex(realSignal ? 0 : 1);
+			if(out.isInterleaved()) {
+				script.set_fadeReal(fade.getIQAlloc());
+				script.set_outIQ(out.getIQAlloc());
+				script.forEach_crossfadeInterleaved(out.getIQAlloc());
+			} else {
+				script.set_fadeReal(fade.getReAlloc());
+				script.set_fadeImag(fade.getImAlloc());
+				script.set_outReal(out.getReAlloc());
+				script.set_outImag(out.getImAlloc());
+				if(out.isInt16())
+					script.forEach_crossfadeInt16(out.getReAlloc());
+				else
+					script.forEach_crossfade(out.getReAlloc());
+			}
+			script.set_len(outSize + outputCount);
+		}
+	}
+
+	/**
+	 * Launches the kernel (with the taps that are bound to the script)
+	 * @param kernel		KERNEL_* constant
+	 * @param out			output sample packet
+	 * @param outputCount	number of output samples
+	 */
+	private void launch(int kernel, SamplePacket out, int outputCount) {
+		boolean fold = foldSymmetricTaps && !isCrossfading();	// the padded taps of a crossfade are not symmetric
+		switch (kernel) {
+			case KERNEL_COMPLEX_SIGNAL:
+				if(!out.isInt16() && isFftConvolution()) {
+					getFastConvolution().filter(history, out, outputCount, false, false);
+				} else if(out.isInterleaved()) {
+					script.set_outIQ(out.getIQAlloc());
+					if(halfBand && fold)
+						script.forEach_filterHalfBandAndDecimateInterleaved(out.getIQAlloc());
+					else if(symmetric && fold)
+						script.forEach_filterSymmetricAndDecimateInterleaved(out.getIQAlloc());
+					else
+						script.forEach_filterAndDecimateInterleaved(out.getIQAlloc());
+				} else {
+					script.set_outReal(out.getReAlloc());
+					script.set_outImag(out.getImAlloc());
+					if(out.isInt16())
+						script.forEach_filterInt16AndDecimate(out.getReAlloc());
+					else if(halfBand && fold)
+						script.forEach_filterHalfBandAndDecimate(out.getReAlloc());
+					else if(symmetric && fold)
+						script.forEach_filterSymmetricAndDecimate(out.getReAlloc());
+					else
+						script.forEach_filterAndDecimate(out.getReAlloc());
+				}
+				break;
+			case KERNEL_REAL_SIGNAL:
+				script.set_outReal(out.getReAlloc());
+				if(!out.isInt16() && isFftConvolution())
+					getFastConvolution().filter(history, out, outputCount, true, false);
+				else if(out.isInt16())
+					script.forEach_filterRealSignalInt16AndDecimate(out.getReAlloc());
+				else if(halfBand && fold)
+					script.forEach_filterRealSignalHalfBandAndDecimate(out.getReAlloc());
+				else if(symmetric && fold)
+					script.forEach_filterRealSignalSymmetricAndDecimate(out.getReAlloc());
+				else
+					script.forEach_filterRealSignalAndDecimate(out.getReAlloc());
+				break;
+			case KERNEL_COMPLEX_TAPS:
+				if(isFftConvolution()) {
+					getFastConvolution().filter(history, out, outputCount, false, true);
+				} else if(out.isInterleaved()) {
+					script.set_outIQ(out.getIQAlloc());
+					if(conjugateSymmetric && fold)
+						script.forEach_filterConjugateSymmetricTapsAndDecimateInterleaved(out.getIQAlloc());
+					else
+						script.forEach_filterComplexTapsAndDecimateInterleaved(out.getIQAlloc());
+				} else {
+					script.set_outReal(out.getReAlloc());
+					script.set_outImag(out.getImAlloc());
+					if(conjugateSymmetric && fold)
+						script.forEach_filterConjugateSymmetricTapsAndDecimate(out.getReAlloc());
+					else
+						script.forEach_filterComplexTapsAndDecimate(out.getReAlloc());
+				}
+				break;
+			case KERNEL_RING_COMPLEX_SIGNAL:
+				script.forEach_filterRingAndDecimate(out.getReAlloc());
+				break;
+			case KERNEL_RING_REAL_SIGNAL:
+				script.forEach_filterRealSignalRingAndDecimate(out.getReAlloc());
+				break;
+			case KERNEL_RING_COMPLEX_TAPS:
+				script.forEach_filterComplexTapsRingAndDecimate(out.getReAlloc());
+				break;
+		}
+	}
+
+	/**
+	 * Advances the running crossfade by the given number of outputs. When the crossfade is complete, the
+	 * padding of the current taps is removed.
+	 */
+	private void finishCrossfade(int outputCount) {
+		if(outputCount > 0)
+			filtered = true;
+		if(fadeLength == 0)
+			return;
+		fadePosition = Math.min(fadeLength, fadePosition + outputCount);
+		if(fadePosition < fadeLength)
+			return;
+		fadeLength = 0;
+		fadePosition = 0;
+		if(filterOrder != tapsReal.length) {
+			filterOrder = tapsReal.length;
+			tapsRealAlloc = uploadTaps(tapsRealAlloc, tapsReal, filterOrder);
+			if(tapsImag != null)
+				tapsImagAlloc = uploadTaps(tapsImagAlloc, tapsImag, filterOrder);
+			history.setHistoryLength(filterOrder - 1);
+		}
+	}
+
+	/**
+	 * Copies the taps into the first 'order' elements of the allocation (with leading zeros if the taps are
+	 * shorter). A new allocation is only created if the given one is too small.
+	 * @param alloc		taps allocation (may be null)
+	 * @param taps		taps (null for zeros)
+	 * @param order		number of elements
+	 * @return allocation that contains the taps
+	 */
+	private Allocation uploadTaps(Allocation alloc, float[] taps, int order) {
+		if(alloc == null || alloc.getType().getX() < order) {
+			if(alloc != null)
+				alloc.destroy();
+			alloc = Allocation.createSized(rs, Element.F32(rs), order);
+		}
+		float[] values = new float[order];
+		if(taps != null)
+			System.arraycopy(taps, 0, values, order - taps.length, taps.length);
+		alloc.copy1DRangeFrom(0, order, values);
+		return alloc;
+	}
+
+	/**
+	 * @return packet for the outputs of the previous taps during a crossfade (created if necessary)
+	 */
+	private SamplePacket getFadePacket(SamplePacket out) {
+		if(fadePacket == null || fadePacket.capacity() < fadeLength
+				|| fadePacket.getLayout() != out.getLayout() || fadePacket.getSampleType() != out.getSampleType())
+			fadePacket = new SamplePacket(fadeLength, out.getLayout(), out.getSampleType());
+		return fadePacket;
+	}
+
+	/**
+	 * Stages the input samples behind the filter history and sets the script variables that are common to
+	 * all packet kernels
+	 * @return number of output samples that will be calculated
+	 */
+	private int stage(SamplePacket in, SamplePacket out, int offset, int length, boolean realSignal) {
+		bindScript();
+		int outSize = out.size();
+		int outputCount = Math.max(0, Math.min(length / decimation, out.capacity() - outSize));
+		history.stage(in, offset, outputCount * decimation, realSignal);
+		script.set_offsetOut(outSize);
+		script.set_len(outSize + outputCount);
+		if(history.isInterleaved()) {
+			script.set_inIQ(history.getIQAlloc());
+		} else {
+			script.set_inReal(history.getReAlloc());
+			if(!realSignal)
+				script.set_inImag(history.getImAlloc());
+		}
+		return outputCount;
+	}
+
+	/**
+	 * Updates the output packet and the filter history after a packet kernel was launched
+	 * @return number of samples consumed from the input packet
+	 */
+	private int finish(SamplePacket in, SamplePacket out, int outputCount, boolean realSignal) {
+		out.setSize(out.size() + outputCount);
+		out.setSampleRate(in.getSampleRate()/decimation);
+		out.markWrittenByScript();
+		history.advance(outputCount * decimation, realSignal);
+		finishCrossfade(outputCount);
+		return outputCount * decimation;
+	}
+
+	/**
+	 * @return the FFT backend of this filter (created on first use)
+	 */
+	private FastConvolution getFastConvolution() {
+		if(fastConvolution == null)
+			fastConvolution = new FastConvolution(rs, tapsReal, tapsImag, decimation);
+		return fastConvolution;
+	}
+
+	/**
+	 * Checks if the taps are mirrored around the center: taps[i] == sign * taps[length-1-i]
+	 * (within SYMMETRY_TOLERANCE relative to the largest tap)
+	 * @param taps		filter taps
+	 * @param sign		1 for symmetric taps, -1 for antisymmetric taps (the center tap is not checked)
+	 * @return true if the taps are mirrored
+	 */
+	private static boolean isMirrored(float[] taps, float sign) {
+		float max = 0;
+		for (float tap: taps)
+			max = Math.max(max, Math.abs(tap));
+		for (int i = 0; i < taps.length / 2; i++) {
+			if(Math.abs(taps[i] - sign * taps[taps.length - 1 - i]) > SYMMETRY_TOLERANCE * max)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the (symmetric) taps have the half-band structure that is expected by the half-band kernels:
+	 * odd length 2*half+1 with an odd half and taps[i] == 0 for all odd i < half (within SYMMETRY_TOLERANCE
+	 * relative to the largest tap)
+	 * @param taps		symmetric filter taps
+	 * @return true if the taps are half-band taps
+	 */
+	private static boolean isHalfBand(float[] taps) {
+		int half = taps.length / 2;
+		if(taps.length < 3 || (taps.length & 1) == 0 || (half & 1) == 0)
+			return false;
+		float max = 0;
+		for (float tap: taps)
+			max = Math.max(max, Math.abs(tap));
+		for (int i = 1; i < half; i += 2) {
+			if(Math.abs(taps[i]) > SYMMETRY_TOLERANCE * max)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that both packets have the same memory layout and sample type
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @return true if both packets are interleaved; false if both are split
+	 */
+	private static boolean checkLayout(SamplePacket in, SamplePacket out) {
+		if(in.getLayout() != out.getLayout() || in.getSampleType() != out.getSampleType())
+			throw new IllegalArgumentException("Input and output packet must have the same layout and sample type");
+		return in.isInterleaved();
 	}
 }
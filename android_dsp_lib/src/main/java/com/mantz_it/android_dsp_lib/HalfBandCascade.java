@@ -0,0 +1,170 @@
+package com.mantz_it.android_dsp_lib;
+
+/**
+ * <h1>Android DSP library - Half-Band Cascade</h1>
+ *
+ * Module:      HalfBandCascade.java
+ * Description: This class decimates by 2^n with a cascade of n HalfBandDecimators. Each stage is designed
+ * 				for its own input rate: it has to keep the pass band [0, passBand] and to reject everything
+ * 				that would alias into it, so the transition band of stage k is sampleRate_k/2 - 2*passBand
+ * 				wide. The early stages run at high rates with very wide transition bands (few taps); only the
+ * 				last stage needs a sharp filter. The overall response corresponds to a single decimating
+ * 				LowPassFilter with the cut off frequency outputRate/2 and the transition width
+ * 				outputRate - 2*passBand, whose taps are driven by the full input rate.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class HalfBandCascade {
+	private HalfBandDecimator[] stages;
+	private SamplePacket[] intermediate;	// output packets of all stages except the last one (created on first use)
+	private int decimation;
+
+	/**
+	 * Constructor. Designs the stages with createStages()
+	 *
+	 * @param decimation			overall decimation (power of two >= 2)
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate of the input samples
+	 * @param passBand				end of the pass band (must be below sampleRate/decimation/2)
+	 * @param attenuation			attenuation of stop band (of each stage)
+	 */
+	public HalfBandCascade(int decimation, float gain, float sampleRate, float passBand, float attenuation) {
+		this(createStages(decimation, gain, sampleRate, passBand, attenuation));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stages		half-band decimators (the output of stage k is the input of stage k+1)
+	 */
+	public HalfBandCascade(HalfBandDecimator[] stages) {
+		if(stages == null || stages.length == 0)
+			throw new IllegalArgumentException("stages cannot be empty!");
+		this.stages = stages;
+		this.intermediate = new SamplePacket[stages.length - 1];
+		this.decimation = 1 << stages.length;
+	}
+
+	/**
+	 * Will design one HalfBandDecimator per factor of 2. Stage k (input rate sampleRate/2^k) keeps the pass
+	 * band [0, passBand] and rejects everything above sampleRate_k/2 - passBand.
+	 * The gain is applied in the first stage.
+	 *
+	 * @param decimation			overall decimation (power of two >= 2)
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate of the input samples
+	 * @param passBand				end of the pass band (must be below sampleRate/decimation/2)
+	 * @param attenuation			attenuation of stop band (of each stage)
+	 * @return stages of the cascade
+	 */
+	public static HalfBandDecimator[] createStages(int decimation, float gain, float sampleRate, float passBand,
+												   float attenuation) {
+		if(decimation < 2 || Integer.bitCount(decimation) != 1)
+			throw new IllegalArgumentException("decimation must be a power of two >= 2: " + decimation);
+		if(passBand <= 0 || passBand >= sampleRate / decimation / 2)
+			throw new IllegalArgumentException("pass band (" + passBand + " Hz) must be in (0, sampleRate/decimation/2)");
+		HalfBandDecimator[] stages = new HalfBandDecimator[Integer.numberOfTrailingZeros(decimation)];
+		float rate = sampleRate;
+		for (int k = 0; k < stages.length; k++) {
+			stages[k] = new HalfBandDecimator(k == 0 ? gain : 1, rate, rate / 2 - 2 * passBand, attenuation);
+			rate /= 2;
+		}
+		return stages;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public HalfBandDecimator[] getStages() {
+		return stages;
+	}
+
+	/**
+	 * @return multiplications per input sample of all stages (for comparison with a single filter)
+	 */
+	public float getMultiplicationsPerInputSample() {
+		float multiplications = 0;
+		int rateDivider = 2;
+		for (HalfBandDecimator stage : stages) {
+			multiplications += ((stage.getNumberOfTaps() + 1) / 4 + 1) / (float) rateDivider;
+			rateDivider *= 2;
+		}
+		return multiplications;
+	}
+
+	/**
+	 * Filters the complex samples from the input sample packet and appends the output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet (SAMPLE_TYPE_FLOAT32)
+	 * @param out		output sample packet (same layout as the input)
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet (must be multiple of decimation)
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, false);
+	}
+
+	/**
+	 * Filters the real samples from the input sample packet and appends the output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet (LAYOUT_SPLIT, SAMPLE_TYPE_FLOAT32)
+	 * @param out		output sample packet (LAYOUT_SPLIT, SAMPLE_TYPE_FLOAT32)
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet (must be multiple of decimation)
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, true);
+	}
+
+	private int filter(SamplePacket in, SamplePacket out, int offset, int length, boolean realSignal) {
+		if(in.getLayout() != out.getLayout() || in.isInt16() || out.isInt16())
+			throw new IllegalArgumentException("Input and output packet must have the same layout and SAMPLE_TYPE_FLOAT32");
+		// only process complete output samples that fit into the output packet:
+		length = Math.min(length / decimation, out.capacity() - out.size()) * decimation;
+		if(length <= 0)
+			return 0;
+		SamplePacket stageIn = in;
+		int stageOffset = offset;
+		int stageLength = length;
+		for (int k = 0; k < stages.length; k++) {
+			SamplePacket stageOut = out;
+			if(k < stages.length - 1) {
+				stageOut = intermediate[k];
+				if(stageOut == null || stageOut.capacity() < stageLength / 2 || stageOut.getLayout() != in.getLayout()) {
+					stageOut = new SamplePacket(stageLength / 2, in.getLayout());
+					intermediate[k] = stageOut;
+				}
+				stageOut.setSize(0);
+			}
+			if(realSignal)
+				stages[k].filterReal(stageIn, stageOut, stageOffset, stageLength);
+			else
+				stages[k].filter(stageIn, stageOut, stageOffset, stageLength);
+			stageIn = stageOut;
+			stageOffset = 0;
+			stageLength /= 2;
+		}
+		out.setFrequency(in.getFrequency());
+		return length;
+	}
+}
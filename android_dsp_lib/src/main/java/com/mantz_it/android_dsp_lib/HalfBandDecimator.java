@@ -0,0 +1,121 @@
+package com.mantz_it.android_dsp_lib;
+
+/**
+ * <h1>Android DSP library - Half-Band Decimator</h1>
+ *
+ * Module:      HalfBandDecimator.java
+ * Description: This class implements a low pass filter that decimates by 2 with a half-band filter (cut off
+ * 				frequency at a quarter of the sample rate). Every other tap of a half-band filter is zero, so
+ * 				the FirFilter uses kernels that skip the zero taps and fold the symmetric taps (about taps/4
+ * 				multiplications per output sample). Use HalfBandCascade for decimations by 2^n.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class HalfBandDecimator extends FirFilter {
+	private float gain;
+	private float sampleRate;
+	private float transitionWidth;
+	private float attenuation;
+
+	/**
+	 * Constructor. Creates a half-band filter that decimates by 2
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate of the input samples
+	 * @param transitionWidth		width of the transition band (centered at sampleRate/4)
+	 * @param attenuation			attenuation of stop band
+	 */
+	public HalfBandDecimator(float gain, float sampleRate, float transitionWidth, float attenuation) {
+		super(designHalfBandFilter(gain, sampleRate, transitionWidth, attenuation), null, 2);
+		this.gain = gain;
+		this.sampleRate = sampleRate;
+		this.transitionWidth = transitionWidth;
+		this.attenuation = attenuation;
+	}
+
+	public float getGain() {
+		return gain;
+	}
+
+	public float getSampleRate() {
+		return sampleRate;
+	}
+
+	public float getTransitionWidth() {
+		return transitionWidth;
+	}
+
+	public float getAttenuation() {
+		return attenuation;
+	}
+
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		return super.filterComplexSignal(in,out,offset,length);
+	}
+
+	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		return super.filterRealSignal(in,out,offset,length);
+	}
+
+	/**
+	 * Will calculate the taps of a half-band low pass filter (windowed sinc with the cut off frequency
+	 * sampleRate/4; same window and length estimate as LowPassFilter.designLowPassFilter()). The length is
+	 * rounded up to 4*k+3, so that the outermost taps are not zero. The odd taps (except the center tap)
+	 * are set to exactly zero.
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param transitionWidth		width of the transition band (centered at sampleRate/4)
+	 * @param attenuation			attenuation of stop band
+	 * @return filter taps
+	 */
+	public static float[] designHalfBandFilter(float gain, float sampleRate, float transitionWidth, float attenuation) {
+		if (sampleRate <= 0.0)
+			throw new IllegalArgumentException("sampleRate must be greater than 0: " + sampleRate);
+		if (transitionWidth <= 0 || transitionWidth >= sampleRate / 2)
+			throw new IllegalArgumentException("transitionWidth must be in (0, sampleRate/2): " + transitionWidth);
+
+		int ntaps = (int)(attenuation*sampleRate/(22.0*transitionWidth));
+		int M = Math.max(1, (ntaps - 1) / 2);
+		if ((M & 1) == 0)	// if even...
+			M++;			// ...make odd (the outermost taps of the half-band filter are not zero)
+		ntaps = 2 * M + 1;
+
+		float[] taps = new float[ntaps];
+		float[] w = WindowFunctions.makeBlackmanWindow(ntaps + 2);	// without the zero end points of the window
+		for (int n = -M; n <= M; n++) {
+			if (n == 0)
+				taps[n + M] = 0.5f * w[n + M + 1];
+			else if ((n & 1) == 0)
+				taps[n + M] = 0;	// sin(n*pi/2) is zero for even n
+			else
+				taps[n + M] = (float)Math.sin(n * Math.PI / 2) / (n * (float)Math.PI) * w[n + M + 1];
+		}
+
+		// normalize the gain at zero frequency:
+		float fmax = taps[M];
+		for (int n = 1; n <= M; n++)
+			fmax += 2 * taps[n + M];
+		float actualGain = gain/fmax;
+		for (int i = 0; i < ntaps; i++)
+			taps[i] *= actualGain;
+		return taps;
+	}
+}
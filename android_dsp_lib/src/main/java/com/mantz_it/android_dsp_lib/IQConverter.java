@@ -2,6 +2,8 @@ package com.mantz_it.android_dsp_lib;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+
 /**
  * Android DSP library - IQ Converter
  *
@@ -33,6 +35,9 @@ public class IQConverter {
 	public static final int FORMAT_8BIT_UNSIGNED = 1;
 	public static final int FORMAT_16BIT_SIGNED = 2;
 	public static final int FORMAT_16BIT_UNSIGNED = 3;
+	public static final int MIXER_MODE_LUT = 0;			// mixer lookup tables with whole cosine periods (see calcOptimalCosineLength())
+	public static final int MIXER_MODE_NCO = 1;			// numerically controlled oscillator (exact frequency, continuous phase)
+	public static final int MIXER_MODE_COMPACT = 2;		// like MIXER_MODE_LUT, but with small tables and a complex multiplication
 	private static final String LOGTAG = "IQConverter";
 	private int format;
 	private int packetSize;
@@ -42,6 +47,11 @@ public class IQConverter {
 	private static final int MAX_COSINE_LENGTH = 500;	// Max length of the mixer lookup table
 	private Mixer_8Bit mixer8Bit;
 	private LookupTable_8Bit lookupTable8Bit;
+	private Converter_16Bit converter16Bit;
+	private NcoMixer ncoMixer = null;					// created on the first use of MIXER_MODE_NCO
+	private MultiChannelMixer multiChannelMixer = null;	// created on the first use of mixPacketIntoSamplePackets()
+	private int mixerMode = MIXER_MODE_LUT;
+	private byte[] stagingBuffer = null;				// reused for ByteBuffers without accessible backing array (lazy)
 
 	public IQConverter(int format, int packetSize) {
 		this.format = format;
@@ -55,6 +65,12 @@ public class IQConverter {
 				lookupTable8Bit = new LookupTable_8Bit(packetSize, LookupTable_8Bit.createUnsigned8BitLookupTable());
 				mixer8Bit = new Mixer_8Bit(packetSize, MAX_COSINE_LENGTH);
 				break;
+			case FORMAT_16BIT_SIGNED:
+				converter16Bit = new Converter_16Bit(packetSize, MAX_COSINE_LENGTH, true);
+				break;
+			case FORMAT_16BIT_UNSIGNED:
+				converter16Bit = new Converter_16Bit(packetSize, MAX_COSINE_LENGTH, false);
+				break;
 			default:
 				Log.e(LOGTAG, "fillPacketIntoSamplePacket: invalid format: " + format);
 		}
@@ -79,6 +95,64 @@ public class IQConverter {
 		}
 	}
 
+	public int getMixerMode() {
+		return mixerMode;
+	}
+
+	/**
+	 * Selects the implementation of the mixer.
+	 * MIXER_MODE_LUT uses precalculated lookup tables that contain whole cosine periods (at most
+	 * MAX_COSINE_LENGTH samples). Therefore the mix frequency is rounded and the phase is reset
+	 * whenever the channel frequency changes.
+	 * MIXER_MODE_NCO uses a phase accumulator. The mix frequency is exact (resolution: sampleRate/2^32)
+	 * and the phase is continuous across packets and retunes.
+	 * MIXER_MODE_COMPACT works like MIXER_MODE_LUT but uses the compact mode of Mixer_8Bit (a few KB
+	 * of tables instead of up to 1 MB). The 16 bit formats always use compact tables (same as MIXER_MODE_LUT).
+	 *
+	 * @param mixerMode		MIXER_MODE_LUT, MIXER_MODE_NCO or MIXER_MODE_COMPACT
+	 */
+	public void setMixerMode(int mixerMode) {
+		if(mixerMode != MIXER_MODE_LUT && mixerMode != MIXER_MODE_NCO && mixerMode != MIXER_MODE_COMPACT)
+			throw new IllegalArgumentException("Invalid mixer mode: " + mixerMode);
+		this.mixerMode = mixerMode;
+		this.mixerLookupTableInvalid = true;
+		if(mixer8Bit != null)
+			mixer8Bit.setCompactMode(mixerMode == MIXER_MODE_COMPACT);
+	}
+
+	/**
+	 * Sets a cache for the lookup tables of the 8 bit mixer (MIXER_MODE_LUT). The same cache can be
+	 * shared by several IQConverters. Retuning to a channel whose table is cached does not have to
+	 * generate the table again (e.g. when a scanner hops between a fixed set of channels).
+	 *
+	 * @param lutCache	cache or null to disable caching
+	 */
+	public void setMixerLutCache(MixerLutCache lutCache) {
+		if(mixer8Bit != null)
+			mixer8Bit.setLutCache(lutCache);
+	}
+
+	/**
+	 * Enables the DC offset and IQ imbalance correction for the conversion without mixing
+	 * (fillPacketIntoSamplePacket and fillPacketIntoRingBuffer). The estimates are updated with every
+	 * packet and the correction is applied in the same conversion pass (see IQCorrection).
+	 * Only supported for the 8 bit formats.
+	 *
+	 * @param correction	correction state or null to disable the correction
+	 */
+	public void setIQCorrection(IQCorrection correction) {
+		if(lookupTable8Bit == null) {
+			if(correction == null)
+				return;
+			throw new IllegalArgumentException("IQ correction is only supported for the 8 bit formats");
+		}
+		lookupTable8Bit.setCorrection(correction);
+	}
+
+	public IQCorrection getIQCorrection() {
+		return lookupTable8Bit == null ? null : lookupTable8Bit.getCorrection();
+	}
+
 	protected int calcOptimalCosineLength(int cosineFrequency) {
 		// look for the best fitting array size to hold one or more full cosine cycles:
 		double cycleLength = sampleRate / Math.abs((double)cosineFrequency);
@@ -94,88 +168,475 @@ public class IQConverter {
 	}
 
 	public void fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
+		fillPacketIntoSamplePacket(packet, 0, packet.length, samplePacket);
+	}
+
+	/**
+	 * Converts a range of the packet (e.g. a short read from the device) into the SamplePacket
+	 *
+	 * @param packet		raw interleaved IQ samples
+	 * @param offset		index of the first byte in packet
+	 * @param length		number of bytes (up to packetSize; incomplete IQ pairs are ignored)
+	 * @param samplePacket	sample packet to which the converted samples are appended
+	 * @return number of samples written to the sample packet
+	 */
+	public int fillPacketIntoSamplePacket(byte[] packet, int offset, int length, SamplePacket samplePacket) {
 		switch (format) {
 			case FORMAT_8BIT_SIGNED:
-				fillPacketIntoSamplePacket_8BitSigned(packet, samplePacket);
-				break;
+				return fillPacketIntoSamplePacket_8BitSigned(packet, offset, length, samplePacket);
 			case FORMAT_8BIT_UNSIGNED:
-				fillPacketIntoSamplePacket_8BitUnsigned(packet, samplePacket);
-				break;
+				return fillPacketIntoSamplePacket_8BitUnsigned(packet, offset, length, samplePacket);
+			case FORMAT_16BIT_SIGNED:
+			case FORMAT_16BIT_UNSIGNED:
+				return fillPacketIntoSamplePacket_16Bit(packet, offset, length, samplePacket);
 			default:
 				Log.e(LOGTAG, "fillPacketIntoSamplePacket: invalid format: " + format);
-				break;
+				return -1;
 		}
 	}
 
+	/**
+	 * Converts the packet into a SamplePacket that is borrowed from the given pool.
+	 * The caller has to release the returned packet to the pool when it is no longer used.
+	 *
+	 * @param packet	raw interleaved IQ samples
+	 * @param pool		pool from which the output packet is acquired
+	 * @return sample packet (acquired from the pool) containing the converted samples
+	 */
+	public SamplePacket fillPacketIntoSamplePacket(byte[] packet, SamplePacketPool pool) {
+		SamplePacket samplePacket = pool.acquire(packet.length / getBytesPerSample());
+		samplePacket.setFrequency(frequency);
+		samplePacket.setSampleRate(sampleRate);
+		fillPacketIntoSamplePacket(packet, samplePacket);
+		return samplePacket;
+	}
+
 	public void fillPacketIntoSamplePacket_8BitSigned(byte[] packet, SamplePacket samplePacket) {
+		fillPacketIntoSamplePacket_8BitSigned(packet, 0, packet.length, samplePacket);
+	}
+
+	public int fillPacketIntoSamplePacket_8BitSigned(byte[] packet, int offset, int length, SamplePacket samplePacket) {
 		int size = samplePacket.size();
 		int capacity = samplePacket.capacity();
-		lookupTable8Bit.convertFromSignedInterleaved8Bit(packet, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
-		size += packet.length / 2;
-		if(size > capacity)
-			size = capacity;
-		samplePacket.setSize(size);
+		int count;
+		if(samplePacket.isInterleaved())
+			count = lookupTable8Bit.convertFromSignedInterleaved8Bit(packet, offset, length, samplePacket.getIQAlloc(), size, capacity);
+		else if(samplePacket.isInt16())
+			count = lookupTable8Bit.convertFromSignedInterleaved8BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
+		else
+			count = lookupTable8Bit.convertFromSignedInterleaved8Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
 	}
 
 	public void fillPacketIntoSamplePacket_8BitUnsigned(byte[] packet, SamplePacket samplePacket) {
+		fillPacketIntoSamplePacket_8BitUnsigned(packet, 0, packet.length, samplePacket);
+	}
+
+	public int fillPacketIntoSamplePacket_8BitUnsigned(byte[] packet, int offset, int length, SamplePacket samplePacket) {
 		int size = samplePacket.size();
 		int capacity = samplePacket.capacity();
-		lookupTable8Bit.convertFromUnsignedInterleaved8Bit(packet, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
-		size += packet.length / 2;
-		if(size > capacity)
-			size = capacity;
-		samplePacket.setSize(size);
+		int count;
+		if(samplePacket.isInterleaved())
+			count = lookupTable8Bit.convertFromUnsignedInterleaved8Bit(packet, offset, length, samplePacket.getIQAlloc(), size, capacity);
+		else if(samplePacket.isInt16())
+			count = lookupTable8Bit.convertFromUnsignedInterleaved8BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
+		else
+			count = lookupTable8Bit.convertFromUnsignedInterleaved8Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, capacity);
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
+	}
+
+	/**
+	 * Converts the remaining bytes of the given buffer (at most packetSize) into the SamplePacket. The
+	 * position of the buffer is advanced by the number of bytes that were consumed. See processBuffer()
+	 *
+	 * @param buffer		buffer containing the raw interleaved IQ samples (e.g. a direct buffer of a USB transfer)
+	 * @param samplePacket	sample packet to which the converted samples are appended
+	 * @return number of samples written to the sample packet
+	 */
+	public int fillPacketIntoSamplePacket(ByteBuffer buffer, SamplePacket samplePacket) {
+		return processBuffer(buffer, samplePacket, false, 0);
 	}
 
 	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		return mixPacketIntoSamplePacket(packet, 0, packet.length, samplePacket, channelFrequency);
+	}
+
+	/**
+	 * Mixes and converts a range of the packet (e.g. a short read from the device) into the SamplePacket
+	 *
+	 * @param packet			raw interleaved IQ samples
+	 * @param offset			index of the first byte in packet
+	 * @param length			number of bytes (up to packetSize; incomplete IQ pairs are ignored)
+	 * @param samplePacket		sample packet to which the mixed samples are appended
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @return number of samples written to the sample packet
+	 */
+	public int mixPacketIntoSamplePacket(byte[] packet, int offset, int length, SamplePacket samplePacket, long channelFrequency) {
+		if(mixerMode == MIXER_MODE_NCO)
+			return mixPacketIntoSamplePacket_Nco(packet, offset, length, samplePacket, channelFrequency);
 		switch (format) {
 			case FORMAT_8BIT_SIGNED:
-				return mixPacketIntoSamplePacket_8BitSigned(packet, samplePacket, channelFrequency);
+				return mixPacketIntoSamplePacket_8BitSigned(packet, offset, length, samplePacket, channelFrequency);
 			case FORMAT_8BIT_UNSIGNED:
-				return mixPacketIntoSamplePacket_8BitUnsigned(packet, samplePacket, channelFrequency);
+				return mixPacketIntoSamplePacket_8BitUnsigned(packet, offset, length, samplePacket, channelFrequency);
+			case FORMAT_16BIT_SIGNED:
+			case FORMAT_16BIT_UNSIGNED:
+				return mixPacketIntoSamplePacket_16Bit(packet, offset, length, samplePacket, channelFrequency);
 			default:
 				Log.e(LOGTAG, "fillPacketIntoSamplePacket: invalid format: " + format);
 				return -1;
 		}
 	}
 
-	public int mixPacketIntoSamplePacket_8BitSigned(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
-		// If mix frequency is too low, just add the sample rate (sampled spectrum is periodic):
-		int mixFrequency = (int) (channelFrequency - frequency);
-		if(mixFrequency == 0 || (sampleRate / Math.abs(mixFrequency) > MAX_COSINE_LENGTH))
-			mixFrequency += sampleRate;
+	/**
+	 * Mixes and converts the remaining bytes of the given buffer (at most packetSize) into the SamplePacket.
+	 * The position of the buffer is advanced by the number of bytes that were consumed. See processBuffer()
+	 *
+	 * @param buffer			buffer containing the raw interleaved IQ samples (e.g. a direct buffer of a USB transfer)
+	 * @param samplePacket		sample packet to which the mixed samples are appended
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @return number of samples written to the sample packet
+	 */
+	public int mixPacketIntoSamplePacket(ByteBuffer buffer, SamplePacket samplePacket, long channelFrequency) {
+		return processBuffer(buffer, samplePacket, true, channelFrequency);
+	}
 
-		// Only generate lookupTable if invalid:
-		if(mixerLookupTableInvalid || mixFrequency != mixer8Bit.getCosineFrequency()) {
-			int bestLength = calcOptimalCosineLength(mixFrequency);
-			mixer8Bit.generateLookupTable(sampleRate, mixFrequency, bestLength, true);
-			mixerLookupTableInvalid = false;
+	/**
+	 * Mixes and converts the packet into a SamplePacket that is borrowed from the given pool.
+	 * The caller has to release the returned packet to the pool when it is no longer used.
+	 *
+	 * @param packet			raw interleaved IQ samples
+	 * @param pool				pool from which the output packet is acquired
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @return sample packet (acquired from the pool) containing the mixed samples
+	 */
+	public SamplePacket mixPacketIntoSamplePacket(byte[] packet, SamplePacketPool pool, long channelFrequency) {
+		SamplePacket samplePacket = pool.acquire(packet.length / getBytesPerSample());
+		samplePacket.setFrequency(channelFrequency);
+		samplePacket.setSampleRate(sampleRate);
+		mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
+		return samplePacket;
+	}
+
+	public int mixPacketIntoSamplePackets(byte[] packet, SamplePacket[] samplePackets, long[] channelFrequencies) {
+		return mixPacketIntoSamplePackets(packet, 0, packet.length, samplePackets, channelFrequencies);
+	}
+
+	/**
+	 * Mixes and converts a range of the packet into several channels at once (see MultiChannelMixer). The packet
+	 * is uploaded once and all channels are mixed by a single kernel launch. Each channel has its own NCO
+	 * (exact frequency, continuous phase). This does not depend on the mixer mode.
+	 *
+	 * @param packet				raw interleaved IQ samples
+	 * @param offset				index of the first byte in packet
+	 * @param length				number of bytes (up to packetSize; incomplete IQ pairs are ignored)
+	 * @param samplePackets			sample packets to which the mixed samples are appended (one for each channel;
+	 *                              all with the same layout and SAMPLE_TYPE_FLOAT32)
+	 * @param channelFrequencies	frequencies that will be shifted to baseband (one for each sample packet)
+	 * @return number of samples written to each sample packet
+	 */
+	public int mixPacketIntoSamplePackets(byte[] packet, int offset, int length, SamplePacket[] samplePackets, long[] channelFrequencies) {
+		if(samplePackets.length != channelFrequencies.length)
+			throw new IllegalArgumentException("Number of sample packets and channel frequencies must be equal");
+		if(multiChannelMixer == null) {
+			boolean signed = format == FORMAT_8BIT_SIGNED || format == FORMAT_16BIT_SIGNED;
+			multiChannelMixer = new MultiChannelMixer(packetSize, getBytesPerSample() * 4, signed, channelFrequencies.length);
+		} else {
+			multiChannelMixer.setMaxChannels(channelFrequencies.length);	// keeps the phases of the existing channels
+		}
+
+		// Only update the channels if something has changed:
+		boolean changed = sampleRate != multiChannelMixer.getSampleRate()
+				|| channelFrequencies.length != multiChannelMixer.getNumberOfChannels();
+		int[] mixFrequencies = new int[channelFrequencies.length];
+		for (int i = 0; i < channelFrequencies.length; i++) {
+			mixFrequencies[i] = (int) (channelFrequencies[i] - frequency);
+			if(!changed && mixFrequencies[i] != multiChannelMixer.getMixFrequency(i))
+				changed = true;
 		}
+		if(changed)
+			multiChannelMixer.setMixFrequencies(sampleRate, mixFrequencies);
+		return multiChannelMixer.mixFromInterleaved(packet, offset, length, samplePackets);
+	}
+
+	public int mixPacketIntoSamplePacket_8BitSigned(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		return mixPacketIntoSamplePacket_8BitSigned(packet, 0, packet.length, samplePacket, channelFrequency);
+	}
+
+	public int mixPacketIntoSamplePacket_8BitSigned(byte[] packet, int offset, int length, SamplePacket samplePacket, long channelFrequency) {
+		prepareMixer8Bit(channelFrequency, true);
 
 		// mix and convert packet:
 		int size = samplePacket.size();
-		int count = mixer8Bit.mixFromSignedInterleaved8Bit(packet, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		int count;
+		if(samplePacket.isInterleaved())
+			count = mixer8Bit.mixFromSignedInterleaved8Bit(packet, offset, length, samplePacket.getIQAlloc(), size, samplePacket.capacity());
+		else if(samplePacket.isInt16())
+			count = mixer8Bit.mixFromSignedInterleaved8BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		else
+			count = mixer8Bit.mixFromSignedInterleaved8Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
 		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
 		return count;
 	}
 
 	public int mixPacketIntoSamplePacket_8BitUnsigned(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
-		// If mix frequency is too low, just add the sample rate (sampled spectrum is periodic):
-		int mixFrequency = (int) (channelFrequency - frequency);
-		if(mixFrequency == 0 || (sampleRate / Math.abs(mixFrequency) > MAX_COSINE_LENGTH))
-			mixFrequency += sampleRate;
+		return mixPacketIntoSamplePacket_8BitUnsigned(packet, 0, packet.length, samplePacket, channelFrequency);
+	}
+
+	public int mixPacketIntoSamplePacket_8BitUnsigned(byte[] packet, int offset, int length, SamplePacket samplePacket, long channelFrequency) {
+		prepareMixer8Bit(channelFrequency, false);
+
+		// mix and convert packet:
+		int size = samplePacket.size();
+		int count;
+		if(samplePacket.isInterleaved())
+			count = mixer8Bit.mixFromUnsignedInterleaved8Bit(packet, offset, length, samplePacket.getIQAlloc(), size, samplePacket.capacity());
+		else if(samplePacket.isInt16())
+			count = mixer8Bit.mixFromUnsignedInterleaved8BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		else
+			count = mixer8Bit.mixFromUnsignedInterleaved8Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
+	}
+
+	public int fillPacketIntoSamplePacket_16Bit(byte[] packet, int offset, int length, SamplePacket samplePacket) {
+		int size = samplePacket.size();
+		int count;
+		if(samplePacket.isInterleaved())
+			count = converter16Bit.convertFromInterleaved16Bit(packet, offset, length, samplePacket.getIQAlloc(), size, samplePacket.capacity());
+		else if(samplePacket.isInt16())
+			count = converter16Bit.convertFromInterleaved16BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		else
+			count = converter16Bit.convertFromInterleaved16Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
+	}
+
+	public int mixPacketIntoSamplePacket_16Bit(byte[] packet, int offset, int length, SamplePacket samplePacket, long channelFrequency) {
+		prepareMixer16Bit(channelFrequency);
+
+		// mix and convert packet:
+		int size = samplePacket.size();
+		int count;
+		if(samplePacket.isInterleaved())
+			count = converter16Bit.mixFromInterleaved16Bit(packet, offset, length, samplePacket.getIQAlloc(), size, samplePacket.capacity());
+		else if(samplePacket.isInt16())
+			count = converter16Bit.mixFromInterleaved16BitToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		else
+			count = converter16Bit.mixFromInterleaved16Bit(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
+	}
+
+	public int mixPacketIntoSamplePacket_Nco(byte[] packet, int offset, int length, SamplePacket samplePacket, long channelFrequency) {
+		prepareNcoMixer(channelFrequency);
+
+		// mix and convert packet:
+		int size = samplePacket.size();
+		int count;
+		if(samplePacket.isInterleaved())
+			count = ncoMixer.mixFromInterleaved(packet, offset, length, samplePacket.getIQAlloc(), size, samplePacket.capacity());
+		else if(samplePacket.isInt16())
+			count = ncoMixer.mixFromInterleavedToInt16(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		else
+			count = ncoMixer.mixFromInterleaved(packet, offset, length, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
+		samplePacket.setSize(size + count);
+		samplePacket.markWrittenByScript();
+		return count;
+	}
+
+	/**
+	 * Converts the packet and appends the samples to the given ring buffer
+	 *
+	 * @param packet	raw interleaved IQ samples (packet.length/2 must not exceed the capacity of the ring)
+	 * @param ring		ring buffer to which the samples are appended
+	 * @return number of samples appended to the ring buffer
+	 */
+	public int fillPacketIntoRingBuffer(byte[] packet, SampleRingBuffer ring) {
+		return fillPacketIntoRingBuffer(packet, 0, packet.length, ring);
+	}
+
+	/**
+	 * Converts a range of the packet and appends the samples to the given ring buffer
+	 *
+	 * @param packet	raw interleaved IQ samples
+	 * @param offset	index of the first byte in packet
+	 * @param length	number of bytes (up to packetSize; incomplete IQ pairs are ignored)
+	 * @param ring		ring buffer to which the samples are appended
+	 * @return number of samples appended to the ring buffer
+	 */
+	public int fillPacketIntoRingBuffer(byte[] packet, int offset, int length, SampleRingBuffer ring) {
+		ring.setFrequency(frequency);
+		ring.setSampleRate(sampleRate);
+		switch (format) {
+			case FORMAT_8BIT_SIGNED:
+				return lookupTable8Bit.convertFromSignedInterleaved8Bit(packet, offset, length, ring);
+			case FORMAT_8BIT_UNSIGNED:
+				return lookupTable8Bit.convertFromUnsignedInterleaved8Bit(packet, offset, length, ring);
+			case FORMAT_16BIT_SIGNED:
+			case FORMAT_16BIT_UNSIGNED:
+				return converter16Bit.convertFromInterleaved16Bit(packet, offset, length, ring);
+			default:
+				Log.e(LOGTAG, "fillPacketIntoRingBuffer: invalid format: " + format);
+				return -1;
+		}
+	}
+
+	/**
+	 * Mixes and converts the packet and appends the samples to the given ring buffer
+	 *
+	 * @param packet			raw interleaved IQ samples (packet.length/2 must not exceed the capacity of the ring)
+	 * @param ring				ring buffer to which the samples are appended
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @return number of samples appended to the ring buffer
+	 */
+	public int mixPacketIntoRingBuffer(byte[] packet, SampleRingBuffer ring, long channelFrequency) {
+		return mixPacketIntoRingBuffer(packet, 0, packet.length, ring, channelFrequency);
+	}
+
+	/**
+	 * Mixes and converts a range of the packet and appends the samples to the given ring buffer
+	 *
+	 * @param packet			raw interleaved IQ samples
+	 * @param offset			index of the first byte in packet
+	 * @param length			number of bytes (up to packetSize; incomplete IQ pairs are ignored)
+	 * @param ring				ring buffer to which the samples are appended
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @return number of samples appended to the ring buffer
+	 */
+	public int mixPacketIntoRingBuffer(byte[] packet, int offset, int length, SampleRingBuffer ring, long channelFrequency) {
+		ring.setFrequency(channelFrequency);
+		ring.setSampleRate(sampleRate);
+		if(mixerMode == MIXER_MODE_NCO) {
+			prepareNcoMixer(channelFrequency);
+			return ncoMixer.mixFromInterleaved(packet, offset, length, ring);
+		}
+		switch (format) {
+			case FORMAT_8BIT_SIGNED:
+				prepareMixer8Bit(channelFrequency, true);
+				return mixer8Bit.mixFromSignedInterleaved8Bit(packet, offset, length, ring);
+			case FORMAT_8BIT_UNSIGNED:
+				prepareMixer8Bit(channelFrequency, false);
+				return mixer8Bit.mixFromUnsignedInterleaved8Bit(packet, offset, length, ring);
+			case FORMAT_16BIT_SIGNED:
+			case FORMAT_16BIT_UNSIGNED:
+				prepareMixer16Bit(channelFrequency);
+				return converter16Bit.mixFromInterleaved16Bit(packet, offset, length, ring);
+			default:
+				Log.e(LOGTAG, "mixPacketIntoRingBuffer: invalid format: " + format);
+				return -1;
+		}
+	}
+
+	/**
+	 * Will make sure the lookup table of the 8 bit mixer is valid for the given channel frequency
+	 *
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 * @param signed			true for signed samples, false for unsigned samples
+	 */
+	private void prepareMixer8Bit(long channelFrequency, boolean signed) {
+		int mixFrequency = calcMixFrequency(channelFrequency);
 
 		// Only generate lookupTable if invalid:
 		if(mixerLookupTableInvalid || mixFrequency != mixer8Bit.getCosineFrequency()) {
 			int bestLength = calcOptimalCosineLength(mixFrequency);
-			mixer8Bit.generateLookupTable(sampleRate, mixFrequency, bestLength, false);
+			mixer8Bit.generateLookupTable(sampleRate, mixFrequency, bestLength, signed);
 			mixerLookupTableInvalid = false;
 		}
+	}
 
-		// mix and convert packet:
-		int size = samplePacket.size();
-		int count = mixer8Bit.mixFromUnsignedInterleaved8Bit(packet, samplePacket.getReAlloc(), samplePacket.getImAlloc(), size, samplePacket.capacity());
-		samplePacket.setSize(size + count);
+	/**
+	 * Will make sure the cos/sin tables of the 16 bit converter are valid for the given channel frequency
+	 *
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 */
+	private void prepareMixer16Bit(long channelFrequency) {
+		int mixFrequency = calcMixFrequency(channelFrequency);
+
+		// Only generate the tables if invalid:
+		if(mixerLookupTableInvalid || mixFrequency != converter16Bit.getCosineFrequency()) {
+			int bestLength = calcOptimalCosineLength(mixFrequency);
+			converter16Bit.generateLookupTable(sampleRate, mixFrequency, bestLength);
+			mixerLookupTableInvalid = false;
+		}
+	}
+
+	/**
+	 * Will make sure the NCO mixer exists and runs at the given channel frequency. A retune keeps the phase.
+	 *
+	 * @param channelFrequency	frequency that will be shifted to baseband
+	 */
+	private void prepareNcoMixer(long channelFrequency) {
+		if(ncoMixer == null) {
+			boolean signed = format == FORMAT_8BIT_SIGNED || format == FORMAT_16BIT_SIGNED;
+			ncoMixer = new NcoMixer(packetSize, getBytesPerSample() * 4, signed);
+		}
+		int mixFrequency = (int) (channelFrequency - frequency);
+		if(mixerLookupTableInvalid || mixFrequency != ncoMixer.getMixFrequency()) {
+			ncoMixer.setMixFrequency(sampleRate, mixFrequency);
+			mixerLookupTableInvalid = false;
+		}
+	}
+
+	/**
+	 * @return the frequency that has to be mixed to the signal to shift the channel frequency to baseband
+	 */
+	private int calcMixFrequency(long channelFrequency) {
+		// If mix frequency is too low, just add the sample rate (sampled spectrum is periodic):
+		int mixFrequency = (int) (channelFrequency - frequency);
+		if(mixFrequency == 0 || (sampleRate / Math.abs(mixFrequency) > MAX_COSINE_LENGTH))
+			mixFrequency += sampleRate;
+		return mixFrequency;
+	}
+
+	/**
+	 * Converts (or mixes) the remaining bytes of the buffer (at most packetSize) into the SamplePacket and
+	 * advances the position of the buffer by the bytes of the samples that were written. If the buffer is
+	 * backed by an accessible array, the range of the array is used directly (no copy). Otherwise the bytes
+	 * are transferred with a single bulk get() into a staging array that is reused for all packets.
+	 *
+	 * @param buffer			buffer containing the raw interleaved IQ samples
+	 * @param samplePacket		sample packet to which the samples are appended
+	 * @param mix				true to mix the samples (see mixPacketIntoSamplePacket())
+	 * @param channelFrequency	frequency that will be shifted to baseband (only if mix is true)
+	 * @return number of samples written to the sample packet
+	 */
+	private int processBuffer(ByteBuffer buffer, SamplePacket samplePacket, boolean mix, long channelFrequency) {
+		int start = buffer.position();
+		int length = Math.min(buffer.remaining(), packetSize);
+		byte[] packet;
+		int offset;
+		if(buffer.hasArray()) {
+			packet = buffer.array();
+			offset = buffer.arrayOffset() + start;
+		} else {
+			if(stagingBuffer == null)
+				stagingBuffer = new byte[packetSize];
+			buffer.get(stagingBuffer, 0, length);
+			packet = stagingBuffer;
+			offset = 0;
+		}
+		int count;
+		if(mix)
+			count = mixPacketIntoSamplePacket(packet, offset, length, samplePacket, channelFrequency);
+		else
+			count = fillPacketIntoSamplePacket(packet, offset, length, samplePacket);
+		buffer.position(start + Math.max(count, 0) * getBytesPerSample());
 		return count;
 	}
+
+	/**
+	 * @return number of bytes per complex sample (IQ pair) in the raw packets of the current format
+	 */
+	private int getBytesPerSample() {
+		return (format == FORMAT_16BIT_SIGNED || format == FORMAT_16BIT_UNSIGNED) ? 4 : 2;
+	}
 }
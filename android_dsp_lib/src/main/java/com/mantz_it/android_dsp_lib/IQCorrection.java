@@ -0,0 +1,181 @@
+package com.mantz_it.android_dsp_lib;
+
+/**
+ * <h1>Android DSP library - IQ Correction</h1>
+ *
+ * Module:      IQCorrection.java
+ * Description: This class estimates the DC offset and the IQ imbalance (gain and phase) of 8 bit IQ
+ * 				samples with running averages that are updated once per packet. The correction is not
+ * 				applied in a separate pass: it is folded into three conversion tables (indexed by the
+ * 				unsigned value of the byte) that are used by the conversion kernels of LookupTable_8Bit:
+ * 				    I' = tableI[i]                      = (i - dcI)
+ * 				    Q' = tableQ[q] + tableCross[i]      = (q - dcQ) / (g*cos(phi)) - (i - dcI) * tan(phi)
+ * 				with the gain imbalance g = sqrt(E[Q'^2]/E[I'^2]) and sin(phi) = E[I'Q'] / sqrt(E[I'^2]*E[Q'^2]).
+ * 				The statistics are taken from every STATISTICS_STEP-th IQ pair of each packet.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class IQCorrection {
+	public static final int STATISTICS_STEP = 4;		// only every 4th IQ pair is used for the estimation
+	private static final double MAX_SIN_PHI = 0.5;		// phase imbalance estimates are limited to +-30 degree
+	private boolean correctImbalance;
+	private float averaging = 0.1f;		// weight of the newest packet in the running averages
+	private boolean initialized = false;	// false until the first packet was processed
+	private double dcI = 0;				// running averages of E[I], E[Q]
+	private double dcQ = 0;
+	private double powerI = 0;			// running averages of E[(I-dcI)^2], E[(Q-dcQ)^2], E[(I-dcI)*(Q-dcQ)]
+	private double powerQ = 0;
+	private double crossIQ = 0;
+	private float[] tableI = new float[256];
+	private float[] tableQ = new float[256];
+	private float[] tableCross = new float[256];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param correctImbalance	true to correct gain and phase imbalance in addition to the DC offset
+	 */
+	public IQCorrection(boolean correctImbalance) {
+		this.correctImbalance = correctImbalance;
+	}
+
+	public boolean isCorrectImbalance() {
+		return correctImbalance;
+	}
+
+	public float getAveraging() {
+		return averaging;
+	}
+
+	/**
+	 * Sets the weight of the newest packet in the running averages (e.g. 0.1: the estimates follow
+	 * changes with a time constant of about 10 packets)
+	 *
+	 * @param averaging		weight in (0, 1]
+	 */
+	public void setAveraging(float averaging) {
+		if(averaging <= 0 || averaging > 1)
+			throw new IllegalArgumentException("averaging must be in (0, 1]: " + averaging);
+		this.averaging = averaging;
+	}
+
+	/**
+	 * @return estimated DC offset of the I component (in the units of the conversion table)
+	 */
+	public float getDcI() {
+		return (float) dcI;
+	}
+
+	/**
+	 * @return estimated DC offset of the Q component (in the units of the conversion table)
+	 */
+	public float getDcQ() {
+		return (float) dcQ;
+	}
+
+	/**
+	 * @return estimated gain imbalance (amplitude of Q divided by amplitude of I); 1 if not estimated
+	 */
+	public float getGainImbalance() {
+		if(!correctImbalance || powerI <= 0 || powerQ <= 0)
+			return 1;
+		return (float) Math.sqrt(powerQ / powerI);
+	}
+
+	/**
+	 * @return estimated phase imbalance in radians; 0 if not estimated
+	 */
+	public float getPhaseImbalance() {
+		return (float) Math.asin(sinPhi());
+	}
+
+	/**
+	 * Drops all estimates. The next packet initializes the running averages.
+	 */
+	public void reset() {
+		initialized = false;
+		dcI = dcQ = powerI = powerQ = crossIQ = 0;
+	}
+
+	/**
+	 * Updates the estimates with a packet and recalculates the correction tables
+	 *
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param count		number of IQ pairs
+	 * @param table		conversion table (length 256) indexed by the unsigned value of the byte
+	 */
+	void update(byte[] in, int inOffset, int count, float[] table) {
+		double sumI = 0, sumQ = 0, sumII = 0, sumQQ = 0, sumIQ = 0;
+		int n = 0;
+		for (int i = 0; i < count; i += STATISTICS_STEP) {
+			double valueI = table[in[inOffset + 2*i] & 0xff];
+			double valueQ = table[in[inOffset + 2*i + 1] & 0xff];
+			sumI += valueI;
+			sumQ += valueQ;
+			sumII += valueI * valueI;
+			sumQQ += valueQ * valueQ;
+			sumIQ += valueI * valueQ;
+			n++;
+		}
+		if(n > 0) {
+			double alpha = initialized ? averaging : 1;
+			dcI += alpha * (sumI / n - dcI);
+			dcQ += alpha * (sumQ / n - dcQ);
+			// second order moments around the current DC estimates:
+			powerI += alpha * (sumII / n - 2 * dcI * sumI / n + dcI * dcI - powerI);
+			powerQ += alpha * (sumQQ / n - 2 * dcQ * sumQ / n + dcQ * dcQ - powerQ);
+			crossIQ += alpha * ((sumIQ - dcQ * sumI - dcI * sumQ) / n + dcI * dcQ - crossIQ);
+			initialized = true;
+		}
+
+		double sinPhi = sinPhi();
+		double cosPhi = Math.sqrt(1 - sinPhi * sinPhi);
+		double scaleQ = 1 / (getGainImbalance() * cosPhi);
+		double scaleCross = -sinPhi / cosPhi;
+		for (int i = 0; i < 256; i++) {
+			tableI[i] = (float) (table[i] - dcI);
+			tableQ[i] = (float) ((table[i] - dcQ) * scaleQ);
+			tableCross[i] = (float) ((table[i] - dcI) * scaleCross);
+		}
+	}
+
+	float[] getTableI() {
+		return tableI;
+	}
+
+	float[] getTableQ() {
+		return tableQ;
+	}
+
+	float[] getTableCross() {
+		return tableCross;
+	}
+
+	/**
+	 * @return sin of the estimated phase imbalance (limited to MAX_SIN_PHI)
+	 */
+	private double sinPhi() {
+		if(!correctImbalance || powerI <= 0 || powerQ <= 0)
+			return 0;
+		double sinPhi = crossIQ / Math.sqrt(powerI * powerQ);
+		return Math.max(-MAX_SIN_PHI, Math.min(MAX_SIN_PHI, sinPhi));
+	}
+}
@@ -0,0 +1,115 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+
+/**
+ * Android DSP library - Input Allocation
+ *
+ * Module:      InputAllocation.java
+ * Description: This class holds the allocation for the raw input bytes of the converters
+ *              (LookupTable_8Bit, Mixer_8Bit, Converter_16Bit). Any range of a byte array (up to the
+ *              capacity) can be uploaded to the beginning of the allocation. The Allocation API can only
+ *              copy from the beginning of an array, so ranges with an offset go through a staging array.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+class InputAllocation {
+	private Allocation alloc;
+	private int bytesPerElement;	// size of one element of the allocation in bytes
+	private int capacity;			// size of the allocation in bytes
+	private byte[] staging = null;	// used for ranges that do not start at index 0 (lazy)
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rs				RenderScript context
+	 * @param element			element of the allocation (e.g. I8 or U16_2)
+	 * @param bytesPerElement	size of one element in bytes
+	 * @param capacity			capacity of the allocation in bytes (rounded down to whole elements)
+	 */
+	InputAllocation(RenderScript rs, Element element, int bytesPerElement, int capacity) {
+		this.bytesPerElement = bytesPerElement;
+		this.capacity = capacity - capacity % bytesPerElement;
+		this.alloc = Allocation.createSized(rs, element, capacity / bytesPerElement);
+	}
+
+	/**
+	 * @return the allocation
+	 */
+	Allocation getAllocation() {
+		return alloc;
+	}
+
+	/**
+	 * Checks that [inOffset, inOffset+inLength) is a valid range of 'in' that fits into the allocation
+	 *
+	 * @param in		input array
+	 * @param inOffset	index of the first byte
+	 * @param inLength	number of bytes
+	 */
+	void checkRange(byte[] in, int inOffset, int inLength) {
+		if(inOffset < 0 || inLength < 0 || inOffset + inLength > in.length || inOffset + inLength < 0)
+			throw new IllegalArgumentException("Invalid input range: offset=" + inOffset + " length=" + inLength
+					+ " (array length is " + in.length + ")");
+		if(inLength > capacity)
+			throw new IllegalArgumentException("Input range (" + inLength + " bytes) exceeds the capacity of "
+					+ capacity + " bytes");
+	}
+
+	/**
+	 * Copies count elements (count*bytesPerElement bytes starting at in[inOffset]) to the beginning
+	 * of the allocation. The range must have been checked with checkRange().
+	 *
+	 * @param in		input array
+	 * @param inOffset	index of the first byte
+	 * @param count		number of elements
+	 */
+	void upload(byte[] in, int inOffset, int count) {
+		if(count <= 0)
+			return;
+		if(inOffset != 0) {
+			if(staging == null)
+				staging = new byte[capacity];
+			System.arraycopy(in, inOffset, staging, 0, count * bytesPerElement);
+			in = staging;
+		}
+		alloc.copy1DRangeFromUnchecked(0, count, in);
+	}
+
+	/**
+	 * Checks the input range and uploads the IQ pairs of it that fit into the output (at most maxCount).
+	 * An incomplete IQ pair at the end of the range is ignored.
+	 *
+	 * @param in			input array
+	 * @param inOffset		index of the first byte
+	 * @param inLength		number of bytes
+	 * @param maxCount		max number of IQ pairs (e.g. free space in the output packet)
+	 * @param bytesPerPair	size of one IQ pair in bytes (a multiple of bytesPerElement)
+	 * @return number of IQ pairs that were uploaded
+	 */
+	int uploadPairs(byte[] in, int inOffset, int inLength, int maxCount, int bytesPerPair) {
+		checkRange(in, inOffset, inLength);
+		int count = Math.min(inLength / bytesPerPair, maxCount);
+		upload(in, inOffset, count * bytesPerPair / bytesPerElement);
+		return count;
+	}
+}
@@ -3,12 +3,15 @@ package com.mantz_it.android_dsp_lib;
 import android.support.v8.renderscript.Allocation;
 import android.support.v8.renderscript.Element;
 import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
 
 /**
  * Android DSP library - Lookup Table 8bit
  *
  * Module:      LookupTable_8Bit.java
- * Description: This class can do type conversion (e.g. IQ bytes -> floats) by using a lookup table
+ * Description: This class can do type conversion (e.g. IQ bytes -> floats) by using a lookup table.
+ * 				All instances share one instance of the script (see AndroidDSPLib) and bind their tables
+ * 				before a kernel is launched.
  *
  * @author Dennis Mantz
  *
@@ -31,9 +34,17 @@ import android.support.v8.renderscript.RenderScript;
  */
 public class LookupTable_8Bit {
 	private RenderScript rs;
-	private ScriptC_lookup_table_8bit script;
+	private ScriptC_lookup_table_8bit script;	// shared script (see AndroidDSPLib; lock it while it is used)
 	private Allocation lut;
-	private Allocation inAlloc;
+	private Allocation lutInt16;	// same lookup table in the int16 fixed-point format of SamplePacket
+	private InputAllocation input;
+	private boolean perByteKernels = false;	// use the original kernels with one invocation per byte (split layout)
+	private float[] tableSigned;		// lookup table indexed by the unsigned value of the byte for signed input
+	private float[] tableUnsigned;		// lookup table indexed by the unsigned value of the byte for unsigned input
+	private IQCorrection correction = null;	// DC offset and IQ imbalance correction (null if disabled)
+	private Allocation corrI = null;	// correction tables (see IQCorrection; created lazily)
+	private Allocation corrQ = null;
+	private Allocation corrCross = null;
 
 	public LookupTable_8Bit(int inputSize, float[] lookupTable) {
 		if(lookupTable == null || lookupTable.length != 256)
@@ -42,29 +53,324 @@ public class LookupTable_8Bit {
 		rs = AndroidDSPLib.getRenderScript();
 
 		lut = Allocation.createSized(rs, Element.F32(rs), 256);
-		inAlloc = Allocation.createSized(rs, Element.I8(rs), inputSize);
+		input = new InputAllocation(rs, Element.I8(rs), 1, inputSize);
 		lut.copyFrom(lookupTable);
+		short[] lookupTableInt16 = new short[256];
+		for (int i = 0; i < 256; i++)
+			lookupTableInt16[i] = SamplePacket.toInt16(lookupTable[i]);
+		lutInt16 = Allocation.createSized(rs, Element.I16(rs), 256);
+		lutInt16.copyFrom(lookupTableInt16);
+		tableUnsigned = lookupTable.clone();
+		tableSigned = new float[256];
+		for (int i = 0; i < 256; i++)
+			tableSigned[i] = lookupTable[(i + 128) & 0xff];
 
-		script = new ScriptC_lookup_table_8bit(rs, AndroidDSPLib.getResources(), R.raw.lookup_table_8bit);
-		script.bind_lut(lut);
+		script = AndroidDSPLib.getLookupTableScript();
+	}
+
+	public boolean isPerByteKernels() {
+		return perByteKernels;
+	}
+
+	/**
+	 * Selects the kernels that are used for the split layout. By default one kernel invocation converts
+	 * a whole IQ pair. If perByteKernels is true, the original kernels are used instead: one invocation
+	 * per input byte that writes the real or imaginary part depending on the parity of the index.
+	 * The results are identical; this is only useful for comparisons (see Benchmark).
+	 *
+	 * @param perByteKernels	true to use one invocation per byte, false to use one invocation per IQ pair
+	 */
+	public void setPerByteKernels(boolean perByteKernels) {
+		this.perByteKernels = perByteKernels;
+	}
+
+	public IQCorrection getCorrection() {
+		return correction;
+	}
+
+	/**
+	 * Enables the DC offset and IQ imbalance correction. The estimates of the correction are updated with
+	 * every converted packet and applied in the same conversion pass (corrected lookup tables). All layouts
+	 * are supported; the per-byte kernels are not used while a correction is set.
+	 *
+	 * @param correction	correction state or null to disable the correction
+	 */
+	public void setCorrection(IQCorrection correction) {
+		this.correction = correction;
+		if(correction != null && corrI == null) {
+			corrI = Allocation.createSized(rs, Element.F32(rs), 256);
+			corrQ = Allocation.createSized(rs, Element.F32(rs), 256);
+			corrCross = Allocation.createSized(rs, Element.F32(rs), 256);
+		}
+	}
+
+	public int convertFromSignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
+		return convertFromSignedInterleaved8Bit(in, 0, in.length, outReal, outImag, offset, length);
+	}
+
+	public int convertFromUnsignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
+		return convertFromUnsignedInterleaved8Bit(in, 0, in.length, outReal, outImag, offset, length);
+	}
+
+	/**
+	 * Converts a range of signed interleaved bytes into output allocations with split layout
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, true)) {
+				script.forEach_convertCorrectedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			} else if(perByteKernels) {
+				script.set_outReal(outReal);
+				script.set_len(length);
+				script.forEach_convertSignedInterleavedKernel(input.getAllocation(), new Script.LaunchOptions().setX(0, count * 2));
+			} else {
+				script.forEach_convertSignedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Converts a range of unsigned interleaved bytes into output allocations with split layout
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, false)) {
+				script.forEach_convertCorrectedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			} else if(perByteKernels) {
+				script.set_outReal(outReal);
+				script.set_len(length);
+				script.forEach_convertUnsignedInterleavedKernel(input.getAllocation(), new Script.LaunchOptions().setX(0, count * 2));
+			} else {
+				script.forEach_convertUnsignedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			}
+			return count;
+		}
 	}
 
-	public void convertFromSignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
-		inAlloc.copyFrom(in);
-		script.set_outReal(outReal);
-		script.set_outImag(outImag);
-		script.set_offset(offset);
-		script.set_len(length);
-		script.forEach_convertSignedInterleavedKernel(inAlloc);
+	/**
+	 * Converts a range of signed interleaved bytes into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, true))
+				script.forEach_convertCorrectedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_convertSignedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			return count;
+		}
 	}
 
-	public void convertFromUnsignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
-		inAlloc.copyFrom(in);
-		script.set_outReal(outReal);
-		script.set_outImag(outImag);
-		script.set_offset(offset);
-		script.set_len(length);
-		script.forEach_convertUnsignedInterleavedKernel(inAlloc);
+	/**
+	 * Converts a range of unsigned interleaved bytes into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, false))
+				script.forEach_convertCorrectedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_convertUnsignedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			return count;
+		}
+	}
+
+	/**
+	 * Converts a range of signed interleaved bytes and appends them to a ring buffer
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/2 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int convertFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		synchronized (script) {
+			bindScript();
+			input.checkRange(in, inOffset, inLength);
+			int count = inLength / 2;
+			if(count == 0)
+				return 0;
+			Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+			input.upload(in, inOffset, count * 2);
+			script.set_outImag(ring.getImAlloc());
+			script.set_offset(ring.getWriteIndex() & ring.getMask());
+			script.set_ringMask(ring.getMask());
+			boolean corrected = updateCorrection(in, inOffset, count, true);
+			for (Script.LaunchOptions options: launchOptions) {
+				if(corrected)
+					script.forEach_convertCorrectedToRingKernel(ring.getReAlloc(), options);
+				else
+					script.forEach_convertSignedToRingKernel(ring.getReAlloc(), options);
+			}
+			ring.advanceWriteIndex(count);
+			return count;
+		}
+	}
+
+	/**
+	 * Converts a range of unsigned interleaved bytes and appends them to a ring buffer
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/2 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int convertFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		synchronized (script) {
+			bindScript();
+			input.checkRange(in, inOffset, inLength);
+			int count = inLength / 2;
+			if(count == 0)
+				return 0;
+			Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+			input.upload(in, inOffset, count * 2);
+			script.set_outImag(ring.getImAlloc());
+			script.set_offset(ring.getWriteIndex() & ring.getMask());
+			script.set_ringMask(ring.getMask());
+			boolean corrected = updateCorrection(in, inOffset, count, false);
+			for (Script.LaunchOptions options: launchOptions) {
+				if(corrected)
+					script.forEach_convertCorrectedToRingKernel(ring.getReAlloc(), options);
+				else
+					script.forEach_convertUnsignedToRingKernel(ring.getReAlloc(), options);
+			}
+			ring.advanceWriteIndex(count);
+			return count;
+		}
+	}
+
+	/**
+	 * Converts a range of signed interleaved bytes into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromSignedInterleaved8BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, true))
+				script.forEach_convertCorrectedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_convertSignedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			return count;
+		}
+	}
+
+	/**
+	 * Converts a range of unsigned interleaved bytes into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int convertFromUnsignedInterleaved8BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			bindScript();
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			if(updateCorrection(in, inOffset, count, false))
+				script.forEach_convertCorrectedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_convertUnsignedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			return count;
+		}
+	}
+
+	/**
+	 * Binds the tables and the input allocation of this object to the shared script (the caller holds
+	 * the lock of the script)
+	 */
+	private void bindScript() {
+		script.bind_lut(lut);
+		script.bind_lutInt16(lutInt16);
+		script.set_inBytes(input.getAllocation());
+		if(corrI != null) {
+			script.bind_corrI(corrI);
+			script.bind_corrQ(corrQ);
+			script.bind_corrCross(corrCross);
+		}
+	}
+
+	/**
+	 * Updates the estimates of the correction with the given IQ pairs and uploads the corrected tables
+	 * @return true if a correction is set (the corrected kernels have to be used)
+	 */
+	private boolean updateCorrection(byte[] in, int inOffset, int count, boolean signed) {
+		if(correction == null)
+			return false;
+		correction.update(in, inOffset, count, signed ? tableSigned : tableUnsigned);
+		corrI.copyFrom(correction.getTableI());
+		corrQ.copyFrom(correction.getTableQ());
+		corrCross.copyFrom(correction.getTableCross());
+		return true;
 	}
 
 	public static float[] createSigned8BitLookupTable() {
@@ -80,4 +386,18 @@ public class LookupTable_8Bit {
 			lut[i] = (i-127.4f) / 128.0f;
 		return lut;
 	}
+
+	/**
+	 * Creates a conversion table that is indexed by the unsigned value of the byte (as (uchar) in the kernels)
+	 *
+	 * @param signed	true for signed input values, false for unsigned input values
+	 * @return lookup table (length 256)
+	 */
+	static float[] createByteIndexedLookupTable(boolean signed) {
+		float[] table = signed ? createSigned8BitLookupTable() : createUnsigned8BitLookupTable();
+		float[] lut = new float[256];
+		for (int i = 0; i < 256; i++)
+			lut[i] = signed ? table[(i + 128) & 0xff] : table[i];
+		return lut;
+	}
 }
@@ -50,6 +50,24 @@ public class LowPassFilter extends FirFilter {
 		this.attenuation = attenuation;
 	}
 
+	/**
+	 * Designs new taps with the given parameters and replaces the taps of the running filter (the history
+	 * is kept and the output is crossfaded, see FirFilter.setTaps()). The decimation is not changed.
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param cutOffFrequency		cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 */
+	public void redesign(float gain, float sampleRate, float cutOffFrequency, float transitionWidth, float attenuation) {
+		setTaps(designLowPassFilter(gain, sampleRate, cutOffFrequency, transitionWidth, attenuation), null);
+		this.gain = gain;
+		this.sampleRate = sampleRate;
+		this.cutOffFrequency = cutOffFrequency;
+		this.transitionWidth = transitionWidth;
+		this.attenuation = attenuation;
+	}
+
 	public float getGain() {
 		return gain;
 	}
@@ -78,6 +96,30 @@ public class LowPassFilter extends FirFilter {
 		return super.filterRealSignal(in,out,offset,length);
 	}
 
+	/**
+	 * Returns the taps for the specified low pass filter. The design is looked up in the filter design
+	 * cache (see AndroidDSPLib.setFilterDesignCache()) and is only calculated if it is not cached.
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampleRate			sample rate
+	 * @param cutOffFrequency		cut off frequency (end of pass band)
+	 * @param transitionWidth		width from end of pass band to start stop band
+	 * @param attenuation			attenuation of stop band
+	 * @return filter taps (may be modified by the caller)
+	 */
+	public static float[] designLowPassFilter(float gain, float sampleRate, float cutOffFrequency, float transitionWidth, float attenuation) {
+		FilterDesignCache cache = AndroidDSPLib.getFilterDesignCache();
+		if(cache == null)
+			return calculateLowPassFilter(gain, sampleRate, cutOffFrequency, transitionWidth, attenuation);
+		String key = FilterDesignCache.key("lowpass", gain, sampleRate, cutOffFrequency, transitionWidth, attenuation);
+		float[][] taps = cache.get(key, 1);
+		if(taps == null) {
+			taps = new float[][] {calculateLowPassFilter(gain, sampleRate, cutOffFrequency, transitionWidth, attenuation)};
+			cache.put(key, taps);
+		}
+		return taps[0];
+	}
+
 	/**
 	 * FROM GNU Radio firdes::low_pass_2:
 	 * Will calculate the tabs for the specified low pass filter
@@ -89,7 +131,7 @@ public class LowPassFilter extends FirFilter {
 	 * @param attenuation			attenuation of stop band
 	 * @return filter taps
 	 */
-	public static float[] designLowPassFilter(float gain, float sampleRate, float cutOffFrequency, float transitionWidth, float attenuation) {
+	private static float[] calculateLowPassFilter(float gain, float sampleRate, float cutOffFrequency, float transitionWidth, float attenuation) {
 		if (sampleRate <= 0.0) {
 			throw new IllegalArgumentException("firdes check failed: sampling_freq > 0");
 		}
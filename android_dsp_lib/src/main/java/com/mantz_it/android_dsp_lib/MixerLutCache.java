@@ -0,0 +1,143 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Android DSP library - Mixer Lookup Table Cache
+ *
+ * Module:      MixerLutCache.java
+ * Description: This class keeps the most recently used lookup tables of Mixer_8Bit (LRU). The tables
+ *              are identified by (sampleRate, mixFrequency, signed) and are read-only after they were
+ *              generated. Therefore one cache can be shared by several Mixer_8Bit / IQConverter
+ *              instances. A mixer that retunes to a channel whose table is in the cache only has to
+ *              bind the cached allocations instead of generating the table again.
+ *              Note: Each table needs up to 2*256*cosineLength floats (1 MB for a cosine length of 500).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class MixerLutCache {
+	private LinkedHashMap<Long, Entry> entries;		// access ordered: the first entry is the least recently used
+	private int maxEntries;
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	/**
+	 * A generated lookup table of Mixer_8Bit
+	 */
+	static class Entry {
+		final Allocation lutReal;	// real lookup table (length 256*cosineLength)
+		final Allocation lutImag;	// imag lookup table (length 256*cosineLength)
+		final int cosineLength;
+
+		Entry(Allocation lutReal, Allocation lutImag, int cosineLength) {
+			this.lutReal = lutReal;
+			this.lutImag = lutImag;
+			this.cosineLength = cosineLength;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxEntries	max number of lookup tables in the cache
+	 */
+	public MixerLutCache(int maxEntries) {
+		if(maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be greater than zero");
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				if(size() > MixerLutCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a table and counts a hit or a miss
+	 *
+	 * @return the cached table or null
+	 */
+	synchronized Entry get(int sampleRate, int mixFrequency, boolean signed) {
+		Entry entry = entries.get(key(sampleRate, mixFrequency, signed));
+		if(entry != null)
+			hits++;
+		else
+			misses++;
+		return entry;
+	}
+
+	/**
+	 * Adds a table to the cache (the least recently used table is dropped if the cache is full)
+	 */
+	synchronized void put(int sampleRate, int mixFrequency, boolean signed, Entry entry) {
+		entries.put(key(sampleRate, mixFrequency, signed), entry);
+	}
+
+	/**
+	 * @return number of lookups that found a table in the cache
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that had to generate the table
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return number of tables that were dropped because the cache was full
+	 */
+	public synchronized int getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return number of tables in the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Drops all tables. Mixers that currently use a table keep it until they are retuned.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return key of the table: sampleRate (31 bits) | mixFrequency (32 bits) | signed (1 bit)
+	 */
+	private static long key(int sampleRate, int mixFrequency, boolean signed) {
+		return ((long) sampleRate << 33) | ((mixFrequency & 0xffffffffL) << 1) | (signed ? 1 : 0);
+	}
+}
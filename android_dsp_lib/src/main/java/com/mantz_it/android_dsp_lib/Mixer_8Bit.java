@@ -3,13 +3,16 @@ package com.mantz_it.android_dsp_lib;
 import android.support.v8.renderscript.Allocation;
 import android.support.v8.renderscript.Element;
 import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
 
 /**
  * <h1>Android DSP library - Mixer 8bit</h1>
  *
  * Module:      Mixer_8Bit.java
  * Description: This class implements methods to do converting (byte->float) and
- * 				down-mixing at the same time.
+ * 				down-mixing at the same time. All mixers share one instance of the script (see
+ * 				AndroidDSPLib): each mixer binds its tables and its position in the cosine before a kernel
+ * 				is launched.
  *
  * @author Dennis Mantz
  *
@@ -32,21 +35,72 @@ import android.support.v8.renderscript.RenderScript;
  */
 public class Mixer_8Bit {
 	private RenderScript rs;
-	ScriptC_mixer_8bit script;
-	private Allocation realLutAlloc;
-	private Allocation imagLutAlloc;
-	private Allocation inAlloc;
+	ScriptC_mixer_8bit script;					// shared script (see AndroidDSPLib; lock it while it is used)
+	private Allocation realLutAlloc = null;		// own lookup tables (used without cache; created lazily)
+	private Allocation imagLutAlloc = null;
+	private Allocation lutReal = null;			// lookup tables that are used by the kernels (own or cached tables)
+	private Allocation lutImag = null;
+	private long baseIndex = 0;					// index in the cosine of the next sample
+	private InputAllocation input;
+	private int maxCosineLength;
 	private int cosineLength;
 	private int cosineFrequency;
+	private MixerLutCache lutCache = null;		// optional cache of generated lookup tables
+	private boolean compact = false;			// compact mode: 256-entry conversion table + cos/sin table
+	private boolean perByteKernels = false;		// use the original kernels with one invocation per byte (split layout)
+	private Allocation conversionLutAlloc = null;	// compact mode tables (created lazily)
+	private Allocation cosAlloc = null;
+	private Allocation sinAlloc = null;
 
 	public Mixer_8Bit(int inputSize, int maxCosineLength) {
 		rs = AndroidDSPLib.getRenderScript();
-		realLutAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength*256);
-		imagLutAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength*256);
-		inAlloc = Allocation.createSized(rs, Element.I8(rs), inputSize);
-		script = new ScriptC_mixer_8bit(rs, AndroidDSPLib.getResources(), R.raw.mixer_8bit);
-		script.bind_lutReal(realLutAlloc);
-		script.bind_lutImag(imagLutAlloc);
+		this.maxCosineLength = maxCosineLength;
+		input = new InputAllocation(rs, Element.I8(rs), 1, inputSize);
+		script = AndroidDSPLib.getMixerScript();
+	}
+
+	/**
+	 * Sets the cache that is used by generateLookupTable(). If the table for the requested
+	 * (sampleRate, mixFrequency, signed) is in the cache, it is bound to the kernels instead
+	 * of being generated. New tables are added to the cache.
+	 *
+	 * @param lutCache	cache (may be shared with other mixers) or null to disable caching
+	 */
+	public void setLutCache(MixerLutCache lutCache) {
+		this.lutCache = lutCache;
+	}
+
+	/**
+	 * Selects the compact mode. Instead of the lookup tables with 256*cosineLength entries (2 MB for
+	 * a max cosine length of 500) a conversion table with 256 entries and a cos/sin table of length
+	 * cosineLength are used and each sample is mixed by a complex multiplication. This needs less
+	 * memory and cache, and the tables are generated much faster. generateLookupTable() has to be
+	 * called again after the mode was changed.
+	 *
+	 * @param compact	true to select the compact mode
+	 */
+	public void setCompactMode(boolean compact) {
+		this.compact = compact;
+		this.cosineFrequency = 0;
+	}
+
+	public boolean isCompactMode() {
+		return compact;
+	}
+
+	public boolean isPerByteKernels() {
+		return perByteKernels;
+	}
+
+	/**
+	 * Selects the kernels that are used for the split layout (lookup table mode). By default one kernel
+	 * invocation mixes a whole IQ pair. If perByteKernels is true, the original kernels are used instead:
+	 * one invocation per input byte. The results are identical; this is only useful for comparisons.
+	 *
+	 * @param perByteKernels	true to use one invocation per byte, false to use one invocation per IQ pair
+	 */
+	public void setPerByteKernels(boolean perByteKernels) {
+		this.perByteKernels = perByteKernels;
 	}
 
 	public int getCosineFrequency() {
@@ -54,42 +108,341 @@ public class Mixer_8Bit {
 	}
 
 	public void generateLookupTable(int sampleRate, int mixFrequency, int cosineLength, boolean signed) {
-		System.out.println("Generating mixer lookup table of length " + cosineLength + " freq=" + mixFrequency);
-		this.cosineLength = cosineLength;
-		this.cosineFrequency = mixFrequency;
-		script.set_cosineLength(cosineLength);
-		script.set_mixFrequency(mixFrequency);
-		script.set_sampleRate(sampleRate);
-		script.set_signedFlag(signed ? (short)1 : (short)0);
-		script.forEach_updateLut(realLutAlloc);		// argument is just a dummy allocation that has the correct length
-		script.set_baseIndex(0);
-		realLutAlloc.syncAll(Allocation.USAGE_SCRIPT);
-		imagLutAlloc.syncAll(Allocation.USAGE_SCRIPT);
+		synchronized (script) {
+			if(cosineLength > maxCosineLength)
+				throw new IllegalArgumentException("cosineLength exceeds the max cosine length: " + cosineLength);
+			this.cosineLength = cosineLength;
+			this.cosineFrequency = mixFrequency;
+			this.baseIndex = 0;
+			if(compact) {
+				generateCompactTables(sampleRate, mixFrequency, cosineLength, signed);
+				return;
+			}
+
+			// Use the cached table if available:
+			MixerLutCache.Entry entry = null;
+			if(lutCache != null) {
+				entry = lutCache.get(sampleRate, mixFrequency, signed);
+				if(entry != null && entry.cosineLength == cosineLength) {
+					this.lutReal = entry.lutReal;
+					this.lutImag = entry.lutImag;
+					return;
+				}
+			}
+
+			System.out.println("Generating mixer lookup table of length " + cosineLength + " freq=" + mixFrequency);
+			Allocation lutReal;
+			Allocation lutImag;
+			if(lutCache != null) {
+				// cached tables are never written again, so each one gets its own allocations:
+				lutReal = Allocation.createSized(rs, Element.F32(rs), cosineLength*256);
+				lutImag = Allocation.createSized(rs, Element.F32(rs), cosineLength*256);
+			} else {
+				if(realLutAlloc == null) {
+					realLutAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength*256);
+					imagLutAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength*256);
+				}
+				lutReal = realLutAlloc;
+				lutImag = imagLutAlloc;
+			}
+			this.lutReal = lutReal;
+			this.lutImag = lutImag;
+			script.set_cosineLength(cosineLength);
+			script.bind_lutReal(lutReal);
+			script.bind_lutImag(lutImag);
+			script.set_mixFrequency(mixFrequency);
+			script.set_sampleRate(sampleRate);
+			script.set_signedFlag(signed ? (short)1 : (short)0);
+			script.forEach_updateLut(lutReal);		// argument is just a dummy allocation that has the correct length
+			lutReal.syncAll(Allocation.USAGE_SCRIPT);
+			lutImag.syncAll(Allocation.USAGE_SCRIPT);
+			if(lutCache != null)
+				lutCache.put(sampleRate, mixFrequency, signed, new MixerLutCache.Entry(lutReal, lutImag, cosineLength));
+		}
+	}
+
+	/**
+	 * Generates the tables of the compact mode (in Java; they are small)
+	 */
+	private void generateCompactTables(int sampleRate, int mixFrequency, int cosineLength, boolean signed) {
+		if(conversionLutAlloc == null) {
+			conversionLutAlloc = Allocation.createSized(rs, Element.F32(rs), 256);
+			cosAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength);
+			sinAlloc = Allocation.createSized(rs, Element.F32(rs), maxCosineLength);
+		}
+		// the kernels index the conversion table with the unsigned value of the byte:
+		conversionLutAlloc.copyFrom(LookupTable_8Bit.createByteIndexedLookupTable(signed));
+		float[] cosTable = new float[cosineLength];
+		float[] sinTable = new float[cosineLength];
+		for (int i = 0; i < cosineLength; i++) {
+			cosTable[i] = (float) Math.cos(2 * Math.PI * mixFrequency * i / sampleRate);
+			sinTable[i] = (float) Math.sin(2 * Math.PI * mixFrequency * i / sampleRate);
+		}
+		cosAlloc.copy1DRangeFrom(0, cosineLength, cosTable);
+		sinAlloc.copy1DRangeFrom(0, cosineLength, sinTable);
 	}
 
 	public int mixFromSignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
-		inAlloc.copyFrom(in);
-		script.set_outReal(outReal);
-		script.set_outImag(outImag);
-		script.set_offset(offset);
-		script.set_len(length);
-		long baseIndex = script.get_baseIndex();
-		script.forEach_mixSignedInterleavedKernel(inAlloc);
-		int count = Math.min(in.length/2, length-offset);
-		script.set_baseIndex((baseIndex+count) % cosineLength);
-		return count;
+		return mixFromSignedInterleaved8Bit(in, 0, in.length, outReal, outImag, offset, length);
 	}
 
 	public int mixFromUnsignedInterleaved8Bit(byte[] in, Allocation outReal, Allocation outImag, int offset, int length) {
-		inAlloc.copyFrom(in);
-		script.set_outReal(outReal);
-		script.set_outImag(outImag);
-		script.set_offset(offset);
-		script.set_len(length);
-		long baseIndex = script.get_baseIndex();
-		script.forEach_mixUnsignedInterleavedKernel(inAlloc);
-		int count = Math.min(in.length/2, length-offset);
-		script.set_baseIndex((baseIndex+count) % cosineLength);
-		return count;
+		return mixFromUnsignedInterleaved8Bit(in, 0, in.length, outReal, outImag, offset, length);
+	}
+
+	/**
+	 * Mixes and converts a range of signed interleaved bytes into output allocations with split layout
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outReal(outReal);
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			script.set_len(length);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else if(perByteKernels)
+				script.forEach_mixSignedInterleavedKernel(input.getAllocation(), new Script.LaunchOptions().setX(0, count * 2));
+			else
+				script.forEach_mixSignedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of unsigned interleaved bytes into output allocations with split layout
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outReal(outReal);
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			script.set_len(length);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else if(perByteKernels)
+				script.forEach_mixUnsignedInterleavedKernel(input.getAllocation(), new Script.LaunchOptions().setX(0, count * 2));
+			else
+				script.forEach_mixUnsignedToSplitKernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of signed interleaved bytes into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_offset(offset);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_mixSignedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of unsigned interleaved bytes into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_offset(offset);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_mixUnsignedToFloat2Kernel(outIQ, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of signed interleaved bytes and appends them to a ring buffer
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/2 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int mixFromSignedInterleaved8Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		synchronized (script) {
+			input.checkRange(in, inOffset, inLength);
+			int count = inLength / 2;
+			if(count == 0)
+				return 0;
+			Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+			input.upload(in, inOffset, count * 2);
+			script.set_outImag(ring.getImAlloc());
+			script.set_offset(ring.getWriteIndex() & ring.getMask());
+			script.set_ringMask(ring.getMask());
+			bindScript();
+			for (Script.LaunchOptions options: launchOptions) {
+				if(compact)
+					script.forEach_mixCompactToRingKernel(ring.getReAlloc(), options);
+				else
+					script.forEach_mixSignedToRingKernel(ring.getReAlloc(), options);
+			}
+			baseIndex = (baseIndex+count) % cosineLength;
+			ring.advanceWriteIndex(count);
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of unsigned interleaved bytes and appends them to a ring buffer
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (inLength/2 must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int mixFromUnsignedInterleaved8Bit(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		synchronized (script) {
+			input.checkRange(in, inOffset, inLength);
+			int count = inLength / 2;
+			if(count == 0)
+				return 0;
+			Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+			input.upload(in, inOffset, count * 2);
+			script.set_outImag(ring.getImAlloc());
+			script.set_offset(ring.getWriteIndex() & ring.getMask());
+			script.set_ringMask(ring.getMask());
+			bindScript();
+			for (Script.LaunchOptions options: launchOptions) {
+				if(compact)
+					script.forEach_mixCompactToRingKernel(ring.getReAlloc(), options);
+				else
+					script.forEach_mixUnsignedToRingKernel(ring.getReAlloc(), options);
+			}
+			baseIndex = (baseIndex+count) % cosineLength;
+			ring.advanceWriteIndex(count);
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of signed interleaved bytes into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromSignedInterleaved8BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_mixSignedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Mixes and converts a range of unsigned interleaved bytes into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ bytes
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; an odd last byte is ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromUnsignedInterleaved8BitToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		synchronized (script) {
+			int count = input.uploadPairs(in, inOffset, inLength, length - offset, 2);
+			if(count <= 0)
+				return 0;
+			script.set_outImag(outImag);
+			script.set_offset(offset);
+			bindScript();
+			if(compact)
+				script.forEach_mixCompactToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			else
+				script.forEach_mixUnsignedToInt16Kernel(outReal, new Script.LaunchOptions().setX(offset, offset + count));
+			baseIndex = (baseIndex+count) % cosineLength;
+			return count;
+		}
+	}
+
+	/**
+	 * Binds the tables, the input allocation and the position in the cosine of this mixer to the shared
+	 * script (the caller holds the lock of the script)
+	 */
+	private void bindScript() {
+		script.set_inBytes(input.getAllocation());
+		script.set_cosineLength(cosineLength);
+		script.set_baseIndex(baseIndex);
+		if(compact) {
+			if(conversionLutAlloc != null) {
+				script.bind_lut8(conversionLutAlloc);
+				script.bind_cosTable(cosAlloc);
+				script.bind_sinTable(sinAlloc);
+			}
+		} else if(lutReal != null) {
+			script.bind_lutReal(lutReal);
+			script.bind_lutImag(lutImag);
+		}
 	}
 }
@@ -0,0 +1,264 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+import java.util.Arrays;
+
+/**
+ * <h1>Android DSP library - Multi Channel Mixer</h1>
+ *
+ * Module:      MultiChannelMixer.java
+ * Description: This class converts a raw packet (8 or 16 bit IQ values) and mixes it into several
+ * 				channels at once. The packet is uploaded once and a single kernel launch converts each
+ * 				IQ pair and mixes it with the NCO of every channel (see NcoMixer). Every channel has
+ * 				its own phase accumulator, so the phase of each channel is continuous across packets
+ * 				and retunes. The kernel writes all channels into one output allocation; the samples of
+ * 				each channel are then copied into the output packets by the RenderScript runtime
+ * 				(Allocation to Allocation copies, no transfer through the Java heap).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class MultiChannelMixer {
+	private static final long PHASE_MASK = 0xffffffffL;	// phase accumulator has 32 bits
+	private RenderScript rs;
+	private ScriptC_multi_channel_mixer script;
+	private InputAllocation input;			// raw IQ pairs (I8_2 or U16_2)
+	private Allocation lutAlloc;			// conversion table for 8 bit input
+	private Allocation sinCosAlloc;			// (cos, sin) table of the NCOs
+	private Allocation phasesAlloc;			// phase of the first sample of the packet for each channel (U32)
+	private Allocation phaseIncrementsAlloc;	// phase increment for each channel (U32)
+	private Allocation outRealAlloc = null;	// real parts of all channels (split layout; lazy)
+	private Allocation outImagAlloc = null;	// imag parts of all channels (split layout; lazy)
+	private Allocation outIQAlloc = null;	// samples of all channels (interleaved layout; lazy)
+	private boolean is8Bit;
+	private int maxChannels;
+	private int stride;						// max number of IQ pairs per packet (distance between two channels in the output)
+	private int sampleRate = 0;
+	private int[] mixFrequencies = new int[0];
+	private long[] phases;					// phase of the next sample for each channel (2^32 is one full period)
+	private long[] phaseIncrements;			// phase increment per sample for each channel
+	private int[] phasesBuffer;				// phases as uint32 values for the upload
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputSize			size of the input packets in bytes
+	 * @param bitsPerValue		8 or 16 (bits per I or Q value of the input; 16 bit values are little endian)
+	 * @param signed			true for signed input values, false for unsigned input values
+	 * @param maxChannels		max number of channels that are mixed at once
+	 */
+	public MultiChannelMixer(int inputSize, int bitsPerValue, boolean signed, int maxChannels) {
+		if(bitsPerValue != 8 && bitsPerValue != 16)
+			throw new IllegalArgumentException("Unsupported number of bits per value: " + bitsPerValue);
+		if(maxChannels <= 0)
+			throw new IllegalArgumentException("maxChannels must be greater than zero");
+		rs = AndroidDSPLib.getRenderScript();
+		is8Bit = bitsPerValue == 8;
+		this.maxChannels = maxChannels;
+		this.stride = inputSize / (is8Bit ? 2 : 4);
+		this.phases = new long[maxChannels];
+		this.phaseIncrements = new long[maxChannels];
+		this.phasesBuffer = new int[maxChannels];
+		script = new ScriptC_multi_channel_mixer(rs, AndroidDSPLib.getResources(), R.raw.multi_channel_mixer);
+		if(is8Bit) {
+			input = new InputAllocation(rs, Element.I8_2(rs), 2, inputSize);
+			lutAlloc = Allocation.createSized(rs, Element.F32(rs), 256);
+			lutAlloc.copyFrom(LookupTable_8Bit.createByteIndexedLookupTable(signed));
+			script.bind_lut(lutAlloc);
+		} else {
+			input = new InputAllocation(rs, Element.U16_2(rs), 4, inputSize);
+			script.set_signFlip(signed ? 0x8000 : 0);
+			script.set_center(signed ? 32768.0f : 32767.5f);
+		}
+		sinCosAlloc = Allocation.createSized(rs, Element.F32_2(rs), 1 << NcoMixer.TABLE_BITS);
+		sinCosAlloc.copyFrom(NcoMixer.createSinCosTable());
+		phasesAlloc = Allocation.createSized(rs, Element.U32(rs), maxChannels);
+		phaseIncrementsAlloc = Allocation.createSized(rs, Element.U32(rs), maxChannels);
+		script.bind_sinCosTable(sinCosAlloc);
+		script.bind_phases(phasesAlloc);
+		script.bind_phaseIncrements(phaseIncrementsAlloc);
+		script.set_stride(stride);
+		script.set_numChannels(0);
+	}
+
+	public int getMaxChannels() {
+		return maxChannels;
+	}
+
+	/**
+	 * Grows the channel storage in place. The phases and mix frequencies of the existing channels are kept
+	 * (no phase jump at the next sample). Does nothing if maxChannels is not larger than the current value.
+	 *
+	 * @param maxChannels		max number of channels that are mixed at once
+	 */
+	public void setMaxChannels(int maxChannels) {
+		if(maxChannels <= this.maxChannels)
+			return;
+		this.maxChannels = maxChannels;
+		this.phases = Arrays.copyOf(phases, maxChannels);
+		this.phaseIncrements = Arrays.copyOf(phaseIncrements, maxChannels);
+		this.phasesBuffer = new int[maxChannels];
+		int[] increments = new int[maxChannels];
+		for (int i = 0; i < mixFrequencies.length; i++)
+			increments[i] = (int) phaseIncrements[i];
+		phasesAlloc.destroy();
+		phaseIncrementsAlloc.destroy();
+		phasesAlloc = Allocation.createSized(rs, Element.U32(rs), maxChannels);
+		phaseIncrementsAlloc = Allocation.createSized(rs, Element.U32(rs), maxChannels);
+		phaseIncrementsAlloc.copyFrom(increments);
+		script.bind_phases(phasesAlloc);
+		script.bind_phaseIncrements(phaseIncrementsAlloc);
+
+		// the output allocations are created again (lazy) with the new number of channels:
+		if(outRealAlloc != null) {
+			outRealAlloc.destroy();
+			outImagAlloc.destroy();
+			outRealAlloc = null;
+			outImagAlloc = null;
+		}
+		if(outIQAlloc != null) {
+			outIQAlloc.destroy();
+			outIQAlloc = null;
+		}
+	}
+
+	public int getNumberOfChannels() {
+		return mixFrequencies.length;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @param channel	index of the channel
+	 * @return frequency that is shifted to 0 Hz in the given channel
+	 */
+	public int getMixFrequency(int channel) {
+		return mixFrequencies[channel];
+	}
+
+	/**
+	 * Sets the channels. The phase of each channel index is kept (no phase jump at the next sample);
+	 * channels that are added after a reduction of the number of channels continue with their old phase.
+	 *
+	 * @param sampleRate		sample rate of the input samples
+	 * @param mixFrequencies	frequency that will be shifted to 0 Hz for each channel (may be negative)
+	 */
+	public void setMixFrequencies(int sampleRate, int[] mixFrequencies) {
+		if(sampleRate <= 0)
+			throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+		if(mixFrequencies.length > maxChannels)
+			throw new IllegalArgumentException("Too many channels: " + mixFrequencies.length + " (max is " + maxChannels + ")");
+		this.sampleRate = sampleRate;
+		this.mixFrequencies = mixFrequencies.clone();
+		int[] increments = new int[maxChannels];
+		for (int i = 0; i < mixFrequencies.length; i++) {
+			phaseIncrements[i] = Math.round((double) mixFrequencies[i] / sampleRate * (1L << 32)) & PHASE_MASK;
+			increments[i] = (int) phaseIncrements[i];
+		}
+		phaseIncrementsAlloc.copyFrom(increments);
+		script.set_numChannels(mixFrequencies.length);
+	}
+
+	/**
+	 * Sets the phase of the next sample of all channels to 0
+	 */
+	public void resetPhases() {
+		for (int i = 0; i < maxChannels; i++)
+			phases[i] = 0;
+	}
+
+	/**
+	 * Mixes and converts a range of interleaved IQ values into one sample packet per channel. The samples are
+	 * appended to the packets. Stops automatically if one of the packets is full (all packets get the same
+	 * number of samples).
+	 *
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param out		output packets (one for each channel; all with the same layout and SAMPLE_TYPE_FLOAT32)
+	 * @return number of samples written to each packet
+	 */
+	public int mixFromInterleaved(byte[] in, int inOffset, int inLength, SamplePacket[] out) {
+		int numChannels = mixFrequencies.length;
+		if(out.length != numChannels)
+			throw new IllegalArgumentException("Number of output packets (" + out.length
+					+ ") does not match the number of channels (" + numChannels + ")");
+		if(numChannels == 0)
+			return 0;
+		input.checkRange(in, inOffset, inLength);
+		boolean interleaved = out[0].isInterleaved();
+		int count = inLength / (is8Bit ? 2 : 4);
+		for (SamplePacket packet: out) {
+			if(packet.isInt16() || packet.isInterleaved() != interleaved)
+				throw new IllegalArgumentException("All output packets must have the same layout and SAMPLE_TYPE_FLOAT32");
+			count = Math.min(count, packet.capacity() - packet.size());
+		}
+		if(count <= 0)
+			return 0;
+		input.upload(in, inOffset, count);
+		for (int i = 0; i < numChannels; i++)
+			phasesBuffer[i] = (int) phases[i];
+		phasesAlloc.copyFrom(phasesBuffer);
+
+		// one launch for all channels:
+		Script.LaunchOptions options = new Script.LaunchOptions().setX(0, count);
+		if(interleaved) {
+			if(outIQAlloc == null) {
+				outIQAlloc = Allocation.createSized(rs, Element.F32_2(rs), maxChannels * stride);
+				script.set_outIQ(outIQAlloc);
+			}
+			if(is8Bit)
+				script.forEach_mix8BitToFloat2Kernel(input.getAllocation(), options);
+			else
+				script.forEach_mix16BitToFloat2Kernel(input.getAllocation(), options);
+		} else {
+			if(outRealAlloc == null) {
+				outRealAlloc = Allocation.createSized(rs, Element.F32(rs), maxChannels * stride);
+				outImagAlloc = Allocation.createSized(rs, Element.F32(rs), maxChannels * stride);
+				script.set_outReal(outRealAlloc);
+				script.set_outImag(outImagAlloc);
+			}
+			if(is8Bit)
+				script.forEach_mix8BitToSplitKernel(input.getAllocation(), options);
+			else
+				script.forEach_mix16BitToSplitKernel(input.getAllocation(), options);
+		}
+
+		// distribute the channels to the output packets:
+		for (int i = 0; i < numChannels; i++) {
+			int size = out[i].size();
+			if(interleaved) {
+				out[i].getIQAlloc().copy1DRangeFrom(size, count, outIQAlloc, i * stride);
+			} else {
+				out[i].getReAlloc().copy1DRangeFrom(size, count, outRealAlloc, i * stride);
+				out[i].getImAlloc().copy1DRangeFrom(size, count, outImagAlloc, i * stride);
+			}
+			out[i].setSize(size + count);
+			out[i].markWrittenByScript();
+			phases[i] = (phases[i] + phaseIncrements[i] * count) & PHASE_MASK;
+		}
+		return count;
+	}
+}
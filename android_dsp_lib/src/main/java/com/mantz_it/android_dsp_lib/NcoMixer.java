@@ -0,0 +1,247 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - NCO Mixer</h1>
+ *
+ * Module:      NcoMixer.java
+ * Description: This class implements methods to do converting (8 or 16 bit -> float) and down-mixing
+ * 				at the same time by using a numerically controlled oscillator (NCO) with a 32 bit
+ * 				fixed-point phase accumulator and a cos/sin table of 2^TABLE_BITS entries.
+ * 				In contrast to Mixer_8Bit (which needs a lookup table that contains whole cosine
+ * 				periods) every mix frequency is possible (resolution: sampleRate/2^32) and the phase
+ * 				is continuous across packets and across changes of the mix frequency.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class NcoMixer {
+	public static final int TABLE_BITS = 12;			// log2 of the length of the cos/sin table (must match nco_mixer.rs)
+	private static final long PHASE_MASK = 0xffffffffL;	// phase accumulator has 32 bits
+	private RenderScript rs;
+	private ScriptC_nco_mixer script;
+	private InputAllocation input;			// raw IQ pairs (I8_2 or U16_2)
+	private Allocation lutAlloc;			// conversion table for 8 bit input
+	private Allocation sinCosAlloc;			// (cos, sin) table of the NCO
+	private boolean is8Bit;
+	private int sampleRate = 0;
+	private int mixFrequency = 0;
+	private long phase = 0;					// phase of the next sample (2^32 is one full period)
+	private long phaseIncrement = 0;		// phase increment per sample
+
+	/**
+	 * Constructor.
+	 *
+	 * @param inputSize			size of the input packets in bytes
+	 * @param bitsPerValue		8 or 16 (bits per I or Q value of the input; 16 bit values are little endian)
+	 * @param signed			true for signed input values, false for unsigned input values
+	 */
+	public NcoMixer(int inputSize, int bitsPerValue, boolean signed) {
+		if(bitsPerValue != 8 && bitsPerValue != 16)
+			throw new IllegalArgumentException("Unsupported number of bits per value: " + bitsPerValue);
+		rs = AndroidDSPLib.getRenderScript();
+		is8Bit = bitsPerValue == 8;
+		script = new ScriptC_nco_mixer(rs, AndroidDSPLib.getResources(), R.raw.nco_mixer);
+		if(is8Bit) {
+			input = new InputAllocation(rs, Element.I8_2(rs), 2, inputSize);
+			lutAlloc = Allocation.createSized(rs, Element.F32(rs), 256);
+			lutAlloc.copyFrom(LookupTable_8Bit.createByteIndexedLookupTable(signed));
+			script.bind_lut(lutAlloc);
+		} else {
+			input = new InputAllocation(rs, Element.U16_2(rs), 4, inputSize);
+			script.set_signFlip(signed ? 0x8000 : 0);
+			script.set_center(signed ? 32768.0f : 32767.5f);
+		}
+		sinCosAlloc = Allocation.createSized(rs, Element.F32_2(rs), 1 << TABLE_BITS);
+		sinCosAlloc.copyFrom(createSinCosTable());
+		script.bind_sinCosTable(sinCosAlloc);
+		script.set_inSamples(input.getAllocation());
+		script.set_phase(0);
+		script.set_phaseIncrement(0);
+	}
+
+	public int getMixFrequency() {
+		return mixFrequency;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Sets the frequency of the NCO. The phase is not changed (no phase jump at the next sample).
+	 *
+	 * @param sampleRate	sample rate of the input samples
+	 * @param mixFrequency	frequency that will be shifted to 0 Hz (may be negative)
+	 */
+	public void setMixFrequency(int sampleRate, int mixFrequency) {
+		if(sampleRate <= 0)
+			throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+		this.sampleRate = sampleRate;
+		this.mixFrequency = mixFrequency;
+		this.phaseIncrement = Math.round((double) mixFrequency / sampleRate * (1L << 32)) & PHASE_MASK;
+		script.set_phaseIncrement(phaseIncrement);
+	}
+
+	/**
+	 * Sets the phase of the next sample to 0
+	 */
+	public void resetPhase() {
+		phase = 0;
+		script.set_phase(0);
+	}
+
+	/**
+	 * Mixes and converts a range of interleaved IQ values into output allocations with split layout
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (F32)
+	 * @param outImag	output allocation for the imaginary parts (F32)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = upload(in, inOffset, inLength, length - offset);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		Script.LaunchOptions options = new Script.LaunchOptions().setX(offset, offset + count);
+		if(is8Bit)
+			script.forEach_mix8BitToSplitKernel(outReal, options);
+		else
+			script.forEach_mix16BitToSplitKernel(outReal, options);
+		advancePhase(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts a range of interleaved IQ values into an output allocation with interleaved layout (float2)
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outIQ		output allocation (F32_2)
+	 * @param offset	first index in outIQ that will be written
+	 * @param length	length of outIQ (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved(byte[] in, int inOffset, int inLength, Allocation outIQ, int offset, int length) {
+		int count = upload(in, inOffset, inLength, length - offset);
+		if(count <= 0)
+			return 0;
+		script.set_offset(offset);
+		Script.LaunchOptions options = new Script.LaunchOptions().setX(offset, offset + count);
+		if(is8Bit)
+			script.forEach_mix8BitToFloat2Kernel(outIQ, options);
+		else
+			script.forEach_mix16BitToFloat2Kernel(outIQ, options);
+		advancePhase(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts a range of interleaved IQ values into output allocations with int16 samples (SAMPLE_TYPE_INT16)
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (up to the input size of this object; incomplete IQ pairs are ignored)
+	 * @param outReal	output allocation for the real parts (I16)
+	 * @param outImag	output allocation for the imaginary parts (I16)
+	 * @param offset	first index in the output allocations that will be written
+	 * @param length	length of the output allocations (length-1 is max index that will be written)
+	 * @return number of samples written
+	 */
+	public int mixFromInterleavedToInt16(byte[] in, int inOffset, int inLength, Allocation outReal, Allocation outImag, int offset, int length) {
+		int count = upload(in, inOffset, inLength, length - offset);
+		if(count <= 0)
+			return 0;
+		script.set_outImag(outImag);
+		script.set_offset(offset);
+		Script.LaunchOptions options = new Script.LaunchOptions().setX(offset, offset + count);
+		if(is8Bit)
+			script.forEach_mix8BitToInt16Kernel(outReal, options);
+		else
+			script.forEach_mix16BitToInt16Kernel(outReal, options);
+		advancePhase(count);
+		return count;
+	}
+
+	/**
+	 * Mixes and converts a range of interleaved IQ values and appends them to a ring buffer
+	 * @param in		interleaved IQ values
+	 * @param inOffset	index of the first byte in 'in'
+	 * @param inLength	number of bytes (the number of IQ pairs must not exceed the capacity of the ring)
+	 * @param ring		output ring buffer
+	 * @return number of samples written
+	 */
+	public int mixFromInterleaved(byte[] in, int inOffset, int inLength, SampleRingBuffer ring) {
+		int count = upload(in, inOffset, inLength, Integer.MAX_VALUE);
+		if(count == 0)
+			return 0;
+		Script.LaunchOptions[] launchOptions = ring.getWriteLaunchOptions(count);
+		script.set_outImag(ring.getImAlloc());
+		script.set_offset(ring.getWriteIndex() & ring.getMask());
+		script.set_ringMask(ring.getMask());
+		for (Script.LaunchOptions options: launchOptions) {
+			if(is8Bit)
+				script.forEach_mix8BitToRingKernel(ring.getReAlloc(), options);
+			else
+				script.forEach_mix16BitToRingKernel(ring.getReAlloc(), options);
+		}
+		advancePhase(count);
+		ring.advanceWriteIndex(count);
+		return count;
+	}
+
+	/**
+	 * Creates the (cos, sin) table of the NCO. Entry i holds the values at the center of its phase interval.
+	 *
+	 * @return interleaved cos and sin values (2^TABLE_BITS pairs)
+	 */
+	static float[] createSinCosTable() {
+		int tableLength = 1 << TABLE_BITS;
+		float[] sinCos = new float[2 * tableLength];
+		for (int i = 0; i < tableLength; i++) {
+			sinCos[2*i] = (float) Math.cos(2 * Math.PI * (i + 0.5) / tableLength);
+			sinCos[2*i+1] = (float) Math.sin(2 * Math.PI * (i + 0.5) / tableLength);
+		}
+		return sinCos;
+	}
+
+	/**
+	 * Uploads the IQ pairs of the given input range that fit into the output (at most maxCount)
+	 * @return number of IQ pairs that were uploaded
+	 */
+	private int upload(byte[] in, int inOffset, int inLength, int maxCount) {
+		input.checkRange(in, inOffset, inLength);
+		int count = Math.min(inLength / (is8Bit ? 2 : 4), maxCount);
+		input.upload(in, inOffset, count);
+		return count;
+	}
+
+	private void advancePhase(int count) {
+		phase = (phase + phaseIncrement * count) & PHASE_MASK;
+		script.set_phase(phase);
+	}
+}
@@ -1,12 +1,15 @@
 package com.mantz_it.android_dsp_lib;
 
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
 import android.support.v8.renderscript.RenderScript;
 
 /**
  * Android DSP library - Quadrature Demodulator
  *
  * Module:      QuadratureDemodulator.java
- * Description: This class implements a quadrature demodulator
+ * Description: This class implements a quadrature demodulator. All demodulators share one instance of
+ * 				the script (see AndroidDSPLib); the history sample is kept in an allocation of each demodulator.
  *
  * @author Dennis Mantz
  *
@@ -29,16 +32,17 @@ import android.support.v8.renderscript.RenderScript;
  */
 public class QuadratureDemodulator {
 	private RenderScript rs;
-	private ScriptC_quad_demod script;
+	private ScriptC_quad_demod script;		// shared script (see AndroidDSPLib; lock it while it is used)
+	private Allocation history;				// last sample of the previous packet (re, im)
 	private float gain;
+	private long ringReadIndex = 0;		// index of the next sample that is read from a SampleRingBuffer
 
 	public QuadratureDemodulator(float gain) {
 		this.rs = AndroidDSPLib.getRenderScript();
 		this.gain = gain;
-		script = new ScriptC_quad_demod(rs, AndroidDSPLib.getResources(), R.raw.quad_demod);
-		script.set_gain(gain);
-		script.set_historyRe(0);
-		script.set_historyIm(0);
+		this.script = AndroidDSPLib.getQuadDemodScript();
+		this.history = Allocation.createSized(rs, Element.F32(rs), 2);
+		history.copyFrom(new float[2]);
 	}
 
 	public float getGain() {
@@ -47,7 +51,8 @@ public class QuadratureDemodulator {
 
 	/**
 	 * Demodulates the complex samples from the input sample packet to the real component of the output
-	 * sample packet. Stops automatically if output sample packet is full.
+	 * sample packet. Stops automatically if output sample packet is full. Both packets must have the
+	 * same layout.
 	 * @param in		input sample packet
 	 * @param out		output sample packet
 	 * @param offset	offset to use as start index for the input packet
@@ -55,20 +60,68 @@ public class QuadratureDemodulator {
 	 * @return number of samples written to the output sample packet
 	 */
 	public int demodulate(SamplePacket in, SamplePacket out, int offset, int length) {
-		int outSize = out.size();
-		int outputLength = Math.min(outSize + length, out.capacity());
-		script.set_offsetIn(offset);
-		script.set_offsetOut(outSize);
-		script.set_len(outputLength);
-		script.set_inReal(in.getReAlloc());
-		script.set_inImag(in.getImAlloc());
-		script.set_outReal(out.getReAlloc());
-		script.forEach_demod(out.getReAlloc());
-		out.setSize(outputLength);
-		out.setSampleRate(in.getSampleRate());
-		script.invoke_saveHistory();
-		return (outputLength-outSize);
+		synchronized (script) {
+			int outSize = out.size();
+			int outputLength = Math.min(outSize + length, out.capacity());
+			script.set_gain(gain);
+			script.bind_history(history);
+			script.set_offsetIn(offset);
+			script.set_offsetOut(outSize);
+			script.set_len(outputLength);
+			if(in.getLayout() != out.getLayout())
+				throw new IllegalArgumentException("Input and output packet must have the same layout");
+			if(in.isInt16() || out.isInt16())
+				throw new IllegalArgumentException("Demodulation is not supported for int16 packets");
+			if(in.isInterleaved()) {
+				script.set_inIQ(in.getIQAlloc());
+				script.set_outIQ(out.getIQAlloc());
+				script.forEach_demodInterleaved(out.getIQAlloc());
+			} else {
+				script.set_inReal(in.getReAlloc());
+				script.set_inImag(in.getImAlloc());
+				script.set_outReal(out.getReAlloc());
+				script.forEach_demod(out.getReAlloc());
+			}
+			out.setSize(outputLength);
+			out.markWrittenByScript();
+			out.setSampleRate(in.getSampleRate());
+			if(in.isInterleaved())
+				script.invoke_saveHistoryInterleaved();
+			else
+				script.invoke_saveHistory();
+			return (outputLength-outSize);
+		}
 	}
 
-
+	/**
+	 * Demodulates the complex samples from the input ring buffer to the real component of the output
+	 * sample packet. All samples from the read index of this demodulator up to the write index of the
+	 * ring buffer are processed. Stops automatically if output sample packet is full.
+	 * @param in		input ring buffer
+	 * @param out		output sample packet (LAYOUT_SPLIT)
+	 * @return number of samples written to the output sample packet
+	 */
+	public int demodulate(SampleRingBuffer in, SamplePacket out) {
+		synchronized (script) {
+			if(out.isInterleaved() || out.isInt16())
+				throw new IllegalArgumentException("Demodulating from a ring buffer is only supported into float packets with LAYOUT_SPLIT");
+			ringReadIndex = in.checkReadIndex(ringReadIndex, 1);
+			int outSize = out.size();
+			int count = (int) Math.max(0, Math.min(in.getWriteIndex() - ringReadIndex, out.capacity() - outSize));
+			script.set_gain(gain);
+			script.set_ringMask(in.getMask());
+			script.set_ringStart(ringReadIndex & in.getMask());
+			script.set_offsetOut(outSize);
+			script.set_len(outSize + count);
+			script.set_inReal(in.getReAlloc());
+			script.set_inImag(in.getImAlloc());
+			script.set_outReal(out.getReAlloc());
+			script.forEach_demodRing(out.getReAlloc());
+			out.setSize(outSize + count);
+			out.markWrittenByScript();
+			out.setSampleRate(in.getSampleRate());
+			ringReadIndex += count;
+			return count;
+		}
+	}
 }
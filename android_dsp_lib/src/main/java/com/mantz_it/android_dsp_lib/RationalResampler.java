@@ -0,0 +1,239 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+
+/**
+ * <h1>Android DSP library - Rational Resampler</h1>
+ *
+ * Module:      RationalResampler.java
+ * Description: This class implements a polyphase FIR resampler that changes the sample rate by the
+ * 				rational factor interpolation/decimation (L/M), e.g. 2.4 MS/s -> 48 kHz (1/50) or
+ * 				1 MS/s -> 48 kHz (6/125). The low pass filter is designed for the interpolated rate
+ * 				(sampleRate*L) and split into L polyphase branches; each output sample is calculated with
+ * 				only the taps of its branch (ceil(taps/L) multiplications). The history samples and the
+ * 				position on the interpolated grid are kept between calls (streaming).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class RationalResampler {
+	private RenderScript rs;
+	private ScriptC_rational_resampler script;
+	private Allocation polyTapsAlloc;		// polyphase taps (interpolation * tapsPerPhase)
+	private Allocation historyRealAlloc;	// last tapsPerPhase-1 input samples
+	private Allocation historyImagAlloc;
+	private int interpolation;				// L
+	private int decimation;					// M
+	private int numberOfTaps;
+	private int tapsPerPhase;
+	private long nextTime = 0;				// time of the next output on the interpolated grid (relative to the next input sample)
+
+	/**
+	 * Constructor. Designs the low pass filter with LowPassFilter.designLowPassFilter() for the interpolated
+	 * sample rate. Interpolation and decimation are reduced by their greatest common divisor.
+	 *
+	 * @param interpolation		interpolation factor L
+	 * @param decimation		decimation factor M
+	 * @param gain				pass band gain
+	 * @param sampleRate		sample rate of the input samples
+	 * @param cutOffFrequency	cut off frequency (end of pass band; should be below the lower of both Nyquist frequencies)
+	 * @param transitionWidth	width from end of pass band to start stop band
+	 * @param attenuation		attenuation of stop band
+	 */
+	public RationalResampler(int interpolation, int decimation, float gain, float sampleRate, float cutOffFrequency,
+							 float transitionWidth, float attenuation) {
+		this(interpolation / gcd(interpolation, decimation), decimation / gcd(interpolation, decimation),
+				LowPassFilter.designLowPassFilter(gain * interpolation / gcd(interpolation, decimation),
+						sampleRate * interpolation / gcd(interpolation, decimation), cutOffFrequency, transitionWidth, attenuation));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param interpolation		interpolation factor L
+	 * @param decimation		decimation factor M
+	 * @param taps				low pass taps for the interpolated sample rate (the gain has to include the factor L)
+	 */
+	public RationalResampler(int interpolation, int decimation, float[] taps) {
+		if(interpolation <= 0 || decimation <= 0)
+			throw new IllegalArgumentException("Invalid resampling factor: " + interpolation + "/" + decimation);
+		if(taps == null || taps.length == 0)
+			throw new IllegalArgumentException("taps cannot be empty!");
+		this.rs = AndroidDSPLib.getRenderScript();
+		this.interpolation = interpolation;
+		this.decimation = decimation;
+		this.numberOfTaps = taps.length;
+		this.tapsPerPhase = (taps.length + interpolation - 1) / interpolation;
+
+		// branch p gets the taps p, p+L, p+2L, ... (zero padded):
+		float[] polyTaps = new float[interpolation * tapsPerPhase];
+		for (int p = 0; p < interpolation; p++) {
+			for (int k = 0; k < tapsPerPhase; k++)
+				polyTaps[p * tapsPerPhase + k] = p + k * interpolation < taps.length ? taps[p + k * interpolation] : 0;
+		}
+		this.polyTapsAlloc = Allocation.createSized(rs, Element.F32(rs), polyTaps.length);
+		this.polyTapsAlloc.copyFrom(polyTaps);
+		this.historyRealAlloc = Allocation.createSized(rs, Element.F32(rs), Math.max(1, tapsPerPhase - 1));
+		this.historyImagAlloc = Allocation.createSized(rs, Element.F32(rs), Math.max(1, tapsPerPhase - 1));
+
+		script = new ScriptC_rational_resampler(rs, AndroidDSPLib.getResources(), R.raw.rational_resampler);
+		script.bind_polyTaps(polyTapsAlloc);
+		script.bind_historyReal(historyRealAlloc);
+		script.bind_historyImag(historyImagAlloc);
+		script.set_tapsPerPhase(tapsPerPhase);
+		script.set_interpolation(interpolation);
+		script.set_decimation(decimation);
+		reset();
+	}
+
+	public int getInterpolation() {
+		return interpolation;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public int getNumberOfTaps() {
+		return numberOfTaps;
+	}
+
+	/**
+	 * @return number of multiplications per output sample (and per component)
+	 */
+	public int getTapsPerPhase() {
+		return tapsPerPhase;
+	}
+
+	/**
+	 * Clears the history and restarts at the first polyphase branch (initial state)
+	 */
+	public void reset() {
+		nextTime = 0;
+		script.invoke_clearHistory();
+	}
+
+	/**
+	 * Resamples the complex samples from the input sample packet and appends the output to the output sample
+	 * packet. Stops automatically if the output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet (same layout as the input; SAMPLE_TYPE_FLOAT32)
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int resample(SamplePacket in, SamplePacket out, int offset, int length) {
+		if(in.getLayout() != out.getLayout() || in.isInt16() || out.isInt16())
+			throw new IllegalArgumentException("Input and output packet must have the same layout and SAMPLE_TYPE_FLOAT32");
+		int outputs = prepare(in, out, offset, length);
+		if(in.isInterleaved()) {
+			script.set_inIQ(in.getIQAlloc());
+		} else {
+			script.set_inReal(in.getReAlloc());
+			script.set_inImag(in.getImAlloc());
+		}
+		if(outputs > 0) {
+			Script.LaunchOptions options = new Script.LaunchOptions().setX(out.size(), out.size() + outputs);
+			if(in.isInterleaved()) {
+				script.forEach_resampleInterleavedKernel(out.getIQAlloc(), options);
+			} else {
+				script.set_outImag(out.getImAlloc());
+				script.forEach_resampleKernel(out.getReAlloc(), options);
+			}
+		}
+		int consumed = finish(in, out, outputs, length);
+		if(consumed > 0) {
+			if(in.isInterleaved())
+				script.invoke_updateHistoryInterleaved();
+			else
+				script.invoke_updateHistory();
+		}
+		return consumed;
+	}
+
+	/**
+	 * Resamples the real samples from the input sample packet and appends the output to the output sample
+	 * packet. Stops automatically if the output sample packet is full.
+	 * @param in		input sample packet (LAYOUT_SPLIT, SAMPLE_TYPE_FLOAT32)
+	 * @param out		output sample packet (LAYOUT_SPLIT, SAMPLE_TYPE_FLOAT32)
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int resampleReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		if(in.isInterleaved() || out.isInterleaved() || in.isInt16() || out.isInt16())
+			throw new IllegalArgumentException("Resampling real signals is only supported for float packets with LAYOUT_SPLIT");
+		int outputs = prepare(in, out, offset, length);
+		script.set_inReal(in.getReAlloc());
+		if(outputs > 0) {
+			script.forEach_resampleRealKernel(out.getReAlloc(), new Script.LaunchOptions().setX(out.size(), out.size() + outputs));
+		}
+		int consumed = finish(in, out, outputs, length);
+		if(consumed > 0)
+			script.invoke_updateRealHistory();
+		return consumed;
+	}
+
+	/**
+	 * Sets the script variables for the next launch
+	 * @return number of output samples that will be calculated
+	 */
+	private int prepare(SamplePacket in, SamplePacket out, int offset, int length) {
+		// outputs j with nextTime + j*M < length*L can be calculated with the given input samples:
+		long end = (long) length * interpolation;
+		long available = nextTime < end ? (end - nextTime - 1) / decimation + 1 : 0;
+		int outputs = (int) Math.min(available, out.capacity() - out.size());
+		script.set_firstTime(nextTime);
+		script.set_offsetIn(offset);
+		script.set_offset(out.size());
+		return outputs;
+	}
+
+	/**
+	 * Updates the output packet and the position on the interpolated grid after a launch
+	 * @return number of samples consumed from the input packet
+	 */
+	private int finish(SamplePacket in, SamplePacket out, int outputs, int length) {
+		long time = nextTime + (long) outputs * decimation;
+		int consumed = (int) Math.min(length, time / interpolation);
+		nextTime = time - (long) consumed * interpolation;
+		script.set_consumed(consumed);
+		if(outputs > 0) {
+			out.setSize(out.size() + outputs);
+			out.markWrittenByScript();
+		}
+		out.setSampleRate((int) ((long) in.getSampleRate() * interpolation / decimation));
+		return consumed;
+	}
+
+	/**
+	 * @return greatest common divisor of a and b (1 if both are zero)
+	 */
+	static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a == 0 ? 1 : Math.abs(a);
+	}
+}
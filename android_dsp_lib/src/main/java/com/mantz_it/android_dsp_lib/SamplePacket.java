@@ -2,12 +2,18 @@ package com.mantz_it.android_dsp_lib;
 
 import android.support.v8.renderscript.Allocation;
 import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
 
 /**
  * Android DSP library - Sample Packet
  *
  * Module:      SamplePacket.java
- * Description: This class encapsulates a packet of complex samples.
+ * Description: This class encapsulates a packet of complex samples. The samples are either stored
+ *              in two separate allocations (real and imaginary parts) or interleaved in a single
+ *              allocation of complex (float2) elements. The layout is chosen at construction.
+ *              The copy methods (re(), im(), copy...To()) share a scratch buffer and are synchronized on
+ *              the packet, so several threads (e.g. UI and audio thread) can read the same packet at the
+ *              same time. Writing the packet while it is read has to be coordinated by the caller.
  *
  * @author Dennis Mantz
  *
@@ -29,12 +35,23 @@ import android.support.v8.renderscript.Element;
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
  */
 public class SamplePacket {
-	private Allocation reAlloc;	// real values
-	private Allocation imAlloc;	// imag values
+	public static final int LAYOUT_SPLIT = 0;			// real and imaginary parts in separate F32 allocations
+	public static final int LAYOUT_INTERLEAVED = 1;		// complex samples in one F32_2 (float2) allocation
+	public static final int SAMPLE_TYPE_FLOAT32 = 0;	// samples are stored as 32-bit floats (F32)
+	public static final int SAMPLE_TYPE_INT16 = 1;		// samples are stored as 16-bit fixed-point values (I16, LAYOUT_SPLIT only)
+	public static final float INT16_SCALE = 16384.0f;	// int16 value that represents 1.0 (allows a range of [-2.0, 2.0) )
+	private int layout;			// memory layout of the samples (LAYOUT_SPLIT or LAYOUT_INTERLEAVED)
+	private int sampleType;		// element type of the samples (SAMPLE_TYPE_FLOAT32 or SAMPLE_TYPE_INT16)
+	private Allocation reAlloc;	// real values (LAYOUT_SPLIT only)
+	private Allocation imAlloc;	// imag values (LAYOUT_SPLIT only)
+	private Allocation iqAlloc;	// interleaved complex values (LAYOUT_INTERLEAVED only)
 	private long frequency;		// center frequency
 	private int sampleRate;		// sample rate
 	private int size;			// number of valid samples in this packet
 	private int capacity;		// max number of samples in this packet
+	private float[] scratch;	// reusable host buffer for partial copies out of the allocations (lazy; guarded by this)
+	private short[] scratchInt16;	// reusable host buffer for copies out of int16 allocations (lazy; guarded by this)
+	private boolean syncPending;	// true if a kernel was launched that writes this packet and it was not synced since (guarded by this)
 
 	/**
 	 * Constructor. This constructor wraps existing arrays and set the number of
@@ -60,16 +77,65 @@ public class SamplePacket {
 	 * @param size	number of samples in this packet ( <= arrays.length )
 	 */
 	public SamplePacket(float[] re, float im[], long frequency, int sampleRate, int size) {
+		this(re, im, frequency, sampleRate, size, LAYOUT_SPLIT);
+	}
+
+	/**
+	 * Constructor. This constructor wraps existing arrays, allows to set the
+	 * number of samples in this packet to something smaller than the array length
+	 * and selects the memory layout of the packet
+	 *
+	 * @param re			array of real parts of the sample values
+	 * @param im			array of imaginary parts of the sample values
+	 * @param frequency		center frequency
+	 * @param sampleRate	sample rate
+	 * @param size			number of samples in this packet ( <= arrays.length )
+	 * @param layout		LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 */
+	public SamplePacket(float[] re, float im[], long frequency, int sampleRate, int size, int layout) {
+		this(re, im, frequency, sampleRate, size, layout, SAMPLE_TYPE_FLOAT32);
+	}
+
+	/**
+	 * Constructor. This constructor wraps existing arrays, allows to set the
+	 * number of samples in this packet to something smaller than the array length
+	 * and selects the memory layout and the sample type of the packet.
+	 * Values are converted to int16 (see INT16_SCALE) if sampleType is SAMPLE_TYPE_INT16
+	 *
+	 * @param re			array of real parts of the sample values
+	 * @param im			array of imaginary parts of the sample values
+	 * @param frequency		center frequency
+	 * @param sampleRate	sample rate
+	 * @param size			number of samples in this packet ( <= arrays.length )
+	 * @param layout		LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 * @param sampleType	SAMPLE_TYPE_FLOAT32 or SAMPLE_TYPE_INT16
+	 */
+	public SamplePacket(float[] re, float im[], long frequency, int sampleRate, int size, int layout, int sampleType) {
 		if(re.length != im.length)
 			throw new IllegalArgumentException("Arrays must be of the same length");
 		if(size > re.length)
 			throw new IllegalArgumentException("Size must be of the smaller or equal the array length");
 
-		this.capacity = re.length;
-		this.reAlloc = Allocation.createSized(AndroidDSPLib.getRenderScript(), Element.F32(AndroidDSPLib.getRenderScript()), capacity);
-		this.imAlloc = Allocation.createSized(AndroidDSPLib.getRenderScript(), Element.F32(AndroidDSPLib.getRenderScript()), capacity);
-		this.reAlloc.copyFrom(re);
-		this.imAlloc.copyFrom(im);
+		createAllocations(re.length, layout, sampleType);
+		if(sampleType == SAMPLE_TYPE_INT16) {
+			short[] buffer = new short[capacity];
+			for (int i = 0; i < capacity; i++)
+				buffer[i] = toInt16(re[i]);
+			this.reAlloc.copyFrom(buffer);
+			for (int i = 0; i < capacity; i++)
+				buffer[i] = toInt16(im[i]);
+			this.imAlloc.copyFrom(buffer);
+		} else if(layout == LAYOUT_INTERLEAVED) {
+			float[] iq = new float[2*capacity];
+			for (int i = 0; i < capacity; i++) {
+				iq[2*i] = re[i];
+				iq[2*i+1] = im[i];
+			}
+			this.iqAlloc.copyFrom(iq);
+		} else {
+			this.reAlloc.copyFrom(re);
+			this.imAlloc.copyFrom(im);
+		}
 		this.frequency = frequency;
 		this.sampleRate = sampleRate;
 		this.size = size;
@@ -81,46 +147,296 @@ public class SamplePacket {
 	 * @param capacity	Number of samples in this packet
 	 */
 	public SamplePacket(int capacity) {
-		this.capacity = capacity;
-		this.reAlloc = Allocation.createSized(AndroidDSPLib.getRenderScript(), Element.F32(AndroidDSPLib.getRenderScript()), capacity);
-		this.imAlloc = Allocation.createSized(AndroidDSPLib.getRenderScript(), Element.F32(AndroidDSPLib.getRenderScript()), capacity);
+		this(capacity, LAYOUT_SPLIT);
+	}
+
+	/**
+	 * Constructor. This constructor allocates fresh arrays in the given layout
+	 *
+	 * @param capacity	Number of samples in this packet
+	 * @param layout	LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 */
+	public SamplePacket(int capacity, int layout) {
+		this(capacity, layout, SAMPLE_TYPE_FLOAT32);
+	}
+
+	/**
+	 * Constructor. This constructor allocates fresh arrays in the given layout and sample type
+	 *
+	 * @param capacity		Number of samples in this packet
+	 * @param layout		LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 * @param sampleType	SAMPLE_TYPE_FLOAT32 or SAMPLE_TYPE_INT16 (LAYOUT_SPLIT only)
+	 */
+	public SamplePacket(int capacity, int layout, int sampleType) {
+		createAllocations(capacity, layout, sampleType);
 		this.frequency = 0;
 		this.sampleRate = 0;
 		this.size = 0;
 	}
 
+	private void createAllocations(int capacity, int layout, int sampleType) {
+		RenderScript rs = AndroidDSPLib.getRenderScript();
+		this.capacity = capacity;
+		this.layout = layout;
+		this.sampleType = sampleType;
+		if(sampleType != SAMPLE_TYPE_FLOAT32 && sampleType != SAMPLE_TYPE_INT16)
+			throw new IllegalArgumentException("Invalid sample type: " + sampleType);
+		if(sampleType == SAMPLE_TYPE_INT16 && layout != LAYOUT_SPLIT)
+			throw new IllegalArgumentException("Sample type int16 is only supported with LAYOUT_SPLIT");
+		switch (layout) {
+			case LAYOUT_SPLIT:
+				Element element = sampleType == SAMPLE_TYPE_INT16 ? Element.I16(rs) : Element.F32(rs);
+				this.reAlloc = Allocation.createSized(rs, element, capacity);
+				this.imAlloc = Allocation.createSized(rs, element, capacity);
+				break;
+			case LAYOUT_INTERLEAVED:
+				this.iqAlloc = Allocation.createSized(rs, Element.F32_2(rs), capacity);
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid layout: " + layout);
+		}
+	}
+
+	/**
+	 * @return memory layout of this packet (LAYOUT_SPLIT or LAYOUT_INTERLEAVED)
+	 */
+	public int getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return true if the samples are stored interleaved in a single float2 allocation
+	 */
+	public boolean isInterleaved() {
+		return layout == LAYOUT_INTERLEAVED;
+	}
+
+	/**
+	 * @return element type of the samples (SAMPLE_TYPE_FLOAT32 or SAMPLE_TYPE_INT16)
+	 */
+	public int getSampleType() {
+		return sampleType;
+	}
+
+	/**
+	 * @return true if the samples are stored as int16 fixed-point values (see INT16_SCALE)
+	 */
+	public boolean isInt16() {
+		return sampleType == SAMPLE_TYPE_INT16;
+	}
+
 	/**
-	 * @return the reference to the imaginary Allocation object
+	 * @return the reference to the interleaved (float2) Allocation object (null if layout is LAYOUT_SPLIT)
+	 */
+	public Allocation getIQAlloc() {
+		return iqAlloc;
+	}
+
+	/**
+	 * @return the reference to the imaginary Allocation object (null if layout is LAYOUT_INTERLEAVED)
 	 */
 	public Allocation getImAlloc() {
 		return imAlloc;
 	}
 
 	/**
-	 * @return the reference to the real Allocation object
+	 * @return the reference to the real Allocation object (null if layout is LAYOUT_INTERLEAVED)
 	 */
 	public Allocation getReAlloc() {
 		return reAlloc;
 	}
 
 	/**
-	 * @return the reference to the array of real parts
+	 * Allocates a new array and copies all real parts (capacity) into it.
+	 * Use copyReTo() to avoid the allocation.
+	 *
+	 * @return array of real parts
 	 */
 	public float[] re() {
 		float[] out = new float[capacity];
-		reAlloc.copyTo(out);
+		copyReTo(out, 0, 0, capacity);
 		return out;
 	}
 
 	/**
-	 * @return the reference to the array of imaginary parts
+	 * Allocates a new array and copies all imaginary parts (capacity) into it.
+	 * Use copyImTo() to avoid the allocation.
+	 *
+	 * @return array of imaginary parts
 	 */
 	public float[] im() {
 		float[] out = new float[capacity];
-		imAlloc.copyTo(out);
+		copyImTo(out, 0, 0, capacity);
 		return out;
 	}
 
+	/**
+	 * Copies the valid real parts (index 0 to size()-1) into the given array
+	 *
+	 * @param dst		destination array (length >= size())
+	 * @return number of samples copied (= size())
+	 */
+	public int copyReTo(float[] dst) {
+		copyReTo(dst, 0, 0, size);
+		return size;
+	}
+
+	/**
+	 * Copies the valid imaginary parts (index 0 to size()-1) into the given array
+	 *
+	 * @param dst		destination array (length >= size())
+	 * @return number of samples copied (= size())
+	 */
+	public int copyImTo(float[] dst) {
+		copyImTo(dst, 0, 0, size);
+		return size;
+	}
+
+	/**
+	 * Copies a range of real parts into the given array without allocating memory
+	 *
+	 * @param dst		destination array
+	 * @param srcOff	index of the first sample in this packet
+	 * @param dstOff	index of the first element in dst that will be written
+	 * @param len		number of samples to copy
+	 */
+	public synchronized void copyReTo(float[] dst, int srcOff, int dstOff, int len) {
+		if(layout == LAYOUT_INTERLEAVED)
+			copyComponentFromIQAllocation(0, dst, srcOff, dstOff, len);
+		else
+			copyFromAllocation(reAlloc, dst, srcOff, dstOff, len);
+	}
+
+	/**
+	 * Copies a range of imaginary parts into the given array without allocating memory
+	 *
+	 * @param dst		destination array
+	 * @param srcOff	index of the first sample in this packet
+	 * @param dstOff	index of the first element in dst that will be written
+	 * @param len		number of samples to copy
+	 */
+	public synchronized void copyImTo(float[] dst, int srcOff, int dstOff, int len) {
+		if(layout == LAYOUT_INTERLEAVED)
+			copyComponentFromIQAllocation(1, dst, srcOff, dstOff, len);
+		else
+			copyFromAllocation(imAlloc, dst, srcOff, dstOff, len);
+	}
+
+	/**
+	 * Copies the valid samples (index 0 to size()-1) interleaved (re, im, re, im, ...) into the given array
+	 *
+	 * @param dst		destination array (length >= 2*size())
+	 * @return number of samples copied (= size())
+	 */
+	public int copyInterleavedTo(float[] dst) {
+		copyInterleavedTo(dst, 0, 0, size);
+		return size;
+	}
+
+	/**
+	 * Copies a range of samples interleaved (re, im, re, im, ...) into the given array
+	 * without allocating memory
+	 *
+	 * @param dst		destination array
+	 * @param srcOff	index of the first sample in this packet
+	 * @param dstOff	index of the first element in dst that will be written
+	 * @param len		number of samples to copy (2*len floats are written)
+	 */
+	public synchronized void copyInterleavedTo(float[] dst, int srcOff, int dstOff, int len) {
+		checkRange(dst, srcOff, dstOff, len, 2);
+		float[] buffer = getScratch();
+		if(layout == LAYOUT_INTERLEAVED) {
+			if(srcOff == 0 && dstOff == 0 && len == capacity && dst.length == 2*capacity) {
+				iqAlloc.copyTo(dst);
+			} else {
+				iqAlloc.copyTo(buffer);
+				System.arraycopy(buffer, 2*srcOff, dst, dstOff, 2*len);
+			}
+			syncPending = false;
+			return;
+		}
+		copyToScratch(reAlloc);
+		for (int i = 0; i < len; i++)
+			dst[dstOff + 2*i] = buffer[srcOff + i];
+		copyToScratch(imAlloc);
+		for (int i = 0; i < len; i++)
+			dst[dstOff + 2*i + 1] = buffer[srcOff + i];
+		syncPending = false;
+	}
+
+	/**
+	 * Copies a range out of the given allocation. If the whole allocation is requested and dst
+	 * has exactly the right length, the data is copied directly. Otherwise the allocation is
+	 * copied to the (reused) scratch buffer first.
+	 */
+	private void copyFromAllocation(Allocation alloc, float[] dst, int srcOff, int dstOff, int len) {
+		checkRange(dst, srcOff, dstOff, len, 1);
+		if(sampleType == SAMPLE_TYPE_FLOAT32 && srcOff == 0 && dstOff == 0 && len == capacity && dst.length == capacity) {
+			alloc.copyTo(dst);
+			syncPending = false;
+			return;
+		}
+		float[] buffer = copyToScratch(alloc);
+		System.arraycopy(buffer, srcOff, dst, dstOff, len);
+	}
+
+	/**
+	 * Copies the whole (split layout) allocation into the scratch buffer. int16 values are
+	 * converted to float.
+	 */
+	private float[] copyToScratch(Allocation alloc) {
+		float[] buffer = getScratch();
+		if(sampleType == SAMPLE_TYPE_INT16) {
+			if(scratchInt16 == null)
+				scratchInt16 = new short[capacity];
+			alloc.copyTo(scratchInt16);
+			for (int i = 0; i < capacity; i++)
+				buffer[i] = scratchInt16[i] / INT16_SCALE;
+		} else {
+			alloc.copyTo(buffer);
+		}
+		syncPending = false;	// copyTo() waits for all kernels that were launched before
+		return buffer;
+	}
+
+	/**
+	 * Converts a float sample value into the int16 fixed-point format (rounded and saturated)
+	 *
+	 * @param value		sample value
+	 * @return value * INT16_SCALE as short
+	 */
+	static short toInt16(float value) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value * INT16_SCALE)));
+	}
+
+	/**
+	 * Copies a range of one component (0: real, 1: imag) out of the interleaved allocation
+	 * by using the scratch buffer.
+	 */
+	private void copyComponentFromIQAllocation(int component, float[] dst, int srcOff, int dstOff, int len) {
+		checkRange(dst, srcOff, dstOff, len, 1);
+		float[] buffer = getScratch();
+		iqAlloc.copyTo(buffer);
+		syncPending = false;
+		for (int i = 0; i < len; i++)
+			dst[dstOff + i] = buffer[2*(srcOff + i) + component];
+	}
+
+	private void checkRange(float[] dst, int srcOff, int dstOff, int len, int stride) {
+		if(srcOff < 0 || dstOff < 0 || len < 0)
+			throw new IllegalArgumentException("Offsets and length must not be negative");
+		if(srcOff + len > capacity)
+			throw new IllegalArgumentException("Range exceeds the capacity of the packet");
+		if(dstOff + len*stride > dst.length)
+			throw new IllegalArgumentException("Range exceeds the length of the destination array");
+	}
+
+	private float[] getScratch() {
+		if(scratch == null)
+			scratch = new float[layout == LAYOUT_INTERLEAVED ? 2*capacity : capacity];
+		return scratch;
+	}
+
 	/**
 	 * @return the length of the arrays
 	 */
@@ -175,11 +491,36 @@ public class SamplePacket {
 
 	/**
 	 * Syncs the Allocations in this sample packet. This will block until all current calculations
-	 * (render scripts) on reAlloc and imAlloc are done. This is only necessary when accessing
-	 * the allocations directly - not if accessing through re() and im().
+	 * (render scripts) on reAlloc and imAlloc (or iqAlloc) are done. This is only necessary when accessing
+	 * the allocations directly - not if accessing through re(), im() or the copy...To() methods.
+	 * Does nothing if no kernel has written to this packet since the last sync (see isSyncPending()).
+	 * Use ScriptFence to wait for the result without blocking.
+	 */
+	public synchronized void sync() {
+		if(!syncPending)
+			return;
+		if(layout == LAYOUT_INTERLEAVED) {
+			iqAlloc.syncAll(Allocation.USAGE_SCRIPT);
+		} else {
+			reAlloc.syncAll(Allocation.USAGE_SCRIPT);
+			imAlloc.syncAll(Allocation.USAGE_SCRIPT);
+		}
+		syncPending = false;
+	}
+
+	/**
+	 * @return true if a kernel was launched that writes to this packet and the packet was not synced
+	 * (or read by the host) since
+	 */
+	public synchronized boolean isSyncPending() {
+		return syncPending;
+	}
+
+	/**
+	 * Marks this packet as written by a kernel. Has to be called by all classes that launch kernels
+	 * which write into the allocations of this packet.
 	 */
-	public void sync() {
-		reAlloc.syncAll(Allocation.USAGE_SCRIPT);
-		imAlloc.syncAll(Allocation.USAGE_SCRIPT);
+	synchronized void markWrittenByScript() {
+		syncPending = true;
 	}
 }
@@ -0,0 +1,215 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Android DSP library - Sample Packet Pool
+ *
+ * Module:      SamplePacketPool.java
+ * Description: This class recycles SamplePackets to avoid the (expensive) creation of new
+ *              Allocations in streaming pipelines. Packets are kept in buckets with power-of-two
+ *              capacities (separately for each layout and sample type). Every acquired packet has to be
+ *              released to the pool again.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class SamplePacketPool {
+	private static final String LOGTAG = "SamplePacketPool";
+	private static final int MAX_BUCKETS = 31;					// capacities 2^0 ... 2^30
+	private ArrayDeque<SamplePacket>[][][] buckets;				// idle packets. index is [sampleType][layout][log2(capacity)]
+	private Map<SamplePacket, Throwable> outstanding;			// acquired packets (and where they were acquired)
+	private int maxIdlePerBucket;								// high water mark: max number of idle packets per bucket
+	private boolean trackAllocationSites;						// if true, the stack trace of each acquire() is kept
+	private int highWaterMark = 0;								// max number of packets that were outstanding at once
+	private int createdPackets = 0;								// number of SamplePackets created by this pool
+	private int droppedPackets = 0;								// number of released packets that exceeded maxIdlePerBucket
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxIdlePerBucket		max number of idle packets kept in each capacity bucket. Packets
+	 *                              released to a full bucket are dropped (left to the garbage collector)
+	 * @param trackAllocationSites	if true, the stack trace of each acquire() call is recorded and
+	 *                              printed by checkForLeaks() (costs performance; use for debugging)
+	 */
+	@SuppressWarnings("unchecked")
+	public SamplePacketPool(int maxIdlePerBucket, boolean trackAllocationSites) {
+		if(maxIdlePerBucket < 0)
+			throw new IllegalArgumentException("maxIdlePerBucket must not be negative");
+		this.maxIdlePerBucket = maxIdlePerBucket;
+		this.trackAllocationSites = trackAllocationSites;
+		this.buckets = new ArrayDeque[2][2][MAX_BUCKETS];
+		this.outstanding = new IdentityHashMap<SamplePacket, Throwable>();
+	}
+
+	/**
+	 * Constructor. Creates a pool without allocation site tracking.
+	 *
+	 * @param maxIdlePerBucket		max number of idle packets kept in each capacity bucket
+	 */
+	public SamplePacketPool(int maxIdlePerBucket) {
+		this(maxIdlePerBucket, false);
+	}
+
+	/**
+	 * Returns a packet with a capacity of at least minCapacity (rounded up to the next power of two).
+	 * The packet is empty (size 0), has frequency and sample rate set to 0 and uses LAYOUT_SPLIT.
+	 *
+	 * @param minCapacity	minimum number of samples the packet must be able to hold
+	 * @return a SamplePacket that has to be given back with release()
+	 */
+	public SamplePacket acquire(int minCapacity) {
+		return acquire(minCapacity, SamplePacket.LAYOUT_SPLIT);
+	}
+
+	/**
+	 * Returns a packet with the given layout and a capacity of at least minCapacity (rounded up to
+	 * the next power of two). The packet is empty (size 0), has frequency and sample rate set to 0 and
+	 * uses SAMPLE_TYPE_FLOAT32.
+	 *
+	 * @param minCapacity	minimum number of samples the packet must be able to hold
+	 * @param layout		SamplePacket.LAYOUT_SPLIT or SamplePacket.LAYOUT_INTERLEAVED
+	 * @return a SamplePacket that has to be given back with release()
+	 */
+	public SamplePacket acquire(int minCapacity, int layout) {
+		return acquire(minCapacity, layout, SamplePacket.SAMPLE_TYPE_FLOAT32);
+	}
+
+	/**
+	 * Returns a packet with the given layout and sample type and a capacity of at least minCapacity (rounded
+	 * up to the next power of two). The packet is empty (size 0) and has frequency and sample rate set to 0.
+	 *
+	 * @param minCapacity	minimum number of samples the packet must be able to hold
+	 * @param layout		SamplePacket.LAYOUT_SPLIT or SamplePacket.LAYOUT_INTERLEAVED
+	 * @param sampleType	SamplePacket.SAMPLE_TYPE_FLOAT32 or SamplePacket.SAMPLE_TYPE_INT16 (LAYOUT_SPLIT only)
+	 * @return a SamplePacket that has to be given back with release()
+	 */
+	public synchronized SamplePacket acquire(int minCapacity, int layout, int sampleType) {
+		if(layout != SamplePacket.LAYOUT_SPLIT && layout != SamplePacket.LAYOUT_INTERLEAVED)
+			throw new IllegalArgumentException("Invalid layout: " + layout);
+		if(sampleType != SamplePacket.SAMPLE_TYPE_FLOAT32 && sampleType != SamplePacket.SAMPLE_TYPE_INT16)
+			throw new IllegalArgumentException("Invalid sample type: " + sampleType);
+		int bucket = bucketIndex(minCapacity);
+		SamplePacket packet = null;
+		if(buckets[sampleType][layout][bucket] != null)
+			packet = buckets[sampleType][layout][bucket].poll();
+		if(packet == null) {
+			packet = new SamplePacket(1 << bucket, layout, sampleType);
+			createdPackets++;
+		}
+		packet.setSize(0);
+		packet.setFrequency(0);
+		packet.setSampleRate(0);
+		outstanding.put(packet, trackAllocationSites ? new Throwable("SamplePacket acquired here") : null);
+		if(outstanding.size() > highWaterMark)
+			highWaterMark = outstanding.size();
+		return packet;
+	}
+
+	/**
+	 * Gives a packet back to the pool. The packet must not be used by the caller afterwards.
+	 *
+	 * @param packet	packet that was returned by acquire()
+	 */
+	public synchronized void release(SamplePacket packet) {
+		if(!outstanding.containsKey(packet))
+			throw new IllegalArgumentException("Packet was not acquired from this pool or is already released!");
+		outstanding.remove(packet);
+		int bucket = bucketIndex(packet.capacity());
+		ArrayDeque<SamplePacket>[] layoutBuckets = buckets[packet.getSampleType()][packet.getLayout()];
+		if(layoutBuckets[bucket] == null)
+			layoutBuckets[bucket] = new ArrayDeque<SamplePacket>();
+		if(layoutBuckets[bucket].size() < maxIdlePerBucket)
+			layoutBuckets[bucket].push(packet);
+		else
+			droppedPackets++;
+	}
+
+	/**
+	 * @return number of packets that are currently acquired and not yet released
+	 */
+	public synchronized int getOutstandingCount() {
+		return outstanding.size();
+	}
+
+	/**
+	 * @return max number of packets that were acquired at the same time
+	 */
+	public synchronized int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * @return number of packets that were created by this pool
+	 */
+	public synchronized int getCreatedCount() {
+		return createdPackets;
+	}
+
+	/**
+	 * @return number of released packets that were dropped because their bucket was full
+	 */
+	public synchronized int getDroppedCount() {
+		return droppedPackets;
+	}
+
+	/**
+	 * Logs all packets that are currently acquired (including the stack trace of the acquire()
+	 * call if allocation site tracking is enabled). Should be called at a point where all
+	 * packets are expected to be released (e.g. when the pipeline is stopped).
+	 *
+	 * @return number of packets that are not released
+	 */
+	public synchronized int checkForLeaks() {
+		for (Map.Entry<SamplePacket, Throwable> entry: outstanding.entrySet()) {
+			if(entry.getValue() != null)
+				Log.w(LOGTAG, "checkForLeaks: packet with capacity " + entry.getKey().capacity() + " was not released!", entry.getValue());
+			else
+				Log.w(LOGTAG, "checkForLeaks: packet with capacity " + entry.getKey().capacity() + " was not released!");
+		}
+		return outstanding.size();
+	}
+
+	/**
+	 * Drops all idle packets. Outstanding packets are not affected.
+	 */
+	public synchronized void clear() {
+		for (ArrayDeque<SamplePacket>[][] typeBuckets: buckets)
+			for (ArrayDeque<SamplePacket>[] layoutBuckets: typeBuckets)
+				Arrays.fill(layoutBuckets, null);
+	}
+
+	/**
+	 * @return the index of the bucket (log2 of the capacity) for the given minimum capacity
+	 */
+	private static int bucketIndex(int minCapacity) {
+		if(minCapacity <= 0)
+			throw new IllegalArgumentException("Capacity must be greater than zero");
+		int bucket = 32 - Integer.numberOfLeadingZeros(minCapacity - 1);
+		if(bucket >= MAX_BUCKETS)
+			throw new IllegalArgumentException("Capacity is too large: " + minCapacity);
+		return bucket;
+	}
+}
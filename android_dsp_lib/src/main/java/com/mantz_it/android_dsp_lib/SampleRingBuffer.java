@@ -0,0 +1,203 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.Allocation;
+import android.support.v8.renderscript.Element;
+import android.support.v8.renderscript.RenderScript;
+import android.support.v8.renderscript.Script;
+import android.util.Log;
+
+/**
+ * Android DSP library - Sample Ring Buffer
+ *
+ * Module:      SampleRingBuffer.java
+ * Description: This class encapsulates a circular buffer of complex samples for continuous streaming.
+ *              Producers (IQConverter) append samples at the write index. Consumers (FirFilter,
+ *              QuadratureDemodulator) keep their own read index and read overlapping windows in place
+ *              (the filter history stays inside the buffer, so no remainder copies are necessary).
+ *              The capacity is a power of two and all indices are wrapped by masking.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class SampleRingBuffer {
+	private static final String LOGTAG = "SampleRingBuffer";
+	private Allocation reAlloc;	// real values
+	private Allocation imAlloc;	// imag values
+	private long frequency;		// center frequency
+	private int sampleRate;		// sample rate
+	private int capacity;		// number of samples in the buffer (power of two)
+	private int mask;			// capacity - 1
+	private long writeIndex;	// total number of samples that were written to the buffer
+
+	/**
+	 * Constructor. Allocates a ring buffer with a capacity of at least minCapacity samples
+	 * (rounded up to the next power of two). The buffer is initialized with zeros.
+	 *
+	 * @param minCapacity	minimum number of samples in the buffer
+	 */
+	public SampleRingBuffer(int minCapacity) {
+		if(minCapacity <= 0 || minCapacity > (1 << 30))
+			throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+		RenderScript rs = AndroidDSPLib.getRenderScript();
+		this.capacity = Integer.highestOneBit(minCapacity);
+		if(capacity < minCapacity)
+			capacity <<= 1;
+		this.mask = capacity - 1;
+		this.reAlloc = Allocation.createSized(rs, Element.F32(rs), capacity);
+		this.imAlloc = Allocation.createSized(rs, Element.F32(rs), capacity);
+		float[] zeros = new float[capacity];
+		this.reAlloc.copyFrom(zeros);
+		this.imAlloc.copyFrom(zeros);
+		this.writeIndex = 0;
+		this.frequency = 0;
+		this.sampleRate = 0;
+	}
+
+	/**
+	 * @return the reference to the real Allocation object
+	 */
+	public Allocation getReAlloc() {
+		return reAlloc;
+	}
+
+	/**
+	 * @return the reference to the imaginary Allocation object
+	 */
+	public Allocation getImAlloc() {
+		return imAlloc;
+	}
+
+	/**
+	 * @return number of samples in the buffer (power of two)
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return mask to wrap indices into the buffer (capacity - 1)
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return total number of samples that were written to the buffer since its creation
+	 */
+	public long getWriteIndex() {
+		return writeIndex;
+	}
+
+	/**
+	 * @return center frequency at which these samples where recorded
+	 */
+	public long getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * @return sample rate at which these samples were recorded
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Sets the center frequency for this ring buffer
+	 * @param frequency		center frequency at which these samples were recorded
+	 */
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	/**
+	 * Sets the sample rate for this ring buffer
+	 * @param sampleRate		sample rate at which these samples were recorded
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Copies samples out of the ring buffer. Intended for debugging and tests.
+	 *
+	 * @param index		global index (see getWriteIndex()) of the first sample
+	 * @param re		destination array for the real parts
+	 * @param im		destination array for the imaginary parts
+	 * @param len		number of samples to copy
+	 */
+	public void copyTo(long index, float[] re, float[] im, int len) {
+		if(len > capacity || index < writeIndex - capacity || index + len > writeIndex)
+			throw new IllegalArgumentException("Range is not inside the buffer");
+		float[] buffer = new float[capacity];
+		reAlloc.copyTo(buffer);
+		for (int i = 0; i < len; i++)
+			re[i] = buffer[(int)((index + i) & mask)];
+		imAlloc.copyTo(buffer);
+		for (int i = 0; i < len; i++)
+			im[i] = buffer[(int)((index + i) & mask)];
+	}
+
+	/**
+	 * Returns the launch options that cover count samples starting at the write position. These are
+	 * one or two ranges (if the write region wraps around the end of the buffer).
+	 *
+	 * @param count		number of samples that will be written (<= capacity)
+	 * @return launch options for the kernel(s) that write the samples
+	 */
+	Script.LaunchOptions[] getWriteLaunchOptions(int count) {
+		if(count > capacity)
+			throw new IllegalArgumentException("Cannot write " + count + " samples at once into a ring buffer of capacity " + capacity);
+		int start = (int) (writeIndex & mask);
+		if(start + count <= capacity)
+			return new Script.LaunchOptions[] {new Script.LaunchOptions().setX(start, start + count)};
+		return new Script.LaunchOptions[] {
+				new Script.LaunchOptions().setX(start, capacity),
+				new Script.LaunchOptions().setX(0, start + count - capacity)};
+	}
+
+	/**
+	 * Moves the write index forward after samples were written (by the producer)
+	 *
+	 * @param count		number of samples that were written
+	 */
+	void advanceWriteIndex(int count) {
+		writeIndex += count;
+	}
+
+	/**
+	 * Checks that the samples of a consumer are still in the buffer. The consumer needs all samples
+	 * from readIndex-history up to the write index. If the producer has already overwritten some of
+	 * them (overrun), the read index is moved forward and a warning is logged.
+	 *
+	 * @param readIndex		global index of the next sample the consumer will read
+	 * @param history		number of samples before readIndex that are needed by the consumer
+	 * @return the (possibly corrected) read index
+	 */
+	long checkReadIndex(long readIndex, int history) {
+		if(history >= capacity)
+			throw new IllegalArgumentException("Ring buffer is too small (capacity " + capacity + ") for a history of " + history + " samples");
+		long oldest = writeIndex - capacity + history;
+		if(readIndex < oldest) {
+			Log.w(LOGTAG, "checkReadIndex: overrun! " + (oldest - readIndex) + " samples were lost.");
+			return oldest;
+		}
+		return readIndex;
+	}
+}
@@ -0,0 +1,178 @@
+package com.mantz_it.android_dsp_lib;
+
+import android.support.v8.renderscript.RenderScript;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Android DSP library - Script Fence
+ *
+ * Module:      ScriptFence.java
+ * Description: This class is a non-blocking completion handle for the kernels that were launched on
+ *              the RenderScript context. A fence is inserted after the kernels of interest and is
+ *              signaled (by a message from fence.rs) as soon as all kernels launched before it are
+ *              finished. This allows the caller to queue the next packet while the current one is
+ *              still processed and to wait (or get a callback) only when the result is needed.
+ *
+ *              Note: The first call to insert() installs a message handler on the RenderScript
+ *              context of AndroidDSPLib (replacing a handler that was set by the application).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class ScriptFence {
+	private static final String LOGTAG = "ScriptFence";
+	private static final int MESSAGE_ID = 0x46454e43;		// id of the RenderScript messages sent by fence.rs
+	private static final Map<Integer, ScriptFence> pendingFences = new HashMap<Integer, ScriptFence>();
+	private static ScriptC_fence script = null;				// shared by all fences
+	private static RenderScript scriptRenderScript = null;	// context for which the script was created
+	private static int nextId = 0;
+	private final int id;
+	private boolean signaled = false;		// message was received (callback is executed)
+	private boolean done = false;			// message was received and callback is finished
+	private Runnable onCompletion = null;
+
+	private ScriptFence(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Inserts a new fence into the RenderScript context. The fence is signaled when all kernels
+	 * that were launched before this call are finished. This call does not block.
+	 *
+	 * @return the new fence
+	 */
+	public static ScriptFence insert() {
+		ScriptC_fence script = getScript();
+		ScriptFence fence;
+		synchronized (pendingFences) {
+			fence = new ScriptFence(nextId++);
+			pendingFences.put(fence.id, fence);
+		}
+		script.invoke_signal(fence.id);
+		return fence;
+	}
+
+	/**
+	 * @return true if all kernels that were launched before this fence are finished
+	 */
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Blocks until the fence is signaled
+	 *
+	 * @throws InterruptedException		if the thread was interrupted while waiting
+	 */
+	public synchronized void await() throws InterruptedException {
+		while (!done)
+			wait();
+	}
+
+	/**
+	 * Blocks until the fence is signaled or the timeout is reached
+	 *
+	 * @param timeoutMillis		max time to wait in milliseconds
+	 * @return true if the fence was signaled; false if the timeout was reached
+	 * @throws InterruptedException		if the thread was interrupted while waiting
+	 */
+	public synchronized boolean await(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!done) {
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			wait(remaining);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets a callback that is executed when the fence is signaled. The callback runs on the message
+	 * thread of RenderScript (or immediately on the calling thread if the fence is already signaled)
+	 * and must not block. await() returns after the callback is finished.
+	 *
+	 * @param onCompletion		callback
+	 */
+	public void setOnCompletion(Runnable onCompletion) {
+		synchronized (this) {
+			if(!signaled) {
+				this.onCompletion = onCompletion;
+				return;
+			}
+		}
+		onCompletion.run();
+	}
+
+	private void signal() {
+		Runnable callback;
+		synchronized (this) {
+			signaled = true;
+			callback = onCompletion;
+			onCompletion = null;
+		}
+		if(callback != null)
+			callback.run();
+		synchronized (this) {
+			done = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return the fence script. It is (re)created if the RenderScript context of AndroidDSPLib changed
+	 */
+	private static synchronized ScriptC_fence getScript() {
+		RenderScript rs = AndroidDSPLib.getRenderScript();
+		if(script == null || scriptRenderScript != rs) {
+			RenderScript.RSMessageHandler oldHandler = rs.getMessageHandler();
+			if(oldHandler != null && !(oldHandler instanceof MessageHandler))
+				Log.w(LOGTAG, "getScript: replacing the message handler of the RenderScript context!");
+			rs.setMessageHandler(new MessageHandler());
+			script = new ScriptC_fence(rs, AndroidDSPLib.getResources(), R.raw.fence);
+			script.set_messageId(MESSAGE_ID);
+			scriptRenderScript = rs;
+		}
+		return script;
+	}
+
+	/**
+	 * Receives the messages of fence.rs and signals the corresponding fences
+	 */
+	private static class MessageHandler extends RenderScript.RSMessageHandler {
+		@Override
+		public void run() {
+			if(mID != MESSAGE_ID || mData == null || mData.length < 1) {
+				Log.w(LOGTAG, "MessageHandler: unexpected message with id " + mID);
+				return;
+			}
+			ScriptFence fence;
+			synchronized (pendingFences) {
+				fence = pendingFences.remove(mData[0]);
+			}
+			if(fence != null)
+				fence.signal();
+			else
+				Log.e(LOGTAG, "MessageHandler: unknown fence: " + mData[0]);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Android DSP library - Channel Extractor for 8 bit input values
+ *
+ * Module:      channel_extractor.rs
+ * Description: This kernel converts, mixes, filters and decimates interleaved 8 bit IQ values in one
+ *              pass. Only the decimated output samples are calculated. The mixer is moved behind the
+ *              filter: the real low pass taps h[i] are replaced by the complex taps
+ *              h[i] * exp(j*w*(filterOrder-1-i)) (band pass at the channel frequency) and each output
+ *              is rotated by exp(-j*phase) of its newest input sample. This is equal to mixing every
+ *              input sample with the NCO phase (phase + phaseIncrement*sample) and filtering afterwards.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+#define PHASE_TO_RADIANS 1.4629180792671596e-9f    // 2*pi / 2^32
+
+rs_allocation inSamples;   // Input Allocation (I8_2): filterOrder-1 history IQ pairs followed by the IQ pairs of the packet
+rs_allocation outImag;     // Output Allocation for imag array (split kernel only)
+float *lut;                // lookup table (length 256) indexed by the unsigned value of the byte
+float2 *taps;              // complex taps: tap[i] * exp(j*phaseIncrement*(filterOrder-1-i))
+uint32_t filterOrder;      // Length of the taps array
+uint32_t decimation;       // Decimation factor
+uint32_t firstSample;      // index (in inSamples) of the oldest input sample of the first output
+uint32_t offset;           // Start index in the output allocations (first index that will be written)
+uint32_t phase;            // NCO phase of the first IQ pair of the packet (2^32 is one full period)
+uint32_t phaseIncrement;   // phase increment per sample: mixFrequency/sampleRate * 2^32
+
+/*
+ * Calculates the output sample with the given index (relative to the first output of the packet)
+ */
+static float2 extract(uint32_t output) {
+    uint32_t start = firstSample + output * decimation;
+    uint32_t i;
+    char2 in;
+    float re;
+    float im;
+    float2 tap;
+    float2 acc = 0;
+    for(i=0; i<filterOrder; i++) {
+        in = rsGetElementAt_char2(inSamples, start + i);
+        re = lut[(uchar) in.x];
+        im = lut[(uchar) in.y];
+        tap = taps[i];
+        acc.x += tap.x * re - tap.y * im;
+        acc.y += tap.x * im + tap.y * re;
+    }
+
+    // the newest input sample has the index 'start' inside the packet (the history is filterOrder-1 long):
+    float cosValue;
+    float sinValue = sincos((int32_t) (phase + phaseIncrement * start) * PHASE_TO_RADIANS, &cosValue);
+    float2 result;
+    result.x = acc.x * cosValue + acc.y * sinValue;
+    result.y = acc.y * cosValue - acc.x * sinValue;
+    return result;
+}
+
+/*
+ * Kernel: extract the channel into split float samples (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of outputs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void extractToSplitKernel(float *out, uint32_t x) {
+    float2 sample = extract(x - offset);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernel: extract the channel into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of outputs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void extractToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = extract(x - offset);
+}
@@ -0,0 +1,128 @@
+/**
+ * Android DSP library - CIC Decimator
+ *
+ * Module:      cic_decimator.rs
+ * Description: This kernel implements a cascaded integrator-comb (CIC) decimator of the given order and
+ *              ratio on raw 8 bit or 16 bit IQ pairs. Only integer additions are used (64 bit registers,
+ *              the wrap-around of the integrators cancels in the combs). The integrators are recursive,
+ *              so each thread calculates a segment of segmentLength consecutive outputs: it starts with
+ *              cleared integrators order*ratio-1 samples before the first output of its segment (the
+ *              impulse response of the CIC is only order*(ratio-1)+1 samples long, so the outputs are
+ *              exact) and runs the integrators at the input rate and the combs at the output rate.
+ *              The input allocation contains the history (order*ratio-1 IQ pairs) followed by the packet.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+#define MAX_ORDER 8
+
+rs_allocation inSamples;   // [history | packet] as char2 (8 bit signed), uchar2 (8 bit unsigned), short2 or ushort2
+rs_allocation outReal;     // Output Allocations (split kernel only)
+rs_allocation outImag;
+rs_allocation outIQ;       // Output Allocation (interleaved kernel only)
+uint32_t format;           // 0: 8 bit signed, 1: 8 bit unsigned, 2: 16 bit signed, 3: 16 bit unsigned (see IQConverter)
+uint32_t order;            // number of integrator and comb stages (<= MAX_ORDER)
+uint32_t ratio;            // decimation
+uint32_t segmentLength;    // number of outputs that are calculated by one thread
+uint32_t firstSample;      // index in inSamples of the newest IQ pair of the first output
+uint32_t outputs;          // number of outputs of this launch
+uint32_t offset;           // Start index in the output allocations (first index that will be written)
+float scale;               // 1 / (ratio^order * full scale value)
+float2 dcOffset;           // difference of the integer zero point and the zero point of the conversion tables
+
+/*
+ * Returns the IQ pair with the given index as signed integers (zero point at 0)
+ */
+static long2 getSample(uint32_t index) {
+    switch(format) {
+        case 0:
+            return convert_long2(rsGetElementAt_char2(inSamples, index));
+        case 1:
+            return convert_long2(rsGetElementAt_uchar2(inSamples, index)) - 128;
+        case 2:
+            return convert_long2(rsGetElementAt_short2(inSamples, index));
+        default:
+            return convert_long2(rsGetElementAt_ushort2(inSamples, index)) - 32768;
+    }
+}
+
+/*
+ * Calculates the outputs of the segment with the given index (one output every 'ratio' input samples)
+ * and writes them to the output allocation(s)
+ */
+static void decimateSegment(uint32_t segment, bool interleaved) {
+    long2 integrators[MAX_ORDER];
+    long2 delays[MAX_ORDER];       // previous input of each comb
+    long2 value, previous;
+    float2 result;
+    uint32_t first = segment * segmentLength;
+    int32_t count = min(first + segmentLength, outputs) - first;
+    uint32_t n = firstSample + first * ratio - order * ratio + 1;    // first sample of the warm-up
+    uint32_t k, r;
+    int32_t j;
+
+    for(k=0; k<order; k++) {
+        integrators[k] = 0;
+        delays[k] = 0;
+    }
+    // (order-1) warm-up outputs followed by the outputs of the segment:
+    for(j = 1 - (int32_t) order; j < count; j++) {
+        for(r=0; r<ratio; r++) {
+            value = getSample(n++);
+            for(k=0; k<order; k++) {
+                integrators[k] += value;
+                value = integrators[k];
+            }
+        }
+        for(k=0; k<order; k++) {
+            previous = delays[k];
+            delays[k] = value;
+            value -= previous;
+        }
+        if(j >= 0) {
+            result = convert_float2(value) * scale + dcOffset;
+            if(interleaved) {
+                rsSetElementAt_float2(outIQ, result, offset + first + j);
+            } else {
+                rsSetElementAt_float(outReal, result.x, offset + first + j);
+                rsSetElementAt_float(outImag, result.y, offset + first + j);
+            }
+        }
+    }
+}
+
+/*
+ * Kernels: decimate the IQ pairs into split float samples (outReal and outImag) or into complex (float2)
+ *          samples (outIQ). Each thread calculates segmentLength outputs.
+ *          must be launched on the (real) output allocation with x in [offset, offset + number of segments)
+ * @param out       dummy argument (is not used)
+ * @param x         offset + index of the segment (given by the runtime)
+ */
+void decimateToSplitKernel(float *out, uint32_t x) {
+    decimateSegment(x - offset, false);
+}
+
+void decimateToFloat2Kernel(float2 *out, uint32_t x) {
+    decimateSegment(x - offset, true);
+}
@@ -0,0 +1,146 @@
+/**
+ * Android DSP library - Converter and Mixer for 16 bit input values
+ *
+ * Module:      converter_16bit.rs
+ * Description: This kernel can do conversion of 16 bit IQ values (little endian) to float and
+ *              optionally a frequency shift. Instead of a lookup table (which would need
+ *              65536*cosineLength entries) the mixer uses a cos/sin table of length cosineLength
+ *              and one complex multiplication per sample.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+#define INT16_SCALE 16384.0f   // fixed-point scale of int16 samples (must match SamplePacket.INT16_SCALE)
+
+rs_allocation inSamples;   // Input Allocation (U16_2). contains the raw bytes of the packet (little endian IQ pairs)
+rs_allocation outImag;     // Output Allocation for imag array (kernels that write the real part through 'out')
+float *cosTable;           // cos(2*pi*mixFrequency*t/sampleRate) for t in [0, cosineLength). set by the caller
+float *sinTable;           // sin(2*pi*mixFrequency*t/sampleRate) for t in [0, cosineLength). set by the caller
+uint32_t cosineLength;     // number of valid entries in cosTable and sinTable
+uint32_t baseIndex;        // index in the cos/sin tables of the first sample of the packet
+uint32_t offset;           // Start index in the output allocations (ring index of the first sample for ring kernels)
+uint32_t ringMask;         // capacity-1 of the output ring buffer (ring kernels only)
+uint16_t signFlip;         // 0x8000 for signed input (maps the values to unsigned), 0 for unsigned input
+float center;              // unsigned value that represents 0.0 (32768 for signed, 32767.5 for unsigned input)
+
+/*
+ * Converts an IQ pair into a complex float sample
+ */
+static float2 convert(ushort2 in) {
+    float2 result;
+    result.x = ((in.x ^ signFlip) - center) / 32768.0f;
+    result.y = ((in.y ^ signFlip) - center) / 32768.0f;
+    return result;
+}
+
+/*
+ * Converts the IQ pair with the given index into a complex float sample and shifts its frequency:
+ * (re + j*im) * (cos - j*sin)
+ */
+static float2 mix(uint32_t sample) {
+    float2 in = convert(rsGetElementAt_ushort2(inSamples, sample));
+    uint32_t tableIndex = (baseIndex + sample) % cosineLength;
+    float cosine = cosTable[tableIndex];
+    float sine = sinTable[tableIndex];
+    float2 result;
+    result.x = in.x * cosine + in.y * sine;
+    result.y = in.y * cosine - in.x * sine;
+    return result;
+}
+
+/*
+ * Scales a float sample to the int16 fixed-point format and saturates it
+ */
+static short toInt16(float value) {
+    return (short) clamp(rint(value * INT16_SCALE), -32768.0f, 32767.0f);
+}
+
+/*
+ * Kernels: convert (and mix) IQ pairs into split float samples (real part through 'out', imag part into outImag)
+ *          must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertToSplitKernel(float *out, uint32_t x) {
+    float2 sample = convert(rsGetElementAt_ushort2(inSamples, x - offset));
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+void mixToSplitKernel(float *out, uint32_t x) {
+    float2 sample = mix(x - offset);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernels: convert (and mix) IQ pairs into complex (float2) samples
+ *          must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = convert(rsGetElementAt_ushort2(inSamples, x - offset));
+}
+
+void mixToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = mix(x - offset);
+}
+
+/*
+ * Kernels: convert (and mix) IQ pairs into int16 samples (real part through 'out', imag part into outImag)
+ *          must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = convert(rsGetElementAt_ushort2(inSamples, x - offset));
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
+
+void mixToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = mix(x - offset);
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
+
+/*
+ * Kernels: convert (and mix) IQ pairs into a ring buffer (real part through 'out', imag part into outImag)
+ *          'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *          with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void convertToRingKernel(float *out, uint32_t x) {
+    float2 sample = convert(rsGetElementAt_ushort2(inSamples, (x - offset) & ringMask));
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+void mixToRingKernel(float *out, uint32_t x) {
+    float2 sample = mix((x - offset) & ringMask);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
@@ -0,0 +1,162 @@
+/**
+ * Android DSP library - Fast Convolution
+ *
+ * Module:      fast_convolution.rs
+ * Description: This kernel implements the overlap-save method for long FIR filters. The input is split
+ *              into blocks of fftSize samples that overlap by filterOrder-1 samples (the first block starts
+ *              with the filter history). All blocks of a packet are transformed at once:
+ *              the load kernel copies them in bit-reversed order into 'work', log2(fftSize) launches of the
+ *              butterfly kernel calculate the FFTs (radix-2, decimation in time), the multiply kernel
+ *              multiplies them with the spectrum of the taps and copies them in bit-reversed order into
+ *              'work' again (the second buffer), the inverse FFT uses the same butterflies with conjugated
+ *              twiddle factors, and the output kernels pick the valid (and decimated) samples of each block.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+float2 *spectrum;          // FFT of the reversed taps (zero padded to fftSize), scaled by 1/fftSize
+float2 *twiddles;          // exp(-j*2*pi*m/fftSize) for m in [0, fftSize/2)
+uint32_t *bitReverse;      // bit-reversed index for each index in [0, fftSize)
+rs_allocation inReal;      // Input: staging region of the FIR filter (history + packet, see FilterHistory.java)
+rs_allocation inImag;
+rs_allocation inIQ;        // Input: staging region (interleaved layout)
+rs_allocation outImag;     // Output Allocation for imag array (split kernels only)
+rs_allocation work;        // FFT buffer of the current step (blocks * fftSize complex samples)
+rs_allocation spectra;     // forward FFTs of all blocks (input of the multiply kernel)
+
+uint32_t filterOrder;      // Length of the taps array
+uint32_t decimation;       // Decimation factor. set to 1 for no decimation
+uint32_t fftSize;          // FFT length (power of two)
+uint32_t fftBits;          // log2(fftSize)
+uint32_t step;             // number of new input samples per block: fftSize - filterOrder + 1
+uint32_t span;             // distance of the butterfly inputs in the current FFT stage
+uint32_t spanBits;         // log2(span)
+float twiddleSign;         // 1 for the forward FFT, -1 for the inverse FFT
+uint32_t length;           // number of staged samples that are used (the last block is zero padded)
+uint32_t offsetOut;        // Start index in the output allocations (first index that will be written)
+
+/*
+ * Returns the index of the input sample in the staging region that is located at the given position of
+ * the work buffer before the bit-reversal
+ */
+static uint32_t getInIndex(uint32_t x) {
+    uint32_t block = x >> fftBits;
+    return block * step + bitReverse[x & (fftSize-1)];
+}
+
+/*
+ * Kernels: load the blocks in bit-reversed order into the work buffer (samples after the end of
+ *          the input are set to zero)
+ *          must be launched on the work buffer with x in [0, blocks * fftSize)
+ * @param out       sample in the work buffer
+ * @param x         position inside the work buffer (given by the runtime)
+ */
+void loadSplitKernel(float2 *out, uint32_t x) {
+    uint32_t index = getInIndex(x);
+    if(index < length) {
+        out->x = rsGetElementAt_float(inReal, index);
+        out->y = rsGetElementAt_float(inImag, index);
+    } else {
+        *out = 0;
+    }
+}
+
+void loadInterleavedKernel(float2 *out, uint32_t x) {
+    uint32_t index = getInIndex(x);
+    if(index < length)
+        *out = rsGetElementAt_float2(inIQ, index);
+    else
+        *out = 0;
+}
+
+void loadRealKernel(float2 *out, uint32_t x) {
+    uint32_t index = getInIndex(x);
+    out->x = index < length ? rsGetElementAt_float(inReal, index) : 0;
+    out->y = 0;
+}
+
+/*
+ * Kernel: one butterfly of the current FFT stage ('span', 'twiddleSign') in 'work'
+ *         must be launched on the work buffer with x in [0, blocks * fftSize/2)
+ * @param unused    dummy argument (is not used)
+ * @param x         index of the butterfly (given by the runtime)
+ */
+void butterflyKernel(float2 *unused, uint32_t x) {
+    uint32_t k = x & ((fftSize >> 1) - 1);                 // butterfly inside the block
+    uint32_t pos = k & (span - 1);                         // position inside the group
+    uint32_t i = ((x >> (fftBits - 1)) << fftBits) + ((k >> spanBits) << (spanBits + 1)) + pos;
+    float2 twiddle = twiddles[pos << (fftBits - 1 - spanBits)];
+    float2 a = rsGetElementAt_float2(work, i);
+    float2 b = rsGetElementAt_float2(work, i + span);
+    float2 product;
+    twiddle.y *= twiddleSign;
+    product.x = b.x * twiddle.x - b.y * twiddle.y;
+    product.y = b.x * twiddle.y + b.y * twiddle.x;
+    rsSetElementAt_float2(work, a + product, i);
+    rsSetElementAt_float2(work, a - product, i + span);
+}
+
+/*
+ * Kernel: multiply the spectra of the blocks with the spectrum of the taps and load the products in
+ *         bit-reversed order into the work buffer of the inverse FFT
+ *         must be launched on the second work buffer with x in [0, blocks * fftSize)
+ * @param out       sample in the work buffer of the inverse FFT
+ * @param x         position inside the work buffer (given by the runtime)
+ */
+void multiplyKernel(float2 *out, uint32_t x) {
+    uint32_t bin = bitReverse[x & (fftSize-1)];
+    float2 a = rsGetElementAt_float2(spectra, ((x >> fftBits) << fftBits) + bin);
+    float2 b = spectrum[bin];
+    out->x = a.x * b.x - a.y * b.y;
+    out->y = a.x * b.y + a.y * b.x;
+}
+
+/*
+ * Returns the filter output with the given index (relative to offsetOut) from the inverse FFTs in 'work'
+ */
+static float2 getOutput(uint32_t output) {
+    uint32_t newest = output * decimation;        // index of the newest input sample of this output
+    uint32_t block = newest / step;
+    return rsGetElementAt_float2(work, (block << fftBits) + filterOrder - 1 + newest - block * step);
+}
+
+/*
+ * Kernels: write the valid samples of the blocks into the output allocation(s)
+ *          must be launched on the (real) output allocation with x in [offsetOut, offsetOut + number of outputs)
+ * @param out       output sample
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void outputSplitKernel(float *out, uint32_t x) {
+    float2 sample = getOutput(x - offsetOut);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+void outputInterleavedKernel(float2 *out, uint32_t x) {
+    *out = getOutput(x - offsetOut);
+}
+
+void outputRealKernel(float *out, uint32_t x) {
+    *out = getOutput(x - offsetOut).x;
+}
@@ -0,0 +1,39 @@
+/**
+ * Android DSP library - Script Fence
+ *
+ * Module:      fence.rs
+ * Description: This script sends a message to the Java side. Because all scripts of a RenderScript
+ *              context are executed in order, the message arrives when all previously launched
+ *              kernels are finished (see ScriptFence.java)
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+int32_t messageId;          // id of the messages that are sent to the Java side (set by ScriptFence)
+
+/*
+ * Sends the id of a fence to the Java side (received by the message handler of ScriptFence)
+ */
+void signal(uint32_t fenceId) {
+    rsSendToClient(messageId, &fenceId, sizeof(fenceId));
+}
@@ -3,6 +3,9 @@
  *
  * Module:      fir_filter.rs
  * Description: This kernel implements a FIR filter (real and complex taps possible)
+ *              The packet kernels read the input from a staging region (see FilterHistory.java): the
+ *              filterOrder-1 history samples followed by the new input samples, so all inputs of an
+ *              output sample are read with the same loop.
  *
  * @author Dennis Mantz
  *
@@ -30,153 +33,548 @@
 
 float* tapsReal;            // Real part of the filter taps
 float* tapsImag;            // Imaginary part of the filter taps (may not be used)
-float* remainderReal;       // history samples that are used for the next filter operation
-float* remainderImag;
-rs_allocation inReal;       // Input packet
+rs_allocation inReal;       // Input: staging region (history + packet) or ring buffer
 rs_allocation inImag;
 rs_allocation outReal;      // Output packet
 rs_allocation outImag;
+rs_allocation inIQ;         // Input: staging region (interleaved layout)
+rs_allocation outIQ;        // Output packet (interleaved layout)
 
 uint32_t filterOrder;       // Length of the taps array
 uint32_t decimation;        // Decimation factor. set to 1 for no decimation
-uint32_t offsetIn;          // Start index in the input allocations
 uint32_t offsetOut;         // Start index in the output allocations (first index that will be written)
 uint32_t len;               // Length of the output allocations (length-1 is max index that will be written)
+uint32_t ringMask;          // capacity-1 of the input ring buffer (ring kernels only)
+uint32_t ringStart;         // ring index of the oldest input sample of the first output (ring kernels only)
+rs_allocation fadeReal;     // Crossfade: outputs of the previous taps (interleaved values in fadeReal)
+rs_allocation fadeImag;
+uint32_t fadeStart;         // Crossfade: position of the first output inside the crossfade
+uint32_t fadeLength;        // Crossfade: length of the crossfade (output samples)
+uint32_t fadeComplex;       // Crossfade: blend the imaginary parts too (!= 0) or only the real parts (== 0)
 
 /*
- * Will set the remainder samples to zero (initial state)
+ * Rounds a (float) filter result to the nearest int16 value and saturates it
  */
-void clearRemainders() {
-    uint32_t i;
-    for(i=0; i < filterOrder-1; i++) {
-        remainderReal[i] = 0;
-        remainderImag[i] = 0;
+static short saturateInt16(float value) {
+    return (short) clamp(rint(value), -32768.0f, 32767.0f);
+}
+
+/*
+ * Returns the weight of the current taps for output x of a crossfade (rises linearly to 1)
+ */
+static float fadeWeight(uint32_t x) {
+    return (float) (fadeStart + x + 1) / (fadeLength + 1);
+}
+
+/*
+ * Kernel: filter a complex signal with real filter taps and decimate
+ *         Input is expected in inReal and inImag (staging region) and output will be stored in outReal and outImag
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        resultReal += rsGetElementAt_float(inReal, inIndex+i) * tapsReal[i];
+        resultImag += rsGetElementAt_float(inImag, inIndex+i) * tapsReal[i];
     }
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+    rsSetElementAt_float(outImag, resultImag, x + offsetOut);
 }
 
 /*
- * Will copy the remaining samples from the input packet (real and imag parts) to the remainder arrays
+ * Kernel: filter a real signal with real filter taps and decimate
+ *         Input is expected in inReal (staging region) and output will be stored in outReal
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
  */
-void updateRemainders() {
-    uint32_t i;
-    uint32_t index = offsetIn + ((len-offsetOut)*decimation) - filterOrder + 1; // length of the input alloc minus length of the remainders
-    for(i=0; i < filterOrder-1; i++) {
-        remainderReal[i] = rsGetElementAt_float(inReal, index + i);
-        remainderImag[i] = rsGetElementAt_float(inImag, index + i);
+void filterRealSignalAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float resultReal = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++)
+        resultReal += rsGetElementAt_float(inReal, inIndex+i) * tapsReal[i];
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with complex filter taps and decimate
+ *         Input is expected in inReal and inImag (staging region) and output will be stored in outReal and outImag
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterComplexTapsAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float re, im;
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        re = rsGetElementAt_float(inReal, inIndex+i);
+        im = rsGetElementAt_float(inImag, inIndex+i);
+        resultReal += re * tapsReal[i] - im * tapsImag[i];
+        resultImag += re * tapsImag[i] + im * tapsReal[i];
     }
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+    rsSetElementAt_float(outImag, resultImag, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with real filter taps and decimate (interleaved layout)
+ *         Input is expected in inIQ (staging region) and output will be stored in outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterAndDecimateInterleaved(float2* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float2 result = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++)
+        result += rsGetElementAt_float2(inIQ, inIndex+i) * tapsReal[i];
+    rsSetElementAt_float2(outIQ, result, x + offsetOut);
 }
 
 /*
- * Will copy the remaining samples from the input packet (only real part) to the remainder array
+ * Kernel: filter a complex signal with complex filter taps and decimate (interleaved layout)
+ *         Input is expected in inIQ (staging region) and output will be stored in outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
  */
-void updateRealRemainders() {
-    uint32_t i;
-    uint32_t index = offsetIn + ((len-offsetOut)*decimation) - filterOrder + 1; // length of the input alloc minus length of the remainders
-    for(i=0; i < filterOrder-1; i++) {
-        remainderReal[i] = rsGetElementAt_float(inReal, index + i);
+void filterComplexTapsAndDecimateInterleaved(float2* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float2 result = 0;
+    float2 sample;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        sample = rsGetElementAt_float2(inIQ, inIndex+i);
+        result.x += sample.x * tapsReal[i] - sample.y * tapsImag[i];
+        result.y += sample.x * tapsImag[i] + sample.y * tapsReal[i];
     }
+    rsSetElementAt_float2(outIQ, result, x + offsetOut);
 }
 
 /*
- * Kernel: filter a complex signal with real filter taps and decimate
- *         Input is expected in inReal and inImag and output will be stored in outReal and outImag
+ * Kernel: filter a complex signal with symmetric real filter taps (tap[i] == tap[filterOrder-1-i]) and decimate
+ *         The mirrored input samples are added before they are multiplied (half the multiplications).
+ *         Input is expected in inReal and inImag (staging region) and output will be stored in outReal and outImag
  * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
  * @param x         position inside 'out' (given by the runtime)
  */
-void filterAndDecimate(float* out, uint32_t x) {
+void filterSymmetricAndDecimate(float* out, uint32_t x) {
     int32_t i;
-    int32_t inIndex = x * decimation - filterOrder + 1;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
     float resultReal = 0;
     float resultImag = 0;
 
     if(x + offsetOut >= len)
             return; // reached max index
 
-    if(inIndex >= 0) {
-        // All input values are located in the in-allocations
-        for(i=0; i<filterOrder; i++) {
-            resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i];
-            resultImag += rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsReal[i];
-        }
-    } else {
-        // At least one input value is located in the remainder
-        for(i=0; i<filterOrder; i++) {
-            if(inIndex+i < 0) {
-                resultReal += remainderReal[inIndex+i+filterOrder-1] * tapsReal[i];
-                resultImag += remainderImag[inIndex+i+filterOrder-1] * tapsReal[i];
-            } else {
-                resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i];
-                resultImag += rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsReal[i];
-            }
-        }
+    for(i=0; i<half; i++) {
+        resultReal += (rsGetElementAt_float(inReal, inIndex+i) + rsGetElementAt_float(inReal, last-i)) * tapsReal[i];
+        resultImag += (rsGetElementAt_float(inImag, inIndex+i) + rsGetElementAt_float(inImag, last-i)) * tapsReal[i];
+    }
+    if(filterOrder & 1) {
+        // center tap:
+        resultReal += rsGetElementAt_float(inReal, inIndex+half) * tapsReal[half];
+        resultImag += rsGetElementAt_float(inImag, inIndex+half) * tapsReal[half];
     }
     rsSetElementAt_float(outReal, resultReal, x + offsetOut);
     rsSetElementAt_float(outImag, resultImag, x + offsetOut);
 }
 
 /*
- * Kernel: filter a real signal with real filter taps and decimate
- *         Input is expected in inReal and output will be stored in outReal
+ * Kernel: filter a real signal with symmetric real filter taps and decimate
+ *         Input is expected in inReal (staging region) and output will be stored in outReal
  * @param out       dummy argument (is not used, but has to have the same size as outReal)
  * @param x         position inside 'out' (given by the runtime)
  */
-void filterRealSignalAndDecimate(float* out, uint32_t x) {
+void filterRealSignalSymmetricAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float resultReal = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<half; i++)
+        resultReal += (rsGetElementAt_float(inReal, inIndex+i) + rsGetElementAt_float(inReal, last-i)) * tapsReal[i];
+    if(filterOrder & 1)
+        resultReal += rsGetElementAt_float(inReal, inIndex+half) * tapsReal[half];   // center tap
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with conjugate symmetric complex taps (tap[i] == conj(tap[filterOrder-1-i]),
+ *         e.g. a shifted low pass) and decimate. With the mirrored samples a and b:
+ *         tap*a + conj(tap)*b = tapReal*(a+b) + j*tapImag*(a-b)  (4 instead of 8 multiplications)
+ *         Input is expected in inReal and inImag (staging region) and output will be stored in outReal and outImag
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterConjugateSymmetricTapsAndDecimate(float* out, uint32_t x) {
     int32_t i;
-    int32_t inIndex = x * decimation - filterOrder + 1;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float re1, im1, re2, im2;
     float resultReal = 0;
+    float resultImag = 0;
 
     if(x + offsetOut >= len)
             return; // reached max index
 
-    if(inIndex >= 0) {
-        // All input values are located in the in-allocations
-        for(i=0; i<filterOrder; i++)
-            resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i];
-    } else {
-        // At least one input value is located in the remainder
-        for(i=0; i<filterOrder; i++) {
-            if(inIndex+i < 0)
-                resultReal += remainderReal[inIndex+i+filterOrder-1] * tapsReal[i];
-            else
-                resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i];
-        }
+    for(i=0; i<half; i++) {
+        re1 = rsGetElementAt_float(inReal, inIndex+i);
+        im1 = rsGetElementAt_float(inImag, inIndex+i);
+        re2 = rsGetElementAt_float(inReal, last-i);
+        im2 = rsGetElementAt_float(inImag, last-i);
+        resultReal += (re1 + re2) * tapsReal[i] - (im1 - im2) * tapsImag[i];
+        resultImag += (im1 + im2) * tapsReal[i] + (re1 - re2) * tapsImag[i];
+    }
+    if(filterOrder & 1) {
+        // center tap:
+        re1 = rsGetElementAt_float(inReal, inIndex+half);
+        im1 = rsGetElementAt_float(inImag, inIndex+half);
+        resultReal += re1 * tapsReal[half] - im1 * tapsImag[half];
+        resultImag += re1 * tapsImag[half] + im1 * tapsReal[half];
     }
     rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+    rsSetElementAt_float(outImag, resultImag, x + offsetOut);
 }
 
 /*
- * Kernel: filter a complex signal with complex filter taps and decimate
- *         Input is expected in inReal and inImag and output will be stored in outReal and outImag
+ * Kernel: filter a complex signal with symmetric real filter taps and decimate (interleaved layout)
+ *         Input is expected in inIQ (staging region) and output will be stored in outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterSymmetricAndDecimateInterleaved(float2* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float2 result = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<half; i++)
+        result += (rsGetElementAt_float2(inIQ, inIndex+i) + rsGetElementAt_float2(inIQ, last-i)) * tapsReal[i];
+    if(filterOrder & 1)
+        result += rsGetElementAt_float2(inIQ, inIndex+half) * tapsReal[half];   // center tap
+    rsSetElementAt_float2(outIQ, result, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with conjugate symmetric complex taps and decimate (interleaved layout)
+ *         See filterConjugateSymmetricTapsAndDecimate. Input is expected in inIQ (staging region) and output
+ *         will be stored in outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterConjugateSymmetricTapsAndDecimateInterleaved(float2* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float2 sample1, sample2, sum, diff;
+    float2 result = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<half; i++) {
+        sample1 = rsGetElementAt_float2(inIQ, inIndex+i);
+        sample2 = rsGetElementAt_float2(inIQ, last-i);
+        sum = sample1 + sample2;
+        diff = sample1 - sample2;
+        result.x += sum.x * tapsReal[i] - diff.y * tapsImag[i];
+        result.y += sum.y * tapsReal[i] + diff.x * tapsImag[i];
+    }
+    if(filterOrder & 1) {
+        // center tap:
+        sample1 = rsGetElementAt_float2(inIQ, inIndex+half);
+        result.x += sample1.x * tapsReal[half] - sample1.y * tapsImag[half];
+        result.y += sample1.x * tapsImag[half] + sample1.y * tapsReal[half];
+    }
+    rsSetElementAt_float2(outIQ, result, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with half-band taps and decimate. Half-band taps are symmetric, have an odd
+ *         length (filterOrder = 2*half+1 with an odd 'half') and every other tap is zero (tapsReal[i] == 0 for
+ *         all odd i except the center tap), so only the even taps of the first half are used:
+ *         (filterOrder+1)/4 multiplications for the mirrored samples and one for the center tap
+ *         Input is expected in inReal and inImag (staging region) and output will be stored in outReal and outImag
  * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
  * @param x         position inside 'out' (given by the runtime)
  */
-void filterComplexTapsAndDecimate(float* out, uint32_t x) {
+void filterHalfBandAndDecimate(float* out, uint32_t x) {
     int32_t i;
-    int32_t inIndex = x * decimation - filterOrder + 1;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
     float resultReal = 0;
     float resultImag = 0;
 
     if(x + offsetOut >= len)
             return; // reached max index
 
-    if(inIndex >= 0) {
-        // All input values are located in the in-allocations
-        for(i=0; i<filterOrder; i++) {
-            resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i] - rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsImag[i];
-            resultImag += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsImag[i] + rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsReal[i];
-        }
-    } else {
-        // At least one input value is located in the remainder
-        for(i=0; i<filterOrder; i++) {
-            if(inIndex+i < 0) {
-                resultReal += remainderReal[inIndex+i+filterOrder-1] * tapsReal[i] - remainderImag[inIndex+i+filterOrder-1] * tapsImag[i];
-                resultImag += remainderReal[inIndex+i+filterOrder-1] * tapsImag[i] + remainderImag[inIndex+i+filterOrder-1] * tapsReal[i];
-            } else {
-                resultReal += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsReal[i] - rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsImag[i];
-                resultImag += rsGetElementAt_float(inReal, inIndex+offsetIn+i) * tapsImag[i] + rsGetElementAt_float(inImag, inIndex+offsetIn+i) * tapsReal[i];
-            }
-        }
+    for(i=0; i<half; i+=2) {
+        resultReal += (rsGetElementAt_float(inReal, inIndex+i) + rsGetElementAt_float(inReal, last-i)) * tapsReal[i];
+        resultImag += (rsGetElementAt_float(inImag, inIndex+i) + rsGetElementAt_float(inImag, last-i)) * tapsReal[i];
     }
+    // center tap:
+    resultReal += rsGetElementAt_float(inReal, inIndex+half) * tapsReal[half];
+    resultImag += rsGetElementAt_float(inImag, inIndex+half) * tapsReal[half];
     rsSetElementAt_float(outReal, resultReal, x + offsetOut);
     rsSetElementAt_float(outImag, resultImag, x + offsetOut);
-}
\ No newline at end of file
+}
+
+/*
+ * Kernel: filter a real signal with half-band taps and decimate (see filterHalfBandAndDecimate)
+ *         Input is expected in inReal (staging region) and output will be stored in outReal
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterRealSignalHalfBandAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float resultReal = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<half; i+=2)
+        resultReal += (rsGetElementAt_float(inReal, inIndex+i) + rsGetElementAt_float(inReal, last-i)) * tapsReal[i];
+    resultReal += rsGetElementAt_float(inReal, inIndex+half) * tapsReal[half];   // center tap
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal with half-band taps and decimate (interleaved layout)
+ *         See filterHalfBandAndDecimate. Input is expected in inIQ (staging region) and output will be stored in outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterHalfBandAndDecimateInterleaved(float2* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    int32_t last = inIndex + filterOrder - 1;     // index of the newest input sample
+    int32_t half = filterOrder >> 1;
+    float2 result = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<half; i+=2)
+        result += (rsGetElementAt_float2(inIQ, inIndex+i) + rsGetElementAt_float2(inIQ, last-i)) * tapsReal[i];
+    result += rsGetElementAt_float2(inIQ, inIndex+half) * tapsReal[half];   // center tap
+    rsSetElementAt_float2(outIQ, result, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal from a ring buffer with real filter taps and decimate
+ *         Input is expected in inReal and inImag (ring buffer) and output will be stored in outReal and outImag.
+ *         The filter history is located in the ring buffer, so no remainders are needed.
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterRingAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    uint32_t inIndex = ringStart + x * decimation;
+    uint32_t index;
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        index = (inIndex + i) & ringMask;
+        resultReal += rsGetElementAt_float(inReal, index) * tapsReal[i];
+        resultImag += rsGetElementAt_float(inImag, index) * tapsReal[i];
+    }
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+    rsSetElementAt_float(outImag, resultImag, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a real signal from a ring buffer with real filter taps and decimate
+ *         Input is expected in inReal (ring buffer) and output will be stored in outReal
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterRealSignalRingAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    uint32_t inIndex = ringStart + x * decimation;
+    float resultReal = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++)
+        resultReal += rsGetElementAt_float(inReal, (inIndex + i) & ringMask) * tapsReal[i];
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex signal from a ring buffer with complex filter taps and decimate
+ *         Input is expected in inReal and inImag (ring buffer) and output will be stored in outReal and outImag
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterComplexTapsRingAndDecimate(float* out, uint32_t x) {
+    int32_t i;
+    uint32_t inIndex = ringStart + x * decimation;
+    uint32_t index;
+    float re, im;
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        index = (inIndex + i) & ringMask;
+        re = rsGetElementAt_float(inReal, index);
+        im = rsGetElementAt_float(inImag, index);
+        resultReal += re * tapsReal[i] - im * tapsImag[i];
+        resultImag += re * tapsImag[i] + im * tapsReal[i];
+    }
+    rsSetElementAt_float(outReal, resultReal, x + offsetOut);
+    rsSetElementAt_float(outImag, resultImag, x + offsetOut);
+}
+
+/*
+ * Kernel: filter a complex int16 signal with real filter taps and decimate
+ *         Input is expected in inReal and inImag (I16 staging region) and output will be stored in outReal and
+ *         outImag (I16). The sum is accumulated in float and rounded/saturated when it is written.
+ * @param out       dummy argument (is not used, but has to have the same size as outReal and outImag)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterInt16AndDecimate(short* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++) {
+        resultReal += rsGetElementAt_short(inReal, inIndex+i) * tapsReal[i];
+        resultImag += rsGetElementAt_short(inImag, inIndex+i) * tapsReal[i];
+    }
+    rsSetElementAt_short(outReal, saturateInt16(resultReal), x + offsetOut);
+    rsSetElementAt_short(outImag, saturateInt16(resultImag), x + offsetOut);
+}
+
+/*
+ * Kernel: filter a real int16 signal with real filter taps and decimate
+ *         Input is expected in inReal (I16 staging region) and output will be stored in outReal (I16)
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void filterRealSignalInt16AndDecimate(short* out, uint32_t x) {
+    int32_t i;
+    int32_t inIndex = x * decimation;     // index of the oldest input sample in the staging region
+    float resultReal = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    for(i=0; i<filterOrder; i++)
+        resultReal += rsGetElementAt_short(inReal, inIndex+i) * tapsReal[i];
+    rsSetElementAt_short(outReal, saturateInt16(resultReal), x + offsetOut);
+}
+
+/*
+ * Kernel: crossfade from the outputs of the previous taps (fadeReal, fadeImag) to the outputs of the current
+ *         taps (outReal, outImag). Both outputs are blended in place into outReal and outImag.
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void crossfade(float* out, uint32_t x) {
+    float weight;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    weight = fadeWeight(x);
+    float previous = rsGetElementAt_float(fadeReal, x);
+    float current = rsGetElementAt_float(outReal, x + offsetOut);
+    rsSetElementAt_float(outReal, previous + (current - previous) * weight, x + offsetOut);
+    if(fadeComplex != 0) {
+        previous = rsGetElementAt_float(fadeImag, x);
+        current = rsGetElementAt_float(outImag, x + offsetOut);
+        rsSetElementAt_float(outImag, previous + (current - previous) * weight, x + offsetOut);
+    }
+}
+
+/*
+ * Kernel: crossfade from the outputs of the previous taps (fadeReal) to the outputs of the current taps
+ *         (outIQ; interleaved layout). Both outputs are blended in place into outIQ.
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void crossfadeInterleaved(float2* out, uint32_t x) {
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    float2 previous = rsGetElementAt_float2(fadeReal, x);
+    float2 current = rsGetElementAt_float2(outIQ, x + offsetOut);
+    rsSetElementAt_float2(outIQ, previous + (current - previous) * fadeWeight(x), x + offsetOut);
+}
+
+/*
+ * Kernel: crossfade from the outputs of the previous taps (fadeReal, fadeImag) to the outputs of the current
+ *         taps (outReal, outImag; I16). Both outputs are blended in place into outReal and outImag.
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void crossfadeInt16(short* out, uint32_t x) {
+    float weight;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    weight = fadeWeight(x);
+    float previous = rsGetElementAt_short(fadeReal, x);
+    float current = rsGetElementAt_short(outReal, x + offsetOut);
+    rsSetElementAt_short(outReal, saturateInt16(previous + (current - previous) * weight), x + offsetOut);
+    if(fadeComplex != 0) {
+        previous = rsGetElementAt_short(fadeImag, x);
+        current = rsGetElementAt_short(outImag, x + offsetOut);
+        rsSetElementAt_short(outImag, saturateInt16(previous + (current - previous) * weight), x + offsetOut);
+    }
+}
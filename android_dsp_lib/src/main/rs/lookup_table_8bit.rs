@@ -34,6 +34,14 @@ rs_allocation outReal;     // Output Allocation for real array in case of interl
 rs_allocation outImag;     // Output Allocation for imag array in case of interleaved kernels
 uint32_t offset;           // Start index in the output allocations (first index that will be written)
 uint32_t len;              // Length of the output allocations (length-1 is max index that will be written)
+rs_allocation inBytes;     // Input Allocation (interleaved bytes) for the kernels that write float2 samples
+uint32_t ringMask;         // capacity-1 of the output ring buffer (ring kernels only)
+short *lutInt16;           // lookup table (length 256) with fixed-point values (see SamplePacket.INT16_SCALE)
+float *corrI;              // IQ correction (see IQCorrection): I' = corrI[i]                (indexed by the unsigned value of the byte)
+float *corrQ;              // IQ correction (see IQCorrection): Q' = corrQ[q] + corrCross[i] (indexed by the unsigned value of the byte)
+float *corrCross;
+
+#define INT16_SCALE 16384.0f   // fixed-point scale of int16 samples (must match SamplePacket.INT16_SCALE)
 
 void convertSignedInterleavedKernel(const char *in, uint32_t x) {
     uint32_t outIndex = x >> 1;
@@ -53,4 +61,167 @@ void convertUnsignedInterleavedKernel(const char *in, uint32_t x) {
         rsSetElementAt_float(outImag, *(lut + (*in & 0xff)), outIndex + offset);
     else
         rsSetElementAt_float(outReal, *(lut + (*in & 0xff)), outIndex + offset);
-}
\ No newline at end of file
+}
+
+/*
+ * Kernel: convert signed interleaved bytes into split float samples (real part through 'out', imag part
+ *         into outImag). One invocation per IQ pair (no branch on the parity of the byte index).
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertSignedToSplitKernel(float *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    *out = *(lut + rsGetElementAt_char(inBytes, inIndex) + 128);
+    rsSetElementAt_float(outImag, *(lut + rsGetElementAt_char(inBytes, inIndex + 1) + 128), x);
+}
+
+/*
+ * Kernel: convert unsigned interleaved bytes into split float samples (real part through 'out', imag part
+ *         into outImag). One invocation per IQ pair (no branch on the parity of the byte index).
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertUnsignedToSplitKernel(float *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    *out = *(lut + (rsGetElementAt_char(inBytes, inIndex) & 0xff));
+    rsSetElementAt_float(outImag, *(lut + (rsGetElementAt_char(inBytes, inIndex + 1) & 0xff)), x);
+}
+
+/*
+ * Kernel: convert signed interleaved bytes into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertSignedToFloat2Kernel(float2 *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    out->x = *(lut + rsGetElementAt_char(inBytes, inIndex) + 128);
+    out->y = *(lut + rsGetElementAt_char(inBytes, inIndex + 1) + 128);
+}
+
+/*
+ * Kernel: convert unsigned interleaved bytes into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertUnsignedToFloat2Kernel(float2 *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    out->x = *(lut + (rsGetElementAt_char(inBytes, inIndex) & 0xff));
+    out->y = *(lut + (rsGetElementAt_char(inBytes, inIndex + 1) & 0xff));
+}
+
+/*
+ * Kernel: convert signed interleaved bytes into a ring buffer (real part through 'out', imag part into outImag)
+ *         'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *         with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void convertSignedToRingKernel(float *out, uint32_t x) {
+    uint32_t inIndex = ((x - offset) & ringMask) << 1;
+    *out = *(lut + rsGetElementAt_char(inBytes, inIndex) + 128);
+    rsSetElementAt_float(outImag, *(lut + rsGetElementAt_char(inBytes, inIndex + 1) + 128), x);
+}
+
+/*
+ * Kernel: convert unsigned interleaved bytes into a ring buffer (real part through 'out', imag part into outImag)
+ *         'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *         with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void convertUnsignedToRingKernel(float *out, uint32_t x) {
+    uint32_t inIndex = ((x - offset) & ringMask) << 1;
+    *out = *(lut + (rsGetElementAt_char(inBytes, inIndex) & 0xff));
+    rsSetElementAt_float(outImag, *(lut + (rsGetElementAt_char(inBytes, inIndex + 1) & 0xff)), x);
+}
+
+/*
+ * Kernel: convert signed interleaved bytes into int16 samples (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertSignedToInt16Kernel(short *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    *out = *(lutInt16 + rsGetElementAt_char(inBytes, inIndex) + 128);
+    rsSetElementAt_short(outImag, *(lutInt16 + rsGetElementAt_char(inBytes, inIndex + 1) + 128), x);
+}
+
+/*
+ * Kernel: convert unsigned interleaved bytes into int16 samples (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertUnsignedToInt16Kernel(short *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    *out = *(lutInt16 + (rsGetElementAt_char(inBytes, inIndex) & 0xff));
+    rsSetElementAt_short(outImag, *(lutInt16 + (rsGetElementAt_char(inBytes, inIndex + 1) & 0xff)), x);
+}
+
+/*
+ * Converts the IQ pair at the given byte index of inBytes with the correction tables (DC offset and IQ imbalance)
+ */
+static float2 convertCorrected(uint32_t inIndex) {
+    uchar re = (uchar) rsGetElementAt_char(inBytes, inIndex);
+    uchar im = (uchar) rsGetElementAt_char(inBytes, inIndex + 1);
+    float2 sample;
+    sample.x = corrI[re];
+    sample.y = corrQ[im] + corrCross[re];
+    return sample;
+}
+
+static short toInt16(float value) {
+    return (short) clamp(rint(value * INT16_SCALE), -32768.0f, 32767.0f);
+}
+
+/*
+ * Kernel: convert and correct interleaved bytes into split float samples (real part through 'out', imag part
+ *         into outImag). must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertCorrectedToSplitKernel(float *out, uint32_t x) {
+    float2 sample = convertCorrected((x - offset) << 1);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernel: convert and correct interleaved bytes into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertCorrectedToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = convertCorrected((x - offset) << 1);
+}
+
+/*
+ * Kernel: convert and correct interleaved bytes into a ring buffer (real part through 'out', imag part into outImag)
+ *         'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *         with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void convertCorrectedToRingKernel(float *out, uint32_t x) {
+    float2 sample = convertCorrected(((x - offset) & ringMask) << 1);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernel: convert and correct interleaved bytes into int16 samples (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void convertCorrectedToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = convertCorrected((x - offset) << 1);
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
@@ -3,7 +3,9 @@
  *
  * Module:      mixer_8bit.rs
  * Description: This kernel can do frequency shift and conversion of 8 bit values to float
-                (e.g. IQ bytes -> floats) by using a lookup table
+                (e.g. IQ bytes -> floats) by using a lookup table. The compact mode uses a
+                256-entry conversion table and a cos/sin table instead (one complex
+                multiplication per sample, but only 256+2*cosineLength floats of tables)
  *
  * @author Dennis Mantz
  *
@@ -40,6 +42,14 @@ rs_allocation outReal;     // Output Allocation for real array
 rs_allocation outImag;     // Output Allocation for imag array
 uint32_t offset;           // Start index in the output allocations (first index that will be written)
 uint32_t len;              // Length of the output allocations (length-1 is max index that will be written)
+rs_allocation inBytes;     // Input Allocation (interleaved bytes) for the kernels that write float2 samples
+uint32_t ringMask;         // capacity-1 of the output ring buffer (ring kernels only)
+
+float *lut8;               // compact mode: conversion table (length 256) indexed by the unsigned value of the byte
+float *cosTable;           // compact mode: cos(2*pi*mixFrequency*t/sampleRate) for t in [0, cosineLength)
+float *sinTable;           // compact mode: sin(2*pi*mixFrequency*t/sampleRate) for t in [0, cosineLength)
+
+#define INT16_SCALE 16384.0f   // fixed-point scale of int16 samples (must match SamplePacket.INT16_SCALE)
 
 void updateLut(const float *in, uint32_t x) {
     if(x < cosineLength) {
@@ -87,4 +97,194 @@ void mixUnsignedInterleavedKernel(const char *in, uint32_t x) {
         value = *(lutReal + lutOffset*256 + (*in & 0xff)) + *(lutImag + lutOffset*256 + (*(in+1) & 0xff));
         rsSetElementAt_float(outReal, value, outIndex + offset);
     }
-}
\ No newline at end of file
+}
+
+/*
+ * Kernel: mix and convert signed interleaved bytes into split float samples (real part through 'out', imag
+ *         part into outImag). One invocation per IQ pair (no branch on the parity of the byte index).
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixSignedToSplitKernel(float *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    *out = *(lutReal + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex) + 128);
+    rsSetElementAt_float(outImag, *(lutImag + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex + 1) + 128), x);
+}
+
+/*
+ * Kernel: mix and convert unsigned interleaved bytes into split float samples (real part through 'out', imag
+ *         part into outImag). One invocation per IQ pair (no branch on the parity of the byte index).
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixUnsignedToSplitKernel(float *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    uint32_t re = rsGetElementAt_char(inBytes, inIndex) & 0xff;
+    uint32_t im = rsGetElementAt_char(inBytes, inIndex + 1) & 0xff;
+    // re * cos + im * sin  and  im * cos - re * sin
+    *out = *(lutReal + lutOffset*256 + re) + *(lutImag + lutOffset*256 + im);
+    rsSetElementAt_float(outImag, *(lutReal + lutOffset*256 + im) - *(lutImag + lutOffset*256 + re), x);
+}
+
+/*
+ * Kernel: mix and convert signed interleaved bytes into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixSignedToFloat2Kernel(float2 *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    out->x = *(lutReal + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex) + 128);
+    out->y = *(lutImag + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex + 1) + 128);
+}
+
+/*
+ * Kernel: mix and convert unsigned interleaved bytes into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixUnsignedToFloat2Kernel(float2 *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    uint32_t re = rsGetElementAt_char(inBytes, inIndex) & 0xff;
+    uint32_t im = rsGetElementAt_char(inBytes, inIndex + 1) & 0xff;
+    // re * cos + im * sin  and  im * cos - re * sin
+    out->x = *(lutReal + lutOffset*256 + re) + *(lutImag + lutOffset*256 + im);
+    out->y = *(lutReal + lutOffset*256 + im) - *(lutImag + lutOffset*256 + re);
+}
+
+/*
+ * Kernel: mix and convert signed interleaved bytes into a ring buffer (real part through 'out', imag part
+ *         into outImag). 'offset' is the ring index of the first sample. must be launched on the real
+ *         ring allocation with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void mixSignedToRingKernel(float *out, uint32_t x) {
+    uint32_t sample = (x - offset) & ringMask;
+    uint32_t lutOffset = (baseIndex + sample) % cosineLength;
+    *out = *(lutReal + lutOffset*256 + rsGetElementAt_char(inBytes, sample << 1) + 128);
+    rsSetElementAt_float(outImag, *(lutImag + lutOffset*256 + rsGetElementAt_char(inBytes, (sample << 1) + 1) + 128), x);
+}
+
+/*
+ * Kernel: mix and convert unsigned interleaved bytes into a ring buffer (real part through 'out', imag part
+ *         into outImag). 'offset' is the ring index of the first sample. must be launched on the real
+ *         ring allocation with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void mixUnsignedToRingKernel(float *out, uint32_t x) {
+    uint32_t sample = (x - offset) & ringMask;
+    uint32_t lutOffset = (baseIndex + sample) % cosineLength;
+    uint32_t re = rsGetElementAt_char(inBytes, sample << 1) & 0xff;
+    uint32_t im = rsGetElementAt_char(inBytes, (sample << 1) + 1) & 0xff;
+    // re * cos + im * sin  and  im * cos - re * sin
+    *out = *(lutReal + lutOffset*256 + re) + *(lutImag + lutOffset*256 + im);
+    rsSetElementAt_float(outImag, *(lutReal + lutOffset*256 + im) - *(lutImag + lutOffset*256 + re), x);
+}
+
+/*
+ * Scales a float sample to the int16 fixed-point format and saturates it
+ */
+static short toInt16(float value) {
+    return (short) clamp(rint(value * INT16_SCALE), -32768.0f, 32767.0f);
+}
+
+/*
+ * Kernel: mix and convert signed interleaved bytes into int16 samples (real part through 'out', imag part
+ *         into outImag). must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixSignedToInt16Kernel(short *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    *out = toInt16(*(lutReal + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex) + 128));
+    rsSetElementAt_short(outImag, toInt16(*(lutImag + lutOffset*256 + rsGetElementAt_char(inBytes, inIndex + 1) + 128)), x);
+}
+
+/*
+ * Kernel: mix and convert unsigned interleaved bytes into int16 samples (real part through 'out', imag part
+ *         into outImag). must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixUnsignedToInt16Kernel(short *out, uint32_t x) {
+    uint32_t inIndex = (x - offset) << 1;
+    uint32_t lutOffset = (baseIndex + x - offset) % cosineLength;
+    uint32_t re = rsGetElementAt_char(inBytes, inIndex) & 0xff;
+    uint32_t im = rsGetElementAt_char(inBytes, inIndex + 1) & 0xff;
+    // re * cos + im * sin  and  im * cos - re * sin  (accumulated in float)
+    *out = toInt16(*(lutReal + lutOffset*256 + re) + *(lutImag + lutOffset*256 + im));
+    rsSetElementAt_short(outImag, toInt16(*(lutReal + lutOffset*256 + im) - *(lutImag + lutOffset*256 + re)), x);
+}
+
+/*
+ * Compact mode: converts the IQ pair with the given index with the 256-entry table and shifts its
+ * frequency with one complex multiplication: (re + j*im) * (cos - j*sin)
+ */
+static float2 mixCompact(uint32_t sample) {
+    float re = lut8[(uchar) rsGetElementAt_char(inBytes, sample << 1)];
+    float im = lut8[(uchar) rsGetElementAt_char(inBytes, (sample << 1) + 1)];
+    uint32_t tableIndex = (baseIndex + sample) % cosineLength;
+    float cosine = cosTable[tableIndex];
+    float sine = sinTable[tableIndex];
+    float2 result;
+    result.x = re * cosine + im * sine;
+    result.y = im * cosine - re * sine;
+    return result;
+}
+
+/*
+ * Kernels (compact mode): mix IQ pairs into split float samples (real part through 'out', imag part into outImag)
+ *          must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixCompactToSplitKernel(float *out, uint32_t x) {
+    float2 sample = mixCompact(x - offset);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernel (compact mode): mix IQ pairs into complex (float2) samples
+ *         must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixCompactToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = mixCompact(x - offset);
+}
+
+/*
+ * Kernel (compact mode): mix IQ pairs into int16 samples (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mixCompactToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = mixCompact(x - offset);
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
+
+/*
+ * Kernel (compact mode): mix IQ pairs into a ring buffer (real part through 'out', imag part into outImag)
+ *         'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *         with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void mixCompactToRingKernel(float *out, uint32_t x) {
+    float2 sample = mixCompact((x - offset) & ringMask);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
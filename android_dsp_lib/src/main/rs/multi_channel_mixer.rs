@@ -0,0 +1,128 @@
+/**
+ * Android DSP library - Multi Channel Mixer for 8 and 16 bit input values
+ *
+ * Module:      multi_channel_mixer.rs
+ * Description: This kernel converts interleaved 8 or 16 bit IQ values to float and shifts them by
+ *              several mix frequencies at once. Each invocation converts one IQ pair and mixes it with
+ *              the NCO of every channel (own phase and phase increment, shared cos/sin table, see
+ *              nco_mixer.rs). The results are written channel by channel into one output allocation:
+ *              the samples of channel c start at index c*stride.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+#define TABLE_SHIFT 20         // 32 - log2(length of sinCosTable). must match NcoMixer.TABLE_BITS
+
+rs_allocation outReal;     // Output Allocation (split layout): real parts of all channels
+rs_allocation outImag;     // Output Allocation (split layout): imag parts of all channels
+rs_allocation outIQ;       // Output Allocation (interleaved layout): samples of all channels
+float *lut;                // 8 bit input: lookup table (length 256) indexed by the unsigned value of the byte
+float2 *sinCosTable;       // (cos, sin) of 2*pi*(i+0.5)/length (see nco_mixer.rs)
+uint32_t *phases;          // per channel: phase of the first sample of the packet (2^32 is one full period)
+uint32_t *phaseIncrements; // per channel: phase increment per sample
+uint32_t numChannels;      // number of channels
+uint32_t stride;           // distance between the first samples of two channels in the output allocations
+uint16_t signFlip;         // 16 bit input: 0x8000 for signed input (maps the values to unsigned), 0 for unsigned input
+float center;              // 16 bit input: unsigned value that represents 0.0 (32768 for signed, 32767.5 for unsigned)
+
+/*
+ * Shifts the frequency of a complex sample with the NCO of the given channel: (re + j*im) * (cos - j*sin)
+ */
+static float2 mix(float2 in, uint32_t channel, uint32_t sample) {
+    float2 sinCos = sinCosTable[(phases[channel] + phaseIncrements[channel] * sample) >> TABLE_SHIFT];
+    float2 result;
+    result.x = in.x * sinCos.x + in.y * sinCos.y;
+    result.y = in.y * sinCos.x - in.x * sinCos.y;
+    return result;
+}
+
+/*
+ * Mixes the converted sample with all channels and writes the results into the split output allocations
+ */
+static void mixToSplit(float2 value, uint32_t x) {
+    uint32_t channel;
+    float2 sample;
+    for(channel=0; channel<numChannels; channel++) {
+        sample = mix(value, channel, x);
+        rsSetElementAt_float(outReal, sample.x, channel * stride + x);
+        rsSetElementAt_float(outImag, sample.y, channel * stride + x);
+    }
+}
+
+/*
+ * Mixes the converted sample with all channels and writes the results into the interleaved output allocation
+ */
+static void mixToFloat2(float2 value, uint32_t x) {
+    uint32_t channel;
+    for(channel=0; channel<numChannels; channel++)
+        rsSetElementAt_float2(outIQ, mix(value, channel, x), channel * stride + x);
+}
+
+/*
+ * Converts an 8 bit IQ pair to float
+ */
+static float2 convert8Bit(char2 in) {
+    float2 value;
+    value.x = lut[(uchar) in.x];
+    value.y = lut[(uchar) in.y];
+    return value;
+}
+
+/*
+ * Converts a 16 bit IQ pair to float
+ */
+static float2 convert16Bit(ushort2 in) {
+    float2 value;
+    value.x = ((in.x ^ signFlip) - center) / 32768.0f;
+    value.y = ((in.y ^ signFlip) - center) / 32768.0f;
+    return value;
+}
+
+/*
+ * Kernels: convert one IQ pair and mix it into all channels (split layout)
+ *          must be launched on the input allocation with x in [0, number of IQ pairs)
+ * @param in        input IQ pair
+ * @param x         position inside 'in' (given by the runtime)
+ */
+void mix8BitToSplitKernel(const char2 *in, uint32_t x) {
+    mixToSplit(convert8Bit(*in), x);
+}
+
+void mix16BitToSplitKernel(const ushort2 *in, uint32_t x) {
+    mixToSplit(convert16Bit(*in), x);
+}
+
+/*
+ * Kernels: convert one IQ pair and mix it into all channels (interleaved layout)
+ *          must be launched on the input allocation with x in [0, number of IQ pairs)
+ * @param in        input IQ pair
+ * @param x         position inside 'in' (given by the runtime)
+ */
+void mix8BitToFloat2Kernel(const char2 *in, uint32_t x) {
+    mixToFloat2(convert8Bit(*in), x);
+}
+
+void mix16BitToFloat2Kernel(const ushort2 *in, uint32_t x) {
+    mixToFloat2(convert16Bit(*in), x);
+}
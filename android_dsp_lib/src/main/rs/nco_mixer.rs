@@ -0,0 +1,157 @@
+/**
+ * Android DSP library - NCO Mixer for 8 and 16 bit input values
+ *
+ * Module:      nco_mixer.rs
+ * Description: This kernel converts interleaved 8 or 16 bit IQ values to float and shifts their
+ *              frequency with a numerically controlled oscillator (NCO). The phase of each sample is
+ *              calculated from a 32 bit fixed-point phase accumulator (phase + phaseIncrement*sample,
+ *              wrapping modulo 2^32) and its upper bits select the entry of a small cos/sin table.
+ *              Therefore any frequency can be mixed (resolution: sampleRate/2^32) and a retune
+ *              only changes the increment (the phase stays continuous).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+#define INT16_SCALE 16384.0f   // fixed-point scale of int16 samples (must match SamplePacket.INT16_SCALE)
+#define TABLE_SHIFT 20         // 32 - log2(length of sinCosTable). must match NcoMixer.TABLE_BITS
+
+rs_allocation inSamples;   // Input Allocation (I8_2 for 8 bit, U16_2 for 16 bit input). raw IQ pairs of the packet
+rs_allocation outImag;     // Output Allocation for imag array (kernels that write the real part through 'out')
+float *lut;                // 8 bit input: lookup table (length 256) indexed by the unsigned value of the byte
+float2 *sinCosTable;       // (cos, sin) of 2*pi*(i+0.5)/length (center of the phase interval of entry i). set by the caller
+uint32_t phase;            // phase of the first sample of the packet (2^32 is one full period)
+uint32_t phaseIncrement;   // phase increment per sample: mixFrequency/sampleRate * 2^32
+uint32_t offset;           // Start index in the output allocations (ring index of the first sample for ring kernels)
+uint32_t ringMask;         // capacity-1 of the output ring buffer (ring kernels only)
+uint16_t signFlip;         // 16 bit input: 0x8000 for signed input (maps the values to unsigned), 0 for unsigned input
+float center;              // 16 bit input: unsigned value that represents 0.0 (32768 for signed, 32767.5 for unsigned)
+
+/*
+ * Shifts the frequency of a complex sample with the NCO: (re + j*im) * (cos - j*sin)
+ */
+static float2 mix(float2 in, uint32_t sample) {
+    float2 sinCos = sinCosTable[(phase + phaseIncrement * sample) >> TABLE_SHIFT];
+    float2 result;
+    result.x = in.x * sinCos.x + in.y * sinCos.y;
+    result.y = in.y * sinCos.x - in.x * sinCos.y;
+    return result;
+}
+
+/*
+ * Converts and mixes the 8 bit IQ pair with the given index
+ */
+static float2 mix8Bit(uint32_t sample) {
+    char2 in = rsGetElementAt_char2(inSamples, sample);
+    float2 value;
+    value.x = lut[(uchar) in.x];
+    value.y = lut[(uchar) in.y];
+    return mix(value, sample);
+}
+
+/*
+ * Converts and mixes the 16 bit IQ pair with the given index
+ */
+static float2 mix16Bit(uint32_t sample) {
+    ushort2 in = rsGetElementAt_ushort2(inSamples, sample);
+    float2 value;
+    value.x = ((in.x ^ signFlip) - center) / 32768.0f;
+    value.y = ((in.y ^ signFlip) - center) / 32768.0f;
+    return mix(value, sample);
+}
+
+/*
+ * Scales a float sample to the int16 fixed-point format and saturates it
+ */
+static short toInt16(float value) {
+    return (short) clamp(rint(value * INT16_SCALE), -32768.0f, 32767.0f);
+}
+
+/*
+ * Kernels: mix IQ pairs into split float samples (real part through 'out', imag part into outImag)
+ *          must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mix8BitToSplitKernel(float *out, uint32_t x) {
+    float2 sample = mix8Bit(x - offset);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+void mix16BitToSplitKernel(float *out, uint32_t x) {
+    float2 sample = mix16Bit(x - offset);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+/*
+ * Kernels: mix IQ pairs into complex (float2) samples
+ *          must be launched on the output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mix8BitToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = mix8Bit(x - offset);
+}
+
+void mix16BitToFloat2Kernel(float2 *out, uint32_t x) {
+    *out = mix16Bit(x - offset);
+}
+
+/*
+ * Kernels: mix IQ pairs into int16 samples (real part through 'out', imag part into outImag)
+ *          must be launched on the real output allocation with x in [offset, offset + number of IQ pairs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void mix8BitToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = mix8Bit(x - offset);
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
+
+void mix16BitToInt16Kernel(short *out, uint32_t x) {
+    float2 sample = mix16Bit(x - offset);
+    *out = toInt16(sample.x);
+    rsSetElementAt_short(outImag, toInt16(sample.y), x);
+}
+
+/*
+ * Kernels: mix IQ pairs into a ring buffer (real part through 'out', imag part into outImag)
+ *          'offset' is the ring index of the first sample. must be launched on the real ring allocation
+ *          with the range(s) that are written
+ * @param out       output sample (real part)
+ * @param x         position inside the ring buffer (given by the runtime)
+ */
+void mix8BitToRingKernel(float *out, uint32_t x) {
+    float2 sample = mix8Bit((x - offset) & ringMask);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
+
+void mix16BitToRingKernel(float *out, uint32_t x) {
+    float2 sample = mix16Bit((x - offset) & ringMask);
+    *out = sample.x;
+    rsSetElementAt_float(outImag, sample.y, x);
+}
@@ -29,22 +29,34 @@
 #pragma rs java_package_name(com.mantz_it.android_dsp_lib)
 
 float gain;                 // Quadrature gain
-float historyRe;            // history sample from the last demodulation cycle
-float historyIm;
+float *history;             // history sample from the last demodulation cycle (re, im; one allocation per demodulator)
 rs_allocation inReal;       // Input packet
 rs_allocation inImag;
 rs_allocation outReal;      // Output packet
+rs_allocation inIQ;         // Input packet (interleaved layout)
+rs_allocation outIQ;        // Output packet (interleaved layout)
 
 uint32_t offsetIn;          // Start index in the input allocations
 uint32_t offsetOut;         // Start index in the output allocations (first index that will be written)
 uint32_t len;               // Length of the output allocations (len-1 is max index that will be written)
+uint32_t ringMask;          // capacity-1 of the input ring buffer (ring kernels only)
+uint32_t ringStart;         // ring index of the first input sample (ring kernels only)
 
 /*
- * Will copy the last sample from the input packet (real and imag parts) to the history variables
+ * Will copy the last sample from the input packet (real and imag parts) to the history
  */
 void saveHistory() {
-    historyRe = rsGetElementAt_float(inReal, offsetIn + len -1);
-    historyIm = rsGetElementAt_float(inImag, offsetIn + len -1);
+    history[0] = rsGetElementAt_float(inReal, offsetIn + len - offsetOut -1);
+    history[1] = rsGetElementAt_float(inImag, offsetIn + len - offsetOut -1);
+}
+
+/*
+ * Will copy the last sample from the interleaved input packet to the history
+ */
+void saveHistoryInterleaved() {
+    float2 sample = rsGetElementAt_float2(inIQ, offsetIn + len - offsetOut -1);
+    history[0] = sample.x;
+    history[1] = sample.y;
 }
 
 /*
@@ -65,8 +77,8 @@ void demod(float* out, uint32_t x) {
         // Use the history Sample
         reIn = rsGetElementAt_float(inReal, offsetIn);
         imIn = rsGetElementAt_float(inImag, offsetIn);
-        resultReal = reIn * historyRe + imIn * historyIm;
-        resultImag = imIn * historyRe - reIn * historyIm;
+        resultReal = reIn * history[0] + imIn * history[1];
+        resultImag = imIn * history[0] - reIn * history[1];
     } else {
         reIn = rsGetElementAt_float(inReal, offsetIn + x);
         imIn = rsGetElementAt_float(inImag, offsetIn + x);
@@ -76,4 +88,51 @@ void demod(float* out, uint32_t x) {
         resultImag = imIn * reInPrev - reIn * imInPrev;
     }
     rsSetElementAt_float(outReal, gain * atan2(resultImag, resultReal), offsetOut + x);
-}
\ No newline at end of file
+}
+
+/*
+ * Kernel: demodulate a complex signal (interleaved layout)
+ *         Input is expected in inIQ and output will be stored in the real part of outIQ
+ * @param out       dummy argument (is not used, but has to have the same size as outIQ)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void demodInterleaved(float2* out, uint32_t x) {
+    float2 in, inPrev;
+    float2 result = 0;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    in = rsGetElementAt_float2(inIQ, offsetIn + x);
+    if(x == 0) {
+        // Use the history Sample
+        inPrev.x = history[0];
+        inPrev.y = history[1];
+    } else {
+        inPrev = rsGetElementAt_float2(inIQ, offsetIn + x-1);
+    }
+    result.x = gain * atan2(in.y * inPrev.x - in.x * inPrev.y, in.x * inPrev.x + in.y * inPrev.y);
+    rsSetElementAt_float2(outIQ, result, offsetOut + x);
+}
+
+/*
+ * Kernel: demodulate a complex signal from a ring buffer
+ *         Input is expected in inReal and inImag (ring buffer) and output will be stored in outReal.
+ *         The previous sample is always read from the ring buffer, so no history is needed.
+ * @param out       dummy argument (is not used, but has to have the same size as outReal)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void demodRing(float* out, uint32_t x) {
+    float imInPrev, imIn, reInPrev, reIn;
+    uint32_t index = (ringStart + x) & ringMask;
+    uint32_t prevIndex = (ringStart + x - 1) & ringMask;
+
+    if(x + offsetOut >= len)
+            return; // reached max index
+
+    reIn = rsGetElementAt_float(inReal, index);
+    imIn = rsGetElementAt_float(inImag, index);
+    reInPrev = rsGetElementAt_float(inReal, prevIndex);
+    imInPrev = rsGetElementAt_float(inImag, prevIndex);
+    rsSetElementAt_float(outReal, gain * atan2(imIn * reInPrev - reIn * imInPrev, reIn * reInPrev + imIn * imInPrev), offsetOut + x);
+}
@@ -0,0 +1,201 @@
+/**
+ * Android DSP library - Rational Resampler
+ *
+ * Module:      rational_resampler.rs
+ * Description: This kernel implements a polyphase FIR resampler with the rational factor
+ *              interpolation/decimation (L/M). Each output sample is calculated with only the taps of
+ *              its polyphase branch: output j has the time t = firstTime + j*M on the interpolated grid,
+ *              reads the input samples up to t/L and uses the branch t%L:
+ *                  out[j] = sum_k polyTaps[(t%L)*tapsPerPhase + k] * in[t/L - k]
+ *              The last tapsPerPhase-1 input samples are kept in the history arrays for the next packet.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2016 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#pragma version(1)
+#pragma rs_fp_relaxed
+#pragma rs java_package_name(com.mantz_it.android_dsp_lib)
+
+float *polyTaps;           // polyphase taps: branch p starts at p*tapsPerPhase (taps in reversed order: k=0 is the newest sample)
+float *historyReal;        // last tapsPerPhase-1 input samples of the previous packets (oldest first)
+float *historyImag;
+rs_allocation inReal;      // Input packet (split layout)
+rs_allocation inImag;
+rs_allocation inIQ;        // Input packet (interleaved layout)
+rs_allocation outImag;     // Output Allocation for imag array (split kernel only)
+uint32_t tapsPerPhase;     // number of taps of each polyphase branch
+uint32_t interpolation;    // L
+uint32_t decimation;       // M
+uint32_t firstTime;        // time of the first output on the interpolated grid (relative to the first input sample)
+uint32_t offsetIn;         // Start index in the input allocations
+uint32_t offset;           // Start index in the output allocations (first index that will be written)
+uint32_t consumed;         // number of input samples consumed by the last call (updateHistory only)
+
+/*
+ * Returns the input sample at the given index relative to the first input sample (negative: history)
+ */
+static float getInReal(int32_t index) {
+    if(index < 0)
+        return historyReal[index+tapsPerPhase-1];
+    return rsGetElementAt_float(inReal, index+offsetIn);
+}
+
+static float getInImag(int32_t index) {
+    if(index < 0)
+        return historyImag[index+tapsPerPhase-1];
+    return rsGetElementAt_float(inImag, index+offsetIn);
+}
+
+static float2 getInIQ(int32_t index) {
+    float2 sample;
+    if(index < 0) {
+        sample.x = historyReal[index+tapsPerPhase-1];
+        sample.y = historyImag[index+tapsPerPhase-1];
+        return sample;
+    }
+    return rsGetElementAt_float2(inIQ, index+offsetIn);
+}
+
+/*
+ * Will set the history samples to zero (initial state)
+ */
+void clearHistory() {
+    uint32_t i;
+    for(i=0; i < tapsPerPhase-1; i++) {
+        historyReal[i] = 0;
+        historyImag[i] = 0;
+    }
+}
+
+/*
+ * Will shift the last 'consumed' input samples (split layout) into the history arrays
+ */
+void updateHistory() {
+    uint32_t i;
+    int32_t index;
+    for(i=0; i < tapsPerPhase-1; i++) {
+        index = consumed - tapsPerPhase + 1 + i;    // ascending: history entries are read before they are overwritten
+        historyReal[i] = getInReal(index);
+        historyImag[i] = getInImag(index);
+    }
+}
+
+/*
+ * Will shift the last 'consumed' input samples (only real part) into the history array
+ */
+void updateRealHistory() {
+    uint32_t i;
+    for(i=0; i < tapsPerPhase-1; i++)
+        historyReal[i] = getInReal(consumed - tapsPerPhase + 1 + i);
+}
+
+/*
+ * Will shift the last 'consumed' input samples (interleaved layout) into the history arrays
+ */
+void updateHistoryInterleaved() {
+    uint32_t i;
+    float2 sample;
+    for(i=0; i < tapsPerPhase-1; i++) {
+        sample = getInIQ(consumed - tapsPerPhase + 1 + i);
+        historyReal[i] = sample.x;
+        historyImag[i] = sample.y;
+    }
+}
+
+/*
+ * Kernel: resample a complex signal (real part through 'out', imag part into outImag)
+ *         must be launched on the real output allocation with x in [offset, offset + number of outputs)
+ * @param out       output sample (real part)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void resampleKernel(float *out, uint32_t x) {
+    uint32_t time = firstTime + (x - offset) * decimation;
+    int32_t newest = time / interpolation;
+    const float *taps = polyTaps + (time % interpolation) * tapsPerPhase;
+    int32_t k;
+    float resultReal = 0;
+    float resultImag = 0;
+
+    if(newest >= (int32_t) tapsPerPhase - 1) {
+        // All input values are located in the in-allocations
+        for(k=0; k<tapsPerPhase; k++) {
+            resultReal += rsGetElementAt_float(inReal, newest-k+offsetIn) * taps[k];
+            resultImag += rsGetElementAt_float(inImag, newest-k+offsetIn) * taps[k];
+        }
+    } else {
+        // At least one input value is located in the history
+        for(k=0; k<tapsPerPhase; k++) {
+            resultReal += getInReal(newest-k) * taps[k];
+            resultImag += getInImag(newest-k) * taps[k];
+        }
+    }
+    *out = resultReal;
+    rsSetElementAt_float(outImag, resultImag, x);
+}
+
+/*
+ * Kernel: resample a real signal
+ *         must be launched on the output allocation with x in [offset, offset + number of outputs)
+ * @param out       output sample
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void resampleRealKernel(float *out, uint32_t x) {
+    uint32_t time = firstTime + (x - offset) * decimation;
+    int32_t newest = time / interpolation;
+    const float *taps = polyTaps + (time % interpolation) * tapsPerPhase;
+    int32_t k;
+    float result = 0;
+
+    if(newest >= (int32_t) tapsPerPhase - 1) {
+        // All input values are located in the in-allocation
+        for(k=0; k<tapsPerPhase; k++)
+            result += rsGetElementAt_float(inReal, newest-k+offsetIn) * taps[k];
+    } else {
+        // At least one input value is located in the history
+        for(k=0; k<tapsPerPhase; k++)
+            result += getInReal(newest-k) * taps[k];
+    }
+    *out = result;
+}
+
+/*
+ * Kernel: resample a complex signal (interleaved layout)
+ *         must be launched on the output allocation with x in [offset, offset + number of outputs)
+ * @param out       output sample (interleaved layout)
+ * @param x         position inside 'out' (given by the runtime)
+ */
+void resampleInterleavedKernel(float2 *out, uint32_t x) {
+    uint32_t time = firstTime + (x - offset) * decimation;
+    int32_t newest = time / interpolation;
+    const float *taps = polyTaps + (time % interpolation) * tapsPerPhase;
+    int32_t k;
+    float2 result = 0;
+
+    if(newest >= (int32_t) tapsPerPhase - 1) {
+        // All input values are located in the in-allocation
+        for(k=0; k<tapsPerPhase; k++)
+            result += rsGetElementAt_float2(inIQ, newest-k+offsetIn) * taps[k];
+    } else {
+        // At least one input value is located in the history
+        for(k=0; k<tapsPerPhase; k++)
+            result += getInIQ(newest-k) * taps[k];
+    }
+    *out = result;
+}
@@ -1,12 +1,28 @@
 package com.mantz_it.androiddsplibbenchmark;
 
 import android.content.Context;
+import android.support.v8.renderscript.Allocation;
 
 import com.mantz_it.android_dsp_lib.AndroidDSPLib;
+import com.mantz_it.android_dsp_lib.BandPassFilter;
+import com.mantz_it.android_dsp_lib.ChannelExtractor;
+import com.mantz_it.android_dsp_lib.CicDecimator;
+import com.mantz_it.android_dsp_lib.ComplexBandPassFilter;
+import com.mantz_it.android_dsp_lib.FilterDesignCache;
 import com.mantz_it.android_dsp_lib.FirFilter;
+import com.mantz_it.android_dsp_lib.HalfBandCascade;
 import com.mantz_it.android_dsp_lib.IQConverter;
+import com.mantz_it.android_dsp_lib.IQCorrection;
+import com.mantz_it.android_dsp_lib.LookupTable_8Bit;
 import com.mantz_it.android_dsp_lib.LowPassFilter;
+import com.mantz_it.android_dsp_lib.MixerLutCache;
+import com.mantz_it.android_dsp_lib.Mixer_8Bit;
+import com.mantz_it.android_dsp_lib.R;
+import com.mantz_it.android_dsp_lib.RationalResampler;
 import com.mantz_it.android_dsp_lib.SamplePacket;
+import com.mantz_it.android_dsp_lib.ScriptC_fir_filter;
+
+import java.nio.ByteBuffer;
 
 /**
  * Android DSP library - Benchmark
@@ -81,6 +97,60 @@ public class Benchmark extends Thread {
 		long millisLowPassFilterThreaded_legacy;
 		long millisLowPassFilter9Taps;
 		long millisLowPassFilter9Taps_legacy;
+		long millisFillPacketIntoSamplePacket8BitSignedInterleaved;
+		long millisMixPacketIntoSamplePacket8BitSignedInterleaved;
+		long millisDecimatingLowPassFilterInterleaved;
+		long millisFillPacketIntoSamplePacket8BitSignedInt16;
+		long millisDecimatingLowPassFilterInt16;
+		long millisFillPacketIntoSamplePacket16BitSigned;
+		long millisFillPacketIntoSamplePacket16BitUnsigned;
+		long millisMixPacketIntoSamplePacket16BitSigned;
+		long millisMixPacketIntoSamplePacket16BitUnsigned;
+		long millisFillPacketIntoSamplePacket8BitSignedByteBuffer;
+		long millisMixPacketIntoSamplePacket8BitSignedNco;
+		long millisMixPacketIntoSamplePacket8BitSignedHopping;
+		long millisMixPacketIntoSamplePacket8BitSignedNcoHopping;
+		long millisMixPacketIntoSamplePacket8BitSignedCachedHopping;
+		long millisMixPacketIntoSamplePacket8BitSignedCompact;
+		long millisMixPacketIntoSamplePacket8BitSignedCompactHopping;
+		long millisMixPacketIntoSamplePacket8BitSignedManyConverters;
+		long millisMixPacketIntoSamplePacket8BitSignedManyConvertersCompact;
+		long millisChannelExtractionTwoStep;
+		long millisChannelExtractionFused;
+		long millisMixPacketIntoSamplePacket8BitSignedSeparateChannels;
+		long millisMixPacketIntoSamplePacket8BitSignedMultiChannel;
+		long millisConvert8BitSignedPerByte;
+		long millisConvert8BitSignedPerPair;
+		long millisMix8BitSignedPerByte;
+		long millisMix8BitSignedPerPair;
+		long millisFillPacketIntoSamplePacket8BitSignedDcCorrection;
+		long millisFillPacketIntoSamplePacket8BitSignedIQCorrection;
+		long millisDecimatingLowPassFilterDirectForm;
+		long millisDecimatingLowPassFilterFolded;
+		long millisRationalResampler2400kTo48k;
+		long millisRationalResampler1000kTo48k;
+		long millisFirFilter64TapsDirectForm;
+		long millisFirFilter64TapsFft;
+		long millisFirFilter256TapsDirectForm;
+		long millisFirFilter256TapsFft;
+		long millisFirFilter1024TapsDirectForm;
+		long millisFirFilter1024TapsFft;
+		long millisDecimateBy16LowPassFilter;
+		long millisDecimateBy16HalfBandCascade;
+		long millisDecimateBy64LowPassFilter;
+		long millisDecimateBy64HalfBandCascade;
+		long millisDecimateBy64LowPassFilter8Bit;
+		long millisDecimateBy64CicDecimator;
+		long millisDecimateBy256LowPassFilter8Bit;
+		long millisDecimateBy256CicDecimator;
+		long millisFirFilterLongPackets;
+		long millisFirFilterShortPackets;
+		long millisFirFilterConstruction;
+		long millisFirFilterConstructionOwnScript;
+		long millisBandwidthChangeNewFilter;
+		long millisBandwidthChangeRedesign;
+		long millisFilterDesign;
+		long millisFilterDesignCached;
 
 		// IQConverter: lookup
 		rounds = 10000;
@@ -120,6 +190,165 @@ public class Benchmark extends Thread {
 			callback.println(String.format("Performance gain is %d%%\n", (int)(100 * ((float)millisMixPacketIntoSamplePacket8BitSigned_legacy/millisMixPacketIntoSamplePacket8BitSigned - 1))));
 		}
 
+		// IQConverter: 16-bit conversion and mixing
+		rounds = 10000;
+		callback.println("Measure '16-bit signed conversion' ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisFillPacketIntoSamplePacket16BitSigned = measureFillPacketIntoSamplePacket16Bit(rounds, IQConverter.FORMAT_16BIT_SIGNED);
+		printResult(millisFillPacketIntoSamplePacket16BitSigned, rounds);
+		callback.println("Measure '16-bit unsigned conversion' ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisFillPacketIntoSamplePacket16BitUnsigned = measureFillPacketIntoSamplePacket16Bit(rounds, IQConverter.FORMAT_16BIT_UNSIGNED);
+		printResult(millisFillPacketIntoSamplePacket16BitUnsigned, rounds);
+		if(checkAbort())
+			return;
+		printGain("8-bit signed", millisFillPacketIntoSamplePacket8BitSigned, millisFillPacketIntoSamplePacket16BitSigned);
+
+		callback.println("Measure '16-bit signed mixing' ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket16BitSigned = measureMixPacketIntoSamplePacket16Bit(rounds, IQConverter.FORMAT_16BIT_SIGNED);
+		printResult(millisMixPacketIntoSamplePacket16BitSigned, rounds);
+		callback.println("Measure '16-bit unsigned mixing' ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket16BitUnsigned = measureMixPacketIntoSamplePacket16Bit(rounds, IQConverter.FORMAT_16BIT_UNSIGNED);
+		printResult(millisMixPacketIntoSamplePacket16BitUnsigned, rounds);
+		if(checkAbort())
+			return;
+		printGain("8-bit signed", millisMixPacketIntoSamplePacket8BitSigned, millisMixPacketIntoSamplePacket16BitSigned);
+
+		// IQConverter: mixing with the NCO (and retuning on every packet)
+		rounds = 10000;
+		callback.println("Measure '8-bit signed mixing' with NCO ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket8BitSignedNco = measureMixPacketIntoSamplePacket8BitSigned(rounds,
+				SamplePacket.LAYOUT_SPLIT, IQConverter.MIXER_MODE_NCO);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedNco, rounds);
+		if(checkAbort())
+			return;
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSigned, millisMixPacketIntoSamplePacket8BitSignedNco);
+
+		rounds = 1000;
+		callback.println("Measure '8-bit signed mixing' with a retune on every packet ("+rounds+" rounds)");
+		callback.print("Lookup table ...");
+		millisMixPacketIntoSamplePacket8BitSignedHopping = measureMixPacketIntoSamplePacket8BitSignedHopping(rounds, IQConverter.MIXER_MODE_LUT);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedHopping, rounds);
+		callback.print("NCO ...");
+		millisMixPacketIntoSamplePacket8BitSignedNcoHopping = measureMixPacketIntoSamplePacket8BitSignedHopping(rounds, IQConverter.MIXER_MODE_NCO);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedNcoHopping, rounds);
+		callback.print("Cached lookup tables ...");
+		millisMixPacketIntoSamplePacket8BitSignedCachedHopping = measureMixPacketIntoSamplePacket8BitSignedHopping(rounds,
+				IQConverter.MIXER_MODE_LUT, new MixerLutCache(4));
+		printResult(millisMixPacketIntoSamplePacket8BitSignedCachedHopping, rounds);
+		if(checkAbort())
+			return;
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSignedHopping, millisMixPacketIntoSamplePacket8BitSignedNcoHopping);
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSignedHopping, millisMixPacketIntoSamplePacket8BitSignedCachedHopping);
+
+		// IQConverter: compact mixer tables (fixed channel, retune on every packet, many converters)
+		rounds = 10000;
+		callback.println("Measure '8-bit signed mixing' with compact tables ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket8BitSignedCompact = measureMixPacketIntoSamplePacket8BitSigned(rounds,
+				SamplePacket.LAYOUT_SPLIT, IQConverter.MIXER_MODE_COMPACT);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedCompact, rounds);
+		if(checkAbort())
+			return;
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSigned, millisMixPacketIntoSamplePacket8BitSignedCompact);
+
+		rounds = 1000;
+		callback.println("Measure '8-bit signed mixing' with compact tables and a retune on every packet ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket8BitSignedCompactHopping = measureMixPacketIntoSamplePacket8BitSignedHopping(rounds, IQConverter.MIXER_MODE_COMPACT);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedCompactHopping, rounds);
+		if(checkAbort())
+			return;
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSignedHopping, millisMixPacketIntoSamplePacket8BitSignedCompactHopping);
+
+		rounds = 10000;
+		callback.println("Measure '8-bit signed mixing' with 8 converters on different channels ("+rounds+" rounds)");
+		callback.print("Lookup table ...");
+		millisMixPacketIntoSamplePacket8BitSignedManyConverters = measureMixPacketIntoSamplePacket8BitSignedManyConverters(rounds, 8, IQConverter.MIXER_MODE_LUT);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedManyConverters, rounds);
+		callback.print("Compact ...");
+		millisMixPacketIntoSamplePacket8BitSignedManyConvertersCompact = measureMixPacketIntoSamplePacket8BitSignedManyConverters(rounds, 8, IQConverter.MIXER_MODE_COMPACT);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedManyConvertersCompact, rounds);
+		if(checkAbort())
+			return;
+		printGain("lookup table", millisMixPacketIntoSamplePacket8BitSignedManyConverters, millisMixPacketIntoSamplePacket8BitSignedManyConvertersCompact);
+
+		// IQConverter: 4 channels from one packet (one call per channel vs. one upload and one launch)
+		rounds = 1000;
+		callback.println("Measure '8-bit signed mixing' into 4 channels ("+rounds+" rounds)");
+		callback.print("One call per channel (NCO) ...");
+		millisMixPacketIntoSamplePacket8BitSignedSeparateChannels = measureMixPacketIntoSamplePacket8BitSignedChannels(rounds, 4, false);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedSeparateChannels, rounds);
+		callback.print("Multi channel ...");
+		millisMixPacketIntoSamplePacket8BitSignedMultiChannel = measureMixPacketIntoSamplePacket8BitSignedChannels(rounds, 4, true);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedMultiChannel, rounds);
+		if(checkAbort())
+			return;
+		printGain("one call per channel", millisMixPacketIntoSamplePacket8BitSignedSeparateChannels, millisMixPacketIntoSamplePacket8BitSignedMultiChannel);
+
+		// ChannelExtractor: convert + mix + filter + decimate in one pass
+		rounds = 1000;
+		callback.println("Measure 'channel extraction' (8-bit signed -> mix -> low pass -> decimate) ("+rounds+" rounds)");
+		callback.print("Two-step (mix, filter) ...");
+		millisChannelExtractionTwoStep = measureChannelExtraction(rounds, false);
+		printResult(millisChannelExtractionTwoStep, rounds);
+		callback.print("Fused ...");
+		millisChannelExtractionFused = measureChannelExtraction(rounds, true);
+		printResult(millisChannelExtractionFused, rounds);
+		if(checkAbort())
+			return;
+		printGain("two-step", millisChannelExtractionTwoStep, millisChannelExtractionFused);
+
+		// LookupTable_8Bit / Mixer_8Bit: one kernel invocation per byte vs. one per IQ pair (split layout)
+		rounds = 10000;
+		callback.println("Measure '8-bit signed lookup table' with per-byte and per-pair kernels ("+rounds+" rounds)");
+		callback.print("Per byte ...");
+		millisConvert8BitSignedPerByte = measureSplitKernels8BitSigned(rounds, false, true);
+		printResult(millisConvert8BitSignedPerByte, rounds);
+		callback.print("Per IQ pair ...");
+		millisConvert8BitSignedPerPair = measureSplitKernels8BitSigned(rounds, false, false);
+		printResult(millisConvert8BitSignedPerPair, rounds);
+		if(checkAbort())
+			return;
+		printGain("per byte", millisConvert8BitSignedPerByte, millisConvert8BitSignedPerPair);
+
+		callback.println("Measure '8-bit signed mixing' with per-byte and per-pair kernels ("+rounds+" rounds)");
+		callback.print("Per byte ...");
+		millisMix8BitSignedPerByte = measureSplitKernels8BitSigned(rounds, true, true);
+		printResult(millisMix8BitSignedPerByte, rounds);
+		callback.print("Per IQ pair ...");
+		millisMix8BitSignedPerPair = measureSplitKernels8BitSigned(rounds, true, false);
+		printResult(millisMix8BitSignedPerPair, rounds);
+		if(checkAbort())
+			return;
+		printGain("per byte", millisMix8BitSignedPerByte, millisMix8BitSignedPerPair);
+
+		// IQConverter: lookup with DC offset and IQ imbalance correction
+		rounds = 10000;
+		callback.println("Measure '8-bit signed lookup table' with IQ correction ("+rounds+" rounds)");
+		callback.print("DC offset ...");
+		millisFillPacketIntoSamplePacket8BitSignedDcCorrection = measureFillPacketIntoSamplePacket8BitSignedCorrected(rounds, false);
+		printResult(millisFillPacketIntoSamplePacket8BitSignedDcCorrection, rounds);
+		callback.print("DC offset and imbalance ...");
+		millisFillPacketIntoSamplePacket8BitSignedIQCorrection = measureFillPacketIntoSamplePacket8BitSignedCorrected(rounds, true);
+		printResult(millisFillPacketIntoSamplePacket8BitSignedIQCorrection, rounds);
+		if(checkAbort())
+			return;
+		printGain("no correction", millisFillPacketIntoSamplePacket8BitSigned, millisFillPacketIntoSamplePacket8BitSignedIQCorrection);
+
+		// IQConverter: lookup with input from a direct ByteBuffer
+		rounds = 10000;
+		callback.println("Measure '8-bit signed lookup table' from a direct ByteBuffer ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisFillPacketIntoSamplePacket8BitSignedByteBuffer = measureFillPacketIntoSamplePacket8BitSignedByteBuffer(rounds);
+		printResult(millisFillPacketIntoSamplePacket8BitSignedByteBuffer, rounds);
+		if(checkAbort())
+			return;
+		printGain("byte[]", millisFillPacketIntoSamplePacket8BitSigned, millisFillPacketIntoSamplePacket8BitSignedByteBuffer);
+
 		// LowPassFilter
 		rounds = 500;
 		callback.println("Measure 'LowPassFilter' ("+rounds+" rounds)");
@@ -158,6 +387,165 @@ public class Benchmark extends Thread {
 			callback.println(String.format("Performance gain is %d%%\n", (int)(100 * ((float)millisDecimatingLowPassFilter_legacy/millisDecimatingLowPassFilter - 1))));
 		}
 
+		// LowPassFilter (decimating by 4): direct form vs. folded symmetric taps
+		rounds = 500;
+		callback.println("Measure 'LowPassFilter' with direct form and folded symmetric taps ("+rounds+" rounds)");
+		callback.print("Direct form ... ");
+		millisDecimatingLowPassFilterDirectForm = measureDecimatingLowPassFilter(rounds, 4, SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_FLOAT32, false);
+		printResult(millisDecimatingLowPassFilterDirectForm, rounds);
+		callback.print("Folded ... ");
+		millisDecimatingLowPassFilterFolded = measureDecimatingLowPassFilter(rounds, 4, SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_FLOAT32, true);
+		printResult(millisDecimatingLowPassFilterFolded, rounds);
+		if(checkAbort())
+			return;
+		printGain("direct form", millisDecimatingLowPassFilterDirectForm, millisDecimatingLowPassFilterFolded);
+
+		// RationalResampler: SDR rates to 48 kHz audio
+		rounds = 500;
+		callback.println("Measure 'RationalResampler' to 48 kHz ("+rounds+" rounds)");
+		callback.print("2.4 MS/s ... ");
+		millisRationalResampler2400kTo48k = measureRationalResampler(rounds, 2400000, 48000);
+		printResult(millisRationalResampler2400kTo48k, rounds);
+		callback.print("1 MS/s ... ");
+		millisRationalResampler1000kTo48k = measureRationalResampler(rounds, 1000000, 48000);
+		printResult(millisRationalResampler1000kTo48k, rounds);
+		if(checkAbort())
+			return;
+
+		// FirFilter: direct form vs. FFT (overlap-save) for different numbers of taps (see FirFilter.FFT_THRESHOLD)
+		rounds = 200;
+		callback.println("Measure 'LowPassFilter' with direct form and FFT backend ("+rounds+" rounds)");
+		callback.print("Direct form ... ");
+		millisFirFilter64TapsDirectForm = measureFirFilterBackend(rounds, 64, false);
+		printResult(millisFirFilter64TapsDirectForm, rounds);
+		callback.print("FFT ... ");
+		millisFirFilter64TapsFft = measureFirFilterBackend(rounds, 64, true);
+		printResult(millisFirFilter64TapsFft, rounds);
+		if(checkAbort())
+			return;
+		printGain("direct form", millisFirFilter64TapsDirectForm, millisFirFilter64TapsFft);
+		callback.print("Direct form ... ");
+		millisFirFilter256TapsDirectForm = measureFirFilterBackend(rounds, 256, false);
+		printResult(millisFirFilter256TapsDirectForm, rounds);
+		callback.print("FFT ... ");
+		millisFirFilter256TapsFft = measureFirFilterBackend(rounds, 256, true);
+		printResult(millisFirFilter256TapsFft, rounds);
+		if(checkAbort())
+			return;
+		printGain("direct form", millisFirFilter256TapsDirectForm, millisFirFilter256TapsFft);
+		callback.print("Direct form ... ");
+		millisFirFilter1024TapsDirectForm = measureFirFilterBackend(rounds, 1024, false);
+		printResult(millisFirFilter1024TapsDirectForm, rounds);
+		callback.print("FFT ... ");
+		millisFirFilter1024TapsFft = measureFirFilterBackend(rounds, 1024, true);
+		printResult(millisFirFilter1024TapsFft, rounds);
+		if(checkAbort())
+			return;
+		printGain("direct form", millisFirFilter1024TapsDirectForm, millisFirFilter1024TapsFft);
+		printFftCrossover(new int[] {64, 256, 1024},
+				new long[] {millisFirFilter64TapsDirectForm, millisFirFilter256TapsDirectForm, millisFirFilter1024TapsDirectForm},
+				new long[] {millisFirFilter64TapsFft, millisFirFilter256TapsFft, millisFirFilter1024TapsFft});
+
+		// Decimation by 16 and 64: single LowPassFilter vs. half-band cascade with the same pass band and alias rejection
+		rounds = 500;
+		callback.println("Measure decimation with 'LowPassFilter' and 'HalfBandCascade' ("+rounds+" rounds)");
+		callback.print("LowPassFilter ... ");
+		millisDecimateBy16LowPassFilter = measureDecimation(rounds, 16, 20000, false);
+		printResult(millisDecimateBy16LowPassFilter, rounds);
+		callback.print("HalfBandCascade ... ");
+		millisDecimateBy16HalfBandCascade = measureDecimation(rounds, 16, 20000, true);
+		printResult(millisDecimateBy16HalfBandCascade, rounds);
+		if(checkAbort())
+			return;
+		printGain("LowPassFilter", millisDecimateBy16LowPassFilter, millisDecimateBy16HalfBandCascade);
+		callback.print("LowPassFilter ... ");
+		millisDecimateBy64LowPassFilter = measureDecimation(rounds, 64, 5000, false);
+		printResult(millisDecimateBy64LowPassFilter, rounds);
+		callback.print("HalfBandCascade ... ");
+		millisDecimateBy64HalfBandCascade = measureDecimation(rounds, 64, 5000, true);
+		printResult(millisDecimateBy64HalfBandCascade, rounds);
+		if(checkAbort())
+			return;
+		printGain("LowPassFilter", millisDecimateBy64LowPassFilter, millisDecimateBy64HalfBandCascade);
+
+		// Decimation of 8-bit IQ samples by 64 and 256: conversion + LowPassFilter vs. CIC + compensation filter
+		rounds = 500;
+		callback.println("Measure decimation of 8-bit samples with 'LowPassFilter' and 'CicDecimator' ("+rounds+" rounds)");
+		callback.print("LowPassFilter ... ");
+		millisDecimateBy64LowPassFilter8Bit = measureCicDecimation(rounds, 64, false);
+		printResult(millisDecimateBy64LowPassFilter8Bit, rounds);
+		callback.print("CicDecimator ... ");
+		millisDecimateBy64CicDecimator = measureCicDecimation(rounds, 64, true);
+		printResult(millisDecimateBy64CicDecimator, rounds);
+		if(checkAbort())
+			return;
+		printGain("LowPassFilter", millisDecimateBy64LowPassFilter8Bit, millisDecimateBy64CicDecimator);
+		callback.print("LowPassFilter ... ");
+		millisDecimateBy256LowPassFilter8Bit = measureCicDecimation(rounds, 256, false);
+		printResult(millisDecimateBy256LowPassFilter8Bit, rounds);
+		callback.print("CicDecimator ... ");
+		millisDecimateBy256CicDecimator = measureCicDecimation(rounds, 256, true);
+		printResult(millisDecimateBy256CicDecimator, rounds);
+		if(checkAbort())
+			return;
+		printGain("LowPassFilter", millisDecimateBy256LowPassFilter8Bit, millisDecimateBy256CicDecimator);
+
+		// FirFilter with a long filter (255 taps) on short packets (the history is staged for every packet)
+		rounds = 200;
+		callback.println("Measure 'FirFilter' (255 taps) with short packets ("+rounds+" rounds)");
+		callback.print("" + PACKETSIZE + " samples per packet ... ");
+		millisFirFilterLongPackets = measureFirFilterPacketSize(rounds, 255, PACKETSIZE);
+		printResult(millisFirFilterLongPackets, rounds);
+		callback.print("256 samples per packet ... ");
+		millisFirFilterShortPackets = measureFirFilterPacketSize(rounds, 255, 256);
+		printResult(millisFirFilterShortPackets, rounds);
+		if(checkAbort())
+			return;
+		printGain("long packets", millisFirFilterLongPackets, millisFirFilterShortPackets);
+
+		// Construction of FirFilters (and the first packet): all filters share the compiled script
+		int filters = 50;
+		callback.println("Measure construction of 'FirFilter' (255 taps) incl. first packet ("+filters+" filters)");
+		callback.print("shared script ... ");
+		millisFirFilterConstruction = measureFirFilterConstruction(filters, 255, false);
+		callback.println("\t: " + millisFirFilterConstruction + " ms ("
+				+ millisFirFilterConstruction*1000l/filters + " us per filter)");
+		callback.print("own script ... ");
+		millisFirFilterConstructionOwnScript = measureFirFilterConstruction(filters, 255, true);
+		callback.println("\t: " + millisFirFilterConstructionOwnScript + " ms ("
+				+ millisFirFilterConstructionOwnScript*1000l/filters + " us per filter)");
+		if(checkAbort())
+			return;
+		printGain("own script", millisFirFilterConstructionOwnScript, millisFirFilterConstruction);
+
+		// Bandwidth change of a LowPassFilter before every packet: new filter vs. redesign() (history is kept)
+		rounds = 200;
+		callback.println("Measure 'LowPassFilter' with a bandwidth change per packet ("+rounds+" rounds)");
+		callback.print("new filter ... ");
+		millisBandwidthChangeNewFilter = measureBandwidthChange(rounds, false);
+		printResult(millisBandwidthChangeNewFilter, rounds);
+		callback.print("redesign() ... ");
+		millisBandwidthChangeRedesign = measureBandwidthChange(rounds, true);
+		printResult(millisBandwidthChangeRedesign, rounds);
+		if(checkAbort())
+			return;
+		printGain("new filter", millisBandwidthChangeNewFilter, millisBandwidthChangeRedesign);
+
+		// Filter design (low pass, band pass, complex band pass) with and without the filter design cache
+		rounds = 200;
+		callback.println("Measure filter design ("+rounds+" rounds)");
+		callback.print("no cache ... ");
+		millisFilterDesign = measureFilterDesign(rounds, null);
+		callback.println("\t: " + millisFilterDesign + " ms (" + millisFilterDesign*1000l/rounds + " us per round)");
+		callback.print("cache ... ");
+		FilterDesignCache filterDesignCache = new FilterDesignCache(FilterDesignCache.DEFAULT_MAX_ENTRIES);
+		millisFilterDesignCached = measureFilterDesign(rounds, filterDesignCache);
+		callback.println("\t: " + millisFilterDesignCached + " ms (" + millisFilterDesignCached*1000l/rounds
+				+ " us per round, hit rate " + Math.round(filterDesignCache.getHitRate()*100) + "%)");
+		if(checkAbort())
+			return;
+		printGain("no cache", millisFilterDesign, millisFilterDesignCached);
+
 		// LowPassFilter Threaded
 		rounds = 500 / threads;
 		callback.println("Measure 'LowPassFilter' (" + threads + " parallel threads) ("+rounds+" rounds)");
@@ -196,6 +584,54 @@ public class Benchmark extends Thread {
 			callback.println(String.format("Performance gain is %d%%\n", (int)(100 * ((float)millisLowPassFilter9Taps_legacy/millisLowPassFilter9Taps - 1))));
 		}
 
+		// Interleaved (float2) layout: lookup, mix and decimating LowPassFilter
+		rounds = 10000;
+		callback.println("Measure '8-bit signed lookup table' with interleaved layout ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisFillPacketIntoSamplePacket8BitSignedInterleaved = measureFillPacketIntoSamplePacket8BitSigned(rounds, SamplePacket.LAYOUT_INTERLEAVED);
+		printResult(millisFillPacketIntoSamplePacket8BitSignedInterleaved, rounds);
+		if(checkAbort())
+			return;
+		printGain("split", millisFillPacketIntoSamplePacket8BitSigned, millisFillPacketIntoSamplePacket8BitSignedInterleaved);
+
+		callback.println("Measure '8-bit signed mixing' with interleaved layout ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisMixPacketIntoSamplePacket8BitSignedInterleaved = measureMixPacketIntoSamplePacket8BitSigned(rounds, SamplePacket.LAYOUT_INTERLEAVED);
+		printResult(millisMixPacketIntoSamplePacket8BitSignedInterleaved, rounds);
+		if(checkAbort())
+			return;
+		printGain("split", millisMixPacketIntoSamplePacket8BitSigned, millisMixPacketIntoSamplePacket8BitSignedInterleaved);
+
+		rounds = 500;
+		callback.println("Measure 'LowPassFilter' with interleaved layout ("+rounds+" rounds)");
+		callback.print("DSP lib ... ");
+		millisDecimatingLowPassFilterInterleaved = measureDecimatingLowPassFilter(rounds, 4, SamplePacket.LAYOUT_INTERLEAVED);
+		printResult(millisDecimatingLowPassFilterInterleaved, rounds);
+		if(checkAbort())
+			return;
+		printGain("split", millisDecimatingLowPassFilter, millisDecimatingLowPassFilterInterleaved);
+
+		// int16 samples: lookup and decimating LowPassFilter
+		rounds = 10000;
+		callback.println("Measure '8-bit signed lookup table' with int16 samples ("+rounds+" rounds)");
+		callback.print("DSP lib ...");
+		millisFillPacketIntoSamplePacket8BitSignedInt16 = measureFillPacketIntoSamplePacket8BitSigned(rounds,
+				SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_INT16);
+		printResult(millisFillPacketIntoSamplePacket8BitSignedInt16, rounds);
+		if(checkAbort())
+			return;
+		printGain("float", millisFillPacketIntoSamplePacket8BitSigned, millisFillPacketIntoSamplePacket8BitSignedInt16);
+
+		rounds = 500;
+		callback.println("Measure 'LowPassFilter' with int16 samples ("+rounds+" rounds)");
+		callback.print("DSP lib ... ");
+		millisDecimatingLowPassFilterInt16 = measureDecimatingLowPassFilter(rounds, 4,
+				SamplePacket.LAYOUT_SPLIT, SamplePacket.SAMPLE_TYPE_INT16);
+		printResult(millisDecimatingLowPassFilterInt16, rounds);
+		if(checkAbort())
+			return;
+		printGain("float", millisDecimatingLowPassFilter, millisDecimatingLowPassFilterInt16);
+
 		// prepare the csv string:
 		csvValues = String.format("%d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d, %d",
 				millisFillPacketIntoSamplePacket8BitSigned,
@@ -210,14 +646,139 @@ public class Benchmark extends Thread {
 				millisLowPassFilterThreaded_legacy,
 				millisLowPassFilter9Taps,
 				millisLowPassFilter9Taps_legacy);
+		csvValues += String.format(", %d, %d, %d",
+				millisFillPacketIntoSamplePacket8BitSignedInterleaved,
+				millisMixPacketIntoSamplePacket8BitSignedInterleaved,
+				millisDecimatingLowPassFilterInterleaved);
+		csvValues += String.format(", %d, %d",
+				millisFillPacketIntoSamplePacket8BitSignedInt16,
+				millisDecimatingLowPassFilterInt16);
+		csvValues += String.format(", %d, %d, %d, %d",
+				millisFillPacketIntoSamplePacket16BitSigned,
+				millisFillPacketIntoSamplePacket16BitUnsigned,
+				millisMixPacketIntoSamplePacket16BitSigned,
+				millisMixPacketIntoSamplePacket16BitUnsigned);
+		csvValues += String.format(", %d",
+				millisFillPacketIntoSamplePacket8BitSignedByteBuffer);
+		csvValues += String.format(", %d, %d, %d",
+				millisMixPacketIntoSamplePacket8BitSignedNco,
+				millisMixPacketIntoSamplePacket8BitSignedHopping,
+				millisMixPacketIntoSamplePacket8BitSignedNcoHopping);
+		csvValues += String.format(", %d",
+				millisMixPacketIntoSamplePacket8BitSignedCachedHopping);
+		csvValues += String.format(", %d, %d, %d, %d",
+				millisMixPacketIntoSamplePacket8BitSignedCompact,
+				millisMixPacketIntoSamplePacket8BitSignedCompactHopping,
+				millisMixPacketIntoSamplePacket8BitSignedManyConverters,
+				millisMixPacketIntoSamplePacket8BitSignedManyConvertersCompact);
+		csvValues += String.format(", %d, %d",
+				millisChannelExtractionTwoStep,
+				millisChannelExtractionFused);
+		csvValues += String.format(", %d, %d",
+				millisMixPacketIntoSamplePacket8BitSignedSeparateChannels,
+				millisMixPacketIntoSamplePacket8BitSignedMultiChannel);
+		csvValues += String.format(", %d, %d, %d, %d",
+				millisConvert8BitSignedPerByte,
+				millisConvert8BitSignedPerPair,
+				millisMix8BitSignedPerByte,
+				millisMix8BitSignedPerPair);
+		csvValues += String.format(", %d, %d",
+				millisFillPacketIntoSamplePacket8BitSignedDcCorrection,
+				millisFillPacketIntoSamplePacket8BitSignedIQCorrection);
+		csvValues += String.format(", %d, %d",
+				millisDecimatingLowPassFilterDirectForm,
+				millisDecimatingLowPassFilterFolded);
+		csvValues += String.format(", %d, %d",
+				millisRationalResampler2400kTo48k,
+				millisRationalResampler1000kTo48k);
+		csvValues += String.format(", %d, %d, %d, %d, %d, %d",
+				millisFirFilter64TapsDirectForm,
+				millisFirFilter64TapsFft,
+				millisFirFilter256TapsDirectForm,
+				millisFirFilter256TapsFft,
+				millisFirFilter1024TapsDirectForm,
+				millisFirFilter1024TapsFft);
+		csvValues += String.format(", %d, %d, %d, %d",
+				millisDecimateBy16LowPassFilter,
+				millisDecimateBy16HalfBandCascade,
+				millisDecimateBy64LowPassFilter,
+				millisDecimateBy64HalfBandCascade);
+		csvValues += String.format(", %d, %d, %d, %d",
+				millisDecimateBy64LowPassFilter8Bit,
+				millisDecimateBy64CicDecimator,
+				millisDecimateBy256LowPassFilter8Bit,
+				millisDecimateBy256CicDecimator);
+		csvValues += String.format(", %d, %d",
+				millisFirFilterLongPackets,
+				millisFirFilterShortPackets);
+		csvValues += String.format(", %d, %d",
+				millisFirFilterConstruction,
+				millisFirFilterConstructionOwnScript);
+		csvValues += String.format(", %d, %d",
+				millisBandwidthChangeNewFilter,
+				millisBandwidthChangeRedesign);
+		csvValues += String.format(", %d, %d",
+				millisFilterDesign,
+				millisFilterDesignCached);
 
 		callback.println("Benchmark finished.");
 		callback.onFinish(true);
 	}
 
+	/**
+	 * Prints the duration and throughput of a measurement
+	 */
+	private void printResult(long millis, int rounds) {
+		callback.println("\t: " + millis + " ms (" + rounds*PACKETSIZE*1000l/Math.max(1, millis) + " Sps)");
+	}
+
+	/**
+	 * Prints the number of taps from which the FFT backend was faster than the direct form
+	 * (the threshold for FirFilter.setFftThreshold())
+	 */
+	private void printFftCrossover(int[] numberOfTaps, long[] millisDirectForm, long[] millisFft) {
+		for (int i = 0; i < numberOfTaps.length; i++) {
+			if(millisFft[i] < millisDirectForm[i]) {
+				callback.println("FFT backend is faster from " + (i == 0 ? "" : "between " + numberOfTaps[i-1] + " and ")
+						+ numberOfTaps[i] + " taps (see FirFilter.setFftThreshold())");
+				return;
+			}
+		}
+		callback.println("FFT backend is not faster up to " + numberOfTaps[numberOfTaps.length-1]
+				+ " taps (see FirFilter.setFftThreshold())");
+	}
+
+	/**
+	 * Prints the performance gain of a measurement compared to a reference measurement
+	 */
+	private void printGain(String reference, long millisReference, long millis) {
+		callback.println(String.format("Performance gain compared to %s is %d%%\n", reference,
+				(int)(100 * ((float)millisReference/Math.max(1, millis) - 1))));
+	}
+
+	/**
+	 * Finishes the benchmark if a stop was requested
+	 * @return true if the benchmark was aborted
+	 */
+	private boolean checkAbort() {
+		if(stopRequested) {
+			callback.println("aborted!\n");
+			callback.onFinish(false);
+		}
+		return stopRequested;
+	}
+
 	public long measureFillPacketIntoSamplePacket8BitSigned(int rounds) {
+		return measureFillPacketIntoSamplePacket8BitSigned(rounds, SamplePacket.LAYOUT_SPLIT);
+	}
+
+	public long measureFillPacketIntoSamplePacket8BitSigned(int rounds, int layout) {
+		return measureFillPacketIntoSamplePacket8BitSigned(rounds, layout, SamplePacket.SAMPLE_TYPE_FLOAT32);
+	}
+
+	public long measureFillPacketIntoSamplePacket8BitSigned(int rounds, int layout, int sampleType) {
 		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
-		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE, layout, sampleType);
 		byte[] data = new byte[2*PACKETSIZE];
 		for (int i = 0; i < data.length; i++) {
 			data[i] = (byte) i;
@@ -249,9 +810,147 @@ public class Benchmark extends Thread {
 	}
 
 	public long measureMixPacketIntoSamplePacket8BitSigned(int rounds) {
+		return measureMixPacketIntoSamplePacket8BitSigned(rounds, SamplePacket.LAYOUT_SPLIT);
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSigned(int rounds, int layout) {
+		return measureMixPacketIntoSamplePacket8BitSigned(rounds, layout, IQConverter.MIXER_MODE_LUT);
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSigned(int rounds, int layout, int mixerMode) {
+		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+		iqConverter8BitSigned.setFrequency(97000000);
+		iqConverter8BitSigned.setSampleRate(1000000);
+		iqConverter8BitSigned.setMixerMode(mixerMode);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE, layout);
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			iqConverter8BitSigned.mixPacketIntoSamplePacket(data, samplePacket, 96900000);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSignedHopping(int rounds, int mixerMode) {
+		return measureMixPacketIntoSamplePacket8BitSignedHopping(rounds, mixerMode, null);
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSignedHopping(int rounds, int mixerMode, MixerLutCache lutCache) {
+		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+		iqConverter8BitSigned.setFrequency(97000000);
+		iqConverter8BitSigned.setSampleRate(1000000);
+		iqConverter8BitSigned.setMixerMode(mixerMode);
+		iqConverter8BitSigned.setMixerLutCache(lutCache);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		long[] channels = {96900000, 97125000, 97230000};
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			iqConverter8BitSigned.mixPacketIntoSamplePacket(data, samplePacket, channels[i % channels.length]);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSignedManyConverters(int rounds, int numberOfConverters, int mixerMode) {
+		IQConverter[] iqConverters = new IQConverter[numberOfConverters];
+		for (int i = 0; i < numberOfConverters; i++) {
+			iqConverters[i] = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+			iqConverters[i].setFrequency(97000000);
+			iqConverters[i].setSampleRate(1000000);
+			iqConverters[i].setMixerMode(mixerMode);
+		}
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			int converter = i % numberOfConverters;
+			iqConverters[converter].mixPacketIntoSamplePacket(data, samplePacket, 96600000 + converter * 100000);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureMixPacketIntoSamplePacket8BitSignedChannels(int rounds, int numberOfChannels, boolean multiChannel) {
+		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+		iqConverter8BitSigned.setFrequency(97000000);
+		iqConverter8BitSigned.setSampleRate(1000000);
+		iqConverter8BitSigned.setMixerMode(IQConverter.MIXER_MODE_NCO);
+		SamplePacket[] samplePackets = new SamplePacket[numberOfChannels];
+		long[] channels = new long[numberOfChannels];
+		for (int i = 0; i < numberOfChannels; i++) {
+			samplePackets[i] = new SamplePacket(PACKETSIZE);
+			channels[i] = 96800000 + i * 125000;
+		}
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			if(multiChannel) {
+				iqConverter8BitSigned.mixPacketIntoSamplePackets(data, samplePackets, channels);
+			} else {
+				for (int c = 0; c < numberOfChannels; c++)
+					iqConverter8BitSigned.mixPacketIntoSamplePacket(data, samplePackets[c], channels[c]);
+			}
+			for (SamplePacket samplePacket: samplePackets) {
+				samplePacket.sync();
+				samplePacket.setSize(0);
+			}
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureChannelExtraction(int rounds, boolean fused) {
+		LowPassFilter lowPassFilter = new LowPassFilter(8, 1, 1000000, 50000, 20000, 40);
+		callback.print("("+lowPassFilter.getNumberOfTaps()+" taps; decimate by 8) ");
 		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
 		iqConverter8BitSigned.setFrequency(97000000);
 		iqConverter8BitSigned.setSampleRate(1000000);
+		iqConverter8BitSigned.setMixerMode(IQConverter.MIXER_MODE_NCO);
+		ChannelExtractor channelExtractor = new ChannelExtractor(2 * PACKETSIZE, true, lowPassFilter);
+		channelExtractor.setMixFrequency(1000000, -100000);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		SamplePacket out = new SamplePacket(PACKETSIZE / 8);
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			if(fused) {
+				channelExtractor.extract(data, out);
+			} else {
+				iqConverter8BitSigned.mixPacketIntoSamplePacket(data, samplePacket, 96900000);
+				lowPassFilter.filter(samplePacket, out, 0, samplePacket.size());
+				samplePacket.setSize(0);
+			}
+			out.sync();
+			out.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureSplitKernels8BitSigned(int rounds, boolean mix, boolean perByteKernels) {
+		LookupTable_8Bit lookupTable = new LookupTable_8Bit(2 * PACKETSIZE, LookupTable_8Bit.createSigned8BitLookupTable());
+		lookupTable.setPerByteKernels(perByteKernels);
+		Mixer_8Bit mixer = new Mixer_8Bit(2 * PACKETSIZE, 500);
+		mixer.generateLookupTable(1000000, 100000, 10, true);
+		mixer.setPerByteKernels(perByteKernels);
 		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
 		byte[] data = new byte[2*PACKETSIZE];
 		for (int i = 0; i < data.length; i++) {
@@ -259,7 +958,78 @@ public class Benchmark extends Thread {
 		}
 		long startTime = System.currentTimeMillis();
 		for (int i = 0; i < rounds && !stopRequested; i++) {
-			iqConverter8BitSigned.mixPacketIntoSamplePacket_8BitSigned(data, samplePacket, 96900000);
+			if(mix)
+				mixer.mixFromSignedInterleaved8Bit(data, samplePacket.getReAlloc(), samplePacket.getImAlloc(), 0, PACKETSIZE);
+			else
+				lookupTable.convertFromSignedInterleaved8Bit(data, samplePacket.getReAlloc(), samplePacket.getImAlloc(), 0, PACKETSIZE);
+			samplePacket.getReAlloc().syncAll(Allocation.USAGE_SCRIPT);
+			samplePacket.getImAlloc().syncAll(Allocation.USAGE_SCRIPT);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFillPacketIntoSamplePacket8BitSignedCorrected(int rounds, boolean correctImbalance) {
+		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+		iqConverter8BitSigned.setIQCorrection(new IQCorrection(correctImbalance));
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			iqConverter8BitSigned.fillPacketIntoSamplePacket(data, samplePacket);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFillPacketIntoSamplePacket8BitSignedByteBuffer(int rounds) {
+		IQConverter iqConverter8BitSigned = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(2*PACKETSIZE);
+		for (int i = 0; i < buffer.capacity(); i++) {
+			buffer.put((byte) i);
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			buffer.rewind();
+			iqConverter8BitSigned.fillPacketIntoSamplePacket(buffer, samplePacket);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFillPacketIntoSamplePacket16Bit(int rounds, int format) {
+		IQConverter iqConverter16Bit = new IQConverter(format, 4 * PACKETSIZE);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		byte[] data = new byte[4*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			iqConverter16Bit.fillPacketIntoSamplePacket(data, samplePacket);
+			samplePacket.sync();
+			samplePacket.setSize(0);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureMixPacketIntoSamplePacket16Bit(int rounds, int format) {
+		IQConverter iqConverter16Bit = new IQConverter(format, 4 * PACKETSIZE);
+		iqConverter16Bit.setFrequency(97000000);
+		iqConverter16Bit.setSampleRate(1000000);
+		SamplePacket samplePacket = new SamplePacket(PACKETSIZE);
+		byte[] data = new byte[4*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			iqConverter16Bit.mixPacketIntoSamplePacket(data, samplePacket, 96900000);
 			samplePacket.sync();
 			samplePacket.setSize(0);
 		}
@@ -286,20 +1056,246 @@ public class Benchmark extends Thread {
 	}
 
 	public long measureDecimatingLowPassFilter(int rounds, int decimation) {
+		return measureDecimatingLowPassFilter(rounds, decimation, SamplePacket.LAYOUT_SPLIT);
+	}
+
+	public long measureDecimatingLowPassFilter(int rounds, int decimation, int layout) {
+		return measureDecimatingLowPassFilter(rounds, decimation, layout, SamplePacket.SAMPLE_TYPE_FLOAT32);
+	}
+
+	public long measureDecimatingLowPassFilter(int rounds, int decimation, int layout, int sampleType) {
+		return measureDecimatingLowPassFilter(rounds, decimation, layout, sampleType, true);
+	}
+
+	public long measureDecimatingLowPassFilter(int rounds, int decimation, int layout, int sampleType, boolean foldSymmetricTaps) {
 		LowPassFilter lowPassFilter = new LowPassFilter(decimation, 1, 1000000, 100000, 10000, 40);
+		lowPassFilter.setFoldSymmetricTaps(foldSymmetricTaps);
 		callback.print("("+lowPassFilter.getNumberOfTaps()+" taps; decimate by " + decimation+") ");
 		float[] data = new float[PACKETSIZE];
 		for (int i = 0; i < data.length; i++) {
 			data[i] = (float) i;
 		}
-		SamplePacket in = new SamplePacket(data,data,0,1000000);
+		SamplePacket in = new SamplePacket(data,data,0,1000000,data.length,layout,sampleType);
+		SamplePacket out = new SamplePacket(PACKETSIZE, layout, sampleType);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			lowPassFilter.filter(in, out, 0, in.size());
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (filter() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFirFilterBackend(int rounds, int numberOfTaps, boolean fft) {
+		// designLowPassFilter() uses about attenuation*sampleRate/(22*transitionWidth) taps:
+		LowPassFilter lowPassFilter = new LowPassFilter(1, 1, 1000000, 100000, 40 * 1000000f / (22 * numberOfTaps), 40);
+		lowPassFilter.setFftThreshold(fft ? 0 : Integer.MAX_VALUE);
+		callback.print("("+lowPassFilter.getNumberOfTaps()+" taps) ");
+		float[] data = new float[PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (float) i;
+		}
+		SamplePacket in = new SamplePacket(data,data,0,1000000,data.length);
+		SamplePacket out = new SamplePacket(PACKETSIZE);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			lowPassFilter.filter(in, out, 0, in.size());
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (filter() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFirFilterPacketSize(int rounds, int numberOfTaps, int packetSize) {
+		float[] taps = new float[numberOfTaps];
+		for (int i = 0; i < taps.length; i++) {
+			taps[i] = 1f / (i + 1);		// not symmetric (direct form kernel)
+		}
+		FirFilter filter = new FirFilter(taps, null, 1);
+		filter.setFftThreshold(Integer.MAX_VALUE);
+		float[] data = new float[PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (float) i;
+		}
+		SamplePacket in = new SamplePacket(data,data,0,1000000,data.length);
+		SamplePacket out = new SamplePacket(packetSize);
+
+		// each round filters PACKETSIZE samples in packets of packetSize samples:
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			for (int offset = 0; offset < PACKETSIZE; offset += packetSize) {
+				filter.filterComplexSignal(in, out, offset, packetSize);
+				out.setSize(0);
+			}
+		}
+		out.sync();	// wait for the last kernels (filterComplexSignal() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFirFilterConstruction(int filters, int numberOfTaps, boolean ownScript) {
+		float[] taps = new float[numberOfTaps];
+		for (int i = 0; i < taps.length; i++) {
+			taps[i] = 1f / (i + 1);
+		}
+		SamplePacket in = new SamplePacket(256);
+		in.setSize(256);
+		SamplePacket out = new SamplePacket(256);
+
+		// each filter is created and filters one packet (the buffers of the filter are created lazily).
+		// ownScript adds the compilation of a script per filter (as it was done before the scripts were shared):
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < filters && !stopRequested; i++) {
+			if(ownScript)
+				new ScriptC_fir_filter(AndroidDSPLib.getRenderScript(), AndroidDSPLib.getResources(), R.raw.fir_filter);
+			FirFilter filter = new FirFilter(taps, null, 1);
+			filter.setFftThreshold(Integer.MAX_VALUE);
+			filter.filterComplexSignal(in, out, 0, in.size());
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (filterComplexSignal() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureBandwidthChange(int rounds, boolean redesign) {
+		LowPassFilter lowPassFilter = new LowPassFilter(1, 1, 1000000, 100000, 50000, 40);
+		float[] data = new float[PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (float) i;
+		}
+		SamplePacket in = new SamplePacket(data,data,0,1000000,data.length);
 		SamplePacket out = new SamplePacket(PACKETSIZE);
 
+		// the cut off frequency alternates between two values:
 		long startTime = System.currentTimeMillis();
 		for (int i = 0; i < rounds && !stopRequested; i++) {
+			float cutOffFrequency = (i % 2 == 0) ? 150000 : 100000;
+			if(redesign)
+				lowPassFilter.redesign(1, 1000000, cutOffFrequency, 50000, 40);
+			else
+				lowPassFilter = new LowPassFilter(1, 1, 1000000, cutOffFrequency, 50000, 40);
 			lowPassFilter.filter(in, out, 0, in.size());
 			out.setSize(0);
 		}
+		out.sync();	// wait for the last kernels (filter() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureFilterDesign(int rounds, FilterDesignCache cache) {
+		// the designs cycle through 4 bandwidths (a channel selector that is switched back and forth):
+		FilterDesignCache previousCache = AndroidDSPLib.getFilterDesignCache();
+		AndroidDSPLib.setFilterDesignCache(cache);
+		long startTime = System.currentTimeMillis();
+		try {
+			for (int i = 0; i < rounds && !stopRequested; i++) {
+				float bandwidth = 25000 * (1 + i % 4);
+				LowPassFilter.designLowPassFilter(1, 1000000, bandwidth, bandwidth / 5, 60);
+				BandPassFilter.designBandPassFilter(1, 1000000, 100000, 100000 + bandwidth, bandwidth / 5, 60);
+				ComplexBandPassFilter.designComplexBandPassFilter(1, 1000000, -bandwidth, bandwidth, bandwidth / 5, 60);
+			}
+		} finally {
+			AndroidDSPLib.setFilterDesignCache(previousCache);
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureDecimation(int rounds, int decimation, float passBand, boolean halfBandCascade) {
+		// the single filter has the same pass band and rejects everything that would alias into it:
+		float outputRate = 1000000f / decimation;
+		LowPassFilter lowPassFilter = null;
+		HalfBandCascade cascade = null;
+		if(halfBandCascade) {
+			cascade = new HalfBandCascade(decimation, 1, 1000000, passBand, 40);
+			callback.print("(" + cascade.getStages().length + " stages; "
+					+ String.format("%.1f", cascade.getMultiplicationsPerInputSample()) + " mult. per input) ");
+		} else {
+			lowPassFilter = new LowPassFilter(decimation, 1, 1000000, outputRate / 2, outputRate - 2 * passBand, 40);
+			callback.print("(" + lowPassFilter.getNumberOfTaps() + " taps; "
+					+ String.format("%.1f", (lowPassFilter.getNumberOfTaps() + 1) / 2f / decimation) + " mult. per input) ");
+		}
+		float[] data = new float[PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (float) i;
+		}
+		SamplePacket in = new SamplePacket(data,data,0,1000000,data.length);
+		SamplePacket out = new SamplePacket(PACKETSIZE / decimation);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			if(halfBandCascade)
+				cascade.filter(in, out, 0, in.size());
+			else
+				lowPassFilter.filter(in, out, 0, in.size());
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (filter() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureCicDecimation(int rounds, int decimation, boolean cic) {
+		// 8-bit signed IQ samples at 2.4 MHz; the output keeps 30% of the output rate and rejects the aliases:
+		float sampleRate = 2400000;
+		float outputRate = sampleRate / decimation;
+		IQConverter iqConverter = null;
+		LowPassFilter lowPassFilter = null;
+		SamplePacket converted = null;
+		CicDecimator cicDecimator = null;
+		FirFilter compensationFilter = null;
+		SamplePacket intermediate = null;
+		if(cic) {
+			// CIC (order 4) decimates by decimation/2, the compensation filter by 2:
+			cicDecimator = new CicDecimator(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE, 4, decimation / 2);
+			compensationFilter = new FirFilter(CicDecimator.designCompensationFilter(4, decimation / 2, 1,
+					2 * outputRate, outputRate / 2, 0.4f * outputRate, 40), null, 2);
+			intermediate = new SamplePacket(2 * PACKETSIZE / decimation);
+			callback.print("(" + compensationFilter.getNumberOfTaps() + " taps after the CIC) ");
+		} else {
+			iqConverter = new IQConverter(IQConverter.FORMAT_8BIT_SIGNED, 2 * PACKETSIZE);
+			lowPassFilter = new LowPassFilter(decimation, 1, sampleRate, outputRate / 2, 0.4f * outputRate, 40);
+			converted = new SamplePacket(PACKETSIZE);
+			callback.print("(" + lowPassFilter.getNumberOfTaps() + " taps) ");
+		}
+		byte[] data = new byte[2*PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		SamplePacket out = new SamplePacket(PACKETSIZE / decimation);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			if(cic) {
+				cicDecimator.decimate(data, intermediate);
+				compensationFilter.filterComplexSignal(intermediate, out, 0, intermediate.size());
+				intermediate.setSize(0);
+			} else {
+				iqConverter.fillPacketIntoSamplePacket_8BitSigned(data, converted);
+				lowPassFilter.filter(converted, out, 0, converted.size());
+				converted.setSize(0);
+			}
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (filter() does not block)
+		return System.currentTimeMillis() - startTime;
+	}
+
+	public long measureRationalResampler(int rounds, int inputSampleRate, int outputSampleRate) {
+		RationalResampler resampler = new RationalResampler(outputSampleRate, inputSampleRate, 1, inputSampleRate, 16000, 8000, 40);
+		callback.print("("+resampler.getInterpolation()+"/"+resampler.getDecimation()+"; "
+				+resampler.getTapsPerPhase()+" of "+resampler.getNumberOfTaps()+" taps per output) ");
+		float[] data = new float[PACKETSIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (float) i;
+		}
+		SamplePacket in = new SamplePacket(data,data,0,inputSampleRate,data.length);
+		SamplePacket out = new SamplePacket(PACKETSIZE * resampler.getInterpolation() / resampler.getDecimation() + 1);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < rounds && !stopRequested; i++) {
+			resampler.resample(in, out, 0, in.size());
+			out.setSize(0);
+		}
+		out.sync();	// wait for the last kernels (resample() does not block)
 		return System.currentTimeMillis() - startTime;
 	}
 
@@ -345,6 +1341,7 @@ public class Benchmark extends Thread {
 					lowPassFilter.filter(in, out, 0, in.size());
 					out.setSize(0);
 				}
+				out.sync();
 			}
 		}
 
@@ -422,6 +1419,7 @@ public class Benchmark extends Thread {
 			lowPassFilter.filter(in, out, 0, in.size());
 			out.setSize(0);
 		}
+		out.sync();
 		return System.currentTimeMillis() - startTime;
 	}
 